@@ -28,6 +28,7 @@ import javax.vecmath.Point2d;
 import java.util.*;
 import java.util.stream.Collectors;
 import org.nmrfx.chemistry.relax.RelaxationData.relaxTypes;
+import org.nmrfx.star.STARWriter;
 
 public class Atom implements IAtom {
 
@@ -1283,6 +1284,11 @@ public class Atom implements IAtom {
         return ppmToNEFString(spatialSet, iStruct, iAtom, collapse, sameShift);
     }
 
+    /**
+     * Widths of the columns of a nef_chemical_shift row
+     */
+    public static final int[] NEF_SHIFT_WIDTHS = {10, 10, 10, 10, 10, 4};
+
     /**
      * Converts chemical shift information to a String in NEF format.
      *
@@ -1296,10 +1302,32 @@ public class Atom implements IAtom {
      */
     public String ppmToNEFString(SpatialSet spatialSet,
             int iStruct, int iAtom, int collapse, int sameShift) {
+        STARWriter writer = new STARWriter(new StringBuilder(80));
+        writer.setIndent(0, 9).setWidths(NEF_SHIFT_WIDTHS);
+        if (!appendNEFShiftRow(writer, spatialSet, iStruct, collapse, sameShift)) {
+            return null;
+        }
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of the nef_chemical_shift row for this atom to the
+     * current row of a STARWriter. The row is not ended.
+     *
+     * @param writer the writer
+     * @param spatialSet SpatialSet of the molecule.
+     * @param iStruct int. Index of molecular structure.
+     * @param collapse Whether to collapse methyl/methylene atoms into a single
+     * entry with a % in the atom name.
+     * @param sameShift indicates whether this has same shift as partner
+     * @return false (and nothing is appended) if the atom has no shift
+     */
+    public boolean appendNEFShiftRow(STARWriter writer, SpatialSet spatialSet,
+            int iStruct, int collapse, int sameShift) {
         //chemical shift
         PPMv ppmv = spatialSet.getPPM(iStruct);
         if (ppmv == null) {
-            return null;
+            return false;
         }
 
         //atom name
@@ -1361,9 +1389,20 @@ public class Atom implements IAtom {
         double shiftErr = ppmv.getError();
 
 //            System.out.println("wrote " + ((Residue) entity).getIDNum() + " " + writeName + " " + ppmv.getValue());
-        return String.format("         %-9s %-9d %-9s %-9s %-9.3f %-4.3f", chainID, seqCode, resName, writeName, shift, shiftErr);
+        writer.cell(chainID);
+        writer.cell(seqCode);
+        writer.cell(resName);
+        writer.cell(writeName);
+        writer.cell(shift, 3);
+        writer.cell(shiftErr, 3);
+        return true;
     }
 
+    /**
+     * Widths of the columns of a nef_distance_restraint row
+     */
+    public static final int[] NEF_DISTANCE_WIDTHS = {8, 8, 8, 8, 8, 8, 8, 8, 8, 8, 8, 8, 8, 8, 8, 8};
+
     /**
      * Converts distance information to a String in NEF format.
      *
@@ -1379,18 +1418,37 @@ public class Atom implements IAtom {
      * @return String in NEF format.
      */
     public static String toNEFDistanceString(int index, int[] aCollapse, int restraintID, String restraintComboID, DistanceConstraint distPair, Atom atom1, Atom atom2) {
+        STARWriter writer = new STARWriter(new StringBuilder(160));
+        writer.setIndent(0, 9).setWidths(NEF_DISTANCE_WIDTHS);
+        appendNEFDistanceRow(writer, index, aCollapse, restraintID, restraintComboID, distPair, atom1, atom2);
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of a nef_distance_restraint row to the current row of
+     * a STARWriter. The row is not ended.
+     *
+     * @param writer the writer
+     * @param index int. Index of the line in the file.
+     * @param aCollapse Whether to collapse methyl/methylene atoms in the
+     * distance pair into a single entry with a % in the atom name.
+     * @param restraintID int. Restraint ID number.
+     * @param restraintComboID String. Restraint combination ID.
+     * @param distPair The DistancePair object for the restraintID.
+     * @param atom1 Atom. First atom in the AtomDistancePair object.
+     * @param atom2 Atom. Second atom in the AtomDistancePair object.
+     */
+    public static void appendNEFDistanceRow(STARWriter writer, int index, int[] aCollapse, int restraintID, String restraintComboID, DistanceConstraint distPair, Atom atom1, Atom atom2) {
         Atom[] atoms = {atom1, atom2};
 
-        StringBuilder sBuilder = new StringBuilder();
         //index
-        sBuilder.append("         ");
-        sBuilder.append(String.format("%-8d", index));
+        writer.cell(index);
 
         //restraint ID
-        sBuilder.append(String.format("%-8d", restraintID));
+        writer.cell(restraintID);
 
         //restraint combo ID
-        sBuilder.append(String.format("%-8s", restraintComboID));
+        writer.cell(restraintComboID);
 
         String polymerName = "A";
         int seqCode = 1;
@@ -1404,7 +1462,7 @@ public class Atom implements IAtom {
                 polymerName = atom.entity.getPropertyObject("chain").toString();
             }
             char chainID = polymerName.charAt(0);
-            sBuilder.append(String.format("%-8s", chainID));
+            writer.cell(chainID);
 
             // sequence code 
             if (atom.entity instanceof Residue) {
@@ -1412,7 +1470,7 @@ public class Atom implements IAtom {
             } else if (atom.entity instanceof Compound) {
                 seqCode = Integer.parseInt(((Compound) atom.entity).getNumber());
             }
-            sBuilder.append(String.format("%-8d", seqCode));
+            writer.cell(seqCode);
 
             // residue name
             if (atom.entity instanceof Residue) {
@@ -1423,7 +1481,7 @@ public class Atom implements IAtom {
             if (resName.length() > 3) {
                 resName = resName.substring(0, 3);
             }
-            sBuilder.append(String.format("%-8s", resName));
+            writer.cell(resName);
 
             // atom name 
             int collapse = aCollapse[a];
@@ -1443,36 +1501,41 @@ public class Atom implements IAtom {
                 }
             }
 //                System.out.println(chainID + " " + seqCode + " " + resName + " " + atoms[a].name + " " + writeName);
-            sBuilder.append(String.format("%-8s", writeName));
+            writer.cell(writeName);
         }
 
         // weight
         double weight = distPair.getWeight();
-        sBuilder.append(String.format("%-8.1f", weight));
+        writer.cell(weight, 1);
 
         // target value
         double target = distPair.getTarget();
-        sBuilder.append(String.format("%-8.3f", target));
+        writer.cell(target, 3);
 
         // target value uncertainty
         double targetErr = distPair.getTargetError();
         if (targetErr < 1.0e-6) {
-            sBuilder.append(String.format("%-8s", "."));
+            writer.cell(".");
         } else {
-            sBuilder.append(String.format("%-8.3f", targetErr));
+            writer.cell(targetErr, 3);
         }
 
         // lower limit
         double lower = distPair.getLower();
-        sBuilder.append(String.format("%-8.3f", lower));
+        writer.cell(lower, 3);
 
         // upper limit
         double upper = distPair.getUpper();
-        sBuilder.append(String.format("%-8.3f", upper));
-
-        return sBuilder.toString();
+        writer.cell(upper, 3);
     }
 
+    /**
+     * Widths of the columns of a nef_dihedral_restraint row (all right
+     * aligned)
+     */
+    public static final int[] NEF_DIHEDRAL_WIDTHS = {-6, -6, -6, -6, -6, -6, -6, -6, -6, -6, -6,
+        -6, -6, -6, -6, -6, -6, -6, -6, -6, -9, -9, -9, -9, -6};
+
     /**
      * Converts dihedral angle information into a String in NEF format.
      *
@@ -1485,17 +1548,33 @@ public class Atom implements IAtom {
      * @return String in NEF format.
      */
     public static String toNEFDihedralString(AngleConstraint bound, Atom[] atoms, int iBound, int restraintID, String restraintComboID) {
+        STARWriter writer = new STARWriter(new StringBuilder(180));
+        writer.setWidths(NEF_DIHEDRAL_WIDTHS);
+        appendNEFDihedralRow(writer, bound, atoms, iBound, restraintID, restraintComboID);
+        return writer.row().toString();
+    }
 
-        StringBuilder sBuilder = new StringBuilder();
+    /**
+     * Append the cells of a nef_dihedral_restraint row to the current row of
+     * a STARWriter. The row is not ended.
+     *
+     * @param writer the writer
+     * @param bound AngleBoundary. The dihedral angle object.
+     * @param atoms Atom[]. List of atoms that form the dihedral angle.
+     * @param iBound int. Index of the dihedral angle.
+     * @param restraintID int. The restraint ID.
+     * @param restraintComboID String. The restraint combination ID.
+     */
+    public static void appendNEFDihedralRow(STARWriter writer, AngleConstraint bound, Atom[] atoms, int iBound, int restraintID, String restraintComboID) {
 
         //index
-        sBuilder.append(String.format("%6d", iBound));
+        writer.cell(iBound);
 
         //restraint ID
-        sBuilder.append(String.format("%6d", restraintID));
+        writer.cell(restraintID);
 
         //restraint combo ID
-        sBuilder.append(String.format("%6s", restraintComboID));
+        writer.cell(restraintComboID);
 
         String polymerName = "A";
         int seqCode = 1;
@@ -1508,7 +1587,7 @@ public class Atom implements IAtom {
                 polymerName = atom.entity.getPropertyObject("chain").toString();
             }
             char chainID = polymerName.charAt(0);
-            sBuilder.append(String.format("%6s", chainID));
+            writer.cell(chainID);
 
             // sequence code 
             if (atom.entity instanceof Residue) {
@@ -1516,7 +1595,7 @@ public class Atom implements IAtom {
             } else if (atom.entity instanceof Compound) {
                 seqCode = Integer.parseInt(((Compound) atom.entity).getNumber());
             }
-            sBuilder.append(String.format("%6d", seqCode));
+            writer.cell(seqCode);
 
             // residue name 
             if (atom.entity instanceof Residue) {
@@ -1527,41 +1606,39 @@ public class Atom implements IAtom {
             if (resName.length() > 3) {
                 resName = resName.substring(0, 3);
             }
-            sBuilder.append(String.format("%6s", resName));
+            writer.cell(resName);
 
             // atom name 
             String aName = atom.name;
-            sBuilder.append(String.format("%6s", aName));
+            writer.cell(aName);
         }
 
         // weight
         double weight = bound.getWeight();
-        sBuilder.append(String.format("%6.2f", weight));
+        writer.cell(weight, 2);
 
         // target value
         double target = bound.getTargetValue();
-        sBuilder.append(String.format("%9.3f", target));
+        writer.cell(target, 3);
 
         // target value uncertainty
         double targetErr = bound.getTargetError();
-        sBuilder.append(String.format("%9.3f", targetErr));
+        writer.cell(targetErr, 3);
 
         // lower limit
         double lower = Math.toDegrees(bound.getLower());
-        sBuilder.append(String.format("%9.3f", lower));
+        writer.cell(lower, 3);
 
         // upper limit
         double upper = Math.toDegrees(bound.getUpper());
-        sBuilder.append(String.format("%9.3f", upper));
+        writer.cell(upper, 3);
 
         // name
         String name = bound.getName();
         if (name.equals("")) {
             name = ".";
         }
-        sBuilder.append(String.format("%6s", name));
-
-        return sBuilder.toString();
+        writer.cell(name);
     }
 
     public String xyzToXMLString(int iStruct, int iAtom) {
@@ -23,6 +23,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -66,6 +67,9 @@ public class AtomResonanceFactory implements FreezeListener {
     }
 
     public void clean() {
+        if (isClean()) {
+            return;
+        }
         Map<Long, AtomResonance> resonancesNew = new TreeMap<>();
         long resID = 0;
         for (Map.Entry<Long, AtomResonance> entry : map.entrySet()) {
@@ -81,6 +85,27 @@ public class AtomResonanceFactory implements FreezeListener {
         arrayView = null;
     }
 
+    /**
+     * @return true if clean() wouldn't change the resonances: they all have
+     * peak dimensions and are numbered consecutively from 0 in the order of
+     * the map
+     */
+    private boolean isClean() {
+        if (!(map instanceof TreeMap)) {
+            return false;
+        }
+        long resID = 0;
+        for (Map.Entry<Long, AtomResonance> entry : map.entrySet()) {
+            List<PeakDim> peakDims = entry.getValue().getPeakDims();
+            if ((peakDims == null) || peakDims.isEmpty() || (entry.getKey() != resID)
+                    || (entry.getValue().getID() != resID)) {
+                return false;
+            }
+            resID++;
+        }
+        return true;
+    }
+
     public synchronized HashMap<String, ArrayList<AtomResonance>> getLabelMap() {
         clean();
         HashMap<String, ArrayList<AtomResonance>> labelMap = new HashMap<>();
@@ -135,55 +160,7 @@ public class AtomResonanceFactory implements FreezeListener {
 
     public synchronized void merge(String condition, double tol) {
         HashMap<String, ArrayList<AtomResonance>> labelMap = getLabelMap();
-        for (String label : labelMap.keySet()) {
-            ArrayList<AtomResonance> resList = labelMap.get(label);
-            // find res with atom
-            // if none find res closest to mean
-            // or resonance with most peaks    
-            // merge remaining
-            AtomResonance refRes = null;
-            for (AtomResonance res : resList) {
-                if (res.getPeakCount(condition) > 0) {
-                    if (res.getAtom() != null) {
-                        refRes = res;
-                        break;
-                    }
-                }
-            }
-            if (refRes == null) {
-                int maxCount = 0;
-                for (AtomResonance res : resList) {
-                    int nPeakDims = res.getPeakCount(condition);
-                    if (nPeakDims > maxCount) {
-                        maxCount = nPeakDims;
-                        refRes = res;
-                    }
-                }
-            }
-            if (refRes != null) {
-                Double ppmAvg = refRes.getPPMAvg(null);
-                Double widthAvg = refRes.getWidthAvg(null);
-                if (ppmAvg == null) {
-                    continue;
-                }
-                if (widthAvg < 0.05) {
-                    widthAvg = 0.05;
-                }
-                for (AtomResonance res : resList) {
-                    if (res == refRes) {
-                        continue;
-                    }
-                    if (res.getPeakCount(condition) == 0) {
-                        continue;
-                    }
-                    double ppmAvg2 = res.getPPMAvg(null);
-                    double delta = Math.abs(ppmAvg - ppmAvg2);
-                    if (delta < (tol * widthAvg)) {
-                        refRes = merge(refRes, res);
-                    }
-                }
-            }
-        }
+        ResonanceMerger.merge(labelMap.values(), condition, tol, this::merge);
         arrayView = null;
     }
 
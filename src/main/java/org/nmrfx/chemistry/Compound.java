@@ -18,6 +18,7 @@
 package org.nmrfx.chemistry;
 
 import java.util.*;
+import org.nmrfx.star.STARWriter;
 
 public class Compound extends Entity implements AtomIterable {
 
@@ -166,7 +167,27 @@ public class Compound extends Entity implements AtomIterable {
         atomMap = newMap;
     }
     
+    /**
+     * Widths of the columns of a nef_sequence row
+     */
+    public static final int[] NEF_SEQUENCE_WIDTHS = {-8, -8, -8, -10, 15, 7};
+
     public String toNEFSequenceString(int idx, String link) {
+        STARWriter writer = new STARWriter(new StringBuilder(64));
+        writer.setWidths(NEF_SEQUENCE_WIDTHS);
+        appendNEFSequenceRow(writer, idx, link);
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of the nef_sequence row for this compound to the
+     * current row of a STARWriter. The row is not ended.
+     *
+     * @param writer the writer
+     * @param idx the row index
+     * @param link linkage (e.g. start, end, single)
+     */
+    public void appendNEFSequenceRow(STARWriter writer, int idx, String link) {
         //sequence code
         int num = Integer.parseInt(this.getNumber());
         //chain ID
@@ -182,7 +203,12 @@ public class Compound extends Entity implements AtomIterable {
         //residue variant
         String resVar = this.label;
 
-        return String.format("%8d %7s %7d %9s %-14s %-7s", idx, chainID, num, resName, link, resVar);
+        writer.cell(idx);
+        writer.cell(chainID);
+        writer.cell(num);
+        writer.cell(resName);
+        writer.cell(link);
+        writer.cell(resVar);
     }
 
 }
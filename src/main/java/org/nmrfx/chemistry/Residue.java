@@ -21,6 +21,7 @@ import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 import org.apache.commons.math3.util.FastMath;
 
 import java.util.*;
+import org.nmrfx.star.STARWriter;
 
 import static org.nmrfx.chemistry.io.PDBFile.isIUPACMode;
 
@@ -755,14 +756,15 @@ public class Residue extends Compound {
     }
 
     /**
-     * Converts sequence information to a String in NEF format.
-     * 
+     * Append the cells of the nef_sequence row for this residue to the
+     * current row of a STARWriter. The row is not ended.
+     *
+     * @param writer the writer
      * @param idx int. The line index.
      * @param link String. Linkage (e.g. start, end, single).
-     * @return String in NEF format.
      */
     @Override
-    public String toNEFSequenceString(int idx, String link) {
+    public void appendNEFSequenceRow(STARWriter writer, int idx, String link) {
         //chain ID
         char chainID = ' ';
         //sequence code
@@ -779,7 +781,12 @@ public class Residue extends Compound {
         //residue variant
         String resVar = this.label;
 
-        return String.format("%8d %7s %7d %9s %-14s %-7s", idx, chainID, num, resName, link, resVar);
+        writer.cell(idx);
+        writer.cell(chainID);
+        writer.cell(num);
+        writer.cell(resName);
+        writer.cell(link);
+        writer.cell(resVar);
     }
 
     /**
@@ -26,6 +26,7 @@ package org.nmrfx.chemistry;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import org.nmrfx.star.STARWriter;
 
 /**
  *
@@ -214,6 +215,27 @@ public class SpatialSet {
         coordsList.add(coords);
     }
 
+    /**
+     * Extend the list of coordinates with empty entries so it has at least
+     * the specified size. The entries can then be filled with setCoords,
+     * from several threads as long as each index is set by only one.
+     *
+     * @param size the size
+     */
+    public void reserveCoords(int size) {
+        if (coordsList instanceof ArrayList) {
+            ((ArrayList<Coords>) coordsList).ensureCapacity(size);
+        }
+        while (coordsList.size() < size) {
+            coordsList.add(null);
+        }
+    }
+
+    public void setCoords(int index, double x, double y, double z,
+            double occupancy, double bfactor) {
+        coordsList.set(index, new Coords(x, y, z, occupancy, bfactor));
+    }
+
     public Point3 getPoint() {
         return getPoint(0);
     }
@@ -579,13 +601,35 @@ public class SpatialSet {
         return sBuild.toString();
     }
     
+    /**
+     * Minimum widths of the columns of an mmCIF atom_site row
+     */
+    public static final int[] MMCIF_WIDTHS = {7, 8, 3, 7, 2, 4, 2, 2, 6, 2, 9, 9, 9, 5, 8, 2, 5, 5, 2, 7, 2};
+
     public String toMMCifString(int iAtom, int iStruct) {
-        StringBuilder sBuilder = new StringBuilder();
-        
+        STARWriter writer = new STARWriter(new StringBuilder(128));
+        writer.setWidths(MMCIF_WIDTHS);
+        if (!appendMMCifRow(writer, iAtom, iStruct)) {
+            return null;
+        }
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of the mmCIF atom_site row for this atom to the
+     * current row of a STARWriter. The row is not ended.
+     *
+     * @param writer the writer
+     * @param iAtom the index of the atom in the file (starting at 0)
+     * @param iStruct the structure
+     * @return false (and nothing is appended) if the atom has no coordinates
+     * in the structure
+     */
+    public boolean appendMMCifRow(STARWriter writer, int iAtom, int iStruct) {
         Coords coord = getCoords(iStruct);
        
         if (getPointCount() < 1 || coord == null) {
-            return null;
+            return false;
         }
         
         // group_PDB
@@ -594,9 +638,6 @@ public class SpatialSet {
         String aType = atom.getSymbol().toUpperCase();
         // atom ID
         String aName = atom.name;
-        if (aName.contains("'")){
-            aName = "\"" + aName + "\"";
-        }
         // residue name
         String resName = "";
         //  chain code
@@ -650,53 +691,56 @@ public class SpatialSet {
                 seqCode = ".";
             }
         }
-        sBuilder.append(String.format("%-7s", group));
-        sBuilder.append(String.format("%-8d", iAtom + 1)); //index
-        sBuilder.append(String.format("%-3s", aType));
-        sBuilder.append(String.format("%-7s", aName));
-        sBuilder.append(String.format("%-2s", "."));
-        sBuilder.append(String.format("%-4s", resName));
-        sBuilder.append(String.format("%-2s", chainID));
-        sBuilder.append(String.format("%-2d", entityID));
-        sBuilder.append(String.format("%-6s", seqCode));
+        writer.cell(group);
+        writer.cell(iAtom + 1); //index
+        writer.cell(aType);
+        appendMMCifName(writer, aName);
+        writer.cell(".");
+        writer.cell(resName);
+        writer.cell(chainID);
+        writer.cell(entityID);
+        writer.cell(seqCode);
         if (pdbInsCode != null) {
-            sBuilder.append(String.format("%-2s", pdbInsCode.toString()));
+            writer.cell(pdbInsCode.toString());
         } else {
-            sBuilder.append(String.format("%-2s", "?"));
-        }
-        sBuilder.append(String.format("%-9.3f", x));
-        sBuilder.append(String.format("%-9.3f", y));
-        sBuilder.append(String.format("%-9.3f", z));
-        sBuilder.append(String.format("%-5.2f", occupancy));
-        sBuilder.append(String.format("%-8.2f", bFactor));
-        sBuilder.append(String.format("%-2s", "?"));
+            writer.cell("?");
+        }
+        writer.cell(x, 3);
+        writer.cell(y, 3);
+        writer.cell(z, 3);
+        writer.cell(occupancy, 2);
+        writer.cell(bFactor, 2);
+        writer.cell("?");
         if (authSeq != null) {
-            sBuilder.append(String.format("%-5d", (Integer) authSeq));
+            writer.cell((int) (Integer) authSeq);
         } else {
-            sBuilder.append(String.format("%-5s", seqCode));
+            writer.cell(seqCode);
         }
         if (authResName != null) {
-            sBuilder.append(String.format("%-5s", authResName.toString()));
+            writer.cell(authResName.toString());
         } else {
-            sBuilder.append(String.format("%-5s", resName));
+            writer.cell(resName);
         }
         if (authChainID != null) {
-            sBuilder.append(String.format("%-2s", authChainID.toString()));
+            writer.cell(authChainID.toString());
         } else {
-            sBuilder.append(String.format("%-2s", chainID));
+            writer.cell(chainID);
         }
         if (authAName != null) {
-            String authANameS = authAName.toString();
-            if (authANameS.contains("'")) {
-                authANameS = "\"" + authANameS + "\"";
-            }
-            sBuilder.append(String.format("%-7s", authANameS));
+            appendMMCifName(writer, authAName.toString());
         } else {
-            sBuilder.append(String.format("%-7s", aName));
+            appendMMCifName(writer, aName);
         }
-        sBuilder.append(String.format("%-2d", iStruct + 1)); //PDB model num
+        writer.cell(iStruct + 1); //PDB model num
+        return true;
+    }
 
-        return sBuilder.toString();
+    private static void appendMMCifName(STARWriter writer, String aName) {
+        if (aName.contains("'")) {
+            writer.quotedCell(aName);
+        } else {
+            writer.cell(aName);
+        }
     }
 
     public String toTERString(int iAtom) {
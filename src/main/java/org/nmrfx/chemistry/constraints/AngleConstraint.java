@@ -23,6 +23,7 @@ import org.nmrfx.chemistry.InvalidMoleculeException;
 import org.nmrfx.chemistry.MoleculeBase;
 import org.nmrfx.chemistry.SpatialSet;
 import org.nmrfx.chemistry.Util;
+import org.nmrfx.utilities.Format;
 
 /**
  * This class determines if the angle boundary is valid - angle boundary for
@@ -330,10 +331,10 @@ public class AngleConstraint implements Constraint {
         result.append(sep);
 
 //      _Torsion_angle_constraint.Angle_lower_bound_val
-        result.append(String.format("%.0f", Math.toDegrees(getLower())));
+        Format.appendFixed(result, Math.toDegrees(getLower()), 0);
         result.append(sep);
 //      _Torsion_angle_constraint.Angle_upper_bound_val
-        result.append(String.format("%.0f", Math.toDegrees(getUpper())));
+        Format.appendFixed(result, Math.toDegrees(getUpper()), 0);
         result.append(sep);
 
         String ssID = null;
@@ -23,6 +23,7 @@ import java.util.Iterator;
 import org.nmrfx.peaks.InvalidPeakException;
 import org.nmrfx.chemistry.constraints.Constraint;
 import org.nmrfx.chemistry.constraints.ConstraintSet;
+import org.nmrfx.star.STARWriter;
 
 /**
  *
@@ -52,21 +53,21 @@ public class ConstraintSTARWriter {
 
         chan.write("\n");
 
-        String[] loopStrings = cSet.getLoopStrings();
-        chan.write("loop_\n");
-        for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.beginLoop(null, cSet.getLoopStrings());
+        writer.write("\n");
         Iterator iter = cSet.iterator();
         while (iter.hasNext()) {
             Constraint constraint = (Constraint) iter.next();
             if (constraint == null) {
                 throw new InvalidPeakException("writeConstraints: constraint null at ");
             }
-            chan.write(constraint.toSTARString() + "\n");
+            // the constraint classes format their own rows
+            writer.row().append(constraint.toSTARString());
+            writer.endRow();
         }
-        chan.write("stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("\n");
 
         chan.write("save_\n\n");
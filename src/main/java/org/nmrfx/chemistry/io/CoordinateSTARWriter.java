@@ -25,6 +25,7 @@ import org.nmrfx.chemistry.CoordSet;
 import org.nmrfx.chemistry.Entity;
 import org.nmrfx.chemistry.MoleculeBase;
 import org.nmrfx.chemistry.SpatialSet;
+import org.nmrfx.star.STARWriter;
 
 /**
  *
@@ -54,13 +55,11 @@ public class CoordinateSTARWriter {
         String[] loopStrings = NMRStarWriter.getCoordLoopStrings();
         char sep = ' ';
         int whichStruct = -1;
-        chan.write("loop_\n");
-        for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.beginLoop(null, loopStrings);
+        writer.write("\n");
 
-        StringBuilder result = new StringBuilder();
+        StringBuilder result = writer.row();
         int[] structureList = molecule.getActiveStructures();
         int i = 1;
         for (int jStruct = 0; jStruct < structureList.length; jStruct++) {
@@ -83,7 +82,7 @@ public class CoordinateSTARWriter {
                     for (Atom atom : entity.getAtoms()) {
                         if (atom.getAtomicNumber() != 0) {
                             SpatialSet spatialSet = atom.spatialSet;
-                            result.setLength(0);
+                            int rowStart = result.length();
                             result.append(". ");
                             result.append(iStruct);
                             result.append(sep);
@@ -101,7 +100,9 @@ public class CoordinateSTARWriter {
 
                                 result.append(sep);
                                 result.append("1");
-                                chan.write(result.toString() + '\n');
+                                writer.endRow();
+                            } else {
+                                result.setLength(rowStart);
                             }
                         }
                     }
@@ -109,7 +110,8 @@ public class CoordinateSTARWriter {
             }
         }
 
-        chan.write("stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("\n");
 
         chan.write("save_\n\n");
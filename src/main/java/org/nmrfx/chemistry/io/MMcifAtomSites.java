@@ -0,0 +1,303 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.chemistry.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.Compound;
+import org.nmrfx.chemistry.Entity;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.SpatialSet;
+import org.nmrfx.star.Loop;
+import org.nmrfx.star.ParseException;
+
+/**
+ * Loads the coordinates in the _atom_site loop of an mmCIF file into a
+ * molecule.
+ *
+ * The atom of each row of the first model is found (or created) once, with
+ * the label_asym_id:label_seq_id.label_atom_id specifier cached in a map,
+ * and the coordinates are parsed directly from the loop into float arrays.
+ * Later models whose rows list the same atoms in the same order (as in
+ * a typical NMR ensemble) reuse the atoms of the first model, so their
+ * coordinates are stored without any lookup, in parallel for large
+ * ensembles. Rows of other models are matched to atoms individually.
+ *
+ * @author brucejohnson
+ */
+class MMcifAtomSites {
+
+    // ensembles with fewer rows than this (after the first model) are filled sequentially
+    static final int MIN_PARALLEL_ROWS = 1 << 16;
+
+    final MoleculeBase molecule;
+    final Map<String, Compound> compoundMap;
+    final Map<String, Atom> atomMap = new HashMap<>();
+    final int nRows;
+    final List<String> typeSymbols;
+    final List<String> atomNames;
+    final List<String> compIDs;
+    final List<String> asymIDs;
+    final List<String> seqIDs;
+    final List<String> insCodes;
+    final List<String> authComps;
+    final List<String> authAsyms;
+    final List<String> authAtoms;
+    final int[] authSeqs;
+    final int[] modelNums;
+    final float[] xs;
+    final float[] ys;
+    final float[] zs;
+    final float[] occupancies;
+    final float[] bFactors;
+    Entity lastEntity = null;
+    int lastEntityRow = 0;
+
+    MMcifAtomSites(MoleculeBase molecule, Loop loop) throws ParseException {
+        this.molecule = molecule;
+        compoundMap = MoleculeBase.compoundMap();
+        nRows = loop.getNRows();
+        typeSymbols = loop.getColumnAsList("type_symbol");
+        atomNames = loop.getColumnAsList("label_atom_id");
+        compIDs = loop.getColumnAsListIfExists("label_comp_id");
+        asymIDs = loop.getColumnAsList("label_asym_id");
+        seqIDs = loop.getColumnAsList("label_seq_id");
+        insCodes = loop.getColumnAsList("pdbx_PDB_ins_code");
+        authComps = loop.getColumnAsList("auth_comp_id");
+        authAsyms = loop.getColumnAsList("auth_asym_id");
+        authAtoms = loop.getColumnAsList("auth_atom_id");
+        authSeqs = loop.getIntColumn("auth_seq_id", 0);
+        modelNums = loop.getIntColumn("pdbx_PDB_model_num", 0);
+        xs = loop.getFloatColumn("Cartn_x", 0.0f);
+        ys = loop.getFloatColumn("Cartn_y", 0.0f);
+        zs = loop.getFloatColumn("Cartn_z", 0.0f);
+        occupancies = loop.getFloatColumn("occupancy", 1.0f);
+        bFactors = loop.getFloatColumn("B_iso_or_equiv", 0.0f);
+    }
+
+    void load() {
+        Atom[] firstAtoms = null;
+        int firstStart = 0;
+        boolean canReuse = false;
+        List<Integer> pending = new ArrayList<>();
+        for (int start = 0; start < nRows;) {
+            int end = start + 1;
+            while ((end < nRows) && (modelNums[end] == modelNums[start])) {
+                end++;
+            }
+            if (firstAtoms == null) {
+                firstAtoms = loadRows(start, end);
+                firstStart = start;
+                canReuse = canReuse(firstAtoms);
+            } else if (canReuse && (end - start == firstAtoms.length)
+                    && sameAtoms(firstStart, start, end - start) && !register(modelNums[start])) {
+                pending.add(start);
+            } else {
+                fill(firstAtoms, pending);
+                loadRows(start, end);
+            }
+            start = end;
+        }
+        fill(firstAtoms, pending);
+        flushEntityProperties();
+    }
+
+    /**
+     * Add the model to the molecule's structures.
+     *
+     * @param modelNum the model number
+     * @return true if the coordinates of the atoms should be cleared before
+     * adding those of this model (because it is the only structure)
+     */
+    boolean register(int modelNum) {
+        if (!molecule.structures.contains(modelNum - 1)) {
+            molecule.structures.add(modelNum - 1);
+            molecule.setActiveStructures();
+        }
+        return molecule.getActiveStructures().length == 1;
+    }
+
+    /**
+     * Check whether the atoms of the first model can be reused for later
+     * models: at least one row has an atom and no atom appears twice (as it
+     * does with alternate locations).
+     */
+    static boolean canReuse(Atom[] atoms) {
+        Set<Atom> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Atom atom : atoms) {
+            if ((atom != null) && !seen.add(atom)) {
+                return false;
+            }
+        }
+        return !seen.isEmpty();
+    }
+
+    boolean sameAtoms(int firstStart, int start, int n) {
+        for (int k = 0; k < n; k++) {
+            int i = firstStart + k;
+            int j = start + k;
+            if (!atomNames.get(i).equals(atomNames.get(j))
+                    || !seqIDs.get(i).equals(seqIDs.get(j))
+                    || !asymIDs.get(i).equals(asymIDs.get(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Atom[] loadRows(int start, int end) {
+        Atom[] atoms = new Atom[end - start];
+        boolean registered = false;
+        boolean clear = false;
+        for (int i = start; i < end; i++) {
+            Atom atom = getAtom(i);
+            if (atom == null) {
+                continue;
+            }
+            if (!registered) {
+                clear = register(modelNums[i]);
+                registered = true;
+            }
+            setEntityProperties(atom, i);
+            SpatialSet spSet = atom.getSpatialSet();
+            if (clear) {
+                spSet.clearCoords();
+            }
+            spSet.addCoords(xs[i], ys[i], zs[i], occupancies[i], bFactors[i]);
+            atoms[i - start] = atom;
+        }
+        return atoms;
+    }
+
+    /**
+     * Append the coordinates of the pending models to the atoms of the
+     * first model.
+     *
+     * @param atoms the atoms of the rows of the first model
+     * @param pending the first row of each pending model
+     */
+    void fill(Atom[] atoms, List<Integer> pending) {
+        int nModels = pending.size();
+        if (nModels == 0) {
+            return;
+        }
+        int n = atoms.length;
+        for (int start : pending) {
+            for (int k = 0; k < n; k++) {
+                if (atoms[k] != null) {
+                    setEntityProperties(atoms[k], start + k);
+                }
+            }
+        }
+        int[] bases = new int[n];
+        for (int k = 0; k < n; k++) {
+            if (atoms[k] != null) {
+                SpatialSet spSet = atoms[k].getSpatialSet();
+                bases[k] = spSet.getPointCount();
+                spSet.reserveCoords(bases[k] + nModels);
+            }
+        }
+        IntStream models = IntStream.range(0, nModels);
+        if (((long) nModels * n >= MIN_PARALLEL_ROWS) && (Runtime.getRuntime().availableProcessors() > 1)) {
+            models = models.parallel();
+        }
+        models.forEach(j -> {
+            int start = pending.get(j);
+            for (int k = 0; k < n; k++) {
+                if (atoms[k] != null) {
+                    int i = start + k;
+                    atoms[k].getSpatialSet().setCoords(bases[k] + j, xs[i], ys[i], zs[i], occupancies[i], bFactors[i]);
+                }
+            }
+        });
+        pending.clear();
+    }
+
+    /**
+     * Note the row as the latest row of the atom's entity. The entity's
+     * properties are set from the last row of each run of rows with the
+     * same entity, which gives the same result as setting them for every
+     * row.
+     */
+    void setEntityProperties(Atom atom, int i) {
+        Entity entity = atom.getEntity();
+        if (entity != lastEntity) {
+            flushEntityProperties();
+            lastEntity = entity;
+        }
+        lastEntityRow = i;
+    }
+
+    void flushEntityProperties() {
+        if (lastEntity != null) {
+            int i = lastEntityRow;
+            lastEntity.setPropertyObject("pdbInsCode", insCodes.get(i));
+            lastEntity.setPropertyObject("authSeqID", authSeqs[i]);
+            lastEntity.setPropertyObject("authResName", authComps.get(i));
+            lastEntity.setPropertyObject("authChainCode", authAsyms.get(i));
+        }
+    }
+
+    /**
+     * Get the atom for a row, creating it if it isn't in the compound.
+     *
+     * @param i the row
+     * @return the atom or null if the compound doesn't exist
+     */
+    Atom getAtom(int i) {
+        String chainCode = asymIDs.get(i);
+        String sequenceCode = seqIDs.get(i);
+        if (sequenceCode.equals(".")) {
+            sequenceCode = "0";
+        }
+        String atomName = atomNames.get(i);
+        String fullAtom = chainCode + ":" + sequenceCode + "." + atomName;
+        if (atomMap.containsKey(fullAtom)) {
+            return atomMap.get(fullAtom);
+        }
+        String mapID = chainCode + "." + sequenceCode;
+        Compound compound = compoundMap.get(mapID);
+        Atom atom = null;
+        if (compound == null) {
+            System.err.println("invalid compound in assignments saveframe \"" + mapID + "\"");
+        } else {
+            atom = MoleculeBase.getAtomByName(fullAtom);
+            if (atom == null) {
+                String atomType = typeSymbols.get(i);
+                atom = Atom.genAtomWithElement(atomName, atomType);
+                String resIDStr = compIDs == null ? "." : compIDs.get(i);
+                if (compound.label.equals(chainCode)) {
+                    compound.label = resIDStr;
+                }
+                compound.addAtom(atom);
+                compound.updateNames();
+                atom.setAtomicNumber(atomType);
+            }
+            atom.setProperty("authAtomName", authAtoms.get(i));
+        }
+        atomMap.put(fullAtom, atom);
+        return atom;
+    }
+}
@@ -527,117 +527,9 @@ public class MMcifReader {
 
     void processAtomSites(MoleculeBase molecule, Saveframe saveframe, int ppmSet) throws ParseException {
         Loop loop = saveframe.getLoop("_atom_site");
-        var compoundMap = MoleculeBase.compoundMap();
         if (loop != null) {
-//            List<String> groupPDBColumn = loop.getColumnAsList("group_PDB");
-//            List<String> idColumn = loop.getColumnAsList("id");
-            List<String> typeSymbolColumn = loop.getColumnAsList("type_symbol");
-            List<String> labelAtomIDColumn = loop.getColumnAsList("label_atom_id");
-            List<String> labelAltIDColumn = loop.getColumnAsList("label_alt_id");
-            List<String> labelCompIDColumn = loop.getColumnAsList("label_comp_id");
-            List<String> labelAsymIDColumn = loop.getColumnAsList("label_asym_id");
-            List<String> labelEntityIDColumn = loop.getColumnAsList("label_entity_id");
-            List<String> labelSeqIDColumn = loop.getColumnAsList("label_seq_id");
-            List<String> pdbInsCodeColumn = loop.getColumnAsList("pdbx_PDB_ins_code");
-            List<String> cartnXColumn = loop.getColumnAsList("Cartn_x");
-            List<String> cartnYColumn = loop.getColumnAsList("Cartn_y");
-            List<String> cartnZColumn = loop.getColumnAsList("Cartn_z");
-            List<String> occupancyColumn = loop.getColumnAsList("occupancy");
-            List<String> bIsoColumn = loop.getColumnAsList("B_iso_or_equiv");
-            List<Double> pdbFormalChargeColumn = loop.getColumnAsDoubleList("pdbx_formal_charge", 0.0);
-            List<Integer> authSeqIDColumn = loop.getColumnAsIntegerList("auth_seq_id", 0);
-            List<String> authCompIDColumn = loop.getColumnAsList("auth_comp_id");
-            List<String> authAsymIDColumn = loop.getColumnAsList("auth_asym_id");
-            List<String> authAtomIDColumn = loop.getColumnAsList("auth_atom_id");
-            List<Integer> pdbModelNumColumn = loop.getColumnAsIntegerList("pdbx_PDB_model_num", 0);
-
-            for (int i = 0; i < typeSymbolColumn.size(); i++) {
-//                String groupPDB = (String) groupPDBColumn.get(i);
-//                String idCode = (String) idColumn.get(i);
-                String atomType = (String) typeSymbolColumn.get(i);
-                String atomName = (String) labelAtomIDColumn.get(i);
-                String atomAltName = (String) labelAltIDColumn.get(i);
-                String resIDStr = ".";
-//                System.out.println(sequenceCode + " " + atomName + " " + value);
-                if (labelCompIDColumn != null) {
-                    resIDStr = (String) labelCompIDColumn.get(i);
-                }
-                String chainCode = (String) labelAsymIDColumn.get(i);
-                String entityID = (String) labelEntityIDColumn.get(i);
-                String sequenceCode = (String) labelSeqIDColumn.get(i);
-                if (sequenceCode.equals(".")) {
-                    sequenceCode = "0";
-                }
-                int pdbModelNum = pdbModelNumColumn.get(i);
-                float xCoord = Float.parseFloat((String) cartnXColumn.get(i));
-                float yCoord = Float.parseFloat((String) cartnYColumn.get(i));
-                float zCoord = Float.parseFloat((String) cartnZColumn.get(i));
-                float occupancy = Float.parseFloat((String) occupancyColumn.get(i));
-                float bFactor = Float.parseFloat((String) bIsoColumn.get(i));
-                String mapID = chainCode + "." + sequenceCode;
-                Compound compound = compoundMap.get(mapID);
-                if (compound == null) {
-                    //throw new ParseException("invalid compound in assignments saveframe \""+mapID+"\"");
-                    System.err.println("invalid compound in assignments saveframe \"" + mapID + "\"");
-                    continue;
-                }
-                String fullAtom = chainCode + ":" + sequenceCode + "." + atomName;
-                //  System.out.println(fullAtom);
-
-                if (!molecule.structures.contains(pdbModelNum - 1)) {
-                    molecule.structures.add(pdbModelNum - 1);
-                    molecule.setActiveStructures();
-                }
-
-                Atom atom = MoleculeBase.getAtomByName(fullAtom);
-
-                String pdbInsCode = pdbInsCodeColumn.get(i);
-                int authSeq = authSeqIDColumn.get(i);
-                String authComp = authCompIDColumn.get(i);
-                String authAsym = authAsymIDColumn.get(i);
-                String authAtom = authAtomIDColumn.get(i);
-//                System.out.println(fullAtom + " " + atoms);
-                //  System.out.println(atoms.toString());
-
-                if (atom == null) {
-                    atom = Atom.genAtomWithElement(atomName, atomType);
-                    if (compound.label.equals(chainCode)) {
-                        compound.label = resIDStr;
-                    }
-                    compound.addAtom(atom);
-                    compound.updateNames();
-                    atom.setAtomicNumber(atomType);
-//                    throw new ParseException("invalid atom in assignments saveframe \"" + mapID + "." + atomName + "\"");
-                }
-
-                if (atom == null) {
-                    System.out.println("invalid atom in assignments saveframe \"" + mapID + "." + atomName + "\"");
-//                    throw new ParseException("invalid atom in assignments saveframe \"" + mapID + "." + atomName + "\"");
-                }
-
-                Entity entity = atom.getEntity();
-                entity.setPropertyObject("pdbInsCode", pdbInsCode);
-                entity.setPropertyObject("authSeqID", authSeq);
-                entity.setPropertyObject("authResName", authComp);
-                entity.setPropertyObject("authChainCode", authAsym);
-
-                atom.setProperty("authAtomName", authAtom);
-
-                SpatialSet spSet = atom.getSpatialSet();
-                if (molecule.getActiveStructures().length == 1) {
-                    spSet.clearCoords();
-                }
-
-                if (spSet == null) {
-                    throw new ParseException("invalid spatial set in assignments saveframe \"" + mapID + "." + atomName + "\"");
-                }
-
-                try {
-                    atom.addCoords(xCoord, yCoord, zCoord, occupancy, bFactor);
-                } catch (InvalidMoleculeException imE) {
-
-                }
-            }
+            MMcifAtomSites atomSites = new MMcifAtomSites(molecule, loop);
+            atomSites.load();
         }
         molecule.updateAtomArray();
     }
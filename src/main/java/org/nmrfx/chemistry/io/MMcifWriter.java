@@ -32,6 +32,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import org.nmrfx.peaks.InvalidPeakException;
 import org.nmrfx.star.ParseException;
+import org.nmrfx.star.STARWriter;
 import org.nmrfx.chemistry.Atom;
 import org.nmrfx.chemistry.Entity;
 import org.nmrfx.chemistry.InvalidMoleculeException;
@@ -361,10 +362,9 @@ public class MMcifWriter {
     }
 
     static void writeAtomSites(MoleculeBase molecule, FileWriter chan) throws IOException, InvalidMoleculeException {
-        chan.write("loop_\n");
-        for (String loopString : ATOM_SITE_LOOP_STRINGS) {
-            chan.write(loopString + "\n");
-        }
+        STARWriter writer = new STARWriter(chan);
+        writer.beginLoop(null, ATOM_SITE_LOOP_STRINGS);
+        writer.setWidths(SpatialSet.MMCIF_WIDTHS);
         int i = 0;
         molecule.updateAtomArray();
         int[] structures = molecule.getActiveStructures();
@@ -374,16 +374,14 @@ public class MMcifWriter {
                 if (atom.isCoarse()) {
                     continue;
                 }
-
-                String result = spSet.toMMCifString(i, iStruct);
-
-                if (result != null) {
-                    chan.write(result + "\n");
+                if (spSet.appendMMCifRow(writer, i, iStruct)) {
+                    writer.endRow();
                     i++;
                 }
             }
         }
-        chan.write("#\n");
+        writer.write("#\n");
+        writer.flush();
     }
 
     /**
@@ -410,10 +410,10 @@ public class NMRNEFReader {
             throw new ParseException("No \"_nef_dihedral_restraint\" loop");
         }
         var compoundMap = MoleculeBase.compoundMap();
-        List<String>[] chainCodeColumns = new ArrayList[4];
-        List<String>[] sequenceCodeColumns = new ArrayList[4];
-//        List<String>[] residueNameColumns = new ArrayList[4];
-        List<String>[] atomNameColumns = new ArrayList[4];
+        List<String>[] chainCodeColumns = new List[4];
+        List<String>[] sequenceCodeColumns = new List[4];
+//        List<String>[] residueNameColumns = new List[4];
+        List<String>[] atomNameColumns = new List[4];
 
         List<Integer> restraintIDColumn = loop.getColumnAsIntegerList("restraint_id", 0);
         for (int i = 1; i <= 4; i++) {
@@ -496,10 +496,10 @@ public class NMRNEFReader {
         }
         String origin = saveframe.getValue("_nef_distance_restraint_list", "restraint_origin", "noe");
         var compoundMap = MoleculeBase.compoundMap();
-        List<String>[] chainCodeColumns = new ArrayList[2];
-        List<String>[] sequenceColumns = new ArrayList[2];
-        List<String>[] residueNameColumns = new ArrayList[2];
-        List<String>[] atomNameColumns = new ArrayList[2];
+        List<String>[] chainCodeColumns = new List[2];
+        List<String>[] sequenceColumns = new List[2];
+        List<String>[] residueNameColumns = new List[2];
+        List<String>[] atomNameColumns = new List[2];
 
         List<Integer> indexColumn = loop.getColumnAsIntegerList("index", 0);
         List<Integer> restraintIDColumn = loop.getColumnAsIntegerList("restraint_id", 0);
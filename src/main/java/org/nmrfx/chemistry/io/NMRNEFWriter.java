@@ -32,6 +32,7 @@ import java.util.Set;
 import org.nmrfx.peaks.InvalidPeakException;
 import org.nmrfx.star.ParseException;
 import org.nmrfx.star.STAR3;
+import org.nmrfx.star.STARWriter;
 import org.nmrfx.chemistry.Atom;
 import org.nmrfx.chemistry.Compound;
 import org.nmrfx.chemistry.Entity;
@@ -68,11 +69,10 @@ public class NMRNEFWriter {
         chan.write("nef_molecular_system\n");
         chan.write("\n");
 
-        chan.write("    loop_\n");
-        for (String loopString : SEQUENCE_LOOP_STRINGS) {
-            chan.write("         " + loopString + "\n");
-        }
-        chan.write("\n\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.setIndent(4, 9).beginLoop(null, SEQUENCE_LOOP_STRINGS);
+        writer.write("\n\n");
+        writer.setIndent(4, 0).setWidths(Compound.NEF_SEQUENCE_WIDTHS);
         Iterator entityIterator = molecule.entityLabels.values().iterator();
         int idx = 1;
         while (entityIterator.hasNext()) {
@@ -90,23 +90,20 @@ public class NMRNEFWriter {
                     } else {
                         link = "middle";
                     }
-                    String result = res.toNEFSequenceString(idx, link);
-                    if (result != null) {
-                        chan.write(result + "\n");
-                    }
+                    res.appendNEFSequenceRow(writer, idx, link);
+                    writer.endRow();
                     idx++;
                 }
             } else if (entity instanceof Compound) {
                 Compound compound = (Compound) entity;
                 link = "single";
-                String result = compound.toNEFSequenceString(idx, link);
-                if (result != null) {
-                    chan.write(result + "\n");
-                }
+                compound.appendNEFSequenceRow(writer, idx, link);
+                writer.endRow();
                 idx++;
             }
         }
-        chan.write("    stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("save_\n");
     }
 
@@ -184,11 +181,10 @@ public class NMRNEFWriter {
         chan.write("\n");
 
         int i;
-        chan.write("    loop_\n");
-        for (String loopString : CHEM_SHIFT_LOOP_STRINGS) {
-            chan.write("         " + loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.setIndent(4, 9).beginLoop(null, CHEM_SHIFT_LOOP_STRINGS);
+        writer.write("\n");
+        writer.setWidths(Atom.NEF_SHIFT_WIDTHS);
         int iPPM = 0;
         i = 0;
         molecule.updateAtomArray();
@@ -272,15 +268,15 @@ public class NMRNEFWriter {
                 }
             }
             if (writeLine) {
-                String result = atom.ppmToNEFString(iPPM, i, collapse, sameShift);
-                if (result != null) {
+                if (atom.appendNEFShiftRow(writer, atom.getSpatialSet(), iPPM, collapse, sameShift)) {
 //                    System.out.println("writer writePPM: iPPM = " + iPPM + " i = " + i);
-                    chan.write(result + "\n");
+                    writer.endRow();
                     i++;
                 }
             }
         }
-        chan.write("    stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("save_\n");
     }
 
@@ -300,15 +296,13 @@ public class NMRNEFWriter {
         chan.write(restraintOrigin + "\n");
         chan.write("\n");
 
-        chan.write("     loop_\n");
-        for (String loopString : DISTANCE_RESTRAINT_LOOP_STRINGS) {
-            chan.write("         " + loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.setIndent(5, 9).beginLoop(null, DISTANCE_RESTRAINT_LOOP_STRINGS);
+        writer.write("\n");
+        writer.setWidths(Atom.NEF_DISTANCE_WIDTHS);
         molecule.updateAtomArray();
         int idx = 1;
         int restraintID = 1;
-        String result;
         for (int i = 0; i < distList.size(); i++) {
             DistanceConstraint distPair = distList.get(i);
             AtomDistancePair[] pairAtoms = distPair.getAtomPairs();
@@ -413,18 +407,17 @@ public class NMRNEFWriter {
                 }
                 Atom atom1 = pair.getAtoms1()[0];
                 Atom atom2 = pair.getAtoms2()[0];
-                result = Atom.toNEFDistanceString(idx, collapse[iPair], restraintID, ".", distPair, atom1, atom2);
-                chan.write(result + "\n");
+                Atom.appendNEFDistanceRow(writer, idx, collapse[iPair], restraintID, ".", distPair, atom1, atom2);
+                writer.endRow();
                 idx++;
 
             }
             restraintID++;
         }
 
-        chan.write(
-                "     stop_\n");
-        chan.write(
-                "save_\n");
+        writer.endLoop();
+        writer.flush();
+        chan.write("save_\n");
     }
 
     static void writeDihedrals(MoleculeBase molecule, List<AngleConstraint> angleConstraints, FileWriter chan) throws IOException, InvalidMoleculeException {
@@ -440,11 +433,10 @@ public class NMRNEFWriter {
         chan.write(".\n");
         chan.write("\n");
 
-        chan.write("     loop_\n");
-        for (String loopString : DIHEDRAL_RESTRAINT_LOOP_STRINGS) {
-            chan.write("          " + loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.setIndent(5, 10).beginLoop(null, DIHEDRAL_RESTRAINT_LOOP_STRINGS);
+        writer.write("\n");
+        writer.setIndent(4, 0).setWidths(Atom.NEF_DIHEDRAL_WIDTHS);
         molecule.updateAtomArray();
         List<AngleConstraint> angleBlock1 = new ArrayList<>();
         List<AngleConstraint> angleBlock2 = new ArrayList<>();
@@ -482,14 +474,13 @@ public class NMRNEFWriter {
         for (List<AngleConstraint> block : boundBlocks) {
             for (AngleConstraint bound : block) {
                 Atom[] atoms = bound.getAtoms();
-                String result = Atom.toNEFDihedralString(bound, atoms, i, i, ".");
-                if (result != null) {
-                    chan.write(result + "\n");
-                    i++;
-                }
+                Atom.appendNEFDihedralRow(writer, bound, atoms, i, i, ".");
+                writer.endRow();
+                i++;
             }
         }
-        chan.write("    stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("save_\n");
     }
 
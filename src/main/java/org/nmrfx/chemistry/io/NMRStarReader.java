@@ -113,7 +113,8 @@ public class NMRStarReader {
         STAR3 star = new STAR3(bfR, "star3");
 
         try {
-            star.scanFile();
+            // only the chemical shift saveframes are read
+            star.index();
         } catch (ParseException parseEx) {
             throw new ParseException(parseEx.getMessage() + " " + star.getLastLine());
         }
@@ -320,6 +321,8 @@ public class NMRStarReader {
                 if (DEBUG) {
                     System.err.println("process chem shifts " + saveframe.getName());
                 }
+                // an indexed saveframe is read here so errors are reported as a ParseException
+                saveframe.load();
                 if (fromSet < 0) {
                     processChemicalShifts(saveframe, iSet);
                 } else if (fromSet == iSet) {
@@ -1530,8 +1533,8 @@ public class NMRStarReader {
         List<String> atomColumn = loop.getColumnAsList("Atom_ID");
 
         String[] parNames = OrderPar.getNames();
-        List<Double>[] valColumns = new ArrayList[parNames.length];
-        List<Double>[] errColumns = new ArrayList[parNames.length];
+        List<Double>[] valColumns = new List[parNames.length];
+        List<Double>[] errColumns = new List[parNames.length];
         int iCol = 0;
         for (var parName : parNames) {
             valColumns[iCol] = loop.getColumnAsDoubleList(parName + "_val", null);
@@ -1565,11 +1568,11 @@ public class NMRStarReader {
         if (loop == null) {
             throw new ParseException("No \"_Torsion_angle_constraint\" loop");
         }
-        List<String>[] entityAssemblyIDColumns = new ArrayList[4];
-        List<String>[] entityIDColumns = new ArrayList[4];
-        List<String>[] compIdxIDColumns = new ArrayList[4];
-        List<String>[] atomColumns = new ArrayList[4];
-        List<String>[] resonanceColumns = new ArrayList[4];
+        List<String>[] entityAssemblyIDColumns = new List[4];
+        List<String>[] entityIDColumns = new List[4];
+        List<String>[] compIdxIDColumns = new List[4];
+        List<String>[] atomColumns = new List[4];
+        List<String>[] resonanceColumns = new List[4];
         for (int i = 1; i <= 4; i++) {
             entityAssemblyIDColumns[i - 1] = loop.getColumnAsList("Entity_assembly_ID_" + i);
             entityIDColumns[i - 1] = loop.getColumnAsList("Entity_ID_" + i);
@@ -1613,11 +1616,11 @@ public class NMRStarReader {
             throw new ParseException("No \"_RDC\" loop");
         }
         //saveframe.getTagsIgnoreMissing(tagCategory);
-        List<String>[] entityAssemblyIDColumns = new ArrayList[2];
-        List<String>[] entityIDColumns = new ArrayList[2];
-        List<String>[] compIdxIDColumns = new ArrayList[2];
-        List<String>[] atomColumns = new ArrayList[2];
-        List<String>[] resonanceColumns = new ArrayList[2];
+        List<String>[] entityAssemblyIDColumns = new List[2];
+        List<String>[] entityIDColumns = new List[2];
+        List<String>[] compIdxIDColumns = new List[2];
+        List<String>[] atomColumns = new List[2];
+        List<String>[] resonanceColumns = new List[2];
         for (int i = 1; i <= 2; i++) {
             entityAssemblyIDColumns[i - 1] = loop.getColumnAsList("Entity_assembly_ID_" + i);
             entityIDColumns[i - 1] = loop.getColumnAsList("Entity_ID_" + i);
@@ -1654,11 +1657,11 @@ public class NMRStarReader {
             throw new ParseException("No \"_Gen_dist_constraint\" loop");
         }
         var compoundMap = MoleculeBase.compoundMap();
-        List<String>[] entityAssemblyIDColumns = new ArrayList[2];
-        List<String>[] entityIDColumns = new ArrayList[2];
-        List<String>[] compIdxIDColumns = new ArrayList[2];
-        List<String>[] atomColumns = new ArrayList[2];
-        List<String>[] resonanceColumns = new ArrayList[2];
+        List<String>[] entityAssemblyIDColumns = new List[2];
+        List<String>[] entityIDColumns = new List[2];
+        List<String>[] compIdxIDColumns = new List[2];
+        List<String>[] atomColumns = new List[2];
+        List<String>[] resonanceColumns = new List[2];
         entityAssemblyIDColumns[0] = loop.getColumnAsList("Entity_assembly_ID_1");
         entityIDColumns[0] = loop.getColumnAsList("Entity_ID_1");
         compIdxIDColumns[0] = loop.getColumnAsList("Comp_index_ID_1");
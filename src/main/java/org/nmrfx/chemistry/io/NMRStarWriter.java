@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
@@ -38,6 +39,7 @@ import org.nmrfx.peaks.io.PeakPathWriter;
 import org.nmrfx.peaks.io.PeakWriter;
 import org.nmrfx.star.ParseException;
 import org.nmrfx.star.STAR3;
+import org.nmrfx.star.STARWriter;
 import org.nmrfx.peaks.PeakPaths;
 import org.nmrfx.chemistry.constraints.ConstraintSet;
 import org.nmrfx.peaks.ResonanceFactory;
@@ -49,6 +51,11 @@ import org.nmrfx.chemistry.relax.RelaxationData.relaxTypes;
  */
 public class NMRStarWriter {
 
+    /**
+     * Column widths of the rows of the NOE Data block
+     */
+    public static final int[] NOE_WIDTHS = {3, 3, 3, 3, 6, 6, 6, 4, 4, 4, 3, 3, 3, 6, 6, 6, 4, 4, 4, 8, 8, 3, 3, 3, 6, 4, 4, 3, 6, 4, 4, 4, 4};
+
     protected static final String[] entityCompIndexLoopStrings = {"_Entity_comp_index.ID", "_Entity_comp_index.Auth_seq_ID", "_Entity_comp_index.Comp_ID", "_Entity_comp_index.Comp_label", "_Entity_comp_index.Entity_ID"};
     protected static final String[] entityAssemblyLoopStrings = {"_Entity_assembly.ID", "_Entity_assembly.Entity_assembly_name", "_Entity_assembly.Entity_ID", "_Entity_assembly.Entity_label", "_Entity_assembly.Asym_ID", "_Entity_assembly.Experimental_data_reported", "_Entity_assembly.Physical_state", "_Entity_assembly.Conformational_isomer", "_Entity_assembly.Chemical_exchange_state", "_Entity_assembly.Magnetic_equivalence_group_code", "_Entity_assembly.Role", "_Entity_assembly.Details", "_Entity_assembly.Assembly_ID"};
     private static final String[] entityCommonNameLoopStrings = {"_Entity_common_name.Name", "_Entity_common_name.Type", "_Entity_common_name.Entity_ID"};
@@ -541,86 +548,75 @@ public class NMRStarWriter {
     }
 
     public static String toSTARChemShiftAssignmentString(final SpatialSet spatialSet, final int id, final int ppmSet) {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        STARWriter writer = new STARWriter(new StringBuilder(128));
+        appendSTARChemShiftAssignment(writer, spatialSet, id, ppmSet);
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of an Atom_chem_shift row to the current row of a
+     * STARWriter. The row is not ended.
+     *
+     * @param writer the writer
+     * @param spatialSet the spatial set of the atom
+     * @param id the row ID
+     * @param ppmSet the ppm set
+     */
+    public static void appendSTARChemShiftAssignment(STARWriter writer, final SpatialSet spatialSet, final int id, final int ppmSet) {
         Atom atom = spatialSet.atom;
-        result.append(id);
-        result.append(sep);
-        result.append(".");
-        result.append(sep);
+        writer.cell(id);
+        writer.cell(".");
         Entity entity = atom.getEntity();
         int entityID = entity.getIDNum();
         int entityAssemblyID = entity.assemblyID;
         int number = 1;
-        String seqNumber = "1";
         if (entity instanceof Residue) {
             entityID = ((Residue) entity).polymer.getIDNum();
             entityAssemblyID = ((Residue) entity).polymer.assemblyID;
             number = atom.getEntity().getIDNum();
         }
-        result.append(entityAssemblyID);
-        result.append(sep);
-        result.append(entityID);
-        result.append(sep);
-        result.append(number);
-        result.append(sep);
-        result.append(number);
-        result.append(sep);
-        result.append(atom.getEntity().getName());
-        result.append(sep);
-        result.append(atom.getName());
-        result.append(sep);
-        String eName = AtomProperty.getElementName(atom.getAtomicNumber());
-        result.append(eName);
-        result.append(sep);
-        result.append(".");
-        result.append(sep);
+        writer.cell(entityAssemblyID);
+        writer.cell(entityID);
+        writer.cell(number);
+        writer.cell(number);
+        writer.cell(atom.getEntity().getName());
+        writer.cell(atom.getName());
+        writer.cell(AtomProperty.getElementName(atom.getAtomicNumber()));
+        writer.cell(".");
         PPMv ppmv = (PPMv) spatialSet.getPPM(ppmSet);
-        if ((ppmv != null) && ppmv.isValid()) {
-            result.append(String.format("%.4f", ppmv.getValue()));
-            result.append(sep);
-            result.append(String.format("%.4f", ppmv.getError()));
+        boolean valid = (ppmv != null) && ppmv.isValid();
+        if (valid) {
+            writer.cell(ppmv.getValue(), 4);
+            writer.cell(ppmv.getError(), 4);
         } else {
-            result.append(".");
-            result.append(sep);
-            result.append(".");
+            writer.cell(".");
+            writer.cell(".");
         }
-        result.append(sep);
-        result.append(".");
-        result.append(sep);
-        if ((ppmv != null) && ppmv.isValid()) {
+        writer.cell(".");
+        if (valid) {
             int ambig = ppmv.getAmbigCode();
             if (ambig < 1) {
                 ambig = atom.getBMRBAmbiguity();
             }
-            result.append(ambig);
+            writer.cell(ambig);
         } else {
-            result.append(".");
+            writer.cell(".");
         }
-        result.append(sep);
-        result.append(".");
-        result.append(sep);
-        String resIDStr = ".";
+        writer.cell(".");
         if (atom.getResonance() != null) {
-            long resID = atom.getResonance().getID();
-            resIDStr = String.valueOf(resID);
+            writer.cell(atom.getResonance().getID());
+        } else {
+            writer.cell(".");
         }
-        result.append(resIDStr);
-        result.append(sep);
         String rNum = ((Compound) atom.getEntity()).getNumber();
         if (rNum.trim().length() == 0) {
             rNum = ".";
         }
-        result.append(rNum);
-        result.append(sep);
-        result.append(atom.getEntity().getName());
-        result.append(sep);
-        result.append(atom.getName());
-        result.append(sep);
-        result.append(".");
-        result.append(sep);
-        result.append(1);
-        return result.toString();
+        writer.cell(rNum);
+        writer.cell(atom.getEntity().getName());
+        writer.cell(atom.getName());
+        writer.cell(".");
+        writer.cell(1);
     }
 
     static void writeAssignmentsSTAR3(FileWriter chan, final int ppmSet) throws IOException, ParseException, InvalidMoleculeException {
@@ -665,6 +661,7 @@ public class NMRStarWriter {
         chan.write(".\n");
         chan.write("\n");
         STAR3.writeLoopStrings(chan, chemShiftAssignmentStrings);
+        STARWriter writer = new STARWriter(chan);
         boolean wroteAtLeastOne = false;
         int iAtom = 1;
         List<Atom> atoms = new ArrayList();
@@ -674,17 +671,16 @@ public class NMRStarWriter {
             SpatialSet spatialSet = atoms.get(i).getSpatialSet();
             PPMv ppmv = (PPMv) spatialSet.getPPM(ppmSet);
             if ((ppmv != null) && ppmv.isValid()) {
-                String string = NMRStarWriter.toSTARChemShiftAssignmentString(spatialSet, iAtom, ppmSet);
-                if (string != null) {
-                    chan.write(string + "\n");
-                    iAtom++;
-                    wroteAtLeastOne = true;
-                }
+                appendSTARChemShiftAssignment(writer, spatialSet, iAtom, ppmSet);
+                writer.endRow();
+                iAtom++;
+                wroteAtLeastOne = true;
             }
         }
         if (!wroteAtLeastOne) {
-            chan.write("? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ?\n");
+            writer.write("? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ? ?\n");
         }
+        writer.flush();
         chan.write("stop_\n");
         chan.write("\nsave_\n");
         chan.write("\n");
@@ -837,11 +833,11 @@ public class NMRStarWriter {
             "Resonance_ID_1", "Resonance_ID_2", "Auth_entity_assembly_ID_1", "Auth_seq_ID_1", "Auth_comp_ID_1", "Auth_atom_ID_1",
             "Auth_entity_assembly_ID_2", "Auth_seq_ID_2", "Auth_comp_ID_2", "Auth_atom_ID_2", "Entry_ID", "Heteronucl_NOE_list_ID"};
 
-        chan.write("   loop_\n");
-        for (String loopString : loopStrings) {
-            chan.write("      _Heteronucl_NOE." + loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.setIndent(3, 6);
+        writer.beginLoop("_Heteronucl_NOE", loopStrings);
+        writer.write("\n");
+        writer.setWidths(NOE_WIDTHS);
 
         int idx = 1;
 
@@ -858,9 +854,9 @@ public class NMRStarWriter {
                         Double value = noeData.getValue();
                         Double error = noeData.getError();
                         Atom atom2 = noeData.getExtraAtoms().get(0);
-                        String outputLine = toStarNOEString(idx, listID, entityID, atom, atom2, value, error);
-                        if (outputLine != null && !prevRes.contains(entityID + "." + atom.getResidueNumber())) {
-                            chan.write("      " + outputLine + "\n");
+                        if (!prevRes.contains(entityID + "." + atom.getResidueNumber())) {
+                            appendStarNOE(writer, idx, listID, entityID, atom, atom2, value, error);
+                            writer.endRow();
                             prevRes.add(entityID + "." + atom.getResidueNumber());
                             idx++;
                         }
@@ -869,7 +865,8 @@ public class NMRStarWriter {
             }
         }
 
-        chan.write("   stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("save_\n\n");
 
     }
@@ -887,11 +884,31 @@ public class NMRStarWriter {
      * @return
      */
     public static String toStarNOEString(int idx, int listID, int entityID, Atom atom1, Atom atom2, Double value, Double error) {
+        STARWriter writer = new STARWriter(new StringBuilder(128));
+        writer.setWidths(NOE_WIDTHS);
+        appendStarNOE(writer, idx, listID, entityID, atom1, atom2, value, error);
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of a data line in the NOE Data block to the current
+     * row of a STARWriter (with column widths NOE_WIDTHS). The row is not
+     * ended.
+     *
+     * @param writer the writer
+     * @param idx int. The line index
+     * @param listID int. The number of the T1/T2/T1rho/NOE block in the file.
+     * @param entityID int. The number of the molecular entity.
+     * @param atom1 Atom. The first atom in the NOE atom pair.
+     * @param atom2 Atom. The second atom in the NOE atom pair.
+     * @param value Double. parameter value.
+     * @param error Double. error value.
+     */
+    public static void appendStarNOE(STARWriter writer, int idx, int listID, int entityID, Atom atom1, Atom atom2, Double value, Double error) {
 
         Atom[] atoms = {atom1, atom2};
 
-        StringBuilder sBuilder = new StringBuilder();
-        sBuilder.append(String.format("%-3d", idx));
+        writer.cell(idx);
         for (Atom atom : atoms) {
             int resNum = 1;
             String resName = ".";
@@ -901,37 +918,22 @@ public class NMRStarWriter {
                 resNum = atom.getResidueNumber();
                 resName = atom.getResidueName();
                 nucName = atom.getName();
-                switch (nucName) {
-                    case "C":
-                        isotope = 13;
-                        break;
-                    case "N":
-                        isotope = 15;
-                        break;
-                    case "F":
-                        isotope = 19;
-                        break;
-                    case "P":
-                        isotope = 31;
-                        break;
-                    default:
-                        break;
-                }
+                isotope = getIsotope(nucName);
             }
-            sBuilder.append(String.format("%-3s", "."));
-            sBuilder.append(String.format("%-3d", entityID));
-            sBuilder.append(String.format("%-3d", entityID));
-            sBuilder.append(String.format("%-6d", resNum));
-            sBuilder.append(String.format("%-6d", resNum));
-            sBuilder.append(String.format("%-6s", resName)); //fixme writing out chainID, not compound name (e.g. B instead of SO4) when molecule loaded from CIF
-            sBuilder.append(String.format("%-4s", nucName));
-            sBuilder.append(String.format("%-4s", nucName));
-            sBuilder.append(String.format("%-4s", isotope));
+            writer.cell(".");
+            writer.cell(entityID);
+            writer.cell(entityID);
+            writer.cell(resNum);
+            writer.cell(resNum);
+            writer.cell(resName); //fixme writing out chainID, not compound name (e.g. B instead of SO4) when molecule loaded from CIF
+            writer.cell(nucName);
+            writer.cell(nucName);
+            writer.cell(isotope);
         }
-        sBuilder.append(String.format("%-8.3f", value));
-        sBuilder.append(String.format("%-8.3f", error));
-        sBuilder.append(String.format("%-3s", "."));
-        sBuilder.append(String.format("%-3s", "."));
+        writer.cell(value, 3);
+        writer.cell(error, 3);
+        writer.cell(".");
+        writer.cell(".");
         for (Atom atom : atoms) {
             int resNum = 1;
             String resName = ".";
@@ -941,16 +943,28 @@ public class NMRStarWriter {
                 resName = atom.getResidueName();
                 nucName = atom.getName();
             }
-            sBuilder.append(String.format("%-3s", "."));
-            sBuilder.append(String.format("%-6d", resNum));
-            sBuilder.append(String.format("%-4s", resName));
-            sBuilder.append(String.format("%-4s", nucName));
+            writer.cell(".");
+            writer.cell(resNum);
+            writer.cell(resName);
+            writer.cell(nucName);
         }
-        sBuilder.append(String.format("%-4s", "."));
-        sBuilder.append(String.format("%-4d", listID));
-
-        return sBuilder.toString();
+        writer.cell(".");
+        writer.cell(listID);
+    }
 
+    static int getIsotope(String nucName) {
+        switch (nucName) {
+            case "C":
+                return 13;
+            case "N":
+                return 15;
+            case "F":
+                return 19;
+            case "P":
+                return 31;
+            default:
+                return 1;
+        }
     }
 
     /**
@@ -1032,11 +1046,12 @@ public class NMRStarWriter {
                 "Resonance_ID", "Auth_entity_assembly_ID", "Auth_seq_ID", "Auth_comp_ID", "Auth_atom_ID", "Entry_ID", "Heteronucl_" + expType + "_list_ID"};
             loopStrings = loopStrings2;
         }
-        chan.write("   loop_\n");
-        for (String loopString : loopStrings) {
-            chan.write("      _" + expType + "." + loopString + "\n");
-        }
-        chan.write("\n");
+        STARWriter writer = new STARWriter(chan);
+        writer.setIndent(3, 6);
+        writer.beginLoop("_" + expType, loopStrings);
+        writer.write("\n");
+        boolean hasRex = expType.equals(relaxTypes.T2) || expType.equals(relaxTypes.T1RHO);
+        writer.setWidths(getRelaxationWidths(hasRex ? 4 : 2));
 
         int idx = 1;
 
@@ -1061,9 +1076,9 @@ public class NMRStarWriter {
                             results.add(RexValue);
                             results.add(RexError);
                         }
-                        String outputLine = toStarRelaxationString(idx, expType, listID, entityID, atom, results);
-                        if (outputLine != null && !prevRes.contains(entityID + "." + atom.getResidueNumber())) {
-                            chan.write("      " + outputLine + "\n");
+                        if (!prevRes.contains(entityID + "." + atom.getResidueNumber())) {
+                            appendStarRelaxation(writer, idx, expType, listID, entityID, atom, results);
+                            writer.endRow();
                             prevRes.add(entityID + "." + atom.getResidueNumber());
                             idx++;
                         }
@@ -1072,7 +1087,8 @@ public class NMRStarWriter {
             }
         }
 
-        chan.write("   stop_\n");
+        writer.endLoop();
+        writer.flush();
         chan.write("save_\n\n");
 
     }
@@ -1091,6 +1107,27 @@ public class NMRStarWriter {
      * @return
      */
     public static String toStarRelaxationString(int idx, relaxTypes expType, int listID, int entityID, Atom atom, List<Double> results) {
+        STARWriter writer = new STARWriter(new StringBuilder(128));
+        writer.setWidths(getRelaxationWidths(results.size()));
+        appendStarRelaxation(writer, idx, expType, listID, entityID, atom, results);
+        return writer.row().toString();
+    }
+
+    /**
+     * Append the cells of a data line in the Relaxation Data (T1, T2, T1rho)
+     * blocks to the current row of a STARWriter (with column widths from
+     * getRelaxationWidths). The row is not ended.
+     *
+     * @param writer the writer
+     * @param idx int. The line index
+     * @param expType relaxTypes. The experiment type: T1, T2, T1rho.
+     * @param listID int. The number of the T1/T2/T1rho block in the file.
+     * @param entityID int. The number of the molecular entity.
+     * @param atom Atom. The atom in the molecule.
+     * @param results List<Double>. The relaxation and error values: {value,
+     * error, RexValue, RexError}.
+     */
+    public static void appendStarRelaxation(STARWriter writer, int idx, relaxTypes expType, int listID, int entityID, Atom atom, List<Double> results) {
 
         int resNum = idx;
         String resName = ".";
@@ -1102,52 +1139,43 @@ public class NMRStarWriter {
             resName = atom.getResidueName();
             oneLetter = String.valueOf(((Residue) atom.entity).getOneLetter());
             nucName = atom.getName();
-            switch (nucName) {
-                case "C":
-                    isotope = 13;
-                    break;
-                case "N":
-                    isotope = 15;
-                    break;
-                case "F":
-                    isotope = 19;
-                    break;
-                case "P":
-                    isotope = 31;
-                    break;
-                default:
-                    break;
-            }
+            isotope = getIsotope(nucName);
         }
 
-        StringBuilder sBuilder = new StringBuilder();
-        sBuilder.append(String.format("%-3d", idx));
-        sBuilder.append(String.format("%-3s", "."));
-        sBuilder.append(String.format("%-3d", entityID));
-        sBuilder.append(String.format("%-3d", entityID));
-        sBuilder.append(String.format("%-6d", resNum));
-        sBuilder.append(String.format("%-6d", resNum));
-        sBuilder.append(String.format("%-6s", resName)); //fixme writing out chainID, not compound name (e.g. B instead of SO4) when molecule loaded from CIF
-        sBuilder.append(String.format("%-4s", nucName));
-        sBuilder.append(String.format("%-4s", nucName));
-        sBuilder.append(String.format("%-4s", isotope));
-        results.forEach((value) -> {
-            if (value != null) {
-                sBuilder.append(String.format("%-8.3f", value));
-            } else {
-                sBuilder.append(String.format("%-3s", "."));
-            }
-        });
-        sBuilder.append(String.format("%-3s", "."));
-        sBuilder.append(String.format("%-3s", "."));
-        sBuilder.append(String.format("%-6d", resNum));
-        sBuilder.append(String.format("%-4s", oneLetter));
-        sBuilder.append(String.format("%-4s", nucName));
-        sBuilder.append(String.format("%-4s", "."));
-        sBuilder.append(String.format("%-4d", listID));
-
-        return sBuilder.toString();
+        writer.cell(idx);
+        writer.cell(".");
+        writer.cell(entityID);
+        writer.cell(entityID);
+        writer.cell(resNum);
+        writer.cell(resNum);
+        writer.cell(resName); //fixme writing out chainID, not compound name (e.g. B instead of SO4) when molecule loaded from CIF
+        writer.cell(nucName);
+        writer.cell(nucName);
+        writer.cell(isotope);
+        for (Double value : results) {
+            writer.cell(value, 3);
+        }
+        writer.cell(".");
+        writer.cell(".");
+        writer.cell(resNum);
+        writer.cell(oneLetter);
+        writer.cell(nucName);
+        writer.cell(".");
+        writer.cell(listID);
+    }
 
+    /**
+     * @param nValues the number of relaxation and error values in each row
+     * @return the column widths of the rows of a Relaxation Data block
+     */
+    public static int[] getRelaxationWidths(int nValues) {
+        int[] widths = new int[17 + nValues];
+        int[] start = {3, 3, 3, 3, 6, 6, 6, 4, 4, 4};
+        int[] end = {3, 3, 6, 4, 4, 4, 4};
+        System.arraycopy(start, 0, widths, 0, start.length);
+        Arrays.fill(widths, start.length, start.length + nValues, 8);
+        System.arraycopy(end, 0, widths, start.length + nValues, end.length);
+        return widths;
     }
 
     public static void writeAll(String fileName) throws IOException, ParseException, InvalidPeakException, InvalidMoleculeException {
@@ -0,0 +1,238 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.chemistry.io;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.Point3;
+
+/**
+ * Reads an ensemble of structures from a set of PDB files, one structure per
+ * file, with the same result as calling PDBFile.readCoordinates for each
+ * file in turn.
+ *
+ * The first file is parsed and the atom of each of its ATOM and HETATM
+ * records is found once. The remaining files are then read and parsed in
+ * parallel. A file whose records name the same atoms in the same order (as
+ * in a typical NMR ensemble) is kept only as arrays of coordinates that
+ * use the atoms of the first file. The structures are added to the molecule
+ * in the order of the files while holding the molecule's lock. Records of
+ * other files are matched to atoms individually, and files that can't be
+ * parsed (or that have a MODEL record after the first atom) are read with
+ * readCoordinates so errors are reported as before.
+ *
+ * @author brucejohnson
+ */
+class PDBEnsembleReader {
+
+    final PDBFile pdbFile;
+    final MoleculeBase molecule;
+    final boolean noComplain;
+    final int moleculeType;
+
+    static class Model {
+
+        final String fileName;
+        boolean regular = true;
+        boolean modelRecord = false;
+        List<String> lines = new ArrayList<>();
+        List<PDBAtomParser> records = new ArrayList<>();
+        Atom[] atoms = null;
+        double[] xs;
+        double[] ys;
+        double[] zs;
+        float[] occupancies;
+        float[] bFactors;
+
+        Model(String fileName) {
+            this.fileName = fileName;
+        }
+
+        void setCoords() {
+            int n = records.size();
+            xs = new double[n];
+            ys = new double[n];
+            zs = new double[n];
+            occupancies = new float[n];
+            bFactors = new float[n];
+            for (int i = 0; i < n; i++) {
+                PDBAtomParser atomParse = records.get(i);
+                xs[i] = atomParse.x;
+                ys[i] = atomParse.y;
+                zs[i] = atomParse.z;
+                occupancies[i] = (float) atomParse.occupancy;
+                bFactors[i] = (float) atomParse.bfactor;
+            }
+        }
+
+        /**
+         * @param model another model
+         * @return true if each record of this model refers to the same atom as
+         * the corresponding record of the other model
+         */
+        boolean sameAtoms(Model model) {
+            int n = records.size();
+            if (model.records.size() != n) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                PDBAtomParser a = records.get(i);
+                PDBAtomParser b = model.records.get(i);
+                if ((lines.get(i).charAt(0) != model.lines.get(i).charAt(0))
+                        || !a.atomName.equals(b.atomName)
+                        || !a.resName.equals(b.resName)
+                        || !a.resNum.equals(b.resNum)
+                        || !a.insertCode.equals(b.insertCode)
+                        || !a.chainID.equals(b.chainID)
+                        || !a.segment.equals(b.segment)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    PDBEnsembleReader(PDBFile pdbFile, MoleculeBase molecule, boolean noComplain) {
+        this.pdbFile = pdbFile;
+        this.molecule = molecule;
+        this.noComplain = noComplain;
+        moleculeType = molecule.checkType();
+    }
+
+    /**
+     * Read the files, adding the structure in each file to the molecule as
+     * structure 0, 1, ...
+     *
+     * @param fileNames the files
+     * @throws MoleculeIOException if a file can't be read
+     */
+    void read(List<String> fileNames) throws MoleculeIOException {
+        List<Model> models = new ArrayList<>();
+        Model first = parse(fileNames.get(0));
+        models.add(first);
+        if (first.regular) {
+            first.atoms = findAtoms(first);
+        }
+        Model reference = first.atoms == null ? null : first;
+        models.addAll(fileNames.subList(1, fileNames.size()).parallelStream().map(fileName -> {
+            Model model = parse(fileName);
+            if (model.regular && (reference != null) && model.sameAtoms(reference)) {
+                model.atoms = reference.atoms;
+                model.records = null;
+                model.lines = null;
+            }
+            return model;
+        }).collect(Collectors.toList()));
+
+        synchronized (molecule) {
+            int iStruct = 0;
+            for (Model model : models) {
+                if (model.regular && (model.atoms == null)) {
+                    model.atoms = findAtoms(model);
+                }
+                if (model.atoms == null) {
+                    pdbFile.readCoordinates(model.fileName, iStruct, noComplain, true);
+                } else {
+                    addStructure(model, iStruct);
+                }
+                model.records = null;
+                model.lines = null;
+                iStruct++;
+            }
+        }
+    }
+
+    Model parse(String fileName) {
+        Model model = new Model(fileName);
+        try {
+            int type = pdbFile.checkPDBType(fileName);
+            boolean swap = (moleculeType == 2) && (type == 1);
+            try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+                String string;
+                while ((string = reader.readLine()) != null) {
+                    if (string.startsWith("ATOM  ") || string.startsWith("HETATM")) {
+                        model.records.add(new PDBAtomParser(string, swap));
+                        model.lines.add(string);
+                    } else if (string.startsWith("MODEL ")) {
+                        if (!model.records.isEmpty()) {
+                            model.regular = false;
+                            break;
+                        }
+                        model.modelRecord = true;
+                    } else if (string.startsWith("ENDMDL")) {
+                        break;
+                    }
+                }
+            }
+            model.setCoords();
+        } catch (MoleculeIOException | IOException | RuntimeException e) {
+            model.regular = false;
+        }
+        return model;
+    }
+
+    /**
+     * Find the atom of each record of a model.
+     *
+     * @param model the model
+     * @return the atoms (with null for skipped records) or null if there was
+     * an error, in which case the file is read again with readCoordinates
+     */
+    Atom[] findAtoms(Model model) {
+        int n = model.records.size();
+        Atom[] atoms = new Atom[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                atoms[i] = pdbFile.findAtom(molecule, model.records.get(i), model.lines.get(i), noComplain);
+            }
+        } catch (MoleculeIOException | RuntimeException e) {
+            return null;
+        }
+        return atoms;
+    }
+
+    void addStructure(Model model, int structureNumber) {
+        Integer intStructure = structureNumber;
+        if (!molecule.structures.contains(intStructure)) {
+            molecule.structures.add(intStructure);
+        }
+        PDBFile.clearCoords(molecule, structureNumber);
+        if (model.modelRecord) {
+            PDBFile.clearEntityCoords(molecule, structureNumber);
+        }
+        Atom[] atoms = model.atoms;
+        for (int i = 0; i < atoms.length; i++) {
+            Atom atom = atoms[i];
+            if (atom != null) {
+                atom.setPointValidity(structureNumber, true);
+                atom.setPoint(structureNumber, new Point3(model.xs[i], model.ys[i], model.zs[i]));
+                atom.setOccupancy(model.occupancies[i]);
+                atom.setBFactor(model.bFactors[i]);
+            }
+        }
+        molecule.genCoords(structureNumber, true);
+        molecule.setActiveStructures(new TreeSet<Integer>());
+    }
+}
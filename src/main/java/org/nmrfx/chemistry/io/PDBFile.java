@@ -412,64 +412,75 @@ public class PDBFile {
 
     }
 
+    /**
+     * Read the coordinates of an ensemble from the files in a directory whose
+     * names end with a number and .pdb. The files are read in the order they
+     * are listed by the directory. If there is no active molecule it is
+     * created from the sequence in the first file.
+     *
+     * @param dir the directory
+     * @param noComplain if true don't report missing compounds and atoms
+     * @throws MoleculeIOException if the coordinates can't be read
+     * @throws IOException if the directory can't be read
+     */
     public void readMultipleCoordinateFiles(File dir, final boolean noComplain) throws MoleculeIOException, IOException {
-        MoleculeBase molecule = MoleculeFactory.getActive();
-        boolean readMolSeq = false;
-        if (molecule == null) {
-            readMolSeq = true;
-        } else {
-            molecule.structures.clear();
-        }
         Pattern pdbPattern = Pattern.compile(".+([0-9]+)\\.pdb");
         Path dirPath = dir.toPath();
+        List<String> fileNames = new ArrayList<>();
 
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
-            int iStruct = 0;
             for (Path entry : stream) {
                 Matcher matcher = pdbPattern.matcher(entry.toString());
                 if (matcher.matches()) {
-                    if (readMolSeq) {
-                        readSequence(entry.toString(), false, 0);
-                        molecule = MoleculeFactory.getActive();
-                        molecule.structures.clear();
-                        readMolSeq = false;
-                    }
-                    readCoordinates(entry.toString(), iStruct++, noComplain, true);
+                    fileNames.add(entry.toString());
                 }
             }
         }
+        readEnsemble(fileNames, noComplain);
     }
 
+    /**
+     * Read the coordinates of an ensemble, one structure from each file. If
+     * there is no active molecule it is created from the sequence in the
+     * first file.
+     *
+     * @param files the files
+     * @param noComplain if true don't report missing compounds and atoms
+     * @throws MoleculeIOException if the coordinates can't be read
+     * @throws IOException if a file can't be read
+     */
     public void readMultipleCoordinateFiles(List<File> files, final boolean noComplain) throws MoleculeIOException, IOException {
+        List<String> fileNames = new ArrayList<>();
+        for (File file : files) {
+            fileNames.add(file.toString());
+        }
+        readEnsemble(fileNames, noComplain);
+    }
+
+    void readEnsemble(List<String> fileNames, final boolean noComplain) throws MoleculeIOException {
         MoleculeBase molecule = MoleculeFactory.getActive();
-        boolean readMolSeq = false;
         if (molecule == null) {
-            readMolSeq = true;
-        } else {
-            molecule.structures.clear();
-        }
-        int iStruct = 0;
-        for (File entry : files) {
-            if (readMolSeq) {
-                readSequence(entry.toString(), false, 0);
-                molecule = MoleculeFactory.getActive();
-                molecule.structures.clear();
-                readMolSeq = false;
+            if (fileNames.isEmpty()) {
+                return;
             }
-            readCoordinates(entry.toString(), iStruct++, noComplain, true);
+            readSequence(fileNames.get(0), false, 0);
+            molecule = MoleculeFactory.getActive();
         }
+        molecule.structures.clear();
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        new PDBEnsembleReader(this, molecule, noComplain).read(fileNames);
     }
 
     public void readCoordinates(String fileName, int structureNumber, final boolean noComplain, boolean genCoords)
             throws MoleculeIOException {
         LineNumberReader lineReader;
-        String lastChain = "";
 
         MoleculeBase molecule = MoleculeFactory.getActive();
         if (molecule == null) {
             throw new MoleculeIOException("No molecule");
         }
-        String molName = molecule.getName();
         int type = checkPDBType(fileName);
 
         try {
@@ -494,36 +505,10 @@ public class PDBFile {
             molecule.structures.add(Integer.valueOf(structureNumber));
         }
 
-        String polymerName = null;
-        polymerName = molName;
-
-        Iterator e = molecule.coordSets.values().iterator();
-
-        CoordSet coordSet;
-
-        while (e.hasNext()) {
-            coordSet = (CoordSet) e.next();
-
-            Iterator entIterator = coordSet.getEntities().values().iterator();
-
-            while (entIterator.hasNext()) {
-                Entity entity = (Entity) entIterator.next();
-
-                if (entity instanceof Polymer) {
-                    polymerName = entity.getName();
-                }
-                for (Atom atom : entity.getAtoms()) {
-                    atom.setPointValidity(structureNumber,
-                            false);
-                }
-            }
-        }
+        clearCoords(molecule, structureNumber);
 
-        Polymer polymer = null;
-        Residue residue = null;
         Point3 pt = null;
         String string;
-        String coordSetName = "";
         TreeSet selSet = new TreeSet();
         boolean coordsGen = false;
         try {
@@ -533,116 +518,12 @@ public class PDBFile {
                 if (string == null) {
                     break;
                 }
-                boolean hetAtom = false;
                 if (string.startsWith("ATOM  ") || string.startsWith("HETATM")) {
                     PDBAtomParser atomParse = new PDBAtomParser(string, swap);
-                    Entity compoundEntity = (Entity) molecule.getEntity(atomParse.resName);
-                    // fixme not propertly supporting insertCode
-                    if (!atomParse.insertCode.equals(" ")) {
+                    Atom atom = findAtom(molecule, atomParse, string, noComplain);
+                    if (atom == null) {
                         continue;
                     }
-                    // PDB standard says all non-standard residue atoms should be HETATM
-                    //   but some software makes everything an atom
-                    //   so check to see if we've made an entity with residue name
-                    //     if so we treat it as HETATM
-                    if (string.startsWith("HETATM") || ((compoundEntity != null) && (compoundEntity instanceof Compound))) {
-                        hetAtom = true;
-                    }
-                    if (compoundEntity == null) {
-                        hetAtom = false;
-                    }
-                    Atom atom = null;
-                    String thisChain;
-
-                    if (atomParse.segment.equals("")) {
-                        thisChain = atomParse.chainID;
-                    } else {
-                        thisChain = atomParse.segment.toLowerCase();
-                    }
-                    if (!thisChain.equals(lastChain)) {
-                        lastChain = thisChain;
-                    } else {
-                        if (!atomParse.resName.equals("HOH")) {
-                            //hetAtom = false;
-                        }
-                    }
-                    if (!hetAtom) {
-
-                        if (lastChain.trim().equals("")) {
-                            polymerName = molName;
-                        } else {
-                            polymerName = lastChain;
-                        }
-
-                        polymer = (Polymer) molecule.getEntity(polymerName);
-
-                        if (polymer == null) {
-                            polymer = (Polymer) molecule.getChain(polymerName);
-                        }
-                        if (polymer == null) {
-                            System.err.println("null polymer " + polymerName + " for line: " + string);
-
-                            continue;
-                        }
-
-                        if (!molecule.coordSetExists(coordSetName)) {
-                            coordSetName = molecule.getFirstCoordSet().getName();
-                            //  molecule.addCoordSet(coordSetName, polymer);
-                        }
-
-                        residue = polymer.getResidue(atomParse.resNum);
-
-                        if (residue == null) {
-                            //for (Residue resi : polymer.getResidues()) {
-                            //System.out.println(resi.getName() + " " + resi.getNumber());
-                            //}
-                            if (!atomParse.resName.equals("HOH")) {
-                                // System.err.println("null residue " + atomParse.resNum + " for polymer " + polymerName);
-                                // System.err.println(string);
-                            }
-                            continue;
-                        }
-                        if (!AtomParser.isResNameConsistant(residue.getName(), atomParse.resName)) {
-                            String msg = "Residue " + polymerName + ":" + residue.getName() + " at " + atomParse.resNum + " is not same as in file " + atomParse.resName;
-                            if (allowSequenceDiff) {
-                                System.err.println(msg);
-                                System.err.println(string);
-                                continue;
-                            } else {
-                                throw new MoleculeIOException(msg);
-                            }
-                        }
-                        atom = residue.getAtomLoose(atomParse.atomName);
-
-                        if (atom == null) {
-                            //System.err.println("null atom " + atomParse.atomName);
-                            //System.err.println("null atom " + string);
-                            continue;
-                        }
-
-                    } else {
-                        coordSetName = thisChain;
-
-                        if (compoundEntity == null) {
-                            if (!noComplain) {
-                                System.err.println("no such compound as  "
-                                        + atomParse.resName);
-                                System.err.println("in file line  " + string);
-                            }
-                            continue;
-                        }
-                        Compound compound = (Compound) compoundEntity;
-                        atom = compound.getAtom(atomParse.atomName);
-
-                        if (atom == null) {
-                            if (!noComplain) {
-                                System.err.println("no such atom as "
-                                        + atomParse.atomName);
-                                System.err.println("in file line " + string);
-                            }
-                            continue;
-                        }
-                    }
                     atom.setPointValidity(structureNumber, true);
                     pt = new Point3(atomParse.x, atomParse.y, atomParse.z);
                     atom.setPoint(structureNumber, pt);
@@ -661,15 +542,7 @@ public class PDBFile {
                         selSet.add(intStructure);
                         molecule.structures.add(intStructure);
                     }
-
-                    Iterator iterator = molecule.entities.values().iterator();
-
-                    while (iterator.hasNext()) {
-                        Entity entity = (Entity) iterator.next();
-                        for (Atom atom : entity.getAtoms()) {
-                            atom.setPointValidity(structureNumber, false);
-                        }
-                    }
+                    clearEntityCoords(molecule, structureNumber);
                 } else if (string.startsWith("ENDMDL")) {
                     if (genCoords) {
                         molecule.genCoords(structureNumber, true);
@@ -701,6 +574,123 @@ public class PDBFile {
 
     }
 
+    /**
+     * Mark the coordinates of the atoms of each coordinate set as invalid for
+     * the specified structure.
+     *
+     * @param molecule the molecule
+     * @param structureNumber the structure
+     */
+    static void clearCoords(MoleculeBase molecule, int structureNumber) {
+        for (CoordSet coordSet : molecule.coordSets.values()) {
+            for (Entity entity : coordSet.getEntities().values()) {
+                for (Atom atom : entity.getAtoms()) {
+                    atom.setPointValidity(structureNumber, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark the coordinates of the atoms of each entity of the molecule as
+     * invalid for the specified structure (done at each MODEL record).
+     *
+     * @param molecule the molecule
+     * @param structureNumber the structure
+     */
+    static void clearEntityCoords(MoleculeBase molecule, int structureNumber) {
+        for (Entity entity : molecule.entities.values()) {
+            for (Atom atom : entity.getAtoms()) {
+                atom.setPointValidity(structureNumber, false);
+            }
+        }
+    }
+
+    /**
+     * Find the atom of the molecule that an ATOM or HETATM record refers to.
+     * The atom only depends on the record, so records of different models
+     * that have the same names, numbers and chain refer to the same atom.
+     *
+     * @param molecule the molecule
+     * @param atomParse the parsed record
+     * @param string the record
+     * @param noComplain if true don't report missing compounds and atoms
+     * @return the atom or null if the record should be skipped
+     * @throws MoleculeIOException if the residue name differs from that in
+     * the molecule and allowSequenceDiff is false
+     */
+    Atom findAtom(MoleculeBase molecule, PDBAtomParser atomParse, String string, boolean noComplain) throws MoleculeIOException {
+        Entity compoundEntity = (Entity) molecule.getEntity(atomParse.resName);
+        // fixme not propertly supporting insertCode
+        if (!atomParse.insertCode.equals(" ")) {
+            return null;
+        }
+        boolean hetAtom = false;
+        // PDB standard says all non-standard residue atoms should be HETATM
+        //   but some software makes everything an atom
+        //   so check to see if we've made an entity with residue name
+        //     if so we treat it as HETATM
+        if (string.startsWith("HETATM") || ((compoundEntity != null) && (compoundEntity instanceof Compound))) {
+            hetAtom = true;
+        }
+        if (compoundEntity == null) {
+            hetAtom = false;
+        }
+        Atom atom;
+        String thisChain;
+
+        if (atomParse.segment.equals("")) {
+            thisChain = atomParse.chainID;
+        } else {
+            thisChain = atomParse.segment.toLowerCase();
+        }
+        if (!hetAtom) {
+            String polymerName;
+            if (thisChain.trim().equals("")) {
+                polymerName = molecule.getName();
+            } else {
+                polymerName = thisChain;
+            }
+
+            Polymer polymer = (Polymer) molecule.getEntity(polymerName);
+
+            if (polymer == null) {
+                polymer = (Polymer) molecule.getChain(polymerName);
+            }
+            if (polymer == null) {
+                System.err.println("null polymer " + polymerName + " for line: " + string);
+                return null;
+            }
+
+            Residue residue = polymer.getResidue(atomParse.resNum);
+
+            if (residue == null) {
+                return null;
+            }
+            if (!AtomParser.isResNameConsistant(residue.getName(), atomParse.resName)) {
+                String msg = "Residue " + polymerName + ":" + residue.getName() + " at " + atomParse.resNum + " is not same as in file " + atomParse.resName;
+                if (allowSequenceDiff) {
+                    System.err.println(msg);
+                    System.err.println(string);
+                    return null;
+                } else {
+                    throw new MoleculeIOException(msg);
+                }
+            }
+            atom = residue.getAtomLoose(atomParse.atomName);
+        } else {
+            Compound compound = (Compound) compoundEntity;
+            atom = compound.getAtom(atomParse.atomName);
+
+            if ((atom == null) && !noComplain) {
+                System.err.println("no such atom as "
+                        + atomParse.atomName);
+                System.err.println("in file line " + string);
+            }
+        }
+        return atom;
+    }
+
     public BufferedReader getLocalResidueReader(final String fileName) {
         File file = new File(fileName);
         String reslibDir = getLocalReslibDir();
@@ -138,6 +138,25 @@ public class Clusters extends Object {
         doCluster(iPfdim, tol, Integer.MAX_VALUE);
     }
 
+    /**
+     * Cluster the data using the same merge criteria as doCluster, but with
+     * a grid index and priority queue of candidate pairs (see
+     * IndexedClusters) so that large data sets can be clustered quickly.
+     *
+     * @param iPfdim number of dimensions to use
+     * @param tol the tolerance in each dimension
+     * @return the number of clusters
+     * @throws IllegalArgumentException if there are less than 2 items
+     */
+    public int doIndexedCluster(int iPfdim, double[] tol)
+            throws IllegalArgumentException {
+        if (data.size() < 2) {
+            throw new IllegalArgumentException("Can't cluster less than 2 peaks");
+        }
+        IndexedClusters indexedClusters = new IndexedClusters(iPfdim, tol);
+        return indexedClusters.cluster(data);
+    }
+
     public void doCluster(int iPfdim, double[] tol, int targetClusters)
             throws IllegalArgumentException {
         int i;
@@ -0,0 +1,322 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Greedy agglomerative clustering of ClusterItems using the same merge cost,
+ * tolerances and group constraints as Clusters.doCluster, but driven by a
+ * priority queue of candidate pairs. Candidates are found with a uniform grid
+ * in tolerance scaled coordinates, so only items in neighbouring cells are
+ * ever compared. Queue entries are invalidated lazily: an entry is discarded
+ * when popped if either of its items has been merged since it was queued.
+ * Pairs that the scan in Clusters.doCluster would not reach are held back
+ * until the item blocking them is merged.
+ *
+ * @author brucejohnson
+ */
+public class IndexedClusters {
+
+    static final double SCAN_LIMIT = 2.0;
+
+    final int nDim;
+    final double[] tol;
+    final double cellSize;
+    final double threshold;
+    final Map<Cell, List<Integer>> grid = new HashMap<>();
+    final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+    final Map<Integer, List<Candidate>> blocked = new HashMap<>();
+    Clusters.ClusterItem[] items;
+    int[] versions;
+    Cell[] cells;
+
+    static class Cell {
+
+        final int[] index;
+        final int hash;
+
+        Cell(int[] index) {
+            this.index = index;
+            this.hash = Arrays.hashCode(index);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Cell)) {
+                return false;
+            }
+            return Arrays.equals(index, ((Cell) o).index);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static class Candidate implements Comparable<Candidate> {
+
+        final double cost;
+        final int i;
+        final int j;
+        final int versionI;
+        final int versionJ;
+
+        Candidate(double cost, int i, int j, int versionI, int versionJ) {
+            this.cost = cost;
+            this.i = i;
+            this.j = j;
+            this.versionI = versionI;
+            this.versionJ = versionJ;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int result = Double.compare(cost, o.cost);
+            if (result == 0) {
+                result = Integer.compare(i, o.i);
+            }
+            if (result == 0) {
+                result = Integer.compare(j, o.j);
+            }
+            return result;
+        }
+    }
+
+    /**
+     *
+     * @param nDim number of dimensions of each item used in clustering
+     * @param tol the tolerance in each dimension
+     */
+    public IndexedClusters(int nDim, double[] tol) {
+        this.nDim = nDim;
+        this.tol = tol.clone();
+        this.threshold = nDim;
+        // merge cost is n1*n2/(n1+n2) * sum((dv/tol)^2) and n1*n2/(n1+n2) >= 0.5
+        // so two items can only merge if they are within sqrt(2*nDim) in scaled units
+        this.cellSize = Math.sqrt(2.0 * threshold);
+    }
+
+    /**
+     * Cluster the items in the list. Items are sorted by their first
+     * coordinate (as in Clusters.doCluster), then the globally closest
+     * allowed pair is repeatedly merged until no pair has a merge cost below
+     * the number of dimensions.
+     *
+     * @param data the items to cluster. Merged items are left in the list but
+     * marked as inactive.
+     * @return the number of active clusters remaining
+     */
+    public int cluster(List<Clusters.ClusterItem> data) {
+        int nItems = data.size();
+        data.sort((a, b) -> Double.compare(a.getV0(), b.getV0()));
+        items = new Clusters.ClusterItem[nItems];
+        versions = new int[nItems];
+        cells = new Cell[nItems];
+        grid.clear();
+        queue.clear();
+        blocked.clear();
+        int nClusters = 0;
+        for (int i = 0; i < nItems; i++) {
+            items[i] = data.get(i);
+            if (data.get(i).active) {
+                insert(i);
+                nClusters++;
+            }
+        }
+        for (int i = 0; i < nItems; i++) {
+            if (items[i].active) {
+                addCandidates(i, true);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            if ((versions[candidate.i] != candidate.versionI)
+                    || (versions[candidate.j] != candidate.versionJ)) {
+                continue;
+            }
+            Clusters.ClusterItem iDatum = items[candidate.i];
+            Clusters.ClusterItem jDatum = items[candidate.j];
+            if (!iDatum.active || !jDatum.active) {
+                continue;
+            }
+            int blocker = findBlocker(candidate.i, candidate.j);
+            if (blocker != -1) {
+                blocked.computeIfAbsent(blocker, b -> new ArrayList<>()).add(candidate);
+                continue;
+            }
+            remove(candidate.i);
+            remove(candidate.j);
+            int kept;
+            int lost;
+            if (iDatum.group == 0) {
+                iDatum.merge(jDatum);
+                kept = candidate.i;
+                lost = candidate.j;
+            } else {
+                jDatum.merge(iDatum);
+                kept = candidate.j;
+                lost = candidate.i;
+            }
+            versions[kept]++;
+            versions[lost]++;
+            requeueBlocked(kept);
+            requeueBlocked(lost);
+            insert(kept);
+            addCandidates(kept, false);
+            nClusters--;
+        }
+        return nClusters;
+    }
+
+    void requeueBlocked(int i) {
+        List<Candidate> waiting = blocked.remove(i);
+        if (waiting != null) {
+            queue.addAll(waiting);
+        }
+    }
+
+    Cell getCell(Clusters.ClusterItem item) {
+        int[] index = new int[nDim];
+        for (int k = 0; k < nDim; k++) {
+            index[k] = (int) Math.floor(item.v[k] / tol[k] / cellSize);
+        }
+        return new Cell(index);
+    }
+
+    void insert(int i) {
+        Cell cell = getCell(items[i]);
+        cells[i] = cell;
+        grid.computeIfAbsent(cell, c -> new ArrayList<>()).add(i);
+    }
+
+    void remove(int i) {
+        List<Integer> members = grid.get(cells[i]);
+        if (members != null) {
+            members.remove(Integer.valueOf(i));
+            if (members.isEmpty()) {
+                grid.remove(cells[i]);
+            }
+        }
+        cells[i] = null;
+    }
+
+    /**
+     * Queue the allowed pairs between item i and the active items in the
+     * neighbouring grid cells.
+     *
+     * @param i index of item
+     * @param onlyHigher if true only pair with items of higher index, used
+     * during initial setup so each pair is only queued once
+     */
+    void addCandidates(int i, boolean onlyHigher) {
+        int[] center = cells[i].index;
+        int[] offset = new int[nDim];
+        Arrays.fill(offset, -1);
+        while (true) {
+            int[] index = new int[nDim];
+            for (int k = 0; k < nDim; k++) {
+                index[k] = center[k] + offset[k];
+            }
+            List<Integer> members = grid.get(new Cell(index));
+            if (members != null) {
+                for (int j : members) {
+                    if ((j == i) || (onlyHigher && (j < i))) {
+                        continue;
+                    }
+                    int lo = Math.min(i, j);
+                    int hi = Math.max(i, j);
+                    Clusters.ClusterItem loDatum = items[lo];
+                    Clusters.ClusterItem hiDatum = items[hi];
+                    if ((loDatum.group == 0) && (hiDatum.group == 0)) {
+                        continue;
+                    }
+                    double cost = mergeCost(loDatum, hiDatum);
+                    if (cost < threshold) {
+                        queue.add(new Candidate(cost, lo, hi, versions[lo], versions[hi]));
+                    }
+                }
+            }
+            int k = 0;
+            while ((k < nDim) && (offset[k] == 1)) {
+                offset[k] = -1;
+                k++;
+            }
+            if (k == nDim) {
+                break;
+            }
+            offset[k]++;
+        }
+    }
+
+    double mergeCost(Clusters.ClusterItem iDatum, Clusters.ClusterItem jDatum) {
+        double dDeltaSum = 0.0;
+        for (int ii = 0; ii < nDim; ii++) {
+            dDeltaSum += dimCost(iDatum, jDatum, ii);
+        }
+        return dDeltaSum;
+    }
+
+    double dimCost(Clusters.ClusterItem iDatum, Clusters.ClusterItem jDatum, int ii) {
+        int nI = iDatum.getN();
+        int nJ = jDatum.getN();
+        double delta1 = (nI * (iDatum.v[ii] * iDatum.v[ii]))
+                + (nJ * (jDatum.v[ii] * jDatum.v[ii]));
+        double delta2 = (nI * iDatum.v[ii]) + (nJ * jDatum.v[ii]);
+        delta2 = (delta2 * delta2) / (nI + nJ);
+        double delta = delta1 - delta2;
+        if (delta < 0.0) {
+            delta = 0.0;
+        }
+        return delta / (tol[ii] * tol[ii]);
+    }
+
+    /**
+     * Clusters.doCluster scans upwards from each item and stops at the first
+     * item whose first dimension cost exceeds 2.0. Pairs beyond such an item
+     * are not seen, so to reproduce the same merges a candidate pair is only
+     * used if there is no such blocking item between them.
+     *
+     * @param lo index of lower item of pair
+     * @param hi index of higher item of pair
+     * @return index of blocking item or -1 if pair is not blocked
+     */
+    int findBlocker(int lo, int hi) {
+        Clusters.ClusterItem loDatum = items[lo];
+        for (int m = lo + 1; m < hi; m++) {
+            Clusters.ClusterItem mDatum = items[m];
+            if (!mDatum.active || ((loDatum.group == 0) && (mDatum.group == 0))) {
+                continue;
+            }
+            if (dimCost(loDatum, mDatum, 0) > SCAN_LIMIT) {
+                return m;
+            }
+        }
+        return -1;
+    }
+}
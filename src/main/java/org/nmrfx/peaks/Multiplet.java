@@ -571,26 +571,7 @@ public class Multiplet implements PeakOrMulti, Comparable {
     }
 
     public double[] simulate(int m, double min, double max) {
-        double widthLimit = 0.0001;
-        List<AbsMultipletComponent> comps = getAbsComponentList();
-        double delta = (max - min) / (m - 1);
-        double f = min;
-        double[] bpCoords = new double[m];
-        for (int i = 0; i < m; i++) {
-            for (AbsMultipletComponent comp : comps) {
-                double c = comp.getOffset();
-                double w = comp.getLineWidth();
-                if (w < widthLimit) {
-                    w = widthLimit;
-                }
-                double a = comp.getIntensity();
-                double v = ((a * ((w * w) / 4)) / (((w * w) / 4)
-                        + ((f - c) * (f - c))));
-                bpCoords[i] += v;
-            }
-
-            f += delta;
-        }
-        return bpCoords;
+        MultipletSimulator simulator = new MultipletSimulator(getAbsComponentList());
+        return simulator.simulate(m, min, max, Double.POSITIVE_INFINITY);
     }
 }
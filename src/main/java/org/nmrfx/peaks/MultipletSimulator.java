@@ -0,0 +1,240 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Synthesizes a 1D spectrum as the sum of the Lorentzian lines of many
+ * multiplets. The components are gathered into primitive arrays once, each
+ * line is only evaluated at the points within a cutoff (a multiple of its
+ * linewidth) of its center and the spectrum is divided into chunks of points
+ * that are calculated in parallel. With an infinite cutoff the result is the
+ * same as adding the results of Multiplet.simulate for each multiplet.
+ *
+ * @author brucejohnson
+ */
+public class MultipletSimulator {
+
+    static final double WIDTH_LIMIT = 0.0001;
+    // at 100 linewidths a Lorentzian has fallen to 2.5e-5 of its height
+    public static final double DEFAULT_CUTOFF = 100.0;
+    static final int CHUNK_SIZE = 2048;
+
+    final int nLines;
+    final double[] centers;
+    final double[] widths;
+    final double[] scaledAmps;
+    final double[] halfWidthSq;
+
+    MultipletSimulator(List<AbsMultipletComponent> comps) {
+        nLines = comps.size();
+        centers = new double[nLines];
+        widths = new double[nLines];
+        scaledAmps = new double[nLines];
+        halfWidthSq = new double[nLines];
+        int i = 0;
+        for (AbsMultipletComponent comp : comps) {
+            double w = comp.getLineWidth();
+            if (w < WIDTH_LIMIT) {
+                w = WIDTH_LIMIT;
+            }
+            double w2 = (w * w) / 4;
+            centers[i] = comp.getOffset();
+            widths[i] = w;
+            halfWidthSq[i] = w2;
+            scaledAmps[i] = comp.getIntensity() * w2;
+            i++;
+        }
+    }
+
+    /**
+     * Gather the components of a collection of multiplets.
+     *
+     * @param multiplets the multiplets
+     * @return the simulator
+     */
+    public static MultipletSimulator fromMultiplets(Collection<Multiplet> multiplets) {
+        List<AbsMultipletComponent> comps = new ArrayList<>();
+        for (Multiplet multiplet : multiplets) {
+            comps.addAll(multiplet.getAbsComponentList());
+        }
+        return new MultipletSimulator(comps);
+    }
+
+    /**
+     * Gather the components of the multiplets of the active (status not
+     * negative) peaks of a peak list.
+     *
+     * @param peakList the peak list
+     * @param iDim the dimension of the multiplets
+     * @return the simulator
+     */
+    public static MultipletSimulator fromPeakList(PeakList peakList, int iDim) {
+        Set<Multiplet> multiplets = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Multiplet> ordered = new ArrayList<>();
+        for (Peak peak : peakList.peaks()) {
+            if (peak.getStatus() >= 0) {
+                Multiplet multiplet = peak.peakDims[iDim].getMultiplet();
+                if ((multiplet != null) && multiplets.add(multiplet)) {
+                    ordered.add(multiplet);
+                }
+            }
+        }
+        return fromMultiplets(ordered);
+    }
+
+    /**
+     * @return the number of lines in the spectrum
+     */
+    public int size() {
+        return nLines;
+    }
+
+    /**
+     * Simulate the spectrum using the default cutoff.
+     *
+     * @param m the number of points
+     * @param min the ppm of the first point
+     * @param max the ppm of the last point
+     * @return the spectrum
+     */
+    public double[] simulate(int m, double min, double max) {
+        return simulate(m, min, max, DEFAULT_CUTOFF);
+    }
+
+    /**
+     * Simulate the spectrum.
+     *
+     * @param m the number of points
+     * @param min the ppm of the first point
+     * @param max the ppm of the last point
+     * @param cutoff lines are only evaluated within this many linewidths of
+     * their center. Use Double.POSITIVE_INFINITY to evaluate every line at
+     * every point.
+     * @return the spectrum
+     */
+    public double[] simulate(int m, double min, double max, double cutoff) {
+        double[] values = new double[m];
+        addTo(values, min, max, cutoff);
+        return values;
+    }
+
+    /**
+     * Add the simulated spectrum to an existing buffer.
+     *
+     * @param values the buffer, whose length sets the number of points
+     * @param min the ppm of the first point
+     * @param max the ppm of the last point
+     * @param cutoff lines are only evaluated within this many linewidths of
+     * their center
+     */
+    public void addTo(double[] values, double min, double max, double cutoff) {
+        int m = values.length;
+        if ((m == 0) || (nLines == 0)) {
+            return;
+        }
+        double delta = (max - min) / (m - 1);
+        // accumulate the frequencies as Multiplet.simulate does so results agree exactly
+        double[] freqs = new double[m];
+        double f = min;
+        for (int i = 0; i < m; i++) {
+            freqs[i] = f;
+            f += delta;
+        }
+        int[] starts = new int[nLines];
+        int[] ends = new int[nLines];
+        for (int j = 0; j < nLines; j++) {
+            window(j, m, min, delta, cutoff, starts, ends);
+        }
+
+        // lines overlapping each chunk, in their original order
+        int nChunks = (m + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int[] chunkStarts = new int[nChunks + 1];
+        for (int j = 0; j < nLines; j++) {
+            if (starts[j] <= ends[j]) {
+                for (int c = starts[j] / CHUNK_SIZE, last = ends[j] / CHUNK_SIZE; c <= last; c++) {
+                    chunkStarts[c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < nChunks; c++) {
+            chunkStarts[c + 1] += chunkStarts[c];
+        }
+        int[] chunkLines = new int[chunkStarts[nChunks]];
+        int[] fill = chunkStarts.clone();
+        for (int j = 0; j < nLines; j++) {
+            if (starts[j] <= ends[j]) {
+                for (int c = starts[j] / CHUNK_SIZE, last = ends[j] / CHUNK_SIZE; c <= last; c++) {
+                    chunkLines[fill[c]++] = j;
+                }
+            }
+        }
+
+        IntStream chunks = IntStream.range(0, nChunks);
+        if (nChunks > 1) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(c -> {
+            int first = c * CHUNK_SIZE;
+            int last = Math.min(m, first + CHUNK_SIZE) - 1;
+            for (int k = chunkStarts[c]; k < chunkStarts[c + 1]; k++) {
+                int j = chunkLines[k];
+                int i0 = Math.max(first, starts[j]);
+                int i1 = Math.min(last, ends[j]);
+                double ctr = centers[j];
+                double amp = scaledAmps[j];
+                double w2 = halfWidthSq[j];
+                for (int i = i0; i <= i1; i++) {
+                    double d = freqs[i] - ctr;
+                    values[i] += amp / (w2 + (d * d));
+                }
+            }
+        });
+    }
+
+    /**
+     * Find the range of points within the cutoff of a line. The range is
+     * widened by a point on each side so rounding can't exclude a point.
+     */
+    private void window(int j, int m, double min, double delta, double cutoff, int[] starts, int[] ends) {
+        double range = cutoff * widths[j];
+        if (Double.isInfinite(range) || (delta == 0.0) || Double.isNaN(delta)) {
+            starts[j] = 0;
+            ends[j] = m - 1;
+            return;
+        }
+        double lo = (centers[j] - range - min) / delta;
+        double hi = (centers[j] + range - min) / delta;
+        if (lo > hi) {
+            double hold = lo;
+            lo = hi;
+            hi = hold;
+        }
+        lo = Math.max(-1.0, Math.min(m, Math.floor(lo) - 1.0));
+        hi = Math.max(-1.0, Math.min(m, Math.ceil(hi) + 1.0));
+        starts[j] = Math.max(0, (int) lo);
+        ends[j] = Math.min(m - 1, (int) hi);
+    }
+}
@@ -249,7 +249,10 @@ public class Peak implements Comparable, PeakOrMulti {
                 start = 0;
             }
 
-            peak = PeakList.getAPeak(string.substring(start));
+            PeakSpecifier specifier = PeakSpecifier.parse(string, start);
+            if (specifier != null) {
+                peak = specifier.getPeak();
+            }
         }
 
         return (peak);
@@ -268,7 +271,8 @@ public class Peak implements Comparable, PeakOrMulti {
             return (0);
         }
 
-        return (PeakList.getPeakDimNum(string.substring(start)));
+        PeakSpecifier specifier = PeakSpecifier.parse(string, start);
+        return specifier == null ? 0 : specifier.getDimNum();
     }
 
     @Override
@@ -452,6 +456,7 @@ public class Peak implements Comparable, PeakOrMulti {
         for (int i = 0; i < peakDims.length; i++) {
             peakDims[i].copyTo(targetPeak.peakDims[i]);
         }
+        targetPeak.peakUpdated(targetPeak);
         return targetPeak;
     }
 
@@ -488,6 +493,12 @@ public class Peak implements Comparable, PeakOrMulti {
         }
     }
 
+    void peakUpdated(PeakDim peakDim, PeakEvent.Type type) {
+        if (peakList != null) {
+            peakList.peakListUpdated(peakDim, type);
+        }
+    }
+
     @Override
     public boolean isValid() {
         return valid;
@@ -529,11 +540,14 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public String toSTAR3LoopPeakString() {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        return appendSTAR3LoopPeakString(new StringBuilder()).toString();
+    }
+
+    public StringBuilder appendSTAR3LoopPeakString(StringBuilder result) {
+        char sep = ' ';
         char stringQuote = '"';
-        result.append(String.valueOf(getIdNum())).append(sep);
-        result.append(String.valueOf(getFigureOfMerit())).append(sep);
+        result.append(getIdNum()).append(sep);
+        result.append(getFigureOfMerit()).append(sep);
         result.append(stringQuote);
         result.append(getComment());
         result.append(stringQuote);
@@ -554,9 +568,9 @@ public class Peak implements Comparable, PeakOrMulti {
         result.append(getFlag());
         result.append(sep);
         result.append(stringQuote);
-        result.append(String.valueOf(getCorner()));
+        result.append(getCorner());
         result.append(stringQuote);
-        return result.toString();
+        return result;
     }
 
     public String toSTAR3LoopSpectralTransitionString(int id) {
@@ -571,54 +585,60 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public String toSTAR3LoopIntensityString(int mode) {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        return appendSTAR3LoopIntensityString(new StringBuilder(), mode).toString();
+    }
+
+    public StringBuilder appendSTAR3LoopIntensityString(StringBuilder result, int mode) {
+        char sep = ' ';
 //FIXME  need to add intensity object list to Peak
         switch (mode) {
             case 0:
-                result.append(String.valueOf(getIdNum())).append(sep);
-                result.append(String.valueOf(getIntensity())).append(sep);
+                result.append(getIdNum()).append(sep);
+                result.append(getIntensity()).append(sep);
                 result.append(getIntensityErr()).append(sep);
                 result.append("height");
                 break;
             case 1:
-                result.append(String.valueOf(getIdNum())).append(sep);
-                result.append(String.valueOf(getVolume1())).append(sep);
+                result.append(getIdNum()).append(sep);
+                result.append(getVolume1()).append(sep);
                 result.append(getVolume1Err()).append(sep);
                 result.append("volume");
                 break;
             case 2:
-                result.append(String.valueOf(getIdNum())).append(sep);
-                result.append(String.valueOf(getVolume2())).append(sep);
+                result.append(getIdNum()).append(sep);
+                result.append(getVolume2()).append(sep);
                 result.append(getVolume2Err()).append(sep);
                 result.append("volume2");
                 break;
             default:
                 break;
         }
-        return result.toString();
+        return result;
     }
 
     public String toNEFString(int id) {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        return appendNEFString(new StringBuilder(), id).toString();
+    }
+
+    public StringBuilder appendNEFString(StringBuilder result, int id) {
+        char sep = ' ';
         // need to fix ambiguous
-        result.append(String.valueOf(getIdNum())).append(sep);
-        result.append(String.valueOf(getIdNum())).append(sep);
-        result.append(String.valueOf(getVolume1())).append(sep);
+        result.append(getIdNum()).append(sep);
+        result.append(getIdNum()).append(sep);
+        result.append(getVolume1()).append(sep);
         if (getVolume1Err() == 0.0) {
             result.append(".").append(sep); // uncertainty fixme
         } else {
             result.append(getVolume1Err()).append(sep); // uncertainty fixme
         }
-        result.append(String.valueOf(getIntensity())).append(sep);
+        result.append(getIntensity()).append(sep);
         if (getIntensityErr() == 0.0) {
             result.append(".").append(sep); // uncertainty fixme
         } else {
             result.append(getIntensityErr()).append(sep); // uncertainty fixme
         }
         for (PeakDim apeakDim : peakDims) {
-            result.append(apeakDim.toNEFString(COMPOUND));
+            apeakDim.appendNEFString(result, COMPOUND);
             result.append(sep);
         }
         for (PeakDim apeakDim : peakDims) {
@@ -628,7 +648,7 @@ public class Peak implements Comparable, PeakOrMulti {
             result.append(".").append(sep);
         }
 
-        return result.toString();
+        return result;
     }
 
     public String toMyString() {
@@ -731,18 +751,30 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public String toXPK2String(int index) {
-        StringBuilder result = new StringBuilder();
-        String sep = "\t";
-        result.append(String.valueOf(getIdNum())).append(sep);
-        String formatString = "%.5f";
+        return appendXPK2String(new StringBuilder(), index).toString().trim();
+    }
+
+    /**
+     * Append the .xpk2 row for this peak, with trailing white space removed
+     * as in toXPK2String.
+     *
+     * @param result the StringBuilder to append to
+     * @param index the index of the peak in the list
+     * @return the StringBuilder
+     */
+    public StringBuilder appendXPK2String(StringBuilder result, int index) {
+        int start = result.length();
+        char sep = '\t';
+        result.append(getIdNum()).append(sep);
+        int precision = 5;
 
         for (int i = 0; i < getNDim(); i++) {
             double sf = peakDims[i].getSpectralDimObj().getSf();
             String label = peakDims[i].getLabel();
             result.append(label).append(sep);
-            result.append(String.format(formatString, peakDims[i].getChemShiftValue())).append(sep);
-            result.append(String.format(formatString, peakDims[i].getLineWidthValue() * sf)).append(sep);
-            result.append(String.format(formatString, peakDims[i].getBoundsValue() * sf)).append(sep);
+            Format.appendFixed(result, peakDims[i].getChemShiftValue(), precision).append(sep);
+            Format.appendFixed(result, peakDims[i].getLineWidthValue() * sf, precision).append(sep);
+            Format.appendFixed(result, peakDims[i].getBoundsValue() * sf, precision).append(sep);
             result.append(peakDims[i].getError()).append(sep);
             if (peakDims[i].hasMultiplet()) {
                 result.append(peakDims[i].getMultiplet().getMultiplicity()).append(sep);
@@ -755,25 +787,37 @@ public class Peak implements Comparable, PeakOrMulti {
             int frozen = peakDims[i].isFrozen() ? 1 : 0;
             result.append(frozen).append(sep);
         }
-        result.append(String.valueOf(getVolume1())).append(sep);
-        result.append(String.valueOf(getVolume1Err())).append(sep);
-        result.append(String.valueOf(getIntensity())).append(sep);
-        result.append(String.valueOf(getIntensityErr())).append(sep);
-        result.append(String.valueOf(getType())).append(sep);
-        result.append(String.valueOf(getComment())).append(sep);
+        result.append(getVolume1()).append(sep);
+        result.append(getVolume1Err()).append(sep);
+        result.append(getIntensity()).append(sep);
+        result.append(getIntensityErr()).append(sep);
+        result.append(getType()).append(sep);
+        result.append(getComment()).append(sep);
         String colorString = colorArray == null ? "" : ColorUtil.toRGBCode(colorArray);
         result.append(colorString).append(sep);
         result.append(getFlag2()).append(sep);
-        result.append(String.valueOf(getStatus()));
+        result.append(getStatus());
 
-        return (result.toString().trim());
+        return trimRow(result, start);
     }
 
     public String toMeasureString(int index) {
-        StringBuilder result = new StringBuilder();
-        String sep = "\t";
-        result.append(String.valueOf(getIdNum())).append(sep);
-        String formatString = "%.5f";
+        return appendMeasureString(new StringBuilder(), index).toString().trim();
+    }
+
+    /**
+     * Append the .mpk2 row for this peak, with trailing white space removed
+     * as in toMeasureString.
+     *
+     * @param result the StringBuilder to append to
+     * @param index the index of the peak in the list
+     * @return the StringBuilder
+     */
+    public StringBuilder appendMeasureString(StringBuilder result, int index) {
+        int start = result.length();
+        char sep = '\t';
+        result.append(getIdNum()).append(sep);
+        int precision = 5;
 
         for (int i = 0; i < getNDim(); i++) {
             String label = peakDims[i].getLabel();
@@ -782,11 +826,21 @@ public class Peak implements Comparable, PeakOrMulti {
         if (measures.isPresent()) {
             double[][] values = measures.get();
             for (int i = 0; i < values[0].length; i++) {
-                result.append(String.format(formatString, values[0][i])).append(sep);
-                result.append(String.format(formatString, values[1][i])).append(sep);
+                Format.appendFixed(result, values[0][i], precision).append(sep);
+                Format.appendFixed(result, values[1][i], precision).append(sep);
             }
         }
-        return (result.toString().trim());
+        return trimRow(result, start);
+    }
+
+    // remove trailing white space from the row that starts at start (as String.trim does)
+    static StringBuilder trimRow(StringBuilder result, int start) {
+        int end = result.length();
+        while ((end > start) && (result.charAt(end - 1) <= ' ')) {
+            end--;
+        }
+        result.setLength(end);
+        return result;
     }
 
     public String toXMLString() {
@@ -897,7 +951,11 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public void setIdNum(int idNum) {
+        int oldIdNum = this.idNum;
         this.idNum = idNum;
+        if ((peakList != null) && (oldIdNum != idNum)) {
+            peakList.peakIDChanged(this, oldIdNum);
+        }
         peakUpdated(this);
     }
 
@@ -1258,6 +1316,7 @@ public class Peak implements Comparable, PeakOrMulti {
 
     public void setMeasures(double[][] values) {
         measures = Optional.of(values);
+        peakUpdated(this);
     }
 
     public Optional<double[][]> getMeasures() {
@@ -1348,8 +1407,11 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public String toSparkyString() {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        return appendSparkyString(new StringBuilder()).toString();
+    }
+
+    public StringBuilder appendSparkyString(StringBuilder result) {
+        char sep = ' ';
 //      ?-?-?  125.395   55.758    8.310      2164733.500
         result.append("   ");
         for (int i = 0; i < getNDim(); i++) {
@@ -1364,10 +1426,10 @@ public class Peak implements Comparable, PeakOrMulti {
         }
         result.append(sep);
         for (int i = 0; i < getNDim(); i++) {
-            result.append(String.format("%8.4f", peakDims[i].getChemShiftValue())).append(sep);
+            Format.appendFixed(result, peakDims[i].getChemShiftValue(), 8, 4).append(sep);
         }
-        result.append(String.format("%14.3f", 1.0e6 * getIntensity()));
-        return (result.toString());
+        Format.appendFixed(result, 1.0e6 * getIntensity(), 14, 3);
+        return result;
     }
 
     public double distance(Peak bPeak, double[] scale)
@@ -1509,23 +1571,7 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public List<Set<Peak>> getOverlapLayers(double scale) {
-        List<Set<Peak>> result = new ArrayList<>();
-        Set<Peak> firstLayer = getOverlappingPeaks(scale);
-        Set<Peak> secondLayer = new HashSet<>();
-        for (Peak peak : firstLayer) {
-            Set<Peak> overlaps = peak.getOverlappingPeaks(scale);
-            for (Peak peak2 : overlaps) {
-                if ((peak2 != this) && !firstLayer.contains(peak2)) {
-                    secondLayer.add(peak2);
-                }
-            }
-        }
-        Set<Peak> centerLayer = new HashSet<>();
-        centerLayer.add(this);
-        result.add(centerLayer);
-        result.add(firstLayer);
-        result.add(secondLayer);
-        return result;
+        return peakList.getOverlapGraph(scale).getOverlapLayers(this);
     }
 
     public Set<Peak> getOverlappingPeaks(Set<Peak> overlaps) {
@@ -1539,14 +1585,8 @@ public class Peak implements Comparable, PeakOrMulti {
     }
 
     public Set<Peak> getAllOverlappingPeaks() {
-        Set<Peak> overlaps = new HashSet<>();
-        overlaps.add(this);
-        int size = 0;
-        while (overlaps.size() > size) {
-            size = overlaps.size();
-            overlaps = getOverlappingPeaks(overlaps);
-        }
-        return overlaps;
+        PeakOverlapGraph overlapGraph = peakList.getOverlapGraph(1.0);
+        return overlapGraph.getComponent(this);
     }
 
     public Set<Peak> getOverlappingPeaks() {
@@ -44,12 +44,30 @@ public class PeakDim {
     private String user = "";
     private Peak myPeak = null;
     private Resonance resonance;
+    // position of this PeakDim in the peak dimension list of its resonance
+    int resonancePosition = -1;
     private boolean frozen = false;
     private boolean linksDrawn = false;  // used in drawing link lines
 
     public void peakDimUpdated() {
+        peakDimUpdated(PeakEvent.Type.MODIFIED);
+    }
+
+    /**
+     * Report a change of this peak dimension to the peak list
+     *
+     * @param type the kind of change (MOVED, RELABELLED or MODIFIED)
+     */
+    public void peakDimUpdated(PeakEvent.Type type) {
+        clearResonanceStats();
         if (myPeak != null) {
-            myPeak.peakUpdated(this);
+            myPeak.peakUpdated(this, type);
+        }
+    }
+
+    void clearResonanceStats() {
+        if (resonance instanceof SimpleResonance) {
+            ((SimpleResonance) resonance).clearStats();
         }
     }
 
@@ -89,6 +107,7 @@ public class PeakDim {
         targetPeakDim.decayRateError = decayRateError;
         targetPeakDim.error = error.clone();
         targetPeakDim.user = user;
+        targetPeakDim.clearResonanceStats();
     }
 
     public void restoreFrom(PeakDim peakDim) {
@@ -104,6 +123,7 @@ public class PeakDim {
         decayRateError = peakDim.decayRateError;
         error = peakDim.error.clone();
         user = peakDim.user;
+        peakDimUpdated();
     }
 
     public Multiplet getMultiplet() {
@@ -175,7 +195,7 @@ public class PeakDim {
             multiplet = new Multiplet(this);
         }
 
-        peakDimUpdated();
+        peakDimUpdated(PeakEvent.Type.RELABELLED);
     }
 
     public void remove() {
@@ -187,40 +207,48 @@ public class PeakDim {
     public void setResonance(long resID) {
         remove();
         resonance = PeakList.resFactory().get(resID);
+        PeakLabelIndex.labelsChanged();
     }
 
     public void setResonance(Resonance newResonance) {
         resonance = newResonance;
+        PeakLabelIndex.labelsChanged();
     }
 
     public String toSTAR3LoopAssignedPeakChemShiftString(int iContrib, long resID) {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        return appendSTAR3LoopAssignedPeakChemShiftString(new StringBuilder(), iContrib, resID).toString();
+    }
+
+    public StringBuilder appendSTAR3LoopAssignedPeakChemShiftString(StringBuilder result, int iContrib, long resID) {
+        char sep = ' ';
         result.append(getPeak().getIdNum()).append(sep);
         result.append(sep);
         result.append((spectralDim + 1));
         result.append(sep);
-        result.append(STAR3.valueOf(getChemShift()));
+        STAR3.appendValue(result, getChemShift());
         result.append(sep);
         result.append(resID);
         result.append(sep);
         result.append(getPeak().peakList.getId());
-        return result.toString();
+        return result;
     }
 
     public String toSTAR3LoopPeakCharString(int contributionID) {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
+        return appendSTAR3LoopPeakCharString(new StringBuilder(), contributionID).toString();
+    }
+
+    public StringBuilder appendSTAR3LoopPeakCharString(StringBuilder result, int contributionID) {
+        char sep = ' ';
         char stringQuote = '"';
         result.append(getPeak().getIdNum()).append(sep);
         result.append(contributionID);
         result.append(sep);
         result.append((spectralDim + 1));
         result.append(sep);
-        result.append(STAR3.valueOf(getChemShift())).append(sep);
-        result.append(STAR3.valueOf(getChemShiftError())).append(sep);
-        result.append(STAR3.valueOf(getBounds())).append(sep);
-        result.append(STAR3.valueOf(getBoundsError())).append(sep);
+        STAR3.appendValue(result, getChemShift()).append(sep);
+        STAR3.appendValue(result, getChemShiftError()).append(sep);
+        STAR3.appendValue(result, getBounds()).append(sep);
+        STAR3.appendValue(result, getBoundsError()).append(sep);
         SpectralDim sDim = getPeak().peakList.getSpectralDim(spectralDim);
         Float lw = getLineWidth();
         if (lw == null) {
@@ -230,13 +258,13 @@ public class PeakDim {
             result.append(lwf);
         }
         result.append(sep);
-        result.append(STAR3.valueOf(getLineWidthError())).append(sep);
-        result.append(STAR3.valueOf(getPhase())).append(sep);
-        result.append(STAR3.valueOf(getPhaseError())).append(sep);
-        result.append(STAR3.valueOf(getDecayRate())).append(sep);
-        result.append(STAR3.valueOf(getDecayRateError())).append(sep);
+        STAR3.appendValue(result, getLineWidthError()).append(sep);
+        STAR3.appendValue(result, getPhase()).append(sep);
+        STAR3.appendValue(result, getPhaseError()).append(sep);
+        STAR3.appendValue(result, getDecayRate()).append(sep);
+        STAR3.appendValue(result, getDecayRateError()).append(sep);
         result.append(0).append(sep); // fixme derivation method
-        result.append(getError()[0]).append("").append(getError()[1]);
+        result.append(error[0]).append(error[1]);
         result.append(sep);
         result.append(stringQuote);
         result.append(getUser()); // fixme only quote if more than one
@@ -259,7 +287,7 @@ public class PeakDim {
         result.append(sep);
         result.append(isFrozen() ? "1" : "0");
 
-        return result.toString();
+        return result;
     }
 
     /*
@@ -394,11 +422,14 @@ public class PeakDim {
     }
 
     public String toNEFString(int contributionID) {
-        StringBuilder result = new StringBuilder();
-        String sep = " ";
-        result.append(STAR3.valueOf(getChemShift())).append(sep);
-        result.append(STAR3.valueOf(getChemShiftError())).append(sep);
-        return result.toString();
+        return appendNEFString(new StringBuilder(), contributionID).toString();
+    }
+
+    public StringBuilder appendNEFString(StringBuilder result, int contributionID) {
+        char sep = ' ';
+        STAR3.appendValue(result, getChemShift()).append(sep);
+        STAR3.appendValue(result, getChemShiftError()).append(sep);
+        return result;
     }
 
     public void setFrozen(boolean state) {
@@ -451,7 +482,7 @@ public class PeakDim {
         if (myPeak.peakList.isSlideable() && !frozen) {
             slideDims();
         }
-        peakDimUpdated();
+        peakDimUpdated(PeakEvent.Type.MOVED);
     }
 
     public void setChemShift(Float value) {
@@ -459,7 +490,7 @@ public class PeakDim {
         if (myPeak.peakList.isSlideable() && !frozen) {
             slideDims();
         }
-        peakDimUpdated();
+        peakDimUpdated(PeakEvent.Type.MOVED);
     }
 
     public void setChemShiftValue(float ctr) {
@@ -471,7 +502,7 @@ public class PeakDim {
         if (myPeak.getFlag(5)) {
             //fixme setMultipletComponentValues();
         }
-        peakDimUpdated();
+        peakDimUpdated(PeakEvent.Type.MOVED);
     }
 
     public void setChemShiftErrorValue(float value) {
@@ -731,7 +762,7 @@ public class PeakDim {
 
     public void setLabel(List<String> labelArgs) {
         resonance.setName(labelArgs);
-        peakDimUpdated();
+        peakDimUpdated(PeakEvent.Type.RELABELLED);
     }
 
     public char[] getError() {
@@ -903,7 +934,7 @@ public class PeakDim {
                 if (!peakDim.myPeak.peakList.requireSliderCondition() || peakDim.myPeak.peakList.getSampleConditionLabel().equals(condition)) {
                     // use field so we don't fire recursive slideDims
                     peakDim.chemShift = chemShift;
-                    peakDim.peakDimUpdated();
+                    peakDim.peakDimUpdated(PeakEvent.Type.MOVED);
                 }
             }
         }
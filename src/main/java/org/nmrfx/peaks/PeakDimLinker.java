@@ -0,0 +1,164 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Links many pairs of peak dimensions at once. Links are first recorded in
+ * a union-find structure over the peak dimensions (with path compression
+ * and union by size), which costs almost nothing per link. apply() then
+ * merges the resonances of each connected group once, into the resonance
+ * of the first peak dimension of the group that was added, which gives
+ * the same result as calling PeakList.linkPeakDims for each pair.
+ *
+ * @author brucejohnson
+ */
+public class PeakDimLinker {
+
+    final Map<PeakDim, Integer> indices = new IdentityHashMap<>();
+    final List<PeakDim> peakDims = new ArrayList<>();
+    int[] parents = new int[64];
+    int[] sizes = new int[64];
+
+    public PeakDimLinker() {
+    }
+
+    private int index(PeakDim peakDim) {
+        Integer index = indices.get(peakDim);
+        if (index == null) {
+            index = peakDims.size();
+            if (index == parents.length) {
+                parents = Arrays.copyOf(parents, index * 2);
+                sizes = Arrays.copyOf(sizes, index * 2);
+            }
+            parents[index] = index;
+            sizes[index] = 1;
+            indices.put(peakDim, index);
+            peakDims.add(peakDim);
+        }
+        return index;
+    }
+
+    private int find(int i) {
+        int root = i;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[i] != root) {
+            int next = parents[i];
+            parents[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
+    /**
+     * Record a link between two peak dimensions. The resonances aren't
+     * changed until apply() is called.
+     *
+     * @param peakDimA the first peak dimension
+     * @param peakDimB the second peak dimension
+     */
+    public void link(PeakDim peakDimA, PeakDim peakDimB) {
+        int rootA = find(index(peakDimA));
+        int rootB = find(index(peakDimB));
+        if (rootA != rootB) {
+            if (sizes[rootA] < sizes[rootB]) {
+                int hold = rootA;
+                rootA = rootB;
+                rootB = hold;
+            }
+            parents[rootB] = rootA;
+            sizes[rootA] += sizes[rootB];
+        }
+    }
+
+    /**
+     * Record links between the first peak dimension in a list and each of
+     * the others.
+     *
+     * @param linkedPeakDims the peak dimensions to link
+     */
+    public void link(List<PeakDim> linkedPeakDims) {
+        if (!linkedPeakDims.isEmpty()) {
+            PeakDim firstPeakDim = linkedPeakDims.get(0);
+            index(firstPeakDim);
+            for (PeakDim peakDim : linkedPeakDims) {
+                if (peakDim != firstPeakDim) {
+                    link(firstPeakDim, peakDim);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of peak dimensions that have been linked
+     */
+    public int size() {
+        return peakDims.size();
+    }
+
+    /**
+     * Merge the resonances of each group of linked peak dimensions and clear
+     * the recorded links.
+     */
+    public void apply() {
+        int n = peakDims.size();
+        int[] groupStarts = new int[n + 1];
+        int[] roots = new int[n];
+        for (int i = 0; i < n; i++) {
+            roots[i] = find(i);
+            groupStarts[roots[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            groupStarts[i + 1] += groupStarts[i];
+        }
+        // members of each group in the order they were added
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(groupStarts, n);
+        for (int i = 0; i < n; i++) {
+            members[fill[roots[i]]++] = i;
+        }
+        // process groups in the order of their first peak dimension
+        for (int i = 0; i < n; i++) {
+            int root = roots[i];
+            int start = groupStarts[root];
+            int end = groupStarts[root + 1];
+            if ((members[start] != i) || ((end - start) < 2)) {
+                continue;
+            }
+            Resonance resonance = peakDims.get(members[start]).getResonance();
+            for (int j = start + 1; j < end; j++) {
+                Resonance resonanceB = peakDims.get(members[j]).getResonance();
+                if (resonanceB != resonance) {
+                    Resonance.merge(resonance, resonanceB);
+                }
+            }
+            for (int j = start; j < end; j++) {
+                peakDims.get(members[j]).peakDimUpdated(PeakEvent.Type.RELABELLED);
+            }
+        }
+        indices.clear();
+        peakDims.clear();
+    }
+}
@@ -26,7 +26,13 @@
  */
 package org.nmrfx.peaks;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.EventObject;
+import java.util.List;
+import java.util.Set;
 
 /**
  *
@@ -34,12 +40,98 @@ import java.util.EventObject;
  */
 public class PeakEvent extends EventObject {
 
+    /**
+     * The kinds of change an event can describe. LIST_CHANGED means the
+     * change can't be limited to specific peaks (sorting, renumbering,
+     * removal of peaks etc.) and listeners should treat the whole list as
+     * changed.
+     */
+    public enum Type {
+        ADDED,
+        REMOVED,
+        MOVED,
+        RELABELLED,
+        MODIFIED,
+        LIST_CHANGED;
+    }
+
+    final Set<Type> types;
+    final List<Peak> peaks;
+    final List<PeakDim> peakDims;
+
     /**
      * Creates a new instance of PeakEvent
      * @param object event object
      */
     public PeakEvent(Object object) {
+        this(object, EnumSet.of(Type.LIST_CHANGED), Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Creates a new instance of PeakEvent for a change limited to specific
+     * peaks.
+     *
+     * @param object event object
+     * @param peaks the peaks that changed
+     */
+    public PeakEvent(Object object, Collection<Peak> peaks) {
+        this(object, EnumSet.of(Type.MODIFIED), peaks, Collections.emptyList());
+    }
+
+    /**
+     * Creates a new instance of PeakEvent that combines one or more changes.
+     *
+     * @param object event object
+     * @param types the kinds of change
+     * @param peaks the peaks that changed, empty if the change affects the
+     * whole source
+     * @param peakDims the peak dimensions that were moved or relabelled
+     */
+    public PeakEvent(Object object, Set<Type> types, Collection<Peak> peaks, Collection<PeakDim> peakDims) {
         super(object);
+        this.types = types.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(types));
+        this.peaks = peaks.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(peaks));
+        this.peakDims = peakDims.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(peakDims));
+    }
+
+    /**
+     * @return the kinds of change described by this event
+     */
+    public Set<Type> getTypes() {
+        return types;
+    }
 
+    /**
+     * @param type the kind of change
+     * @return true if the event includes a change of the specified type
+     */
+    public boolean hasType(Type type) {
+        return types.contains(type);
+    }
+
+    /**
+     * Get the peaks that changed. If empty the change may affect any peak of
+     * the source.
+     *
+     * @return the changed peaks
+     */
+    public List<Peak> getPeaks() {
+        return peaks;
+    }
+
+    /**
+     * Get the peak dimensions whose position or label changed.
+     *
+     * @return the changed peak dimensions
+     */
+    public List<PeakDim> getPeakDims() {
+        return peakDims;
+    }
+
+    /**
+     * @return true if the event is limited to a set of peaks
+     */
+    public boolean hasPeaks() {
+        return !peaks.isEmpty();
     }
 }
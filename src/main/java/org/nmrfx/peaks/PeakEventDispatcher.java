@@ -0,0 +1,95 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.nmrfx.utilities.Updater;
+
+/**
+ * Updater that coalesces the changes to a peak list. The first change after
+ * a notification schedules a call of PeakList.notifyListeners after the
+ * interval; changes made before it runs are merged into the same event, so
+ * listeners receive at most one event per interval however many peaks are
+ * edited. Notifications for all lists are delivered, in order, on a single
+ * daemon thread.
+ *
+ * @author brucejohnson
+ */
+public class PeakEventDispatcher implements Updater {
+
+    static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PeakEventDispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final PeakList peakList;
+    final long interval;
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+    volatile boolean active = true;
+
+    /**
+     * Create a dispatcher for a peak list. Use register to also install it
+     * as the updater of the list.
+     *
+     * @param peakList the peak list
+     * @param interval the interval (in milliseconds) over which changes are
+     * merged
+     */
+    public PeakEventDispatcher(PeakList peakList, long interval) {
+        this.peakList = peakList;
+        this.interval = interval;
+    }
+
+    /**
+     * Create a dispatcher and register it as the updater of the peak list.
+     *
+     * @param peakList the peak list
+     * @param interval the interval (in milliseconds) over which changes are
+     * merged
+     * @return the dispatcher
+     */
+    public static PeakEventDispatcher register(PeakList peakList, long interval) {
+        PeakEventDispatcher dispatcher = new PeakEventDispatcher(peakList, interval);
+        peakList.registerUpdater(dispatcher);
+        return dispatcher;
+    }
+
+    @Override
+    public void update() {
+        if (active && scheduled.compareAndSet(false, true)) {
+            EXECUTOR.schedule(this::dispatch, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void dispatch() {
+        // clear first so changes made while listeners run schedule a new event
+        scheduled.set(false);
+        if (active) {
+            peakList.notifyListeners();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        active = false;
+    }
+}
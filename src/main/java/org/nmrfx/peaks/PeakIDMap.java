@@ -0,0 +1,175 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.Arrays;
+
+/**
+ * Map from peak id number to Peak. Keys are stored in a primitive int array
+ * with open addressing (linear probing), so lookups don't box the id.
+ *
+ * @author brucejohnson
+ */
+public class PeakIDMap {
+
+    static final int MIN_CAPACITY = 16;
+
+    int[] keys;
+    Peak[] values;
+    int size = 0;
+    int mask;
+
+    public PeakIDMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Peak[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param key the peak id number
+     * @return the peak with the id or null if there is none
+     */
+    public Peak get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /**
+     * Store a peak with the specified id, replacing any existing peak with
+     * the same id.
+     *
+     * @param key the peak id number
+     * @param peak the peak (not null)
+     * @return the peak previously stored with the id or null
+     */
+    public Peak put(int key, Peak peak) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                Peak previous = values[slot];
+                values[slot] = peak;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = peak;
+        size++;
+        return null;
+    }
+
+    /**
+     * Remove the peak stored with the specified id.
+     *
+     * @param key the peak id number
+     * @return the removed peak or null if there was none
+     */
+    public Peak remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        Peak previous = values[slot];
+        // shift later entries of the probe sequence back into the gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Peak[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Remove all entries. Storage is kept unless it is much larger than
+     * needed for the previous contents.
+     */
+    public void clear() {
+        if (keys.length > Math.max(MIN_CAPACITY, size * 8)) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(values, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Make room for the specified number of entries without rehashing.
+     *
+     * @param n the number of entries
+     */
+    public void ensureCapacity(int n) {
+        int capacity = keys.length;
+        while (capacity < n * 2) {
+            capacity *= 2;
+        }
+        if (capacity != keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
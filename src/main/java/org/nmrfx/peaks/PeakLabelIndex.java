@@ -0,0 +1,311 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.nmrfx.utilities.GlobPattern;
+
+/**
+ * Index of the (upper case) labels of the peaks in a PeakList, used by
+ * PeakList.matchPeaks. Each distinct label is stored once, in sorted order
+ * and in sorted order of the reversed label, with, for each dimension, the
+ * positions of the peaks that have that label. A pattern is compiled once
+ * and, when it starts with literal characters (a residue, like "12.*") or
+ * ends with them (an atom, like "*.HN"), only the labels in the matching
+ * range of the sorted labels are tested. Peaks are then found from the
+ * matching labels, so a query costs roughly the number of matching labels
+ * and peaks rather than the size of the list.
+ *
+ * Labels come from the resonances of the peak dimensions and can change
+ * without the list being modified (for example through a linked peak in
+ * another list), so a global count of label changes is kept and the index
+ * is checked against the peaks whenever that count or the list has
+ * changed. It is rebuilt only if a peak or label actually differs.
+ *
+ * @author brucejohnson
+ */
+public class PeakLabelIndex {
+
+    static final AtomicInteger labelChanges = new AtomicInteger();
+
+    int modCount;
+    int labelVersion;
+    final int nDim;
+    final int nPeaks;
+    final Peak[] peaks;
+    final String[][] rawLabels;
+    final int[][] labelIds;
+    final String[] labels;
+    final String[] reversedLabels;
+    final int[] reversedIds;
+    final int[][] postingStarts;
+    final int[][] postings;
+
+    PeakLabelIndex(PeakList peakList, int modCount) {
+        this.labelVersion = labelChanges.get();
+        this.modCount = modCount;
+        nDim = peakList.getNDim();
+        List<Peak> peakArray = peakList.peaks();
+        nPeaks = peakArray.size();
+        peaks = peakArray.toArray(new Peak[nPeaks]);
+        rawLabels = new String[nDim][nPeaks];
+        labelIds = new int[nDim][nPeaks];
+
+        Map<String, Integer> labelMap = new HashMap<>();
+        List<String> labelList = new ArrayList<>();
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            for (int i = 0; i < nPeaks; i++) {
+                String label = peaks[i].peakDims[iDim].getLabel();
+                rawLabels[iDim][i] = label;
+                String upper = label.toUpperCase();
+                Integer id = labelMap.get(upper);
+                if (id == null) {
+                    id = labelList.size();
+                    labelMap.put(upper, id);
+                    labelList.add(upper);
+                }
+                labelIds[iDim][i] = id;
+            }
+        }
+        int nLabels = labelList.size();
+        labels = labelList.toArray(new String[nLabels]);
+        Arrays.sort(labels);
+        int[] sortedIds = new int[nLabels];
+        for (int i = 0; i < nLabels; i++) {
+            sortedIds[labelMap.get(labels[i])] = i;
+        }
+
+        postingStarts = new int[nDim][nLabels + 1];
+        postings = new int[nDim][nPeaks];
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            int[] ids = labelIds[iDim];
+            int[] starts = postingStarts[iDim];
+            for (int i = 0; i < nPeaks; i++) {
+                ids[i] = sortedIds[ids[i]];
+                starts[ids[i] + 1]++;
+            }
+            for (int i = 0; i < nLabels; i++) {
+                starts[i + 1] += starts[i];
+            }
+            int[] fill = Arrays.copyOf(starts, nLabels);
+            for (int i = 0; i < nPeaks; i++) {
+                postings[iDim][fill[ids[i]]++] = i;
+            }
+        }
+
+        String[][] reversed = new String[nLabels][];
+        for (int i = 0; i < nLabels; i++) {
+            reversed[i] = new String[]{new StringBuilder(labels[i]).reverse().toString(), labels[i]};
+        }
+        Arrays.sort(reversed, (a, b) -> a[0].compareTo(b[0]));
+        reversedLabels = new String[nLabels];
+        reversedIds = new int[nLabels];
+        for (int i = 0; i < nLabels; i++) {
+            reversedLabels[i] = reversed[i][0];
+            reversedIds[i] = Arrays.binarySearch(labels, reversed[i][1]);
+        }
+    }
+
+    /**
+     * Check whether the index still describes the peaks and labels of the
+     * list.
+     *
+     * @param peakList the list the index was built for
+     * @return true if the index is current
+     */
+    boolean isCurrent(PeakList peakList) {
+        int version = labelChanges.get();
+        if ((modCount == peakList.modCount) && (labelVersion == version)) {
+            return true;
+        }
+        List<Peak> peakArray = peakList.peaks();
+        if (peakArray.size() != nPeaks) {
+            return false;
+        }
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakArray.get(i);
+            if (peak != peaks[i]) {
+                return false;
+            }
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                if (!peak.peakDims[iDim].getLabel().equals(rawLabels[iDim][i])) {
+                    return false;
+                }
+            }
+        }
+        modCount = peakList.modCount;
+        labelVersion = version;
+        return true;
+    }
+
+    /**
+     * Record that a label may have changed, so indexes are checked before
+     * they are next used.
+     */
+    static void labelsChanged() {
+        labelChanges.incrementAndGet();
+    }
+
+    /**
+     * Find the peaks whose labels match a set of patterns. See
+     * PeakList.matchPeaks.
+     *
+     * @param matchStrings the patterns, one per dimension if useOrder is true
+     * @param useRegExp true if the patterns are regular expressions (found
+     * anywhere in the label), otherwise they are Util.stringMatch patterns
+     * @param useOrder true if pattern k must match dimension k, otherwise
+     * each pattern can match any dimension
+     * @return the matching peaks (excluding deleted peaks) in list order
+     */
+    public List<Peak> match(final String[] matchStrings, final boolean useRegExp, final boolean useOrder) {
+        int nPatterns = matchStrings.length;
+        List<Peak> result = new ArrayList<>();
+        if ((nPatterns == 0) || (useOrder && (nPatterns > nDim))) {
+            return result;
+        }
+        int[][] matched = new int[nPatterns][];
+        int driver = 0;
+        int minCount = Integer.MAX_VALUE;
+        for (int k = 0; k < nPatterns; k++) {
+            String matchString = matchStrings[k].toUpperCase().trim();
+            matched[k] = useRegExp ? matchRegExp(Pattern.compile(matchString))
+                    : matchGlob(GlobPattern.compile(matchString));
+            int count = 0;
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                if (!useOrder || (iDim == k)) {
+                    for (int id : matched[k]) {
+                        count += postingStarts[iDim][id + 1] - postingStarts[iDim][id];
+                    }
+                }
+            }
+            if (count < minCount) {
+                minCount = count;
+                driver = k;
+            }
+        }
+        if (minCount == 0) {
+            return result;
+        }
+
+        int[] candidates = new int[minCount];
+        int nCandidates = 0;
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            if (!useOrder || (iDim == driver)) {
+                for (int id : matched[driver]) {
+                    for (int j = postingStarts[iDim][id]; j < postingStarts[iDim][id + 1]; j++) {
+                        candidates[nCandidates++] = postings[iDim][j];
+                    }
+                }
+            }
+        }
+        Arrays.sort(candidates);
+        int last = -1;
+        for (int i : candidates) {
+            if ((i == last) || (peaks[i].getStatus() < 0)) {
+                continue;
+            }
+            last = i;
+            boolean ok = true;
+            for (int k = 0; ok && (k < nPatterns); k++) {
+                if (k != driver) {
+                    ok = useOrder ? hasLabel(matched[k], k, i) : hasLabel(matched[k], i);
+                }
+            }
+            if (ok) {
+                result.add(peaks[i]);
+            }
+        }
+        return result;
+    }
+
+    private boolean hasLabel(int[] ids, int iDim, int i) {
+        return Arrays.binarySearch(ids, labelIds[iDim][i]) >= 0;
+    }
+
+    private boolean hasLabel(int[] ids, int i) {
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            if (hasLabel(ids, iDim, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] matchRegExp(Pattern pattern) {
+        int[] ids = new int[16];
+        int n = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (pattern.matcher(labels[i]).find()) {
+                ids = add(ids, n++, i);
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    private int[] matchGlob(GlobPattern pattern) {
+        String prefix = pattern.getLiteralPrefix();
+        String suffix = pattern.getLiteralSuffix();
+        int[] ids = new int[16];
+        int n = 0;
+        if ((prefix.length() > 0) || (suffix.length() == 0)) {
+            int start = prefix.length() > 0 ? lowerBound(labels, prefix) : 0;
+            for (int i = start; i < labels.length; i++) {
+                String label = labels[i];
+                if (!label.startsWith(prefix)) {
+                    break;
+                }
+                if (pattern.matches(label)) {
+                    ids = add(ids, n++, i);
+                }
+            }
+        } else {
+            String reversedSuffix = new StringBuilder(suffix).reverse().toString();
+            int start = lowerBound(reversedLabels, reversedSuffix);
+            for (int i = start; i < reversedLabels.length; i++) {
+                if (!reversedLabels[i].startsWith(reversedSuffix)) {
+                    break;
+                }
+                int id = reversedIds[i];
+                if (pattern.matches(labels[id])) {
+                    ids = add(ids, n++, id);
+                }
+            }
+            Arrays.sort(ids, 0, n);
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    private static int[] add(int[] values, int n, int value) {
+        if (n == values.length) {
+            values = Arrays.copyOf(values, n * 2);
+        }
+        values[n] = value;
+        return values;
+    }
+
+    private static int lowerBound(String[] values, String key) {
+        int index = Arrays.binarySearch(values, key);
+        return index >= 0 ? index : -(index + 1);
+    }
+}
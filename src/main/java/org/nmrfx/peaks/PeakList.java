@@ -3,18 +3,16 @@ package org.nmrfx.peaks;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.math3.exception.MaxCountExceededException;
 import org.nmrfx.datasets.DatasetBase;
 import org.nmrfx.datasets.Nuclei;
 import org.nmrfx.math.Clusters;
 import org.nmrfx.project.ProjectBase;
-import org.nmrfx.utilities.Util;
 
 import static java.lang.Double.compare;
 import static java.util.Comparator.comparing;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.nmrfx.utilities.Updater;
@@ -41,17 +39,33 @@ public class PeakList {
     protected String sampleLabel = "";
     protected String sampleConditionLabel = "";
     protected List<Peak> peaks;
-    protected final Map<Integer, Peak> indexMap = new HashMap<>();
+    protected final PeakIDMap indexMap = new PeakIDMap();
+    boolean indexValid = false;
     boolean slideable = false;
     boolean requireSliderCondition = false;
     static boolean globalRequireSliderCondition = false;
     protected List<SearchDim> searchDims = new ArrayList<>();
     Optional<Measures> measures = Optional.empty();
     Map<String, String> properties = new HashMap<>();
-    List<PeakListener> listeners = new ArrayList<>();
+    List<PeakListener> listeners = new CopyOnWriteArrayList<>();
     protected boolean changed = false;
     public AtomicBoolean thisListUpdated = new AtomicBoolean(false);
     Updater updater = null;
+    int modCount = 0;
+    PeakListColumns columns = null;
+    PeakListStats stats = null;
+    // views sorted by shift, keyed by 2 * dimension (+ 1 if descending)
+    final Map<Integer, SortedPeakView> sortedViews = new HashMap<>();
+    PeakLabelIndex labelIndex = null;
+    PeakOverlapGraph overlapGraph = null;
+    static final int MAX_CHANGED_PEAKS = 1024;
+    final Set<Peak> changedPeaks = new LinkedHashSet<>();
+    final Set<PeakDim> changedPeakDims = new LinkedHashSet<>();
+    final Set<PeakEvent.Type> changeTypes = EnumSet.noneOf(PeakEvent.Type.class);
+    boolean structureChanged = false;
+    // nesting depth of beginUpdate/endUpdate and whether an update was held back
+    int updateDepth = 0;
+    boolean updatePending = false;
 
     /**
      *
@@ -75,6 +89,7 @@ public class PeakList {
 
         peaks = new ArrayList<>();
         indexMap.clear();
+        indexValid = false;
         ProjectBase.getActive().addPeakList(this, listName);
         if (listNum == null) {
             listNum = 1;
@@ -251,8 +266,8 @@ public class PeakList {
 
         Resonance.merge(resonanceA, resonanceB);
 
-        peakDimA.peakDimUpdated();
-        peakDimB.peakDimUpdated();
+        peakDimA.peakDimUpdated(PeakEvent.Type.RELABELLED);
+        peakDimB.peakDimUpdated(PeakEvent.Type.RELABELLED);
     }
 
     /**
@@ -267,8 +282,8 @@ public class PeakList {
         Resonance.merge(resonanceA, resonanceB);
 
         Multiplet.merge(peakDimA, peakDimB);
-        peakDimA.peakDimUpdated();
-        peakDimB.peakDimUpdated();
+        peakDimA.peakDimUpdated(PeakEvent.Type.RELABELLED);
+        peakDimB.peakDimUpdated(PeakEvent.Type.RELABELLED);
     }
 
     /**
@@ -345,6 +360,15 @@ public class PeakList {
      */
     public static int clusterPeaks(List<PeakList> peakLists)
             throws IllegalArgumentException {
+        peakLists.forEach(PeakList::beginUpdate);
+        try {
+            return clusterPeaksInBatch(peakLists);
+        } finally {
+            peakLists.forEach(PeakList::endUpdate);
+        }
+    }
+
+    private static int clusterPeaksInBatch(List<PeakList> peakLists) {
         Clusters clusters = new Clusters();
         List<Peak> clustPeaks = new ArrayList<>();
         double[] tol = null;
@@ -409,7 +433,7 @@ public class PeakList {
             iList++;
             firstList = false;
         }
-        clusters.doCluster(fDim, tol);
+        clusters.doIndexedCluster(fDim, tol);
         clusters.testDuplicates();
 
         int nClusters = 0;
@@ -497,9 +521,28 @@ public class PeakList {
         }
     }
 
+    /**
+     * Notify listeners that the list has changed. All changes since the last
+     * notification are merged into one event. If they were only to individual
+     * peaks the event lists those peaks (and the dimensions that were moved
+     * or relabelled), otherwise the event applies to the whole list.
+     */
     public void notifyListeners() {
+        PeakEvent peakEvent;
+        synchronized (changedPeaks) {
+            if (structureChanged || changedPeaks.isEmpty()) {
+                changeTypes.add(PeakEvent.Type.LIST_CHANGED);
+                peakEvent = new PeakEvent(this, changeTypes, Collections.emptyList(), Collections.emptyList());
+            } else {
+                peakEvent = new PeakEvent(this, changeTypes, changedPeaks, changedPeakDims);
+            }
+            changedPeaks.clear();
+            changedPeakDims.clear();
+            changeTypes.clear();
+            structureChanged = false;
+        }
         for (PeakListener listener : listeners) {
-            listener.peakListChanged(new PeakEvent(this));
+            listener.peakListChanged(peakEvent);
         }
     }
 
@@ -511,6 +554,73 @@ public class PeakList {
         this.updater = null;
     }
 
+    /**
+     * Start a batch of changes. The updater isn't called until the matching
+     * endUpdate, so a bulk edit produces a single merged event rather than
+     * one per peak. Calls may be nested.
+     */
+    public void beginUpdate() {
+        synchronized (changedPeaks) {
+            updateDepth++;
+        }
+    }
+
+    /**
+     * End a batch of changes started with beginUpdate. At the end of the
+     * outermost batch the sorted views are sorted again if peaks moved and
+     * the updater is called if anything changed.
+     */
+    public void endUpdate() {
+        boolean outermost;
+        boolean update;
+        synchronized (changedPeaks) {
+            if (updateDepth == 0) {
+                throw new IllegalStateException("endUpdate without beginUpdate");
+            }
+            updateDepth--;
+            outermost = updateDepth == 0;
+            update = outermost && updatePending;
+            if (update) {
+                updatePending = false;
+            }
+        }
+        if (outermost) {
+            resortSortedViews();
+        }
+        if (update && (updater != null)) {
+            updater.update();
+        }
+    }
+
+    /**
+     * Run an action as a single batch of changes to this list.
+     *
+     * @param action the action
+     */
+    public void batchUpdate(Runnable action) {
+        beginUpdate();
+        try {
+            action.run();
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Run an action as a single batch of changes to each of the lists.
+     *
+     * @param peakLists the peak lists changed by the action
+     * @param action the action
+     */
+    public static void batchUpdate(Collection<? extends PeakList> peakLists, Runnable action) {
+        peakLists.forEach(PeakList::beginUpdate);
+        try {
+            action.run();
+        } finally {
+            peakLists.forEach(PeakList::endUpdate);
+        }
+    }
+
     /**
      * Copies an existing peak list.
      *
@@ -629,17 +739,229 @@ public class PeakList {
     }
 
     public void peakListUpdated(Object object) {
+        boolean peakChange = (object instanceof Peak) || (object instanceof PeakDim);
+        peakListUpdated(object, peakChange ? PeakEvent.Type.MODIFIED : PeakEvent.Type.LIST_CHANGED);
+    }
+
+    /**
+     * Record a change to the list and call the updater (unless a batch of
+     * changes is in progress).
+     *
+     * @param object the changed Peak or PeakDim, or this list
+     * @param type the kind of change
+     */
+    public void peakListUpdated(Object object, PeakEvent.Type type) {
         changed = true;
-        if (updater != null) {
+        modCount++;
+        boolean update;
+        synchronized (changedPeaks) {
+            recordChange(object, type);
+            update = updateDepth == 0;
+            if (!update) {
+                updatePending = true;
+            }
+        }
+        updateSortedViews(object, type, !update);
+        if (update && (updater != null)) {
             updater.update();
         }
     }
 
+    private void recordChange(Object object, PeakEvent.Type type) {
+        changeTypes.add(type);
+        if (structureChanged) {
+            return;
+        }
+        PeakDim peakDim = (object instanceof PeakDim) ? (PeakDim) object : null;
+        Peak peak = peakDim != null ? peakDim.getPeak() : (object instanceof Peak) ? (Peak) object : null;
+        // removals change the index of the remaining peaks so apply to the whole list
+        boolean peakChange = (peak != null) && (type != PeakEvent.Type.REMOVED) && (type != PeakEvent.Type.LIST_CHANGED);
+        if (peakChange && (changedPeaks.size() < MAX_CHANGED_PEAKS)) {
+            changedPeaks.add(peak);
+            if ((peakDim != null) && ((type == PeakEvent.Type.MOVED) || (type == PeakEvent.Type.RELABELLED))) {
+                changedPeakDims.add(peakDim);
+            }
+        } else {
+            structureChanged = true;
+            changedPeaks.clear();
+            changedPeakDims.clear();
+        }
+    }
+
     /**
      *
      */
     public void clearIndex() {
         indexMap.clear();
+        indexValid = false;
+        markStructureChanged();
+    }
+
+    private void markStructureChanged() {
+        modCount++;
+        synchronized (changedPeaks) {
+            recordChange(this, PeakEvent.Type.LIST_CHANGED);
+        }
+    }
+
+    /**
+     * Add a peak that has just been appended to the list to the index, if
+     * the index is current, so adding peaks doesn't force a rebuild.
+     */
+    private void indexNewPeak(Peak newPeak) {
+        if (indexValid) {
+            newPeak.setIndex(peaks.size() - 1);
+            indexMap.put(newPeak.getIdNum(), newPeak);
+        }
+        modCount++;
+        synchronized (changedPeaks) {
+            recordChange(newPeak, PeakEvent.Type.ADDED);
+        }
+    }
+
+    /**
+     * Update the index after the id number of a peak in this list changes.
+     *
+     * @param peak the peak
+     * @param oldIdNum the previous id number of the peak
+     */
+    void peakIDChanged(Peak peak, int oldIdNum) {
+        if (indexValid) {
+            int index = peak.getIndex();
+            if ((index >= 0) && (index < peaks.size()) && (peaks.get(index) == peak)) {
+                if (indexMap.get(oldIdNum) == peak) {
+                    indexMap.remove(oldIdNum);
+                }
+                indexMap.put(peak.getIdNum(), peak);
+            }
+        }
+    }
+
+    /**
+     * Get a columnar copy of the numeric peak values of this list. The
+     * columns are cached and rebuilt only if the list has been modified since
+     * they were last built.
+     *
+     * @return the columns
+     */
+    public PeakListColumns getColumns() {
+        PeakListColumns current = columns;
+        if ((current == null) || (current.modCount != modCount)
+                || (current.nPeaks != peaks.size())) {
+            current = new PeakListColumns(this, modCount);
+            columns = current;
+        }
+        return current;
+    }
+
+    /**
+     * Discard the cached columns and statistics after a change to a spectral
+     * dimension parameter that they use (the spectrometer frequency, for
+     * widths in Hz).
+     */
+    void spectralDimChanged() {
+        columns = null;
+        stats = null;
+    }
+
+    /**
+     * Get a read-only view of the peaks of this list sorted by chemical
+     * shift, without changing the order of the list. The view is cached; it
+     * is kept current as the shifts of individual peaks change and is rebuilt
+     * after other changes to the list.
+     *
+     * @param iDim the dimension to sort by
+     * @param ascending true for ascending order, false for descending
+     * @return the sorted view
+     */
+    public SortedPeakView getSortedPeaks(int iDim, boolean ascending) {
+        if ((iDim < 0) || (iDim >= nDim)) {
+            throw new IllegalArgumentException("Invalid peak dimension " + iDim);
+        }
+        int key = 2 * iDim + (ascending ? 0 : 1);
+        synchronized (sortedViews) {
+            SortedPeakView view = sortedViews.get(key);
+            if ((view == null) || (view.listModCount != modCount) || (view.size() != peaks.size())) {
+                // updates locate peaks by their index
+                if (!indexValid) {
+                    buildIndex();
+                }
+                PeakListColumns peakColumns = getColumns();
+                view = new SortedPeakView(peakColumns, iDim, ascending, peakColumns.modCount);
+                sortedViews.put(key, view);
+            } else {
+                view.resort();
+            }
+            return view;
+        }
+    }
+
+    /**
+     * Keep the sorted views current after a change to a single peak. Views
+     * that can't be updated become stale and are rebuilt when next requested.
+     * During a batch of changes the views are only marked, and are sorted
+     * once when the batch ends, so each change doesn't move a peak through
+     * the whole view.
+     */
+    private void updateSortedViews(Object object, PeakEvent.Type type, boolean batched) {
+        synchronized (sortedViews) {
+            if (sortedViews.isEmpty()) {
+                return;
+            }
+            Peak peak = (object instanceof PeakDim) ? ((PeakDim) object).getPeak()
+                    : (object instanceof Peak) ? (Peak) object : null;
+            boolean peakChange = (peak != null) && (peak.peakList == this)
+                    && (type != PeakEvent.Type.ADDED) && (type != PeakEvent.Type.REMOVED)
+                    && (type != PeakEvent.Type.LIST_CHANGED);
+            for (SortedPeakView view : sortedViews.values()) {
+                if (peakChange && (view.listModCount == (modCount - 1))
+                        && (batched ? view.markResort(peak) : view.update(peak))) {
+                    view.listModCount = modCount;
+                }
+            }
+        }
+    }
+
+    private void resortSortedViews() {
+        synchronized (sortedViews) {
+            for (SortedPeakView view : sortedViews.values()) {
+                if (view.listModCount == modCount) {
+                    view.resort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the summary statistics of the columns of this list. The statistics
+     * are recalculated only if the list has changed since the last call.
+     *
+     * @return the statistics
+     */
+    public PeakListStats getStats() {
+        PeakListColumns peakColumns = getColumns();
+        PeakListStats current = stats;
+        if ((current == null) || (current.columns != peakColumns)) {
+            current = new PeakListStats(peakColumns);
+            stats = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get an index of the peak labels of this list, used for matching peaks
+     * by label. The index is rebuilt only if the peaks or their labels have
+     * changed since it was built.
+     *
+     * @return the index
+     */
+    public PeakLabelIndex getLabelIndex() {
+        PeakLabelIndex current = labelIndex;
+        if ((current == null) || !current.isCurrent(this)) {
+            current = new PeakLabelIndex(this, modCount);
+            labelIndex = current;
+        }
+        return current;
     }
 
     /**
@@ -706,6 +1028,7 @@ public class PeakList {
      */
     public void setSampleConditionLabel(String sampleConditionLabel) {
         this.sampleConditionLabel = sampleConditionLabel;
+        SimpleResonance.conditionsChanged();
     }
 
     /**
@@ -765,8 +1088,8 @@ public class PeakList {
         if (peaks == null) {
             return null;
         }
-        if (indexMap.isEmpty()) {
-            reIndex();
+        if (!indexValid) {
+            buildIndex();
         }
 
         if ((i >= 0) && (i < peaks.size())) {
@@ -782,7 +1105,7 @@ public class PeakList {
      */
     public void addPeakWithoutResonance(Peak newPeak) {
         peaks.add(newPeak);
-        clearIndex();
+        indexNewPeak(newPeak);
     }
 
     /**
@@ -792,7 +1115,7 @@ public class PeakList {
     public Peak addPeak(Peak newPeak) {
         newPeak.initPeakDimContribs();
         peaks.add(newPeak);
-        clearIndex();
+        indexNewPeak(newPeak);
         return newPeak;
     }
 
@@ -836,13 +1159,19 @@ public class PeakList {
      *
      */
     public void reIndex() {
+        buildIndex();
+        peakListUpdated(this);
+    }
+
+    private void buildIndex() {
         int i = 0;
         indexMap.clear();
+        indexMap.ensureCapacity(peaks.size());
         for (Peak peak : peaks) {
             peak.setIndex(i++);
             indexMap.put(peak.getIdNum(), peak);
         }
-        peakListUpdated(this);
+        indexValid = true;
     }
 
     /**
@@ -931,32 +1260,13 @@ public class PeakList {
      * @return
      */
     public static Peak getAPeak(String peakSpecifier) {
+        // look up the list first, so an unknown list gives null even if the
+        // id is not a number
         PeakList peakList = getPeakListWithSpecifier(peakSpecifier);
         if (peakList == null) {
             return null;
         }
-        int dot = peakSpecifier.indexOf('.');
-
-        if (dot == -1) {
-            return null;
-        }
-
-        int lastDot = peakSpecifier.lastIndexOf('.');
-
-        if (peakList.indexMap.isEmpty()) {
-            peakList.reIndex();
-        }
-
-        int idNum;
-
-        if (lastDot == dot) {
-            idNum = Integer.parseInt(peakSpecifier.substring(dot + 1));
-        } else {
-            idNum = Integer.parseInt(peakSpecifier.substring(dot + 1, lastDot));
-        }
-
-        Peak peak = (Peak) peakList.indexMap.get(idNum);
-        return peak;
+        return peakList.getPeakByID(PeakSpecifier.parse(peakSpecifier).getIdNum());
     }
 
     /**
@@ -968,37 +1278,20 @@ public class PeakList {
      */
     public static Peak getAPeak(String peakSpecifier,
             Integer iDimInt) throws IllegalArgumentException {
-        int dot = peakSpecifier.indexOf('.');
-
-        if (dot == -1) {
-            return null;
-        }
-
-        int lastDot = peakSpecifier.lastIndexOf('.');
-
-        ProjectBase project = ProjectBase.getActive();
-        PeakList peakList = project.
-                getPeakList(peakSpecifier.substring(0, dot));
-
-        if (peakList == null) {
+        PeakSpecifier specifier = parseSpecifier(peakSpecifier);
+        if (specifier == null) {
             return null;
         }
+        return specifier.getPeak();
+    }
 
-        int idNum;
-
+    private static PeakSpecifier parseSpecifier(String peakSpecifier) throws IllegalArgumentException {
         try {
-            if (lastDot == dot) {
-                idNum = Integer.parseInt(peakSpecifier.substring(dot + 1));
-            } else {
-                idNum = Integer.parseInt(peakSpecifier.substring(dot + 1,
-                        lastDot));
-            }
+            return PeakSpecifier.parse(peakSpecifier);
         } catch (NumberFormatException numE) {
             throw new IllegalArgumentException(
                     "error parsing peak " + peakSpecifier + ": " + numE.toString());
         }
-
-        return peakList.getPeakByID(idNum);
     }
 
     /**
@@ -1009,41 +1302,20 @@ public class PeakList {
      */
     public static PeakDim getPeakDimObject(String peakSpecifier)
             throws IllegalArgumentException {
-        int dot = peakSpecifier.indexOf('.');
-
-        if (dot == -1) {
+        PeakSpecifier specifier = parseSpecifier(peakSpecifier);
+        if (specifier == null) {
             return null;
         }
-
-        int lastDot = peakSpecifier.lastIndexOf('.');
-
-        ProjectBase project = ProjectBase.getActive();
-        PeakList peakList = project.
-                getPeakList(peakSpecifier.substring(0, dot));
-
+        PeakList peakList = specifier.getPeakList();
         if (peakList == null) {
             return null;
         }
 
-        int idNum;
-
-        try {
-            if (lastDot == dot) {
-                idNum = Integer.parseInt(peakSpecifier.substring(dot + 1));
-            } else {
-                idNum = Integer.parseInt(peakSpecifier.substring(dot + 1,
-                        lastDot));
-            }
-        } catch (NumberFormatException numE) {
-            throw new IllegalArgumentException(
-                    "error parsing peak " + peakSpecifier + ": " + numE.toString());
-        }
-
-        Peak peak = peakList.getPeakByID(idNum);
+        Peak peak = peakList.getPeakByID(specifier.getIdNum());
         if (peak == null) {
             return null;
         }
-        int iDim = peakList.getPeakDim(peakSpecifier);
+        int iDim = peakList.getPeakDim(specifier, peakSpecifier);
 
         return peak.peakDims[iDim];
     }
@@ -1055,8 +1327,8 @@ public class PeakList {
      * @throws IllegalArgumentException
      */
     public Peak getPeakByID(int idNum) throws IllegalArgumentException {
-        if (indexMap.isEmpty()) {
-            reIndex();
+        if (!indexValid) {
+            buildIndex();
         }
         Peak peak = indexMap.get(idNum);
         return peak;
@@ -1068,19 +1340,8 @@ public class PeakList {
      * @return
      */
     public static int getPeakDimNum(String peakSpecifier) {
-        int iDim = 0;
-        int dot = peakSpecifier.indexOf('.');
-
-        if (dot != -1) {
-            int lastDot = peakSpecifier.lastIndexOf('.');
-
-            if (dot != lastDot) {
-                String dimString = peakSpecifier.substring(lastDot + 1);
-                iDim = Integer.parseInt(dimString) - 1;
-            }
-        }
-
-        return iDim;
+        PeakSpecifier specifier = PeakSpecifier.parse(peakSpecifier);
+        return specifier == null ? 0 : specifier.getDimNum();
     }
 
     /**
@@ -1093,24 +1354,20 @@ public class PeakList {
             throws IllegalArgumentException {
         int iDim = 0;
         int dot = peakSpecifier.indexOf('.');
+        int lastDot = peakSpecifier.lastIndexOf('.');
 
-        if (dot != -1) {
-            int lastDot = peakSpecifier.lastIndexOf('.');
-
-            if (dot != lastDot) {
-                String dimString = peakSpecifier.substring(lastDot + 1);
-                iDim = getListDim(dimString);
-
-                if (iDim == -1) {
-                    try {
-                        iDim = Integer.parseInt(dimString) - 1;
-                    } catch (NumberFormatException nFE) {
-                        iDim = -1;
-                    }
-                }
-            }
+        if ((dot != -1) && (dot != lastDot)) {
+            iDim = PeakSpecifier.getDim(this, peakSpecifier.substring(lastDot + 1));
         }
+        return checkPeakDim(iDim, peakSpecifier);
+    }
 
+    int getPeakDim(PeakSpecifier specifier, String peakSpecifier)
+            throws IllegalArgumentException {
+        return checkPeakDim(specifier.getDim(this), peakSpecifier);
+    }
+
+    private int checkPeakDim(int iDim, String peakSpecifier) {
         if ((iDim < 0) || (iDim >= nDim)) {
             throw new IllegalArgumentException(
                     "Invalid peak dimension in \"" + peakSpecifier + "\"");
@@ -1120,31 +1377,17 @@ public class PeakList {
     }
 
     static Peak getAPeak2(String peakSpecifier) {
-        int dot = peakSpecifier.indexOf('.');
-
-        if (dot == -1) {
+        PeakSpecifier specifier = PeakSpecifier.parse(peakSpecifier);
+        if (specifier == null) {
             return null;
         }
-
-        int lastDot = peakSpecifier.lastIndexOf('.');
-
-        ProjectBase project = ProjectBase.getActive();
-        PeakList peakList = project.
-                getPeakList(peakSpecifier.substring(0, dot));
+        PeakList peakList = specifier.getPeakList();
 
         if (peakList == null) {
             return null;
         }
 
-        int idNum;
-
-        if (dot == lastDot) {
-            idNum = Integer.parseInt(peakSpecifier.substring(dot + 1));
-        } else {
-            idNum = Integer.parseInt(peakSpecifier.substring(dot + 1, lastDot));
-        }
-
-        Peak peak = peakList.getPeak(idNum);
+        Peak peak = peakList.getPeak(specifier.getIdNum());
 
         return (peak);
     }
@@ -1235,12 +1478,14 @@ public class PeakList {
      *
      */
     public void reNumber() {
-        for (int i = 0; i < peaks.size(); i++) {
-            Peak peak = peaks.get(i);
-            peak.setIdNum(i);
-        }
-        idLast = peaks.size() - 1;
-        reIndex();
+        batchUpdate(() -> {
+            for (int i = 0; i < peaks.size(); i++) {
+                Peak peak = peaks.get(i);
+                peak.setIdNum(i);
+            }
+            idLast = peaks.size() - 1;
+            reIndex();
+        });
     }
 
     /**
@@ -1257,6 +1502,7 @@ public class PeakList {
      */
     public void setMeasures(Measures measure) {
         measures = Optional.of(measure);
+        peakListUpdated(this);
     }
 
     /**
@@ -1537,10 +1783,11 @@ public class PeakList {
             width[i] = Math.abs(limits[i][0] - limits[i][1]);
         }
 
-        int nPeaks = size();
+        PeakListColumns peakColumns = getColumns();
+        int nPeaks = peakColumns.size();
 
         for (i = 0; i < nPeaks; i++) {
-            peak = peaks.get(i);
+            peak = peakColumns.getPeak(i);
             boolean ok = true;
 
             double sumDistance = 0.0;
@@ -1550,7 +1797,7 @@ public class PeakList {
                     continue;
                 }
 
-                double ctr = peak.peakDims[dim[j]].getChemShiftValue();
+                double ctr = peakColumns.shifts[dim[j]][i];
                 if ((foldLimits != null) && (foldLimits[j] != null)) {
                     double fDelta = Math.abs(foldLimits[j][0] - foldLimits[j][1]);
                     ctr = foldPPM(ctr, fDelta, foldLimits[j][0], foldLimits[j][1]);
@@ -1598,6 +1845,28 @@ public class PeakList {
         changed = false;
     }
 
+    /**
+     * Get the modification count of this list. Unlike the changed flag it is
+     * never reset, so it can be recorded to detect later changes.
+     *
+     * @return the modification count
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Get a count of the changes to the labels and resonances of the peak
+     * dimensions of all lists. These changes (for example merging resonances
+     * or renaming a resonance shared with another list) don't change the
+     * modification count of the lists.
+     *
+     * @return the label change count
+     */
+    public static int getLabelVersion() {
+        return PeakLabelIndex.labelChanges.get();
+    }
+
     /**
      *
      * @return
@@ -1634,6 +1903,8 @@ public class PeakList {
     }
 
     /**
+     * Reorder the peaks of the list by chemical shift. Use getSortedPeaks to
+     * get the peaks in sorted order without changing the list.
      *
      * @param dim
      * @param ascending
@@ -1641,7 +1912,9 @@ public class PeakList {
      */
     public void sortPeaks(int dim, boolean ascending) throws IllegalArgumentException {
 //        checkDim(dim);
-        PeakList.sortPeaks(peaks, dim, ascending);
+        List<Peak> sorted = new ArrayList<>(getSortedPeaks(dim, ascending));
+        peaks.clear();
+        peaks.addAll(sorted);
         reIndex();
     }
 
@@ -1698,69 +1971,7 @@ public class PeakList {
      * @return
      */
     public List<Peak> matchPeaks(final String[] matchStrings, final boolean useRegExp, final boolean useOrder) {
-        int j;
-        int k;
-        int l;
-        boolean ok = false;
-        List<Peak> result = new ArrayList<>();
-        Pattern[] patterns = new Pattern[matchStrings.length];
-        String[] simplePat = new String[matchStrings.length];
-        if (useRegExp) {
-            for (k = 0; k < matchStrings.length; k++) {
-                patterns[k] = Pattern.compile(matchStrings[k].toUpperCase().trim());
-            }
-        } else {
-            for (k = 0; k < matchStrings.length; k++) {
-                simplePat[k] = matchStrings[k].toUpperCase().trim();
-            }
-        }
-
-        for (Peak peak : peaks) {
-            if (peak.getStatus() < 0) {
-                continue;
-            }
-
-            for (k = 0; k < matchStrings.length; k++) {
-                ok = false;
-                if (useOrder) {
-                    if (useRegExp) {
-                        Matcher matcher = patterns[k].matcher(peak.peakDims[k].getLabel().toUpperCase());
-                        if (matcher.find()) {
-                            ok = true;
-                        }
-                    } else if (Util.stringMatch(peak.peakDims[k].getLabel().toUpperCase(), simplePat[k])) {
-                        ok = true;
-                    } else if ((simplePat[k].length() == 0) && (peak.peakDims[k].getLabel().length() == 0)) {
-                        ok = true;
-                    }
-                } else {
-                    for (l = 0; l < nDim; l++) {
-                        if (useRegExp) {
-                            Matcher matcher = patterns[k].matcher(peak.peakDims[l].getLabel().toUpperCase());
-                            if (matcher.find()) {
-                                ok = true;
-                                break;
-                            }
-                        } else if (Util.stringMatch(peak.peakDims[l].getLabel().toUpperCase(), simplePat[k])) {
-                            ok = true;
-                            break;
-                        } else if ((simplePat[k].length() == 0) && (peak.peakDims[l].getLabel().length() == 0)) {
-                            ok = true;
-                            break;
-                        }
-                    }
-                }
-                if (!ok) {
-                    break;
-                }
-            }
-
-            if (ok) {
-                result.add(peak);
-            }
-        }
-
-        return (result);
+        return getLabelIndex().match(matchStrings, useRegExp, useOrder);
     }
 
     /**
@@ -1792,7 +2003,8 @@ public class PeakList {
             idLast--;
         }
         peaks.remove(peak);
-        reIndex();
+        buildIndex();
+        peakListUpdated(peak, PeakEvent.Type.REMOVED);
     }
 
     /**
@@ -1876,8 +2088,37 @@ public class PeakList {
      * @return
      */
     public DoubleSummaryStatistics widthStatsPPM(int iDim) {
-        DoubleSummaryStatistics stats = peaks.stream().filter(p -> p.getStatus() >= 0).mapToDouble(p -> p.peakDims[iDim].getLineWidth()).summaryStatistics();
-        return stats;
+        return getStats().get(PeakListStats.Attribute.WIDTH, iDim).toSummaryStatistics();
+    }
+
+    /**
+     * Build the graph of overlapping peaks in this list. Peaks overlap if
+     * their line widths, multiplied by scale, overlap in all dimensions. The
+     * graph is cached and rebuilt only if the list has been modified, or a
+     * different scale is requested, since it was last built.
+     *
+     * @param scale multiplier applied to the line widths
+     * @return the overlap graph
+     */
+    public PeakOverlapGraph getOverlapGraph(double scale) {
+        PeakOverlapGraph current = overlapGraph;
+        if ((current == null) || (current.modCount != modCount)
+                || (current.nPeaks != peaks.size()) || (current.scale != scale)) {
+            current = new PeakOverlapGraph(this, scale);
+            overlapGraph = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get all groups of peaks that are connected by chains of overlapping
+     * peaks.
+     *
+     * @param scale multiplier applied to the line widths
+     * @return list of sets of connected peaks
+     */
+    public List<Set<Peak>> getOverlapComponents(double scale) {
+        return getOverlapGraph(scale).getComponents();
     }
 
     /**
@@ -1886,15 +2127,21 @@ public class PeakList {
      */
     public int compress() {
         int nRemoved = 0;
-        for (int i = (peaks.size() - 1); i >= 0; i--) {
-            if ((peaks.get(i)).getStatus() < 0) {
-                PeakList.unLinkPeak(peaks.get(i));
-                (peaks.get(i)).markDeleted();
-                peaks.remove(i);
-                nRemoved++;
+        beginUpdate();
+        try {
+            for (int i = (peaks.size() - 1); i >= 0; i--) {
+                if ((peaks.get(i)).getStatus() < 0) {
+                    PeakList.unLinkPeak(peaks.get(i));
+                    (peaks.get(i)).markDeleted();
+                    peaks.remove(i);
+                    nRemoved++;
+                }
             }
+            buildIndex();
+            peakListUpdated(this, nRemoved > 0 ? PeakEvent.Type.REMOVED : PeakEvent.Type.LIST_CHANGED);
+        } finally {
+            endUpdate();
         }
-        reIndex();
         return nRemoved;
     }
 
@@ -1902,11 +2149,13 @@ public class PeakList {
      *
      */
     public void unLinkPeaks() {
-        int nPeaks = peaks.size();
+        batchUpdate(() -> {
+            int nPeaks = peaks.size();
 
-        for (int i = 0; i < nPeaks; i++) {
-            PeakList.unLinkPeak(peaks.get(i));
-        }
+            for (int i = 0; i < nPeaks; i++) {
+                PeakList.unLinkPeak(peaks.get(i));
+            }
+        });
     }
 
     public void writeSTAR3Header(FileWriter chan) throws IOException {
@@ -1979,8 +2228,17 @@ public class PeakList {
      * @return
      */
     public DescriptiveStatistics shiftDStats(int iDim) {
+        PeakListColumns peakColumns = getColumns();
+        return columnDStats(peakColumns, peakColumns.getShifts(iDim));
+    }
+
+    static DescriptiveStatistics columnDStats(PeakListColumns peakColumns, float[] column) {
         DescriptiveStatistics stats = new DescriptiveStatistics();
-        peaks.stream().filter((p) -> p.getStatus() >= 0).mapToDouble((p) -> p.peakDims[iDim].getChemShiftValue()).forEach((v) -> stats.addValue(v));
+        for (int i = 0; i < peakColumns.size(); i++) {
+            if (peakColumns.isActive(i)) {
+                stats.addValue(column[i]);
+            }
+        }
         return stats;
     }
 
@@ -1990,8 +2248,7 @@ public class PeakList {
      * @return
      */
     public DoubleSummaryStatistics shiftStats(int iDim) {
-        DoubleSummaryStatistics stats = peaks.stream().filter((p) -> p.getStatus() >= 0).mapToDouble((p) -> p.peakDims[iDim].getChemShift()).summaryStatistics();
-        return stats;
+        return getStats().get(PeakListStats.Attribute.SHIFT, iDim).toSummaryStatistics();
     }
 
     /**
@@ -2000,9 +2257,8 @@ public class PeakList {
      * @return
      */
     public DescriptiveStatistics widthDStats(int iDim) {
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        peaks.stream().filter((p) -> p.getStatus() >= 0).mapToDouble((p) -> p.peakDims[iDim].getLineWidthHz()).forEach((v) -> stats.addValue(v));
-        return stats;
+        PeakListColumns peakColumns = getColumns();
+        return columnDStats(peakColumns, peakColumns.getWidthsHz(iDim));
     }
 
     /**
@@ -2011,14 +2267,12 @@ public class PeakList {
      * @return
      */
     public DoubleSummaryStatistics widthStats(int iDim) {
-        DoubleSummaryStatistics stats = peaks.stream().filter((p) -> p.getStatus() >= 0).mapToDouble((p) -> p.peakDims[iDim].getLineWidthHz()).summaryStatistics();
-        return stats;
+        return getStats().get(PeakListStats.Attribute.WIDTH_HZ, iDim).toSummaryStatistics();
     }
 
     public DescriptiveStatistics intensityDStats(int iDim) {
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        peaks.stream().filter((p) -> p.getStatus() >= 0).mapToDouble((p) -> p.getPeakDim(iDim).getPeak().getIntensity()).forEach((v) -> stats.addValue(v));
-        return stats;
+        PeakListColumns peakColumns = getColumns();
+        return columnDStats(peakColumns, peakColumns.getIntensities());
     }
 
     /**
@@ -2027,12 +2281,12 @@ public class PeakList {
      * @param value
      */
     public void shiftPeak(final int iDim, final double value) {
-        peaks.stream().forEach((p) -> {
+        batchUpdate(() -> peaks.stream().forEach((p) -> {
             PeakDim pDim = p.peakDims[iDim];
             float shift = pDim.getChemShift();
             shift += value;
             pDim.setChemShiftValue(shift);
-        });
+        }));
     }
 
     /**
@@ -2051,8 +2305,7 @@ public class PeakList {
      * @return
      */
     public double center(int iDim) {
-        OptionalDouble avg = peaks.stream().filter((p) -> p.getStatus() >= 0).mapToDouble((p) -> p.peakDims[iDim].getChemShift()).average();
-        return avg.getAsDouble();
+        return shiftStats(iDim).getAverage();
     }
 
     /**
@@ -0,0 +1,301 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Aligns (references) a series of peak lists to a reference list. The offset
+ * of each dimension is first estimated by cross-correlating histograms of
+ * the peak positions of the list and the reference (so no peak assignments
+ * are needed and the estimate isn't biased by peaks missing from one list).
+ * The estimate is then refined by matching each peak to the nearest
+ * reference peak within the tolerance and taking the median of the
+ * differences. Lists are processed in parallel and the reference positions
+ * are binned and indexed only once.
+ *
+ * Dimensions of a list are matched to those of the reference by name, as in
+ * PeakList.centerAlign.
+ *
+ * @author brucejohnson
+ */
+public class PeakListAligner {
+
+    static final int MAX_REFINE = 5;
+
+    final PeakList reference;
+    final int[] refDims;
+    final double[] tols;
+    final double[] maxShifts;
+    final PeakListColumns refColumns;
+    final WeightedPeakIndex refIndex;
+    final double[] binOrigins;
+    final double[][] refHistograms;
+
+    /**
+     * Create an aligner for a reference list.
+     *
+     * @param reference the reference peak list
+     * @param refDims the dimensions of the reference list to align
+     * @param tols the tolerance (ppm) used to match peaks in each of refDims.
+     * Also used as the width of the histogram bins.
+     * @param maxShifts the largest offset (ppm) searched for in each of
+     * refDims
+     */
+    public PeakListAligner(PeakList reference, int[] refDims, double[] tols, double[] maxShifts) {
+        if ((tols.length != refDims.length) || (maxShifts.length != refDims.length)) {
+            throw new IllegalArgumentException("Need a tolerance and maximum shift for each dimension");
+        }
+        this.reference = reference;
+        this.refDims = refDims.clone();
+        this.tols = tols.clone();
+        this.maxShifts = maxShifts.clone();
+        refColumns = reference.getColumns();
+        double[] weights = new double[reference.getNDim()];
+        Arrays.fill(weights, 1.0);
+        for (int i = 0; i < refDims.length; i++) {
+            weights[refDims[i]] = tols[i];
+        }
+        refIndex = new WeightedPeakIndex(reference, this.refDims, weights);
+        binOrigins = new double[refDims.length];
+        refHistograms = new double[refDims.length][];
+        for (int i = 0; i < refDims.length; i++) {
+            float[] shifts = refColumns.getShifts(refDims[i]);
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int row = 0; row < refColumns.size(); row++) {
+                if (refColumns.isActive(row)) {
+                    min = Math.min(min, shifts[row]);
+                    max = Math.max(max, shifts[row]);
+                }
+            }
+            if (min > max) {
+                throw new IllegalArgumentException("Reference list has no peaks");
+            }
+            binOrigins[i] = min - tols[i];
+            int nBins = (int) Math.ceil((max - min) / tols[i]) + 3;
+            refHistograms[i] = histogram(refColumns, refDims[i], binOrigins[i], tols[i], nBins, 0.0);
+        }
+    }
+
+    /**
+     * Accumulate the shifts of the active peaks into a histogram. Each peak
+     * is shared between its two closest bins in proportion to its distance
+     * from their centers. Peaks outside the histogram are ignored.
+     */
+    static double[] histogram(PeakListColumns columns, int iDim, double origin, double binWidth, int nBins, double offset) {
+        double[] histogram = new double[nBins];
+        float[] shifts = columns.getShifts(iDim);
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.isActive(row)) {
+                double pos = (shifts[row] + offset - origin) / binWidth;
+                int bin = (int) Math.floor(pos);
+                double f = pos - bin;
+                if ((bin >= 0) && (bin < nBins)) {
+                    histogram[bin] += 1.0 - f;
+                }
+                if ((bin + 1 >= 0) && (bin + 1 < nBins)) {
+                    histogram[bin + 1] += f;
+                }
+            }
+        }
+        return histogram;
+    }
+
+    int[] getListDims(PeakList peakList) {
+        int[] listDims = new int[refDims.length];
+        for (int i = 0; i < refDims.length; i++) {
+            String dimName = reference.getSpectralDim(refDims[i]).getDimName();
+            listDims[i] = -1;
+            for (int j = 0; j < peakList.getNDim(); j++) {
+                if (peakList.getSpectralDim(j).getDimName().equals(dimName)) {
+                    listDims[i] = j;
+                    break;
+                }
+            }
+            if (listDims[i] == -1) {
+                throw new IllegalArgumentException("Peak list " + peakList.getName() + " has no dimension " + dimName);
+            }
+        }
+        return listDims;
+    }
+
+    /**
+     * Find the offsets that align a peak list with the reference.
+     *
+     * @param peakList the peak list
+     * @return the amount to add to the shifts of the list in each of the
+     * reference dimensions
+     */
+    public double[] findOffsets(PeakList peakList) {
+        int[] listDims = getListDims(peakList);
+        PeakListColumns columns = peakList.getColumns();
+        double[] offsets = new double[refDims.length];
+        for (int i = 0; i < refDims.length; i++) {
+            offsets[i] = crossCorrelate(columns, listDims[i], i);
+        }
+        refine(columns, listDims, offsets);
+        return offsets;
+    }
+
+    /**
+     * Find the lag (within the maximum shift) at which the histogram of the
+     * list best overlaps the histogram of the reference, interpolating
+     * between bins with a parabola through the best score and its
+     * neighbours.
+     */
+    double crossCorrelate(PeakListColumns columns, int listDim, int i) {
+        double binWidth = tols[i];
+        double[] refHist = refHistograms[i];
+        int nBins = refHist.length;
+        int maxLag = (int) Math.ceil(maxShifts[i] / binWidth);
+        // the list histogram extends beyond the reference by the largest lag
+        double[] listHist = histogram(columns, listDim, binOrigins[i] - maxLag * binWidth, binWidth, nBins + 2 * maxLag, 0.0);
+        int nLags = 2 * maxLag + 1;
+        double[] scores = new double[nLags];
+        for (int lag = -maxLag; lag <= maxLag; lag++) {
+            // a list peak in bin b + maxLag - lag lines up with reference bin b after adding lag bins
+            double score = 0.0;
+            int shift = maxLag - lag;
+            for (int b = 0; b < nBins; b++) {
+                score += refHist[b] * listHist[b + shift];
+            }
+            scores[lag + maxLag] = score;
+        }
+        int best = -1;
+        for (int k = 0; k < nLags; k++) {
+            // prefer the smallest shift on ties
+            if ((best == -1) || (scores[k] > scores[best])
+                    || ((scores[k] == scores[best]) && (Math.abs(k - maxLag) < Math.abs(best - maxLag)))) {
+                best = k;
+            }
+        }
+        if (scores[best] == 0.0) {
+            return 0.0;
+        }
+        double lag = best - maxLag;
+        if ((best > 0) && (best < nLags - 1)) {
+            double s0 = scores[best - 1];
+            double s1 = scores[best];
+            double s2 = scores[best + 1];
+            double denom = s0 - 2.0 * s1 + s2;
+            if (denom < 0.0) {
+                lag += 0.5 * (s0 - s2) / denom;
+            }
+        }
+        return lag * binWidth;
+    }
+
+    /**
+     * Refine the offsets by matching the shifted list peaks to their nearest
+     * reference peak within the tolerance and adding the median difference,
+     * until the offsets stop changing.
+     */
+    void refine(PeakListColumns columns, int[] listDims, double[] offsets) {
+        int nDims = refDims.length;
+        int nRows = columns.size();
+        float[][] shifts = new float[nDims][];
+        for (int i = 0; i < nDims; i++) {
+            shifts[i] = columns.getShifts(listDims[i]);
+        }
+        double[][] deltas = new double[nDims][nRows];
+        double[] ppms = new double[nDims];
+        for (int iter = 0; iter < MAX_REFINE; iter++) {
+            int nMatched = 0;
+            for (int row = 0; row < nRows; row++) {
+                if (!columns.isActive(row)) {
+                    continue;
+                }
+                for (int i = 0; i < nDims; i++) {
+                    ppms[i] = shifts[i][row] + offsets[i];
+                }
+                int refRow = refIndex.nearest(ppms, refColumns::isActive);
+                if ((refRow >= 0) && (refIndex.distance(ppms, refRow) <= 1.0)) {
+                    for (int i = 0; i < nDims; i++) {
+                        deltas[i][nMatched] = refColumns.getShifts(refDims[i])[refRow] - ppms[i];
+                    }
+                    nMatched++;
+                }
+            }
+            if (nMatched == 0) {
+                break;
+            }
+            boolean converged = true;
+            for (int i = 0; i < nDims; i++) {
+                double correction = median(deltas[i], nMatched);
+                offsets[i] += correction;
+                if (Math.abs(correction) > tols[i] * 1.0e-3) {
+                    converged = false;
+                }
+            }
+            if (converged) {
+                break;
+            }
+        }
+    }
+
+    static double median(double[] values, int n) {
+        Arrays.sort(values, 0, n);
+        int mid = n / 2;
+        return (n % 2) == 1 ? values[mid] : 0.5 * (values[mid - 1] + values[mid]);
+    }
+
+    /**
+     * Find the offsets of several peak lists in parallel.
+     *
+     * @param peakLists the peak lists
+     * @return map from each peak list to its offsets (see findOffsets), in
+     * the order of the peak lists
+     */
+    public Map<PeakList, double[]> findOffsets(List<PeakList> peakLists) {
+        double[][] offsets = new double[peakLists.size()][];
+        IntStream.range(0, peakLists.size()).parallel().forEach(i -> offsets[i] = findOffsets(peakLists.get(i)));
+        Map<PeakList, double[]> result = new LinkedHashMap<>();
+        for (int i = 0; i < offsets.length; i++) {
+            result.put(peakLists.get(i), offsets[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Find the offsets of several peak lists in parallel and shift the peaks
+     * of each list by its offsets. The shifts are applied as a single batch
+     * of changes to the lists.
+     *
+     * @param peakLists the peak lists
+     * @return map from each peak list to the offsets that were applied
+     */
+    public Map<PeakList, double[]> align(List<PeakList> peakLists) {
+        Map<PeakList, double[]> result = findOffsets(peakLists);
+        PeakList.batchUpdate(peakLists, () -> {
+            for (Map.Entry<PeakList, double[]> entry : result.entrySet()) {
+                PeakList peakList = entry.getKey();
+                int[] listDims = getListDims(peakList);
+                double[] offsets = entry.getValue();
+                for (int i = 0; i < listDims.length; i++) {
+                    peakList.shiftPeak(listDims[i], offsets[i]);
+                }
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+
+/**
+ * Columnar copy of the numeric values of the peaks in a PeakList. Each
+ * attribute of each dimension is stored in a primitive array indexed by the
+ * position of the peak in the list, so whole list operations (statistics,
+ * searches, sorting) can run as simple loops over arrays rather than through
+ * the Peak and PeakDim objects. Null values are stored as 0.0, matching the
+ * PeakDim get...Value methods.
+ *
+ * The columns are a cache: the Peak and PeakDim objects remain the master
+ * copy. Use PeakList.getColumns() to get a set of columns that is current
+ * with the list.
+ *
+ * @author brucejohnson
+ */
+public class PeakListColumns {
+
+    final int modCount;
+    final int nDim;
+    final int nPeaks;
+    final Peak[] peaks;
+    final int[] status;
+    final float[] intensity;
+    final float[] volume;
+    final float[][] shifts;
+    final float[][] widths;
+    final float[][] bounds;
+    final double[] sf;
+
+    PeakListColumns(PeakList peakList, int modCount) {
+        this.modCount = modCount;
+        nDim = peakList.getNDim();
+        List<Peak> peakArray = peakList.peaks();
+        nPeaks = peakArray.size();
+        peaks = peakArray.toArray(new Peak[nPeaks]);
+        status = new int[nPeaks];
+        intensity = new float[nPeaks];
+        volume = new float[nPeaks];
+        shifts = new float[nDim][nPeaks];
+        widths = new float[nDim][nPeaks];
+        bounds = new float[nDim][nPeaks];
+        sf = new double[nDim];
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            sf[iDim] = peakList.getSpectralDim(iDim).getSf();
+        }
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peaks[i];
+            status[i] = peak.getStatus();
+            intensity[i] = peak.getIntensity();
+            volume[i] = peak.getVolume1();
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                PeakDim peakDim = peak.peakDims[iDim];
+                shifts[iDim][i] = peakDim.getChemShiftValue();
+                widths[iDim][i] = peakDim.getLineWidthValue();
+                bounds[iDim][i] = peakDim.getBoundsValue();
+            }
+        }
+    }
+
+    /**
+     * @return the number of peaks (rows)
+     */
+    public int size() {
+        return nPeaks;
+    }
+
+    /**
+     * @return the number of dimensions
+     */
+    public int getNDim() {
+        return nDim;
+    }
+
+    /**
+     * @param i row index
+     * @return the peak stored at the specified row
+     */
+    public Peak getPeak(int i) {
+        return peaks[i];
+    }
+
+    /**
+     * @param i row index
+     * @return true if the peak at the specified row is not deleted
+     */
+    public boolean isActive(int i) {
+        return status[i] >= 0;
+    }
+
+    /**
+     * Get the chemical shift column for a dimension. The returned array is
+     * the internal array and must not be modified.
+     *
+     * @param iDim the peak list dimension
+     * @return chemical shifts (ppm) of each peak
+     */
+    public float[] getShifts(int iDim) {
+        return shifts[iDim];
+    }
+
+    /**
+     * Get the line width column for a dimension. The returned array is the
+     * internal array and must not be modified.
+     *
+     * @param iDim the peak list dimension
+     * @return line widths (ppm) of each peak
+     */
+    public float[] getWidths(int iDim) {
+        return widths[iDim];
+    }
+
+    /**
+     * Get the bounds column for a dimension. The returned array is the
+     * internal array and must not be modified.
+     *
+     * @param iDim the peak list dimension
+     * @return bounds (ppm) of each peak
+     */
+    public float[] getBounds(int iDim) {
+        return bounds[iDim];
+    }
+
+    /**
+     * @return intensities of each peak. Must not be modified.
+     */
+    public float[] getIntensities() {
+        return intensity;
+    }
+
+    /**
+     * @return volumes of each peak. Must not be modified.
+     */
+    public float[] getVolumes() {
+        return volume;
+    }
+
+    /**
+     * @return status of each peak. Must not be modified.
+     */
+    public int[] getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the line widths in Hz of a dimension. Computed with the same
+     * float arithmetic as PeakDim.getLineWidthHz.
+     *
+     * @param iDim the peak list dimension
+     * @return new array of line widths (Hz)
+     */
+    public float[] getWidthsHz(int iDim) {
+        float[] result = new float[nPeaks];
+        float sfDim = (float) sf[iDim];
+        float[] column = widths[iDim];
+        for (int i = 0; i < nPeaks; i++) {
+            result[i] = column[i] * sfDim;
+        }
+        return result;
+    }
+
+    /**
+     * Accumulate summary statistics of a column for the peaks that are not
+     * deleted.
+     *
+     * @param column one of the columns of this object (or an array of the
+     * same length)
+     * @return the statistics
+     */
+    public DoubleSummaryStatistics stats(float[] column) {
+        DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+        for (int i = 0; i < nPeaks; i++) {
+            if (status[i] >= 0) {
+                stats.accept(column[i]);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Get the row indices sorted by the values in a column. The sort is
+     * stable and orders values as Float.compare does.
+     *
+     * @param column the column to sort by
+     * @param ascending true for ascending order, false for descending
+     * @return the permutation of row indices
+     */
+    public static int[] sortedOrder(float[] column, boolean ascending) {
+        int n = column.length;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int key = sortableBits(column[i]);
+            if (!ascending) {
+                key = ~key;
+            }
+            keys[i] = ((long) key << 32) | (i & 0xffffffffL);
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Convert a float to an int whose signed ordering matches Float.compare.
+     *
+     * @param value the float value
+     * @return the sortable int
+     */
+    static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+}
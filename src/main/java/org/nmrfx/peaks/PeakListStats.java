@@ -0,0 +1,296 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+
+/**
+ * Summary statistics of every numeric column of a PeakList. The statistics
+ * of all attributes of all dimensions are accumulated in one pass over a
+ * PeakListColumns snapshot (count, mean, variance, min, max and sum of the
+ * peaks that are not deleted). Quantiles are calculated on first use from a
+ * sorted copy of the column. Use PeakList.getStats() to get statistics that
+ * are current with the list.
+ *
+ * @author brucejohnson
+ */
+public class PeakListStats {
+
+    public enum Attribute {
+        SHIFT,
+        WIDTH,
+        WIDTH_HZ,
+        BOUNDS,
+        INTENSITY,
+        VOLUME;
+    }
+
+    static final Attribute[] DIM_ATTRIBUTES = {Attribute.SHIFT, Attribute.WIDTH, Attribute.WIDTH_HZ, Attribute.BOUNDS};
+
+    final PeakListColumns columns;
+    final int nDim;
+    final int n;
+    final ColumnStats[] stats;
+
+    PeakListStats(PeakListColumns columns) {
+        this.columns = columns;
+        nDim = columns.getNDim();
+        int nColumns = DIM_ATTRIBUTES.length * nDim + 2;
+        float[][] values = new float[nColumns][];
+        for (Attribute attribute : DIM_ATTRIBUTES) {
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                float[] column;
+                switch (attribute) {
+                    case SHIFT:
+                        column = columns.getShifts(iDim);
+                        break;
+                    case WIDTH:
+                        column = columns.getWidths(iDim);
+                        break;
+                    case WIDTH_HZ:
+                        column = columns.getWidthsHz(iDim);
+                        break;
+                    default:
+                        column = columns.getBounds(iDim);
+                        break;
+                }
+                values[columnIndex(attribute, iDim)] = column;
+            }
+        }
+        values[columnIndex(Attribute.INTENSITY, 0)] = columns.getIntensities();
+        values[columnIndex(Attribute.VOLUME, 0)] = columns.getVolumes();
+
+        double[] min = new double[nColumns];
+        double[] max = new double[nColumns];
+        double[] sum = new double[nColumns];
+        double[] compensation = new double[nColumns];
+        double[] simpleSum = new double[nColumns];
+        double[] mean = new double[nColumns];
+        double[] m2 = new double[nColumns];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        int[] status = columns.getStatus();
+        int count = 0;
+        for (int i = 0, nRows = columns.size(); i < nRows; i++) {
+            if (status[i] < 0) {
+                continue;
+            }
+            count++;
+            for (int k = 0; k < nColumns; k++) {
+                double v = values[k][i];
+                min[k] = Math.min(min[k], v);
+                max[k] = Math.max(max[k], v);
+                // Neumaier compensated sum
+                double t = sum[k] + v;
+                if (Math.abs(sum[k]) >= Math.abs(v)) {
+                    compensation[k] += (sum[k] - t) + v;
+                } else {
+                    compensation[k] += (v - t) + sum[k];
+                }
+                sum[k] = t;
+                simpleSum[k] += v;
+                // Welford update of mean and sum of squared deviations
+                double delta = v - mean[k];
+                mean[k] += delta / count;
+                m2[k] += delta * (v - mean[k]);
+            }
+        }
+        n = count;
+        stats = new ColumnStats[nColumns];
+        for (int k = 0; k < nColumns; k++) {
+            double total = sum[k] + compensation[k];
+            // an infinite value makes the compensation NaN, so use the simple
+            // sum then, as DoubleSummaryStatistics does
+            if (Double.isNaN(total) && Double.isInfinite(simpleSum[k])) {
+                total = simpleSum[k];
+            }
+            stats[k] = new ColumnStats(values[k], status, n, min[k], max[k], total, mean[k], m2[k]);
+        }
+    }
+
+    private int columnIndex(Attribute attribute, int iDim) {
+        switch (attribute) {
+            case INTENSITY:
+                return DIM_ATTRIBUTES.length * nDim;
+            case VOLUME:
+                return DIM_ATTRIBUTES.length * nDim + 1;
+            default:
+                return attribute.ordinal() * nDim + iDim;
+        }
+    }
+
+    /**
+     * @return the number of peaks (not deleted) included in the statistics
+     */
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Get the statistics of a column.
+     *
+     * @param attribute the peak attribute
+     * @param iDim the dimension (ignored for INTENSITY and VOLUME)
+     * @return the statistics
+     */
+    public ColumnStats get(Attribute attribute, int iDim) {
+        if ((attribute != Attribute.INTENSITY) && (attribute != Attribute.VOLUME)
+                && ((iDim < 0) || (iDim >= nDim))) {
+            throw new IllegalArgumentException("Invalid peak dimension " + iDim);
+        }
+        return stats[columnIndex(attribute, iDim)];
+    }
+
+    public static class ColumnStats {
+
+        final float[] column;
+        final int[] status;
+        final int n;
+        final double min;
+        final double max;
+        final double sum;
+        final double mean;
+        final double m2;
+        volatile double[] sorted = null;
+
+        ColumnStats(float[] column, int[] status, int n, double min, double max, double sum, double mean, double m2) {
+            this.column = column;
+            this.status = status;
+            this.n = n;
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+            this.mean = mean;
+            this.m2 = m2;
+        }
+
+        public int getN() {
+            return n;
+        }
+
+        /**
+         * @return the minimum, or NaN if there are no values
+         */
+        public double getMin() {
+            return n == 0 ? Double.NaN : min;
+        }
+
+        /**
+         * @return the maximum, or NaN if there are no values
+         */
+        public double getMax() {
+            return n == 0 ? Double.NaN : max;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * @return the mean, or NaN if there are no values
+         */
+        public double getMean() {
+            if (n == 0) {
+                return Double.NaN;
+            }
+            return Double.isFinite(sum) ? mean : sum / n;
+        }
+
+        /**
+         * @return the sample variance (n - 1 denominator), 0.0 for a single
+         * value and NaN if there are no values
+         */
+        public double getVariance() {
+            if (n == 0) {
+                return Double.NaN;
+            }
+            return n == 1 ? 0.0 : m2 / (n - 1);
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        /**
+         * Get a quantile of the values, interpolating linearly between the
+         * closest ranks.
+         *
+         * @param p the probability (0.0 to 1.0)
+         * @return the quantile, or NaN if there are no values
+         */
+        public double getQuantile(double p) {
+            if ((p < 0.0) || (p > 1.0)) {
+                throw new IllegalArgumentException("Quantile probability must be between 0 and 1");
+            }
+            if (n == 0) {
+                return Double.NaN;
+            }
+            double[] values = getSorted();
+            double pos = p * (n - 1);
+            int lower = (int) Math.floor(pos);
+            int upper = Math.min(lower + 1, n - 1);
+            double f = pos - lower;
+            return values[lower] + f * (values[upper] - values[lower]);
+        }
+
+        public double getMedian() {
+            return getQuantile(0.5);
+        }
+
+        private double[] getSorted() {
+            double[] values = sorted;
+            if (values == null) {
+                values = new double[n];
+                for (int i = 0, j = 0; j < n; i++) {
+                    if (status[i] >= 0) {
+                        values[j++] = column[i];
+                    }
+                }
+                Arrays.sort(values);
+                sorted = values;
+            }
+            return values;
+        }
+
+        /**
+         * Get a DoubleSummaryStatistics with the count, min, max and sum of
+         * the values. The sum may differ in the last bit from that of a
+         * DoubleSummaryStatistics that accepted the values one at a time, as
+         * the two use different compensated summations. If the sum is not
+         * finite (the column has NaN or infinite values) the values are
+         * accepted one at a time, as the DoubleSummaryStatistics constructor
+         * rejects some of those combinations.
+         *
+         * @return a new DoubleSummaryStatistics
+         */
+        public DoubleSummaryStatistics toSummaryStatistics() {
+            if (Double.isFinite(sum)) {
+                return new DoubleSummaryStatistics(n, min, max, sum);
+            }
+            DoubleSummaryStatistics summary = new DoubleSummaryStatistics();
+            for (int i = 0, j = 0; j < n; i++) {
+                if (status[i] >= 0) {
+                    summary.accept(column[i]);
+                    j++;
+                }
+            }
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Graph of the overlaps between all the peaks of a peak list. Two peaks are
+ * connected if they overlap in every dimension, using the same test as
+ * Peak.overlapsLineWidth (or Peak.overlaps when bounds are used). The graph
+ * is built in one pass with a sweep line along the first dimension so that
+ * only peaks whose intervals intersect in that dimension are tested in the
+ * remaining dimensions.
+ *
+ * @author brucejohnson
+ */
+public class PeakOverlapGraph {
+
+    final PeakList peakList;
+    final double scale;
+    final boolean useBounds;
+    final List<Peak> nodes = new ArrayList<>();
+    final Map<Peak, Integer> nodeIndex = new HashMap<>();
+    final List<List<Integer>> edges = new ArrayList<>();
+    final int modCount;
+    final int nPeaks;
+    int[] componentIDs;
+    List<Set<Peak>> components = null;
+
+    /**
+     * Build the overlap graph for a peak list using peak line widths.
+     *
+     * @param peakList the peak list
+     * @param scale multiplier applied to the line widths
+     */
+    public PeakOverlapGraph(PeakList peakList, double scale) {
+        this(peakList, scale, false);
+    }
+
+    /**
+     * Build the overlap graph for a peak list.
+     *
+     * @param peakList the peak list
+     * @param scale multiplier applied to the line widths or bounds
+     * @param useBounds if true use the peak bounds rather than the line
+     * widths to define the extent of each peak
+     */
+    public PeakOverlapGraph(PeakList peakList, double scale, boolean useBounds) {
+        this.peakList = peakList;
+        this.scale = scale;
+        this.useBounds = useBounds;
+        modCount = peakList.modCount;
+        nPeaks = peakList.size();
+        build();
+    }
+
+    private void build() {
+        for (Peak peak : peakList.peaks()) {
+            if (peak.getStatus() >= 0) {
+                nodeIndex.put(peak, nodes.size());
+                nodes.add(peak);
+                edges.add(new ArrayList<>());
+            }
+        }
+        int nNodes = nodes.size();
+        double[] lower = new double[nNodes];
+        double[] upper = new double[nNodes];
+        Integer[] order = new Integer[nNodes];
+        for (int i = 0; i < nNodes; i++) {
+            PeakDim peakDim = nodes.get(i).getPeakDim(0);
+            double ctr = peakDim.getChemShiftValue();
+            double halfWidth = Math.abs(scale * getWidth(peakDim)) / 2.0;
+            lower[i] = ctr - halfWidth;
+            upper[i] = ctr + halfWidth;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(lower[a], lower[b]));
+
+        List<Integer> active = new ArrayList<>();
+        for (int i : order) {
+            active.removeIf(j -> upper[j] < lower[i]);
+            Peak peak = nodes.get(i);
+            for (int j : active) {
+                if (overlaps(peak, nodes.get(j))) {
+                    edges.get(i).add(j);
+                    edges.get(j).add(i);
+                }
+            }
+            active.add(i);
+        }
+    }
+
+    private double getWidth(PeakDim peakDim) {
+        return useBounds ? peakDim.getBoundsValue() : peakDim.getLineWidthValue();
+    }
+
+    private boolean overlaps(Peak peakA, Peak peakB) {
+        int nDim = peakList.getNDim();
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            boolean ok = useBounds ? peakA.overlaps(peakB, iDim, scale)
+                    : peakA.overlapsLineWidth(peakB, iDim, scale);
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the peaks that directly overlap the specified peak.
+     *
+     * @param peak the peak
+     * @return the set of overlapping peaks (not including the peak itself)
+     */
+    public Set<Peak> getOverlappingPeaks(Peak peak) {
+        Integer index = nodeIndex.get(peak);
+        if (index == null) {
+            return peak.getOverlappingPeaks(scale);
+        }
+        Set<Peak> result = new HashSet<>();
+        for (int j : edges.get(index)) {
+            result.add(nodes.get(j));
+        }
+        return result;
+    }
+
+    /**
+     * Get the connected overlap components of the peak list. Each peak that
+     * is not deleted belongs to exactly one component. The graph may be
+     * shared (PeakList caches it), so the list and sets can't be modified.
+     *
+     * @return list of sets of mutually connected peaks
+     */
+    public synchronized List<Set<Peak>> getComponents() {
+        if (components == null) {
+            int nNodes = nodes.size();
+            componentIDs = new int[nNodes];
+            Arrays.fill(componentIDs, -1);
+            components = new ArrayList<>();
+            int[] stack = new int[nNodes];
+            for (int start = 0; start < nNodes; start++) {
+                if (componentIDs[start] != -1) {
+                    continue;
+                }
+                int componentID = components.size();
+                Set<Peak> component = new LinkedHashSet<>();
+                int nStack = 0;
+                stack[nStack++] = start;
+                componentIDs[start] = componentID;
+                while (nStack > 0) {
+                    int i = stack[--nStack];
+                    component.add(nodes.get(i));
+                    for (int j : edges.get(i)) {
+                        if (componentIDs[j] == -1) {
+                            componentIDs[j] = componentID;
+                            stack[nStack++] = j;
+                        }
+                    }
+                }
+                components.add(Collections.unmodifiableSet(component));
+            }
+            components = Collections.unmodifiableList(components);
+        }
+        return components;
+    }
+
+    /**
+     * Get the set of peaks that are connected to the specified peak by a
+     * chain of overlaps. Equivalent to Peak.getAllOverlappingPeaks.
+     *
+     * @param peak the peak
+     * @return the set of connected peaks, including the peak itself
+     */
+    public Set<Peak> getComponent(Peak peak) {
+        getComponents();
+        Set<Peak> result = new HashSet<>();
+        result.add(peak);
+        Integer index = nodeIndex.get(peak);
+        if (index != null) {
+            result.addAll(components.get(componentIDs[index]));
+        } else {
+            for (Peak overlapPeak : peak.getOverlappingPeaks(scale)) {
+                result.addAll(components.get(componentIDs[nodeIndex.get(overlapPeak)]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the peak, the peaks that overlap it, and the peaks that overlap
+     * those. Equivalent to Peak.getOverlapLayers.
+     *
+     * @param peak the center peak
+     * @return list containing the center, first and second layers
+     */
+    public List<Set<Peak>> getOverlapLayers(Peak peak) {
+        List<Set<Peak>> result = new ArrayList<>();
+        Set<Peak> firstLayer = getOverlappingPeaks(peak);
+        Set<Peak> secondLayer = new HashSet<>();
+        for (Peak peak1 : firstLayer) {
+            for (Peak peak2 : getOverlappingPeaks(peak1)) {
+                if ((peak2 != peak) && !firstLayer.contains(peak2)) {
+                    secondLayer.add(peak2);
+                }
+            }
+        }
+        Set<Peak> centerLayer = new HashSet<>();
+        centerLayer.add(peak);
+        result.add(centerLayer);
+        result.add(firstLayer);
+        result.add(secondLayer);
+        return result;
+    }
+}
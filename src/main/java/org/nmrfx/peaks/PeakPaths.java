@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 //import smile.interpolation.KrigingInterpolation;
 
 public class PeakPaths implements PeakListener {
@@ -48,24 +50,12 @@ public class PeakPaths implements PeakListener {
         Iterator<Entry<Peak, PeakPath>> entryIter = peakPath.getPathMap().entrySet().iterator();
         while (entryIter.hasNext()) {
             Entry<Peak, PeakPath> entry = entryIter.next();
-            List<PeakDistance> newDists = new ArrayList<>();
-            boolean changed = false;
-            for (PeakDistance peakDist : entry.getValue().getPeakDistances()) {
-                if (peakDist == null) {
-                    newDists.add(null);
-                } else {
-                    if (peakDist.getPeak().getStatus() <= 0) {
-                        newDists.add(null);
-                        changed = true;
-                    } else {
-                        newDists.add(peakDist);
-                    }
-                }
-            }
-            if (changed) {
-                entry.setValue(new PeakPath(peakPath, newDists));
+            PeakPath newPath = purgePath(peakPath, entry.getValue());
+            if (newPath != null) {
+                entry.setValue(newPath);
             }
         }
+        peakPath.rebuildPeakIndex();
         for (Peak peak : peakPath.getFirstList().peaks()) {
             if (!peak.isDeleted()) {
                 if (!peakPath.getPathMap().containsKey(peak)) {
@@ -77,6 +67,33 @@ public class PeakPaths implements PeakListener {
 
     }
 
+    /**
+     * Remove peaks that are no longer part of a path (status less than or
+     * equal to zero) from the path.
+     *
+     * @param peakPath the peak paths
+     * @param path the path to purge
+     * @return a new path without the removed peaks or null if no peaks were
+     * removed
+     */
+    static PeakPath purgePath(PeakPaths peakPath, PeakPath path) {
+        List<PeakDistance> newDists = new ArrayList<>();
+        boolean changed = false;
+        for (PeakDistance peakDist : path.getPeakDistances()) {
+            if (peakDist == null) {
+                newDists.add(null);
+            } else {
+                if (peakDist.getPeak().getStatus() <= 0) {
+                    newDists.add(null);
+                    changed = true;
+                } else {
+                    newDists.add(peakDist);
+                }
+            }
+        }
+        return changed ? new PeakPath(peakPath, newDists) : null;
+    }
+
     public enum PATHMODE {
         TITRATION,
         PRESSURE;
@@ -99,13 +116,116 @@ public class PeakPaths implements PeakListener {
     PATHMODE pathMode = PATHMODE.TITRATION;
     String[] parNames;
     List<String> datasetNames;
+    final Map<PeakList, WeightedPeakIndex> peakIndexes = new HashMap<>();
+    // reverse index from each peak to the first peaks (keys) of the paths containing it
+    final Map<Peak, Set<Peak>> pathsWithPeak = new HashMap<>();
 
     @Override
     public void peakListChanged(PeakEvent peakEvent) {
         Object source = peakEvent.getSource();
         if (source instanceof PeakList) {
-            PeakList peakList = (PeakList) source;
-            purgePaths(this);
+            if (peakEvent.hasPeaks()) {
+                updatePaths(peakEvent.getPeaks());
+            } else {
+                purgePaths(this);
+            }
+        }
+    }
+
+    /**
+     * Update only the paths that contain the specified peaks. Paths starting
+     * at deleted peaks are removed, peaks no longer in a path are purged from
+     * it, distances of the remaining paths are recalculated and new paths are
+     * started for new peaks of the first list.
+     *
+     * @param changedPeaks the peaks that have changed
+     */
+    public void updatePaths(Collection<Peak> changedPeaks) {
+        Set<Peak> affected = new HashSet<>();
+        for (Peak peak : changedPeaks) {
+            // paths are keyed by id number so only peaks of the first list are keys
+            if ((peak.getPeakList() == firstList) && (peak.getStatus() < 0) && paths.containsKey(peak)) {
+                removePath(peak);
+            }
+            Set<Peak> firstPeaks = pathsWithPeak.get(peak);
+            if (firstPeaks != null) {
+                affected.addAll(firstPeaks);
+            }
+        }
+        for (Peak firstPeak : affected) {
+            PeakPath path = paths.get(firstPeak);
+            if (path != null) {
+                PeakPath newPath = purgePath(this, path);
+                if (newPath != null) {
+                    putPath(newPath);
+                    path = newPath;
+                }
+                path.refresh();
+            }
+        }
+        for (Peak peak : changedPeaks) {
+            if ((peak.getPeakList() == firstList) && !peak.isDeleted() && !paths.containsKey(peak)) {
+                initPath(peak);
+            }
+        }
+    }
+
+    void putPath(PeakPath path) {
+        PeakPath oldPath = paths.put(path.getFirstPeak(), path);
+        if (oldPath != null) {
+            unIndexPath(oldPath);
+        }
+        indexPath(path);
+    }
+
+    void removePath(Peak firstPeak) {
+        PeakPath oldPath = paths.remove(firstPeak);
+        if (oldPath != null) {
+            unIndexPath(oldPath);
+        }
+    }
+
+    void indexPath(PeakPath path) {
+        for (PeakDistance peakDist : path.getPeakDistances()) {
+            if (peakDist != null) {
+                pathsWithPeak.computeIfAbsent(peakDist.getPeak(), k -> new HashSet<>()).add(path.getFirstPeak());
+            }
+        }
+    }
+
+    void unIndexPath(PeakPath path) {
+        for (PeakDistance peakDist : path.getPeakDistances()) {
+            if (peakDist != null) {
+                unIndexPeak(peakDist.getPeak(), path.getFirstPeak());
+            }
+        }
+    }
+
+    void unIndexPeak(Peak peak, Peak firstPeak) {
+        Set<Peak> firstPeaks = pathsWithPeak.get(peak);
+        if (firstPeaks != null) {
+            firstPeaks.remove(firstPeak);
+            if (firstPeaks.isEmpty()) {
+                pathsWithPeak.remove(peak);
+            }
+        }
+    }
+
+    void setPathPeak(PeakPath path, int index, PeakDistance peakDist) {
+        PeakDistance oldDist = path.peakDists.get(index);
+        if (oldDist != null) {
+            unIndexPeak(oldDist.getPeak(), path.getFirstPeak());
+        }
+        path.peakDists.set(index, peakDist);
+        if (peakDist != null) {
+            pathsWithPeak.computeIfAbsent(peakDist.getPeak(), k -> new HashSet<>()).add(path.getFirstPeak());
+        }
+    }
+
+    void rebuildPeakIndex() {
+        pathsWithPeak.clear();
+        for (PeakPath path : paths.values()) {
+            indexPath(path);
         }
     }
 
@@ -354,6 +474,7 @@ public class PeakPaths implements PeakListener {
             }
         }
         paths.clear();
+        pathsWithPeak.clear();
         initPaths();
     }
 
@@ -384,7 +505,7 @@ public class PeakPaths implements PeakListener {
             peakDists.add(peakDist);
         }
         PeakPath path = new PeakPath(this, peakDists);
-        paths.put(path.getFirstPeak(), path);
+        putPath(path);
         return path;
     }
 
@@ -397,7 +518,7 @@ public class PeakPaths implements PeakListener {
             peakDists.add(null);
         }
         PeakPath path = new PeakPath(this, peakDists);
-        paths.put(path.getFirstPeak(), path);
+        putPath(path);
 
     }
 
@@ -439,36 +560,98 @@ public class PeakPaths implements PeakListener {
         return (ppm2 - ppm1) / weights[iDim];
     }
 
+    /**
+     * Get the weighted k-d index of the shifts of a peak list, building it if
+     * the list has changed since the index was last built.
+     *
+     * @param peakList the peak list
+     * @return the index
+     */
+    synchronized WeightedPeakIndex getIndex(PeakList peakList) {
+        WeightedPeakIndex index = peakIndexes.get(peakList);
+        if ((index == null) || !index.isCurrent(peakList)) {
+            index = new WeightedPeakIndex(peakList, peakDims, weights);
+            peakIndexes.put(peakList, index);
+        }
+        return index;
+    }
+
+    double[] getPPMs(Peak peak) {
+        double[] ppms = new double[peakDims.length];
+        for (int k = 0; k < peakDims.length; k++) {
+            ppms[k] = peak.getPeakDim(peakDims[k]).getChemShift();
+        }
+        return ppms;
+    }
+
     public ArrayList<ArrayList<PeakDistance>> getNearPeaks(final Peak startPeak, final double radius) {
-        int iList = -1;
+        List<WeightedPeakIndex> indexes = new ArrayList<>();
+        for (int iList = 1; iList < peakLists.size(); iList++) {
+            indexes.add(getIndex(peakLists.get(iList)));
+        }
+        return getNearPeaks(startPeak, radius, indexes);
+    }
+
+    /**
+     * Find the peaks near each of a set of start peaks. The search for each
+     * start peak is done in parallel and gives the same result as calling
+     * getNearPeaks(startPeak, radius) for each one.
+     *
+     * @param startPeaks peaks of the first list to start from
+     * @param radius the search radius in weighted ppm
+     * @return map from each start peak to its near peaks in each list
+     */
+    public Map<Peak, ArrayList<ArrayList<PeakDistance>>> getNearPeaks(final List<Peak> startPeaks, final double radius) {
+        List<WeightedPeakIndex> indexes = new ArrayList<>();
+        for (int iList = 1; iList < peakLists.size(); iList++) {
+            indexes.add(getIndex(peakLists.get(iList)));
+        }
+        List<ArrayList<ArrayList<PeakDistance>>> results = startPeaks.parallelStream().
+                map(startPeak -> getNearPeaks(startPeak, radius, indexes)).
+                collect(Collectors.toList());
+        Map<Peak, ArrayList<ArrayList<PeakDistance>>> nearMap = new LinkedHashMap<>();
+        for (int i = 0; i < startPeaks.size(); i++) {
+            nearMap.put(startPeaks.get(i), results.get(i));
+        }
+        return nearMap;
+    }
+
+    ArrayList<ArrayList<PeakDistance>> getNearPeaks(final Peak startPeak, final double radius,
+            List<WeightedPeakIndex> indexes) {
         ArrayList<ArrayList<PeakDistance>> filteredLists = new ArrayList<>();
-        for (PeakList peakList : peakLists) {
+        ArrayList<PeakDistance> firstArray = new ArrayList<>();
+        double[] firstDeltas = new double[weights.length];
+        firstArray.add(new PeakDistance(startPeak, 0.0, firstDeltas));
+        filteredLists.add(firstArray);
+        double[] ppms = getPPMs(startPeak);
+        for (WeightedPeakIndex index : indexes) {
             ArrayList<PeakDistance> peakArray = new ArrayList<>();
             filteredLists.add(peakArray);
-            iList++;
-            if (iList == 0) {
-                double[] deltas = new double[weights.length];
-                peakArray.add(new PeakDistance(startPeak, 0.0, deltas));
-
-                continue;
-            }
-            int nPeaks = peakList.size();
-            for (int j = 0; j < nPeaks; j++) {
-                Peak peak = peakList.getPeak(j);
-                if (peak.getStatus() != 0) {
-                    continue;
-                }
-                double distance = calcDistance(startPeak, peak);
+            IntStream.Builder rowBuilder = IntStream.builder();
+            index.forEachWithin(ppms, radius, row -> index.getPeak(row).getStatus() == 0, rowBuilder);
+            // add in list order so the stable sort below orders ties as a linear scan would
+            rowBuilder.build().sorted().forEach(row -> {
+                Peak peak = index.getPeak(row);
+                double distance = index.distance(ppms, row);
                 double[] deltas = calcDeltas(startPeak, peak);
-                if (distance < radius) {
-                    peakArray.add(new PeakDistance(peak, distance, deltas));
-                }
-            }
+                peakArray.add(new PeakDistance(peak, distance, deltas));
+            });
             peakArray.sort(null);
         }
         return filteredLists;
     }
 
+    /**
+     * Find, for each peak of the first list, the closest free peak in each of
+     * the other lists and mark the peaks with status 1 if all the closest
+     * peaks are within the tolerance set by the bounds of the first peak.
+     * Start peaks are processed in list order and claimed peaks are no longer
+     * free for later start peaks. The closest peaks are first found for all
+     * start peaks in parallel; a start peak is only searched again if one of
+     * its closest peaks was claimed by an earlier start peak.
+     *
+     * @param peakPath the peak paths
+     */
     static void filterLists(PeakPaths peakPath) {
         for (PeakList peakList : peakPath.peakLists) {
             int nPeaks = peakList.size();
@@ -479,9 +662,30 @@ public class PeakPaths implements PeakListener {
                 }
             }
         }
+        List<WeightedPeakIndex> indexes = new ArrayList<>();
+        for (int iList = 1; iList < peakPath.peakLists.size(); iList++) {
+            indexes.add(peakPath.getIndex(peakPath.peakLists.get(iList)));
+        }
+        int nLists = indexes.size();
         int nPeaks = peakPath.firstList.size();
+        Peak[] startPeaks = new Peak[nPeaks];
         for (int i = 0; i < nPeaks; i++) {
-            Peak peak1 = peakPath.firstList.getPeak(i);
+            startPeaks[i] = peakPath.firstList.getPeak(i);
+        }
+        int[][] nearest = new int[nPeaks][];
+        IntStream.range(0, nPeaks).parallel().forEach(i -> {
+            if (startPeaks[i].getStatus() >= 0) {
+                double[] ppms = peakPath.getPPMs(startPeaks[i]);
+                nearest[i] = new int[nLists];
+                for (int iList = 0; iList < nLists; iList++) {
+                    WeightedPeakIndex index = indexes.get(iList);
+                    nearest[i][iList] = index.nearest(ppms, row -> index.getPeak(row).getStatus() == 0);
+                }
+            }
+        });
+
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak1 = startPeaks[i];
             if (peak1.getStatus() < 0) {
                 continue;
             }
@@ -491,30 +695,19 @@ public class PeakPaths implements PeakListener {
                 sum += boundary * boundary / (peakPath.weights[iDim] * peakPath.weights[iDim]);
             }
             double tol = Math.sqrt(sum / peakPath.peakDims.length);
-            int iList = -1;
+            double[] ppms = peakPath.getPPMs(peak1);
             boolean ok = true;
             ArrayList<Peak> minPeaks = new ArrayList<>();
-            for (PeakList peakList : peakPath.peakLists) {
-                iList++;
-                if (iList == 0) {
-                    continue;
-                }
-                int nPeaks2 = peakList.size();
-                double minDis = Double.MAX_VALUE;
-                Peak minPeak = null;
-                for (int j = 0; j < nPeaks2; j++) {
-                    Peak peak2 = peakList.getPeak(j);
-                    if (peak2.getStatus() != 0) {
-                        continue;
-                    }
-                    double distance = peakPath.calcDistance(peak1, peak2);
-                    if (distance < minDis) {
-                        minDis = distance;
-                        minPeak = peak2;
-                    }
+            for (int iList = 0; iList < nLists; iList++) {
+                WeightedPeakIndex index = indexes.get(iList);
+                int row = nearest[i][iList];
+                // free peaks only become unavailable so a still free nearest peak is still nearest
+                if ((row != -1) && (index.getPeak(row).getStatus() != 0)) {
+                    row = index.nearest(ppms, testRow -> index.getPeak(testRow).getStatus() == 0);
                 }
+                double minDis = row == -1 ? Double.MAX_VALUE : index.distance(ppms, row);
                 if (minDis < tol) {
-                    minPeaks.add(minPeak);
+                    minPeaks.add(index.getPeak(row));
                 } else {
                     ok = false;
                     break;
@@ -568,7 +761,7 @@ public class PeakPaths implements PeakListener {
             double[] deltas = calcDeltas(startPeak, selPeak);
             PeakDistance peakDist = new PeakDistance(selPeak, distance, deltas);
             int index = peakLists.indexOf(selPeak.getPeakList());
-            path.peakDists.set(index, peakDist);
+            setPathPeak(path, index, peakDist);
             startPeak.setStatus(1);
             selPeak.setStatus(1);
             //path.confirm();
@@ -578,15 +771,11 @@ public class PeakPaths implements PeakListener {
     }
 
     public Peak findPathPeak(Peak peak) {
-        for (Entry<Peak, PeakPath> eSet : paths.entrySet()) {
-            for (PeakDistance peakDist : eSet.getValue().peakDists) {
-                if ((peakDist != null) && (peakDist.peak == peak)) {
-                    return eSet.getValue().firstPeak;
-                }
-            }
-
+        Set<Peak> firstPeaks = pathsWithPeak.get(peak);
+        if ((firstPeaks == null) || firstPeaks.isEmpty()) {
+            return null;
         }
-        return null;
+        return firstPeaks.stream().min(peakComparator).get();
     }
 
     public void removePeak(Peak startPeak, Peak selPeak) {
@@ -596,7 +785,7 @@ public class PeakPaths implements PeakListener {
         System.out.println("remove " + selPeak.getName() + " " + selPeak.getStatus());
         if ((pathPeak != null) && (path != null)) {
             int index = peakLists.indexOf(selPeak.getPeakList());
-            path.peakDists.set(index, null);
+            setPathPeak(path, index, null);
             //path.confirm();
             System.out.println(path.toString());
         }
@@ -0,0 +1,159 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+/**
+ * The parts of a peak specifier string of the form list.id or list.id.dim
+ * (for example "hnco.12.H"). The string is scanned once; the list name is
+ * everything before the first '.', the dimension everything after the last
+ * '.' (if there are two or more) and the id number what lies between.
+ *
+ * @author brucejohnson
+ */
+public class PeakSpecifier {
+
+    final String listName;
+    final int idNum;
+    final String dimName;
+
+    PeakSpecifier(String listName, int idNum, String dimName) {
+        this.listName = listName;
+        this.idNum = idNum;
+        this.dimName = dimName;
+    }
+
+    /**
+     * Parse a peak specifier
+     *
+     * @param specifier the specifier
+     * @return the parsed specifier or null if the string contains no '.'
+     * @throws NumberFormatException if the id number is not an integer
+     */
+    public static PeakSpecifier parse(String specifier) {
+        return parse(specifier, 0);
+    }
+
+    /**
+     * Parse a peak specifier that starts at the specified position in a
+     * string
+     *
+     * @param string the string containing the specifier
+     * @param start the index of the first character of the specifier
+     * @return the parsed specifier or null if there is no '.' after start
+     * @throws NumberFormatException if the id number is not an integer
+     */
+    public static PeakSpecifier parse(String string, int start) {
+        int dot = string.indexOf('.', start);
+        if (dot == -1) {
+            return null;
+        }
+        int lastDot = string.lastIndexOf('.');
+        int idEnd = lastDot == dot ? string.length() : lastDot;
+        int idNum = parseInt(string, dot + 1, idEnd);
+        String dimName = lastDot == dot ? null : string.substring(lastDot + 1);
+        return new PeakSpecifier(string.substring(start, dot), idNum, dimName);
+    }
+
+    private static int parseInt(String string, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if ((i < end) && ((string.charAt(i) == '-') || (string.charAt(i) == '+'))) {
+            negative = string.charAt(i) == '-';
+            i++;
+        }
+        if ((i == end) || ((end - i) > 9)) {
+            return Integer.parseInt(string.substring(start, end));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = string.charAt(i) - '0';
+            if ((digit < 0) || (digit > 9)) {
+                return Integer.parseInt(string.substring(start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public String getListName() {
+        return listName;
+    }
+
+    public int getIdNum() {
+        return idNum;
+    }
+
+    /**
+     * @return the dimension part of the specifier or null if it has none
+     */
+    public String getDimName() {
+        return dimName;
+    }
+
+    /**
+     * @return the peak list named in the specifier, or null if the active
+     * project doesn't contain it
+     */
+    public PeakList getPeakList() {
+        return PeakList.get(listName);
+    }
+
+    /**
+     * @return the specified peak, or null if the list or peak doesn't exist
+     */
+    public Peak getPeak() {
+        PeakList peakList = getPeakList();
+        return peakList == null ? null : peakList.getPeakByID(idNum);
+    }
+
+    /**
+     * Get the dimension index from the dimension part of the specifier,
+     * interpreted as a one based dimension number.
+     *
+     * @return the dimension index, 0 if the specifier has no dimension part
+     * @throws NumberFormatException if the dimension is not an integer
+     */
+    public int getDimNum() {
+        return dimName == null ? 0 : Integer.parseInt(dimName) - 1;
+    }
+
+    /**
+     * Get the dimension index from the dimension part of the specifier,
+     * interpreted as a dimension name of the peak list or a one based
+     * dimension number.
+     *
+     * @param peakList the peak list
+     * @return the dimension index, 0 if the specifier has no dimension part
+     * or -1 if the dimension is not valid
+     */
+    public int getDim(PeakList peakList) {
+        return dimName == null ? 0 : getDim(peakList, dimName);
+    }
+
+    static int getDim(PeakList peakList, String dimName) {
+        int iDim = peakList.getListDim(dimName);
+        if (iDim == -1) {
+            try {
+                iDim = Integer.parseInt(dimName) - 1;
+            } catch (NumberFormatException nFE) {
+                iDim = -1;
+            }
+        }
+        return iDim;
+    }
+}
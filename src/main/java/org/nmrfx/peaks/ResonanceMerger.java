@@ -0,0 +1,169 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import org.nmrfx.chemistry.AtomResonance;
+
+/**
+ * Merges resonances that have the same label and similar shifts, for
+ * ResonanceFactory.merge and AtomResonanceFactory.merge. For each label a
+ * reference resonance is chosen (the first one with an atom, otherwise the
+ * one with the most peaks in the condition) and the other resonances whose
+ * average shift is within tol times the reference line width of the
+ * reference shift are merged into it.
+ *
+ * The resonances of each label are sorted by average shift so the ones in
+ * the window are found with a binary search. Labels are independent, so
+ * the merges are planned in parallel and then carried out in the original
+ * order, giving the same result as testing each resonance in turn.
+ *
+ * @author brucejohnson
+ */
+public class ResonanceMerger {
+
+    static final double MIN_WIDTH = 0.05;
+
+    private ResonanceMerger() {
+    }
+
+    /**
+     * Merge the resonances in each group.
+     *
+     * @param groups lists of resonances with the same label
+     * @param condition the sample condition used to select resonances, or
+     * null for all
+     * @param tol the merge tolerance, as a multiple of the line width
+     * @param mergeOp merges the second resonance into the first, returning
+     * the merged resonance or null if they can't be merged
+     */
+    public static void merge(Collection<? extends List<AtomResonance>> groups, String condition,
+            double tol, BinaryOperator<AtomResonance> mergeOp) {
+        List<List<AtomResonance>> plans = groups.parallelStream()
+                .map(resList -> plan(resList, condition, tol))
+                .collect(Collectors.toList());
+        for (List<AtomResonance> plan : plans) {
+            if (plan.size() > 1) {
+                AtomResonance refRes = plan.get(0);
+                for (int i = 1; i < plan.size(); i++) {
+                    AtomResonance merged = mergeOp.apply(refRes, plan.get(i));
+                    if (merged != null) {
+                        refRes = merged;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Choose the reference resonance of a group and the resonances to merge
+     * with it.
+     *
+     * @return the reference resonance followed by the resonances to merge
+     * into it, in the order of the group, or an empty list
+     */
+    static List<AtomResonance> plan(List<AtomResonance> resList, String condition, double tol) {
+        List<AtomResonance> result = new ArrayList<>();
+        AtomResonance refRes = null;
+        for (AtomResonance res : resList) {
+            if ((res.getPeakCount(condition) > 0) && (res.getAtom() != null)) {
+                refRes = res;
+                break;
+            }
+        }
+        if (refRes == null) {
+            int maxCount = 0;
+            for (AtomResonance res : resList) {
+                int nPeakDims = res.getPeakCount(condition);
+                if (nPeakDims > maxCount) {
+                    maxCount = nPeakDims;
+                    refRes = res;
+                }
+            }
+        }
+        if (refRes == null) {
+            return result;
+        }
+        Double ppmAvg = refRes.getPPMAvg(null);
+        Double widthAvg = refRes.getWidthAvg(null);
+        if (ppmAvg == null) {
+            return result;
+        }
+        if ((widthAvg == null) || (widthAvg < MIN_WIDTH)) {
+            widthAvg = MIN_WIDTH;
+        }
+        double window = tol * widthAvg;
+
+        // candidates sorted by shift, remembering their position in the group
+        int n = resList.size();
+        int[] order = new int[n];
+        double[] shifts = new double[n];
+        int nCandidates = 0;
+        for (int i = 0; i < n; i++) {
+            AtomResonance res = resList.get(i);
+            if ((res != refRes) && (res.getPeakCount(condition) > 0)) {
+                Double ppmAvg2 = res.getPPMAvg(null);
+                if (ppmAvg2 != null) {
+                    order[nCandidates] = i;
+                    shifts[i] = ppmAvg2;
+                    nCandidates++;
+                }
+            }
+        }
+        Integer[] sorted = new Integer[nCandidates];
+        for (int i = 0; i < nCandidates; i++) {
+            sorted[i] = order[i];
+        }
+        Arrays.sort(sorted, Comparator.comparingDouble(i -> shifts[i]));
+        int low = 0;
+        int high = nCandidates;
+        // allow for rounding in the bound, the exact test is below
+        double minShift = ppmAvg - window * (1.0 + 1.0e-12) - Math.ulp(ppmAvg);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (shifts[sorted[mid]] < minShift) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        boolean[] selected = new boolean[n];
+        for (int i = low; i < nCandidates; i++) {
+            double delta = shifts[sorted[i]] - ppmAvg;
+            if (delta >= window) {
+                break;
+            }
+            if (Math.abs(ppmAvg - shifts[sorted[i]]) < window) {
+                selected[sorted[i]] = true;
+            }
+        }
+        result.add(refRes);
+        for (int i = 0; i < n; i++) {
+            if (selected[i]) {
+                result.add(resList.get(i));
+            }
+        }
+        return result;
+    }
+}
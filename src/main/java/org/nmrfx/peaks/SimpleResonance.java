@@ -22,7 +22,11 @@ import org.nmrfx.peaks.Resonance;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -34,6 +38,8 @@ public class SimpleResonance implements Resonance {
     private List<String> names;
     List<PeakDim> peakDims = new ArrayList<>();
     private long id;
+    static final AtomicInteger conditionChanges = new AtomicInteger();
+    Stats stats = null;
 
     public SimpleResonance(long id) {
         this.names = null;
@@ -51,11 +57,51 @@ public class SimpleResonance implements Resonance {
         }
         names.clear();
         names.addAll(newNames);
+        PeakLabelIndex.labelsChanged();
     }
 
+    /**
+     * Remove a peak dimension. The last peak dimension is moved into its
+     * place, so this takes constant time but doesn't preserve the order of
+     * the list.
+     *
+     * @param peakDim the peak dimension
+     */
     @Override
     public void remove(PeakDim peakDim) {
-        peakDims.remove(peakDim);
+        stats = null;
+        int last = peakDims.size() - 1;
+        int position = peakDim.resonancePosition;
+        if ((position >= 0) && (position <= last) && (peakDims.get(position) == peakDim)) {
+            PeakDim lastPeakDim = peakDims.remove(last);
+            if (position != last) {
+                peakDims.set(position, lastPeakDim);
+                lastPeakDim.resonancePosition = position;
+            }
+            peakDim.resonancePosition = -1;
+        } else if (peakDims.remove(peakDim)) {
+            // the list was changed without updating the positions
+            renumber();
+        }
+    }
+
+    private void renumber() {
+        for (int i = 0; i < peakDims.size(); i++) {
+            peakDims.get(i).resonancePosition = i;
+        }
+    }
+
+    private boolean contains(PeakDim peakDim) {
+        int position = peakDim.resonancePosition;
+        return (position >= 0) && (position < peakDims.size()) && (peakDims.get(position) == peakDim);
+    }
+
+    private void addPeakDim(PeakDim peakDim) {
+        stats = null;
+        if (!contains(peakDim)) {
+            peakDim.resonancePosition = peakDims.size();
+            peakDims.add(peakDim);
+        }
     }
 
     @Override
@@ -85,6 +131,7 @@ public class SimpleResonance implements Resonance {
         }
         names.clear();
         names.add(name);
+        PeakLabelIndex.labelsChanged();
     }
 
     public void setAtomName(String aName) {
@@ -116,15 +163,14 @@ public class SimpleResonance implements Resonance {
     public void merge(Resonance resB) {
         if (resB != this) {
             Collection<PeakDim> peakDimsB = resB.getPeakDims();
-            int sizeA = peakDims.size();
-            int sizeB = peakDimsB.size();
             for (PeakDim peakDim : peakDimsB) {
                 peakDim.setResonance(this);
-                if (!peakDims.contains(peakDim)) {
-                    peakDims.add(peakDim);
-                }
+                addPeakDim(peakDim);
             }
             peakDimsB.clear();
+            if (resB instanceof SimpleResonance) {
+                ((SimpleResonance) resB).clearStats();
+            }
         }
 
     }
@@ -138,86 +184,56 @@ public class SimpleResonance implements Resonance {
     @Override
     public void add(PeakDim peakDim) {
         peakDim.setResonance(this);
-        if (!peakDims.contains(peakDim)) {
-            peakDims.add(peakDim);
-        }
+        addPeakDim(peakDim);
     }
 
-    public Double getPPMAvg(String condition) {
-        double sum = 0.0;
-        int n = 0;
-        Double result = null;
-        for (PeakDim peakDim : peakDims) {
-            if (peakDim == null) {
-                continue;
-            }
-            if ((condition != null) && (condition.length() > 0)) {
-                String peakCondition = peakDim.getPeak().getPeakList().getSampleConditionLabel();
-                if ((peakCondition == null) || (!condition.equals(peakCondition))) {
-                    continue;
-                }
-            }
-            if (peakDim.getChemShift() != null) {
-                sum += peakDim.getChemShift();
-                n++;
-            }
+    /**
+     * Discard the cached statistics. Called when a peak dimension of the
+     * resonance is added, removed or changed.
+     */
+    public void clearStats() {
+        stats = null;
+    }
+
+    /**
+     * Record that the sample condition of a peak list has changed, so all
+     * cached statistics are recalculated when next used.
+     */
+    static void conditionsChanged() {
+        conditionChanges.incrementAndGet();
+    }
+
+    private Stats getStats(String condition) {
+        Stats current = stats;
+        if ((current == null) || (current.conditionVersion != conditionChanges.get())
+                || (current.nPeakDims != peakDims.size())) {
+            current = new Stats(peakDims);
+            stats = current;
         }
-        if (n > 0) {
-            result = sum / n;
+        if ((condition != null) && (condition.length() > 0)) {
+            Stats conditionStats = current.conditions.get(condition);
+            return conditionStats == null ? Stats.EMPTY : conditionStats;
         }
-        return result;
+        return current;
+    }
+
+    public Double getPPMAvg(String condition) {
+        Stats current = getStats(condition);
+        return current.nShift > 0 ? current.shiftSum / current.nShift : null;
     }
 
     public Double getWidthAvg(String condition) {
-        double sum = 0.0;
-        int n = 0;
-        Double result = null;
-        for (PeakDim peakDim : peakDims) {
-            if (peakDim == null) {
-                continue;
-            }
-            if ((condition != null) && (condition.length() > 0)) {
-                String peakCondition = peakDim.getPeak().getPeakList().getSampleConditionLabel();
-                if ((peakCondition == null) || (!condition.equals(peakCondition))) {
-                    continue;
-                }
-            }
-            Float lw = peakDim.getLineWidth();
-            if (lw != null) {
-                sum += lw;
-                n++;
-            }
-        }
-        if (n > 0) {
-            result = sum / n;
-        }
-        return result;
+        Stats current = getStats(condition);
+        return current.nWidth > 0 ? current.widthSum / current.nWidth : null;
     }
 
     public Double getPPMDev(String condition) {
-        double sum = 0.0;
-        double sumsq = 0.0;
-        int n = 0;
+        Stats current = getStats(condition);
+        int n = current.nShift;
         Double result = null;
-        for (PeakDim peakDim : peakDims) {
-            if (peakDim == null) {
-                continue;
-            }
-            if ((condition != null) && (condition.length() > 0)) {
-                String peakCondition = peakDim.getPeak().getPeakList().getSampleConditionLabel();
-                if ((peakCondition == null) || (!condition.equals(peakCondition))) {
-                    continue;
-                }
-            }
-            if (peakDim.getChemShift() != null) {
-                sum += peakDim.getChemShift();
-                sumsq += peakDim.getChemShift() * peakDim.getChemShift();
-                n++;
-            }
-        }
         if (n > 1) {
-            double mean = sum / n;
-            double devsq = sumsq / n - mean * mean;
+            double mean = current.shiftSum / n;
+            double devsq = current.shiftSumSq / n - mean * mean;
             if (devsq > 0.0) {
                 result = Math.sqrt(devsq);
             } else {
@@ -226,25 +242,75 @@ public class SimpleResonance implements Resonance {
         } else if (n == 1) {
             result = 0.0;
         }
-        /*for (int i=0;i<peakDimContribs.size();i++) {
-         PeakDim peakDim = ((PeakDimContrib) peakDimContribs.get(i)).getPeakDim();
-         peakDims.add(peakDim);
-         }*/
         return result;
     }
 
     public int getPeakCount(String condition) {
-        int n = 0;
-        for (PeakDim peakDim : peakDims) {
-            if ((condition != null) && (condition.length() > 0)) {
-                String peakCondition = peakDim.getPeak().getPeakList().getSampleConditionLabel();
-                if ((peakCondition == null) || (!condition.equals(peakCondition))) {
+        return getStats(condition).nPeaks;
+    }
+
+    /**
+     * Sums of the shifts and widths of the peak dimensions of a resonance,
+     * for all peak dimensions and for each sample condition. They are
+     * calculated in one pass, in the order of the peak dimensions, so the
+     * results are the same as summing for each query.
+     */
+    static class Stats {
+
+        static final Stats EMPTY = new Stats();
+
+        int conditionVersion;
+        int nPeakDims;
+        int nPeaks = 0;
+        int nShift = 0;
+        double shiftSum = 0.0;
+        double shiftSumSq = 0.0;
+        int nWidth = 0;
+        double widthSum = 0.0;
+        Map<String, Stats> conditions = Collections.emptyMap();
+
+        Stats() {
+        }
+
+        Stats(List<PeakDim> peakDims) {
+            conditionVersion = conditionChanges.get();
+            nPeakDims = peakDims.size();
+            conditions = new HashMap<>();
+            for (PeakDim peakDim : peakDims) {
+                nPeaks++;
+                if (peakDim == null) {
                     continue;
                 }
+                String peakCondition = peakDim.getPeak().getPeakList().getSampleConditionLabel();
+                Stats conditionStats = null;
+                if (peakCondition != null) {
+                    conditionStats = conditions.computeIfAbsent(peakCondition, k -> new Stats());
+                    conditionStats.nPeaks++;
+                }
+                Float shift = peakDim.getChemShift();
+                if (shift != null) {
+                    float value = shift;
+                    add(value);
+                    if (conditionStats != null) {
+                        conditionStats.add(value);
+                    }
+                }
+                Float width = peakDim.getLineWidth();
+                if (width != null) {
+                    nWidth++;
+                    widthSum += width;
+                    if (conditionStats != null) {
+                        conditionStats.nWidth++;
+                        conditionStats.widthSum += width;
+                    }
+                }
             }
-            n++;
         }
-        return n;
-    }
 
+        private void add(float shift) {
+            nShift++;
+            shiftSum += shift;
+            shiftSumSq += shift * shift;
+        }
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of the peaks of a PeakList in order of their chemical shift
+ * in one dimension. The order is held as a permutation of the rows of the
+ * list (with the sort keys as sortable ints), so sorting doesn't change the
+ * order of the list itself. The order is the same as PeakList.sortPeaks
+ * produces: shifts are compared as Float.compare does and peaks with equal
+ * shifts stay in list order.
+ *
+ * When the shift of a single peak changes the view is updated by moving the
+ * peak to its new position, found with a binary search, rather than by
+ * sorting again. During a batch of changes (PeakList.beginUpdate) the moved
+ * peaks are only marked and the view is sorted once when the batch ends.
+ * Other changes to the list (adding or removing peaks) make the view stale;
+ * use PeakList.getSortedPeaks to get a current view.
+ *
+ * @author brucejohnson
+ */
+public class SortedPeakView extends AbstractList<Peak> implements RandomAccess {
+
+    final int iDim;
+    final boolean ascending;
+    final Peak[] rows;
+    final int[] keys;
+    final int[] order;
+    final int[] positions;
+    int listModCount;
+    boolean resortPending = false;
+
+    SortedPeakView(PeakListColumns columns, int iDim, boolean ascending, int listModCount) {
+        this.iDim = iDim;
+        this.ascending = ascending;
+        this.listModCount = listModCount;
+        int n = columns.size();
+        rows = new Peak[n];
+        keys = new int[n];
+        positions = new int[n];
+        float[] shifts = columns.getShifts(iDim);
+        for (int row = 0; row < n; row++) {
+            rows[row] = columns.getPeak(row);
+            keys[row] = key(shifts[row]);
+        }
+        order = PeakListColumns.sortedOrder(shifts, ascending);
+        for (int i = 0; i < n; i++) {
+            positions[order[i]] = i;
+        }
+    }
+
+    /**
+     * Sort the view again from the current shifts of its peaks, after a
+     * batch of changes marked with markResort.
+     */
+    synchronized void resort() {
+        if (!resortPending) {
+            return;
+        }
+        int n = rows.length;
+        float[] shifts = new float[n];
+        for (int row = 0; row < n; row++) {
+            shifts[row] = rows[row].peakDims[iDim].getChemShiftValue();
+            keys[row] = key(shifts[row]);
+        }
+        System.arraycopy(PeakListColumns.sortedOrder(shifts, ascending), 0, order, 0, n);
+        for (int i = 0; i < n; i++) {
+            positions[order[i]] = i;
+        }
+        resortPending = false;
+    }
+
+    /**
+     * Mark a peak as moved without updating the order, which is restored by
+     * resort.
+     *
+     * @param peak the peak
+     * @return false if the peak isn't in the view (the view is then stale)
+     */
+    synchronized boolean markResort(Peak peak) {
+        int row = peak.getIndex();
+        if ((row < 0) || (row >= rows.length) || (rows[row] != peak)) {
+            return false;
+        }
+        resortPending = true;
+        return true;
+    }
+
+    private int key(float shift) {
+        int key = PeakListColumns.sortableBits(shift);
+        return ascending ? key : ~key;
+    }
+
+    // true if row a sorts before row b
+    private boolean before(int a, int b) {
+        return (keys[a] < keys[b]) || ((keys[a] == keys[b]) && (a < b));
+    }
+
+    /**
+     * @return the dimension the peaks are sorted by
+     */
+    public int getDim() {
+        return iDim;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    @Override
+    public synchronized Peak get(int i) {
+        return rows[order[i]];
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * @param i position in the sorted order
+     * @return the row (index in the list) of the peak at that position
+     */
+    public synchronized int getRow(int i) {
+        return order[i];
+    }
+
+    /**
+     * @param peak a peak of the list
+     * @return the position of the peak in the sorted order, or -1 if it isn't
+     * in the view
+     */
+    public synchronized int getPosition(Peak peak) {
+        int row = peak.getIndex();
+        if ((row >= 0) && (row < rows.length) && (rows[row] == peak)) {
+            return positions[row];
+        }
+        return -1;
+    }
+
+    /**
+     * Move a peak to the position matching its current shift.
+     *
+     * @param peak the peak
+     * @return false if the peak isn't in the view (the view is then stale)
+     */
+    synchronized boolean update(Peak peak) {
+        int row = peak.getIndex();
+        if ((row < 0) || (row >= rows.length) || (rows[row] != peak)) {
+            return false;
+        }
+        if (resortPending) {
+            return true;
+        }
+        int newKey = key(peak.peakDims[iDim].getChemShiftValue());
+        if (newKey == keys[row]) {
+            return true;
+        }
+        keys[row] = newKey;
+        int old = positions[row];
+        int n = order.length;
+        if ((old > 0) && before(row, order[old - 1])) {
+            // first position in [0, old) whose row sorts after this one
+            int lo = 0;
+            int hi = old - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (before(row, order[mid])) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            System.arraycopy(order, lo, order, lo + 1, old - lo);
+            order[lo] = row;
+            for (int i = lo; i <= old; i++) {
+                positions[order[i]] = i;
+            }
+        } else if ((old < n - 1) && before(order[old + 1], row)) {
+            // last position in (old, n) whose row sorts before this one
+            int lo = old + 1;
+            int hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (before(order[mid], row)) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            System.arraycopy(order, old + 1, order, old, lo - old);
+            order[lo] = row;
+            for (int i = old; i <= lo; i++) {
+                positions[order[i]] = i;
+            }
+        }
+        return true;
+    }
+}
@@ -354,6 +354,9 @@ public class SpectralDim {
 
     public void setSf(double sf) {
         this.sf = sf;
+        if (peakList != null) {
+            peakList.spectralDimChanged();
+        }
     }
 
     public double getSw() {
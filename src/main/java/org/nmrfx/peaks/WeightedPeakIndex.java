@@ -0,0 +1,258 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * A static k-d tree over the chemical shifts of the peaks in a PeakList.
+ * Each dimension is divided by a weight so that distances are measured in
+ * the same scaled units as PeakPaths.calcDistance. The tree is used only to
+ * prune the search; final distances are computed with the same arithmetic
+ * as PeakPaths.calcDistance so results are identical to a linear scan.
+ *
+ * The index is built from a PeakListColumns snapshot and is valid as long as
+ * the list returns the same columns object from PeakList.getColumns().
+ *
+ * @author brucejohnson
+ */
+public class WeightedPeakIndex {
+
+    static final int LEAF_SIZE = 8;
+    static final double SLACK = 1.0e-9;
+
+    final PeakListColumns columns;
+    final int nIndexDims;
+    final double[] weights;
+    final double[][] shifts;
+    final double[][] scaled;
+    final int[] tree;
+
+    /**
+     * Build the index.
+     *
+     * @param peakList the peak list to index
+     * @param dims the peak list dimensions to use
+     * @param weights the weight of each peak list dimension (indexed by
+     * dimension number, as in PeakPaths)
+     */
+    public WeightedPeakIndex(PeakList peakList, int[] dims, double[] weights) {
+        columns = peakList.getColumns();
+        nIndexDims = dims.length;
+        this.weights = new double[nIndexDims];
+        int nPeaks = columns.size();
+        shifts = new double[nIndexDims][nPeaks];
+        scaled = new double[nIndexDims][nPeaks];
+        for (int k = 0; k < nIndexDims; k++) {
+            this.weights[k] = weights[dims[k]];
+            float[] column = columns.getShifts(dims[k]);
+            for (int i = 0; i < nPeaks; i++) {
+                shifts[k][i] = column[i];
+                scaled[k][i] = column[i] / this.weights[k];
+            }
+        }
+        tree = new int[nPeaks];
+        for (int i = 0; i < nPeaks; i++) {
+            tree[i] = i;
+        }
+        build(0, nPeaks, 0);
+    }
+
+    /**
+     * @param peakList a peak list
+     * @return true if this index was built from the current state of the
+     * peak list
+     */
+    public boolean isCurrent(PeakList peakList) {
+        return columns == peakList.getColumns();
+    }
+
+    /**
+     * @param row a row returned by one of the search methods
+     * @return the peak at that row
+     */
+    public Peak getPeak(int row) {
+        return columns.getPeak(row);
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if ((hi - lo) <= LEAF_SIZE) {
+            return;
+        }
+        int k = depth % nIndexDims;
+        int mid = (lo + hi) >>> 1;
+        select(scaled[k], lo, hi - 1, mid);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    // partial sort of tree[lo..hi] so that tree[n] has the n'th smallest key
+    private void select(double[] keys, int lo, int hi, int n) {
+        while (hi > lo) {
+            double pivot = keys[tree[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[tree[i]] < pivot) {
+                    i++;
+                }
+                while (keys[tree[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int hold = tree[i];
+                    tree[i] = tree[j];
+                    tree[j] = hold;
+                    i++;
+                    j--;
+                }
+            }
+            if (n <= j) {
+                hi = j;
+            } else if (n >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Calculate the weighted distance between a position and a row, using the
+     * same arithmetic as PeakPaths.calcDistance.
+     *
+     * @param ppms the position (one value per indexed dimension)
+     * @param row the row
+     * @return the distance
+     */
+    public double distance(double[] ppms, int row) {
+        double sum = 0.0;
+        for (int k = 0; k < nIndexDims; k++) {
+            double delta = ppms[k] - shifts[k][row];
+            sum += delta * delta / (weights[k] * weights[k]);
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Call the consumer with every row that is within the radius of the
+     * position and is accepted by the filter. Rows are not reported in any
+     * particular order.
+     *
+     * @param ppms the position (one value per indexed dimension)
+     * @param radius the search radius
+     * @param filter test applied to each candidate row
+     * @param consumer called with each matching row
+     */
+    public void forEachWithin(double[] ppms, double radius, IntPredicate filter, IntConsumer consumer) {
+        double[] q = scale(ppms);
+        double limit = radius * (1.0 + SLACK) + SLACK;
+        within(0, tree.length, 0, ppms, q, radius, limit * limit, filter, consumer);
+    }
+
+    private void within(int lo, int hi, int depth, double[] ppms, double[] q, double radius,
+            double limit2, IntPredicate filter, IntConsumer consumer) {
+        if ((hi - lo) <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                checkWithin(tree[i], ppms, radius, filter, consumer);
+            }
+            return;
+        }
+        int k = depth % nIndexDims;
+        int mid = (lo + hi) >>> 1;
+        int row = tree[mid];
+        checkWithin(row, ppms, radius, filter, consumer);
+        double diff = q[k] - scaled[k][row];
+        if (diff <= 0.0) {
+            within(lo, mid, depth + 1, ppms, q, radius, limit2, filter, consumer);
+            if (diff * diff <= limit2) {
+                within(mid + 1, hi, depth + 1, ppms, q, radius, limit2, filter, consumer);
+            }
+        } else {
+            within(mid + 1, hi, depth + 1, ppms, q, radius, limit2, filter, consumer);
+            if (diff * diff <= limit2) {
+                within(lo, mid, depth + 1, ppms, q, radius, limit2, filter, consumer);
+            }
+        }
+    }
+
+    private void checkWithin(int row, double[] ppms, double radius, IntPredicate filter, IntConsumer consumer) {
+        if (filter.test(row) && (distance(ppms, row) < radius)) {
+            consumer.accept(row);
+        }
+    }
+
+    /**
+     * Find the row closest to the position that is accepted by the filter.
+     * Ties are resolved in favor of the lowest row, as in a linear scan that
+     * only replaces the best on a strictly smaller distance.
+     *
+     * @param ppms the position (one value per indexed dimension)
+     * @param filter test applied to each candidate row
+     * @return the row or -1 if no row is accepted
+     */
+    public int nearest(double[] ppms, IntPredicate filter) {
+        double[] q = scale(ppms);
+        double[] best = {Double.MAX_VALUE, -1};
+        nearest(0, tree.length, 0, ppms, q, filter, best);
+        return (int) best[1];
+    }
+
+    private void nearest(int lo, int hi, int depth, double[] ppms, double[] q,
+            IntPredicate filter, double[] best) {
+        if ((hi - lo) <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                checkNearest(tree[i], ppms, filter, best);
+            }
+            return;
+        }
+        int k = depth % nIndexDims;
+        int mid = (lo + hi) >>> 1;
+        int row = tree[mid];
+        checkNearest(row, ppms, filter, best);
+        double diff = q[k] - scaled[k][row];
+        int nearLo = diff <= 0.0 ? lo : mid + 1;
+        int nearHi = diff <= 0.0 ? mid : hi;
+        int farLo = diff <= 0.0 ? mid + 1 : lo;
+        int farHi = diff <= 0.0 ? hi : mid;
+        nearest(nearLo, nearHi, depth + 1, ppms, q, filter, best);
+        double limit = best[0] * (1.0 + SLACK) + SLACK;
+        if ((best[1] < 0) || (diff * diff <= limit * limit)) {
+            nearest(farLo, farHi, depth + 1, ppms, q, filter, best);
+        }
+    }
+
+    private void checkNearest(int row, double[] ppms, IntPredicate filter, double[] best) {
+        if (filter.test(row)) {
+            double distance = distance(ppms, row);
+            if ((distance < best[0]) || ((distance == best[0]) && (row < best[1]))) {
+                best[0] = distance;
+                best[1] = row;
+            }
+        }
+    }
+
+    private double[] scale(double[] ppms) {
+        double[] q = new double[nIndexDims];
+        for (int k = 0; k < nIndexDims; k++) {
+            q[k] = ppms[k] / weights[k];
+        }
+        return q;
+    }
+}
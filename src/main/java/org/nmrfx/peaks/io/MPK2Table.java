@@ -0,0 +1,115 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.nmrfx.peaks.Measures;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+
+/**
+ * Parsed contents of an .mpk2 (peak measures) file. Like XPK2Table the file
+ * is parsed without reference to the PeakList so it can be read in parallel
+ * with other files, and the values are applied to the peaks afterwards.
+ *
+ * @author brucejohnson
+ */
+class MPK2Table {
+
+    Measures measure = null;
+    final List<Integer> ids = new ArrayList<>();
+    final List<double[][]> rows = new ArrayList<>();
+
+    /**
+     * Read and parse an .mpk2 file.
+     *
+     * @param path the file
+     * @param nDim the number of dimensions of the peak list the measures
+     * belong to
+     * @return the table
+     * @throws IOException if the file can't be read
+     */
+    static MPK2Table read(Path path, int nDim) throws IOException {
+        MPK2Table table = new MPK2Table();
+        TabTokenizer tokenizer = TabTokenizer.read(path);
+        if (!tokenizer.nextLine()) {
+            return table;
+        }
+        int valStart = nDim + 1;
+        int nFields = tokenizer.size();
+        boolean hasErrors = (nFields > (valStart + 1)) && tokenizer.equals(valStart + 1, "err");
+        int nValues = nFields - (nDim + 1);
+        if (hasErrors) {
+            nValues /= 2;
+        }
+        double[] xValues = new double[nValues];
+        boolean ok = true;
+        for (int i = valStart, j = 0; i < nFields; i++) {
+            try {
+                xValues[j++] = tokenizer.parseDouble(i);
+                if (hasErrors) {
+                    i++;
+                }
+            } catch (NumberFormatException nfE) {
+                ok = false;
+                break;
+            }
+        }
+        if (ok) {
+            table.measure = new Measures(xValues);
+        }
+        while (tokenizer.nextLine()) {
+            int peakId = tokenizer.parseInt(0);
+            double[][] values = new double[2][nValues];
+            nFields = tokenizer.size();
+            for (int i = valStart, j = 0; i < nFields; i++) {
+                values[0][j] = tokenizer.parseDouble(i);
+                if (hasErrors) {
+                    values[1][j] = tokenizer.parseDouble(i + 1);
+                    i++;
+                }
+                j++;
+            }
+            table.ids.add(peakId);
+            table.rows.add(values);
+        }
+        return table;
+    }
+
+    /**
+     * Store the measures in the peak list and its peaks.
+     *
+     * @param peakList the peak list
+     */
+    void apply(PeakList peakList) {
+        peakList.batchUpdate(() -> {
+            if (measure != null) {
+                peakList.setMeasures(measure);
+            }
+            for (int i = 0, n = ids.size(); i < n; i++) {
+                Peak peak = peakList.getPeakByID(ids.get(i));
+                if (peak != null) {
+                    peak.setMeasures(rows.get(i));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.nmrfx.peaks.Measures;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+
+/**
+ * Binary snapshot of a peak list, used by projects to save and reload peak
+ * lists quickly. The .xpk2 and .mpk2 text files remain the interchange
+ * format; a snapshot is written next to them and is only used when it is at
+ * least as new as the text files.
+ *
+ * The snapshot holds the same header records as an .xpk2 file (as a table
+ * of strings), followed by the peak data stored column by column: floats,
+ * ints and longs as primitive arrays and strings as indices into the string
+ * table. Chemical shifts, widths and bounds are stored as the float values
+ * (in ppm) rather than as formatted text, so no precision is lost. Measures
+ * are stored as a dense matrix with one row per peak that has measures.
+ *
+ * @author brucejohnson
+ */
+public class PeakListSnapshot {
+
+    public static final String EXTENSION = ".xpkb";
+    static final int MAGIC = 0x4E504B42;
+    static final int VERSION = 1;
+
+    final Map<String, Integer> stringTable = new LinkedHashMap<>();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream body = new DataOutputStream(bytes);
+
+    private PeakListSnapshot() {
+    }
+
+    /**
+     * Get the path of the snapshot that accompanies an .xpk2 file
+     *
+     * @param xpk2Path path of .xpk2 file
+     * @return path of snapshot file
+     */
+    public static Path getSnapshotPath(Path xpk2Path) {
+        String fileName = xpk2Path.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        if (dot != -1) {
+            fileName = fileName.substring(0, dot);
+        }
+        return xpk2Path.resolveSibling(fileName + EXTENSION);
+    }
+
+    /**
+     * Check whether a snapshot can be used in place of an .xpk2 file (and its
+     * .mpk2 file). The snapshot must exist and not be older than the text
+     * files, so text files that were edited after the project was saved take
+     * precedence.
+     *
+     * @param xpk2Path path of .xpk2 file
+     * @param mpk2Path path of .mpk2 file (which need not exist)
+     * @return true if the snapshot is current
+     * @throws IOException if the file times can't be read
+     */
+    public static boolean isCurrent(Path xpk2Path, Path mpk2Path) throws IOException {
+        Path snapshotPath = getSnapshotPath(xpk2Path);
+        if (!Files.exists(snapshotPath)) {
+            return false;
+        }
+        long snapshotTime = Files.getLastModifiedTime(snapshotPath).toMillis();
+        if (Files.getLastModifiedTime(xpk2Path).toMillis() > snapshotTime) {
+            return false;
+        }
+        return !Files.exists(mpk2Path) || (Files.getLastModifiedTime(mpk2Path).toMillis() <= snapshotTime);
+    }
+
+    static String[] getListHeader(PeakList peakList) {
+        List<String> fields = new ArrayList<>();
+        fields.add("peaklist");
+        fields.add("dataset");
+        fields.add("ndim");
+        fields.add("condition");
+        fields.add("scale");
+        Map<String, String> properties = peakList.getProperties();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (entry.getValue().length() > 0) {
+                fields.add("prop:" + entry.getKey());
+            }
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    static String[] getListData(PeakList peakList) {
+        List<String> fields = new ArrayList<>();
+        fields.add(peakList.getName());
+        fields.add(String.valueOf(peakList.getDatasetName()));
+        fields.add(String.valueOf(peakList.getNDim()));
+        fields.add(String.valueOf(peakList.getSampleConditionLabel()));
+        fields.add(String.valueOf(peakList.getScale()));
+        Map<String, String> properties = peakList.getProperties();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (entry.getValue().length() > 0) {
+                fields.add(entry.getValue());
+            }
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    static String[] getDimData(PeakList peakList, int iDim) {
+        return peakList.getSpectralDim(iDim).toXPK2Dim().split("\t", -1);
+    }
+
+    /**
+     * Get a string describing the list level information (name, dataset,
+     * properties and spectral dimensions) of a peak list. Changes to these
+     * don't mark the list as changed, so a project compares this string with
+     * the one recorded at the last save to decide if the list has to be
+     * written again.
+     *
+     * @param peakList the peak list
+     * @return the description
+     */
+    public static String getHeaderSignature(PeakList peakList) {
+        StringBuilder sBuilder = new StringBuilder();
+        sBuilder.append(String.join("\t", getListHeader(peakList))).append('\n');
+        sBuilder.append(String.join("\t", getListData(peakList))).append('\n');
+        for (int i = 0; i < peakList.getNDim(); i++) {
+            sBuilder.append(String.join("\t", getDimData(peakList, i))).append('\n');
+        }
+        return sBuilder.toString();
+    }
+
+    int stringIndex(String value) {
+        if (value == null) {
+            value = "null";
+        }
+        Integer index = stringTable.get(value);
+        if (index == null) {
+            index = stringTable.size();
+            stringTable.put(value, index);
+        }
+        return index;
+    }
+
+    void writeStrings(String[] values) throws IOException {
+        body.writeInt(values.length);
+        for (String value : values) {
+            body.writeInt(stringIndex(value));
+        }
+    }
+
+    /**
+     * Write a snapshot of a peak list
+     *
+     * @param peakList the peak list
+     * @param path the file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(PeakList peakList, Path path) throws IOException {
+        PeakListSnapshot snapshot = new PeakListSnapshot();
+        snapshot.writeBody(peakList);
+        try (OutputStream fileStream = Files.newOutputStream(path);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.stringTable.size());
+            for (String value : snapshot.stringTable.keySet()) {
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(valueBytes.length);
+                out.write(valueBytes);
+            }
+            snapshot.bytes.writeTo(out);
+        }
+    }
+
+    void writeBody(PeakList peakList) throws IOException {
+        int nDim = peakList.getNDim();
+        writeStrings(getListHeader(peakList));
+        writeStrings(getListData(peakList));
+        writeStrings(PeakWriter.XPKDIMSTRINGS);
+        for (int i = 0; i < nDim; i++) {
+            writeStrings(getDimData(peakList, i));
+        }
+        List<String> dataHeader = new ArrayList<>();
+        dataHeader.add("id");
+        for (int i = 0; i < nDim; i++) {
+            String dimName = peakList.getSpectralDim(i).getDimName();
+            for (String field : new String[]{"L", "P", "W", "B", "E", "U", "r", "F"}) {
+                dataHeader.add(dimName + "." + field);
+            }
+        }
+        String[] peakFields = {"volume", "volume_err", "intensity", "intensity_err",
+            "type", "comment", "color", "flags", "status"};
+        for (String field : peakFields) {
+            dataHeader.add(field);
+        }
+        writeStrings(dataHeader.toArray(new String[dataHeader.size()]));
+
+        List<Peak> peaks = peakList.peaks();
+        int nPeaks = peaks.size();
+        body.writeInt(nPeaks);
+        for (Peak peak : peaks) {
+            body.writeInt(peak.getIdNum());
+        }
+        for (int i = 0; i < nDim; i++) {
+            for (Peak peak : peaks) {
+                body.writeInt(stringIndex(peak.getPeakDim(i).getLabel()));
+            }
+            for (Peak peak : peaks) {
+                body.writeFloat(peak.getPeakDim(i).getChemShiftValue());
+            }
+            for (Peak peak : peaks) {
+                body.writeFloat(peak.getPeakDim(i).getLineWidthValue());
+            }
+            for (Peak peak : peaks) {
+                body.writeFloat(peak.getPeakDim(i).getBoundsValue());
+            }
+            for (Peak peak : peaks) {
+                body.writeInt(stringIndex(new String(peak.getPeakDim(i).getError())));
+            }
+            for (Peak peak : peaks) {
+                body.writeInt(stringIndex(peak.getPeakDim(i).getUser()));
+            }
+            for (Peak peak : peaks) {
+                body.writeLong(Long.parseLong(peak.getPeakDim(i).getResonanceIDsAsString()));
+            }
+            for (Peak peak : peaks) {
+                body.writeBoolean(peak.getPeakDim(i).isFrozen());
+            }
+        }
+        for (Peak peak : peaks) {
+            body.writeFloat(peak.getVolume1());
+        }
+        for (Peak peak : peaks) {
+            body.writeFloat(peak.getVolume1Err());
+        }
+        for (Peak peak : peaks) {
+            body.writeFloat(peak.getIntensity());
+        }
+        for (Peak peak : peaks) {
+            body.writeFloat(peak.getIntensityErr());
+        }
+        for (Peak peak : peaks) {
+            body.writeInt(peak.getType());
+        }
+        for (Peak peak : peaks) {
+            body.writeInt(stringIndex(peak.getComment()));
+        }
+        for (Peak peak : peaks) {
+            body.writeInt(stringIndex(peak.getColorName()));
+        }
+        for (Peak peak : peaks) {
+            body.writeInt(stringIndex(peak.getFlag2()));
+        }
+        for (Peak peak : peaks) {
+            body.writeInt(peak.getStatus());
+        }
+        writeMeasures(peakList, peaks);
+    }
+
+    /*
+     * Stores what reading the .mpk2 file written by PeakWriter.writePeakMeasures
+     * would give: the list measures are only kept if they match the number of
+     * values of the first peak with measures.
+     */
+    void writeMeasures(PeakList peakList, List<Peak> peaks) throws IOException {
+        List<Peak> measured = new ArrayList<>();
+        if (peakList.hasMeasures()) {
+            for (Peak peak : peaks) {
+                if (peak.getMeasures().isPresent()) {
+                    measured.add(peak);
+                }
+            }
+        }
+        if (measured.isEmpty()) {
+            body.writeBoolean(false);
+            return;
+        }
+        body.writeBoolean(true);
+        int nValues = measured.get(0).getMeasures().get()[0].length;
+        body.writeInt(nValues);
+        double[] xValues = peakList.getMeasureValues();
+        if ((xValues != null) && (xValues.length == nValues)) {
+            body.writeBoolean(true);
+            for (double xValue : xValues) {
+                body.writeDouble(xValue);
+            }
+        } else {
+            body.writeBoolean(false);
+        }
+        body.writeInt(measured.size());
+        for (Peak peak : measured) {
+            body.writeInt(peak.getIdNum());
+        }
+        for (Peak peak : measured) {
+            double[][] values = peak.getMeasures().get();
+            for (int k = 0; k < 2; k++) {
+                for (int j = 0; j < nValues; j++) {
+                    body.writeDouble(j < values[k].length ? values[k][j] : 0.0);
+                }
+            }
+        }
+    }
+
+    static String[] readStrings(DataInputStream in, String[] strings) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = strings[in.readInt()];
+        }
+        return values;
+    }
+
+    /**
+     * Read a snapshot into a table that PeakReader can build a peak list from
+     *
+     * @param path the snapshot file
+     * @param fileTail name used for the list if the snapshot has no name
+     * @return the table
+     * @throws IOException if the file can't be read or is not a snapshot of
+     * a supported version
+     */
+    static XPK2Table read(Path path, String fileTail) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a peak list snapshot " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported peak list snapshot version " + version);
+            }
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] valueBytes = new byte[in.readInt()];
+                in.readFully(valueBytes);
+                strings[i] = new String(valueBytes, StandardCharsets.UTF_8);
+            }
+            XPK2Table table = new XPK2Table(fileTail);
+            table.listHeader = readStrings(in, strings);
+            table.listData = readStrings(in, strings);
+            table.dimHeader = readStrings(in, strings);
+            int nDim = table.getNDim();
+            for (int i = 0; i < nDim; i++) {
+                table.dimData.add(readStrings(in, strings));
+            }
+            table.dataHeader = readStrings(in, strings);
+            int nRows = in.readInt();
+            table.resolveColumns();
+            table.capacity = nRows;
+            table.nRows = nRows;
+            for (XPK2Table.Column column : table.columns) {
+                column.grow(nRows);
+            }
+            for (XPK2Table.Column column : table.columns) {
+                column.read(in, nRows, strings);
+            }
+            if (in.readBoolean()) {
+                table.measures = readMeasures(in);
+            }
+            return table;
+        }
+    }
+
+    static MPK2Table readMeasures(DataInputStream in) throws IOException {
+        MPK2Table measures = new MPK2Table();
+        int nValues = in.readInt();
+        if (in.readBoolean()) {
+            double[] xValues = new double[nValues];
+            for (int j = 0; j < nValues; j++) {
+                xValues[j] = in.readDouble();
+            }
+            measures.measure = new Measures(xValues);
+        }
+        int nRows = in.readInt();
+        for (int i = 0; i < nRows; i++) {
+            measures.ids.add(in.readInt());
+        }
+        for (int i = 0; i < nRows; i++) {
+            double[][] values = new double[2][nValues];
+            for (int k = 0; k < 2; k++) {
+                for (int j = 0; j < nValues; j++) {
+                    values[k][j] = in.readDouble();
+                }
+            }
+            measures.rows.add(values);
+        }
+        return measures;
+    }
+}
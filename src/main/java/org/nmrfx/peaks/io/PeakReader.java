@@ -19,6 +19,7 @@ package org.nmrfx.peaks.io;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -29,9 +30,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.nmrfx.peaks.Peak;
 import org.nmrfx.peaks.Measures;
 import org.nmrfx.peaks.PeakDim;
+import org.nmrfx.peaks.PeakDimLinker;
 import org.nmrfx.peaks.PeakList;
 import org.nmrfx.peaks.SpectralDim;
 import org.python.util.PythonInterpreter;
@@ -54,7 +57,7 @@ public class PeakReader {
         resMap = new HashMap<>();
     }
 
-    private void addResonance(long resID, PeakDim peakDim) {
+    void addResonance(long resID, PeakDim peakDim) {
         List<PeakDim> peakDims = resMap.get(resID);
         if (peakDims == null) {
             peakDims = new ArrayList<>();
@@ -64,21 +67,13 @@ public class PeakReader {
     }
 
     public void linkResonances() {
-        for (Long resID : resMap.keySet()) {
-            List<PeakDim> peakDims = resMap.get(resID);
-            PeakDim firstPeakDim = peakDims.get(0);
-//            System.out.println(resID + " " + firstPeakDim.getName() + " " + peakDims.size());
+        PeakDimLinker linker = new PeakDimLinker();
+        for (List<PeakDim> peakDims : resMap.values()) {
             if (peakDims.size() > 1) {
-
-                for (PeakDim peakDim : peakDims) {
-                    if (peakDim != firstPeakDim) {
-//                        System.out.println(peakDim.getName());
-                        PeakList.linkPeakDims(firstPeakDim, peakDim);
-                    }
-
-                }
+                linker.link(peakDims);
             }
         }
+        linker.apply();
     }
 
     public PeakList readPeakList(String fileName) throws IOException {
@@ -104,123 +99,163 @@ public class PeakReader {
     }
 
     public PeakList readXPK2Peaks(String fileName) throws IOException {
-        Path path = Paths.get(fileName);
-        String fileTail = path.getFileName().toString();
-        fileTail = fileTail.substring(0, fileTail.lastIndexOf('.'));
-        boolean gotHeader = false;
-        String[] dataHeader = null;
-        Map<String, Integer> dataMap = null;
-        PeakList peakList = null;
-        String units = "ppm";
-        try (final BufferedReader fileReader = Files.newBufferedReader(path)) {
-            while (true) {
-                String line = fileReader.readLine();
-                if (line == null) {
-                    break;
-                }
-                String sline = line.trim();
-                if (sline.length() == 0) {
-                    continue;
+        XPK2Table table = XPK2Table.read(Paths.get(fileName));
+        return table == null ? null : buildPeakList(table);
+    }
+
+    /**
+     * Read a set of .xpk2 files, together with the .mpk2 (measures) file
+     * that accompanies each one if it exists. If a binary snapshot
+     * (PeakListSnapshot) that is at least as new as the text files is
+     * present it is read instead. The files are read and parsed in parallel,
+     * then the peak lists are created one at a time in the order of the
+     * paths.
+     *
+     * @param paths the .xpk2 files
+     * @return the peak lists, in the same order as the paths
+     * @throws IOException if any file can't be read
+     */
+    public List<PeakList> readXPK2Peaks(List<Path> paths) throws IOException {
+        List<XPK2Table> tables;
+        try {
+            tables = paths.parallelStream().map(path -> {
+                try {
+                    return readTables(path);
+                } catch (IOException ioE) {
+                    throw new UncheckedIOException(ioE);
                 }
-                if (sline.charAt(0) == '#') {
-                    continue;
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException uioE) {
+            throw uioE.getCause();
+        }
+        List<PeakList> peakLists = new ArrayList<>();
+        for (XPK2Table table : tables) {
+            if (table != null) {
+                PeakList peakList = buildPeakList(table);
+                if (table.measures != null) {
+                    table.measures.apply(peakList);
                 }
-                if (peakList == null) {
-                    if (line.contains("ndim")) {
-                        String[] header = line.split("\t", -1);
-                        Map<String, Integer> map = headerMap(header);
-                        String lineData = fileReader.readLine();
-                        String[] data = lineData.split("\t", -1);
-                        int nDim = Integer.valueOf(data[map.get("ndim")]);
-                        String listName = fileTail;
-                        if (map.get("peaklist") != null) {
-                            listName = data[map.get("peaklist")];
-                        }
-                        peakList = new PeakList(listName, nDim);
-                        if (map.get("dataset") != null) {
-                            peakList.setDatasetName(data[map.get("dataset")]);
-                        }
-                        if (map.get("condition") != null) {
-                            peakList.setSampleConditionLabel(data[map.get("condition")]);
-                        }
-                        for (String headerLabel : map.keySet()) {
-                            if (headerLabel.startsWith("prop:")) {
-                                String propName = headerLabel.substring(5);
-                                String propValue = data[map.get(headerLabel)];
-                                peakList.setProperty(propName, propValue);
-                            }
-                        }
-                    } else {
-                        throw new IOException("Reading .xpk2 file: no ndim field.");
+                peakLists.add(peakList);
+            }
+        }
+        return peakLists;
+    }
+
+    XPK2Table readTables(Path path) throws IOException {
+        String filePath = path.toString();
+        Path mpk2Path = Paths.get(filePath.substring(0, filePath.length() - 4) + "mpk2");
+        if (PeakListSnapshot.isCurrent(path, mpk2Path)) {
+            String fileTail = path.getFileName().toString();
+            fileTail = fileTail.substring(0, fileTail.lastIndexOf('.'));
+            try {
+                return PeakListSnapshot.read(PeakListSnapshot.getSnapshotPath(path), fileTail);
+            } catch (IOException | RuntimeException ex) {
+                // unreadable snapshot, fall back to the text files
+            }
+        }
+        XPK2Table table = XPK2Table.read(path);
+        if ((table != null) && Files.exists(mpk2Path)) {
+            table.measures = MPK2Table.read(mpk2Path, table.getNDim());
+        }
+        return table;
+    }
+
+    PeakList buildPeakList(XPK2Table table) {
+        String units = "ppm";
+        Map<String, Integer> map = headerMap(table.listHeader);
+        String[] data = table.listData;
+        int nDim = table.getNDim();
+        String listName = table.fileTail;
+        if (map.get("peaklist") != null) {
+            listName = data[map.get("peaklist")];
+        }
+        PeakList peakList = new PeakList(listName, nDim);
+        if (map.get("dataset") != null) {
+            peakList.setDatasetName(data[map.get("dataset")]);
+        }
+        if (map.get("condition") != null) {
+            peakList.setSampleConditionLabel(data[map.get("condition")]);
+        }
+        for (String headerLabel : map.keySet()) {
+            if (headerLabel.startsWith("prop:")) {
+                String propName = headerLabel.substring(5);
+                String propValue = data[map.get(headerLabel)];
+                peakList.setProperty(propName, propValue);
+            }
+        }
+        if (table.dimHeader != null) {
+            String[] header = table.dimHeader;
+            map = headerMap(header);
+            for (int i = 0; i < peakList.nDim; i++) {
+                data = table.dimData.get(i);
+                SpectralDim sDim = peakList.getSpectralDim(i);
+                for (String field : header) {
+                    String value = data[map.get(field)];
+                    switch (field) {
+                        case "label":
+                            sDim.setDimName(value);
+                            break;
+                        case "code":
+                            sDim.setNucleus(value);
+                            break;
+                        case "sf":
+                            sDim.setSf(Double.valueOf(value));
+                            break;
+                        case "sw":
+                            sDim.setSw(Double.valueOf(value));
+                            break;
+                        case "fp":
+                            sDim.setRef(Double.valueOf(value));
+                            break;
+                        case "idtol":
+                            sDim.setIdTol(Double.valueOf(value));
+                            break;
+                        case "pattern":
+                            sDim.setPattern(value);
+                            break;
+                        case "bonded":
+                            sDim.setRelation(value);
+                            break;
+                        case "spatial":
+                            sDim.setSpatialRelation(value);
+                            break;
+                        case "acqdim":
+                            sDim.setAcqDim(Boolean.valueOf(value));
+                            break;
+                        case "abspos":
+                            sDim.setAbsPosition(Boolean.valueOf(value));
+                            break;
+                        case "folding":
+                            sDim.setNEFAliasing(value);
+                            break;
+                        case "units":
+                            units = value;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown field " + field);
                     }
-                } else {
-                    if (!gotHeader) {
-                        String[] header = line.split("\t", -1);
-                        Map<String, Integer> map = headerMap(header);
-                        for (int i = 0; i < peakList.nDim; i++) {
-                            String lineData = fileReader.readLine();
-                            String[] data = lineData.split("\t", -1);
-                            SpectralDim sDim = peakList.getSpectralDim(i);
-                            for (String field : header) {
-                                String value = data[map.get(field)];
-                                switch (field) {
-                                    case "label":
-                                        sDim.setDimName(value);
-                                        break;
-                                    case "code":
-                                        sDim.setNucleus(value);
-                                        break;
-                                    case "sf":
-                                        sDim.setSf(Double.valueOf(value));
-                                        break;
-                                    case "sw":
-                                        sDim.setSw(Double.valueOf(value));
-                                        break;
-                                    case "fp":
-                                        sDim.setRef(Double.valueOf(value));
-                                        break;
-                                    case "idtol":
-                                        sDim.setIdTol(Double.valueOf(value));
-                                        break;
-                                    case "pattern":
-                                        sDim.setPattern(value);
-                                        break;
-                                    case "bonded":
-                                        sDim.setRelation(value);
-                                        break;
-                                    case "spatial":
-                                        sDim.setSpatialRelation(value);
-                                        break;
-                                    case "acqdim":
-                                        sDim.setAcqDim(Boolean.valueOf(value));
-                                        break;
-                                    case "abspos":
-                                        sDim.setAbsPosition(Boolean.valueOf(value));
-                                        break;
-                                    case "folding":
-                                        sDim.setNEFAliasing(value);
-                                        break;
-                                    case "units":
-                                        units = value;
-                                        break;
-                                    default:
-                                        throw new IllegalArgumentException("Unknown field " + field);
-                                }
-                            }
-                        }
-                        gotHeader = true;
-                    } else {
-                        if (dataHeader == null) {
-                            dataHeader = line.split("\t", -1);
-                        } else {
-                            if (dataMap == null) {
-                                dataMap = headerMap(dataHeader);
-                            }
-                            String[] data = line.split("\t", -1);
-                            processLine(peakList, dataHeader, dataMap, data);
-                        }
+                }
+            }
+        }
+        List<XPK2Table.Column> columns = table.columns;
+        for (XPK2Table.Column column : columns) {
+            if (column.dimLabel != null) {
+                column.dim = -1;
+                for (int i = 0; i < peakList.nDim; i++) {
+                    if (peakList.getSpectralDim(i).getDimName().equals(column.dimLabel)) {
+                        column.dim = i;
                     }
                 }
+                if (column.dim == -1) {
+                    throw new IllegalArgumentException("Unknown dimension " + column.dimLabel);
+                }
+            }
+        }
+        for (int row = 0; row < table.nRows; row++) {
+            Peak peak = peakList.getNewPeak();
+            for (XPK2Table.Column column : columns) {
+                PeakDim peakDim = column.dim == -1 ? null : peak.getPeakDim(column.dim);
+                column.apply(this, peak, peakDim, row);
             }
         }
         return peakList;
@@ -352,73 +387,7 @@ public class PeakReader {
     }
 
     public void readMPK2(PeakList peakList, String fileName) throws IOException {
-        Path path = Paths.get(fileName);
-        boolean gotHeader = false;
-        boolean hasErrors = false;
-        int valStart = -1;
-        int nValues = -1;
-        int nDim = peakList.nDim;
-        double[] xValues;
-        try (final BufferedReader fileReader = Files.newBufferedReader(path)) {
-            while (true) {
-                String line = fileReader.readLine();
-                if (line == null) {
-                    break;
-                }
-                String sline = line.trim();
-                if (sline.length() == 0) {
-                    continue;
-                }
-                if (sline.charAt(0) == '#') {
-                    continue;
-                }
-                String[] data = line.split("\t", -1);
-                if (!gotHeader) {
-                    gotHeader = true;
-                    valStart = nDim + 1;
-                    if ((data.length > (valStart + 1)) && (data[valStart + 1].equals("err"))) {
-                        hasErrors = true;
-                    }
-                    nValues = data.length - (nDim + 1);
-                    if (hasErrors) {
-                        nValues /= 2;
-                    }
-                    xValues = new double[nValues];
-                    boolean ok = true;
-                    for (int i = valStart, j = 0; i < data.length; i++) {
-                        try {
-                            xValues[j++] = Double.parseDouble(data[i]);
-                            if (hasErrors) {
-                                i++;
-                            }
-                        } catch (NumberFormatException nfE) {
-                            ok = false;
-                            break;
-                        }
-                    }
-                    if (ok) {
-                        Measures measure = new Measures(xValues);
-                        peakList.setMeasures(measure);
-                    }
-                } else {
-                    int peakId = Integer.parseInt(data[0]);
-                    Peak peak = peakList.getPeakByID(peakId);
-                    if (peak != null) {
-                        double[][] values = new double[2][nValues];
-                        for (int i = valStart, j = 0; i < data.length; i++) {
-                            values[0][j] = Double.parseDouble(data[i]);
-                            if (hasErrors) {
-                                values[1][j] = Double.parseDouble(data[i + 1]);
-                                i++;
-                            }
-                            j++;
-                        }
-                        peak.setMeasures(values);
-                    }
-
-                }
-            }
-        }
+        MPK2Table.read(Paths.get(fileName), peakList.nDim).apply(peakList);
     }
 
     /*
@@ -33,6 +33,7 @@ import org.nmrfx.peaks.PeakDim;
 import org.nmrfx.peaks.PeakList;
 import org.nmrfx.peaks.Resonance;
 import org.nmrfx.peaks.SpectralDim;
+import org.nmrfx.utilities.RowWriter;
 
 /**
  *
@@ -149,14 +150,17 @@ public class PeakWriter {
         }
         chan.write(peakList.getXPK2Header());
         chan.write("\n");
+        RowWriter rowWriter = new RowWriter(chan);
         int nPeaks = peakList.size();
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
             if (peak == null) {
                 throw new InvalidPeakException("PeakList.writePeaks: peak null at " + i);
             }
-            chan.write(peak.toXPK2String(i) + "\n");
+            peak.appendXPK2String(rowWriter.row(), i);
+            rowWriter.endRow();
         }
+        rowWriter.flush();
     }
 
     public void writePeakMeasures(FileWriter chan, PeakList peakList) throws IOException, InvalidPeakException {
@@ -169,6 +173,7 @@ public class PeakWriter {
             result.append("lab").append((j + 1)).append(sep);
         }
         int nPeaks = peakList.size();
+        RowWriter rowWriter = new RowWriter(chan);
         boolean wroteHeader = false;
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
@@ -190,13 +195,15 @@ public class PeakWriter {
                             result.append("val").append((j + 1)).append(sep);
                         }
                     }
-                    chan.write(result.toString().trim());
-                    chan.write("\n");
+                    rowWriter.write(result.toString().trim());
+                    rowWriter.endRow();
                     wroteHeader = true;
                 }
-                chan.write(peak.toMeasureString(i) + "\n");
+                peak.appendMeasureString(rowWriter.row(), i);
+                rowWriter.endRow();
             }
         }
+        rowWriter.flush();
     }
 
     public void writePeaksXPK(FileWriter chan, PeakList peakList) throws IOException, IllegalArgumentException, InvalidPeakException {
@@ -230,35 +237,36 @@ public class PeakWriter {
 
     public void writePeaksNEF(FileWriter chan, PeakList peakList) throws IOException, InvalidPeakException {
         char stringQuote = '"';
-        chan.write("save_nef_nmr_spectrum_" + peakList.getName() + "\n");
-        chan.write("_nef_nmr_spectrum.sf_category                 ");
-        chan.write("nef_nmr_spectrum\n");
-        chan.write("_nef_nmr_spectrum.sf_framecode                 ");
-        chan.write("nef_nmr_spectrum_" + peakList.getName() + "\n");
-        chan.write("_nef_nmr_spectrum.chemical_shift_list                          ");
-        chan.write(".\n");
-        chan.write("_nef_nmr_spectrum.experiment_classification               ");
-        chan.write(".\n");
-        chan.write("_nef_nmr_spectrum.expriment_type                   ");
-        chan.write(".\n");
-        chan.write("loop_\n");
+        RowWriter rowWriter = new RowWriter(chan);
+        rowWriter.write("save_nef_nmr_spectrum_" + peakList.getName() + "\n");
+        rowWriter.write("_nef_nmr_spectrum.sf_category                 ");
+        rowWriter.write("nef_nmr_spectrum\n");
+        rowWriter.write("_nef_nmr_spectrum.sf_framecode                 ");
+        rowWriter.write("nef_nmr_spectrum_" + peakList.getName() + "\n");
+        rowWriter.write("_nef_nmr_spectrum.chemical_shift_list                          ");
+        rowWriter.write(".\n");
+        rowWriter.write("_nef_nmr_spectrum.experiment_classification               ");
+        rowWriter.write(".\n");
+        rowWriter.write("_nef_nmr_spectrum.expriment_type                   ");
+        rowWriter.write(".\n");
+        rowWriter.write("loop_\n");
         for (String nefString : NEF_PEAK_DIM_STRINGS) {
-            chan.write(nefString + "\n");
+            rowWriter.write(nefString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         //     1   ppm   1H    500.13   4.998700337912143    9.898700337912143    circular   true   true
         //     2   ppm   1H    500.13   10.986153600089578   10.393076800044788   circular   true   false
         //     3   ppm   15N   50.666   24.002901353965186   128.00145067698259   circular   true   false
         int nDim = peakList.nDim;
         for (int j = 0; j < nDim; j++) {
-            chan.write(peakList.getSpectralDim(j).toSTAR3LoopPeakCharString() + "\n");
+            rowWriter.write(peakList.getSpectralDim(j).toSTAR3LoopPeakCharString() + "\n");
         }
 
-        chan.write("stop_\n");
-        chan.write("\n");
-        chan.write("loop_\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
+        rowWriter.write("loop_\n");
         for (String nefString : NEF_PEAK_ROW_STRINGS) {
-            chan.write(nefString + "\n");
+            rowWriter.write(nefString + "\n");
         }
         int nPeaks = peakList.size();
         for (int i = 0; i < nPeaks; i++) {
@@ -266,65 +274,71 @@ public class PeakWriter {
             if (peak == null) {
                 throw new InvalidPeakException("PeakList.writePeaks: peak null at " + i);
             }
-            chan.write(peak.toNEFString(i) + "\n");
+            peak.appendNEFString(rowWriter.row(), i);
+            rowWriter.endRow();
         }
-        chan.write("stop_\n");
-        chan.write("\n");
-        chan.write("\nsave_\n\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
+        rowWriter.write("\nsave_\n\n");
+        rowWriter.flush();
     }
 
     public void writePeaksSTAR3(FileWriter chan, PeakList peakList) throws IOException, InvalidPeakException {
         peakList.writeSTAR3Header(chan);
+        RowWriter rowWriter = new RowWriter(chan);
         String[] loopStrings = SpectralDim.getSTAR3LoopStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         int nDim = peakList.nDim;
         for (int j = 0; j < nDim; j++) {
-            chan.write(peakList.getSpectralDim(j).toSTAR3LoopPeakCharString() + "\n");
+            rowWriter.write(peakList.getSpectralDim(j).toSTAR3LoopPeakCharString() + "\n");
         }
-        chan.write("stop_\n");
-        chan.write("\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
         loopStrings = Peak.getSTAR3Strings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         int nPeaks = peakList.size();
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
             if (peak == null) {
                 throw new InvalidPeakException("PeakList.writePeaks: peak null at " + i);
             }
-            chan.write(peak.toSTAR3LoopPeakString() + "\n");
+            peak.appendSTAR3LoopPeakString(rowWriter.row());
+            rowWriter.endRow();
         }
-        chan.write("stop_\n");
-        chan.write("\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
         loopStrings = Peak.getSTAR3GeneralCharStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
             if (peak == null) {
                 throw new InvalidPeakException("PeakList.writePeaks: peak null at " + i);
             }
-            chan.write(peak.toSTAR3LoopIntensityString(0) + "\n");
-            chan.write(peak.toSTAR3LoopIntensityString(1) + "\n");
+            peak.appendSTAR3LoopIntensityString(rowWriter.row(), 0);
+            rowWriter.endRow();
+            peak.appendSTAR3LoopIntensityString(rowWriter.row(), 1);
+            rowWriter.endRow();
         }
-        chan.write("stop_\n");
-        chan.write("\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
         loopStrings = Peak.getSTAR3CharStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
             if (peak == null) {
@@ -332,16 +346,17 @@ public class PeakWriter {
             }
             PeakDim[] peakDims = peak.getPeakDims();
             for (PeakDim peakDim : peakDims) {
-                chan.write(peakDim.toSTAR3LoopPeakCharString(0) + "\n");
+                peakDim.appendSTAR3LoopPeakCharString(rowWriter.row(), 0);
+                rowWriter.endRow();
             }
         }
-        chan.write("stop_\n");
+        rowWriter.write("stop_\n");
         loopStrings = ASSIGNED_PEAK_CHEMSHIFT_STRINGS;
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         int iContrib = 0;
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
@@ -353,19 +368,20 @@ public class PeakWriter {
                 Resonance resonance = peakDim.getResonance();
                 if (resonance != null) {
                     long resID = resonance.getID();
-                    chan.write(peakDim.toSTAR3LoopAssignedPeakChemShiftString(iContrib++, resID) + "\n");
+                    peakDim.appendSTAR3LoopAssignedPeakChemShiftString(rowWriter.row(), iContrib++, resID);
+                    rowWriter.endRow();
                 }
             }
         }
-        chan.write("stop_\n");
-        chan.write("\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
 
         loopStrings = Peak.getSTAR3SpectralTransitionStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
 
         int index = 1;
         for (int i = 0; i < nPeaks; i++) {
@@ -382,21 +398,21 @@ public class PeakWriter {
                         ComplexCoupling complexCoupling = (ComplexCoupling) coupling;
                         for (AbsMultipletComponent comp : complexCoupling.getAbsComponentList()) {
                             String value = peak.toSTAR3LoopSpectralTransitionString(index++);
-                            chan.write(value);
-                            chan.write('\n');
+                            rowWriter.write(value);
+                            rowWriter.write('\n');
                         }
                     }
                 }
             }
         }
-        chan.write("stop_\n");
+        rowWriter.write("stop_\n");
 
         loopStrings = Peak.getSTAR3SpectralTransitionCharStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
 
         index = 1;
         for (int i = 0; i < nPeaks; i++) {
@@ -413,23 +429,23 @@ public class PeakWriter {
                         ComplexCoupling complexCoupling = (ComplexCoupling) coupling;
                         for (AbsMultipletComponent comp : complexCoupling.getAbsComponentList()) {
                             String value = peakDim.toSTAR3LoopSpectralTransitionCharString(comp, index);
-                            chan.write(value);
-                            chan.write('\n');
+                            rowWriter.write(value);
+                            rowWriter.write('\n');
                             index++;
                         }
                     }
                 }
             }
         }
-        chan.write("stop_\n");
-        chan.write("\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
 
         loopStrings = Peak.getSTAR3SpectralTransitionGeneralCharStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
 
         index = 1;
         for (int i = 0; i < nPeaks; i++) {
@@ -446,26 +462,26 @@ public class PeakWriter {
                         ComplexCoupling complexCoupling = (ComplexCoupling) coupling;
                         for (AbsMultipletComponent comp : complexCoupling.getAbsComponentList()) {
                             String value = peakDim.toSTAR3LoopSpectralTransitionGeneralCharString(comp, index, true);
-                            chan.write(value);
-                            chan.write('\n');
+                            rowWriter.write(value);
+                            rowWriter.write('\n');
                             value = peakDim.toSTAR3LoopSpectralTransitionGeneralCharString(comp, index, false);
-                            chan.write(value);
-                            chan.write('\n');
+                            rowWriter.write(value);
+                            rowWriter.write('\n');
                             index++;
                         }
                     }
                 }
             }
         }
-        chan.write("stop_\n");
-        chan.write("\n");
+        rowWriter.write("stop_\n");
+        rowWriter.write("\n");
 
         loopStrings = Peak.getSTAR3CouplingPatternStrings();
-        chan.write("loop_\n");
+        rowWriter.write("loop_\n");
         for (String loopString : loopStrings) {
-            chan.write(loopString + "\n");
+            rowWriter.write(loopString + "\n");
         }
-        chan.write("\n");
+        rowWriter.write("\n");
         index = 1;
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
@@ -480,17 +496,18 @@ public class PeakWriter {
                     if ((coupling != null) && (coupling instanceof CouplingPattern)) {
                         List<String> values = peakDim.toSTAR3CouplingPatternString(index);
                         for (String value : values) {
-                            chan.write(value);
-                            chan.write('\n');
+                            rowWriter.write(value);
+                            rowWriter.write('\n');
                             index++;
                         }
                     }
                 }
             }
         }
-        chan.write("stop_\n");
+        rowWriter.write("stop_\n");
 
-        chan.write("\nsave_\n\n");
+        rowWriter.write("\nsave_\n\n");
+        rowWriter.flush();
     }
 
     public void writePeaksToXML(FileWriter chan, PeakList peakList) throws IOException, IllegalArgumentException, InvalidPeakException {
@@ -519,16 +536,18 @@ public class PeakWriter {
         if (chan == null) {
             throw new IllegalArgumentException("Channel null");
         }
-        chan.write(peakList.getSparkyHeader());
-        chan.write("\n");
+        RowWriter rowWriter = new RowWriter(chan);
+        rowWriter.write(peakList.getSparkyHeader());
+        rowWriter.endRow();
         int nPeaks = peakList.size();
         for (int i = 0; i < nPeaks; i++) {
             Peak peak = peakList.getPeak(i);
             if (peak == null) {
                 throw new InvalidPeakException("PeakList.writePeaks: peak null at " + i);
             }
-            chan.write(peak.toSparkyString());
-            chan.write("\n");
+            peak.appendSparkyString(rowWriter.row());
+            rowWriter.endRow();
         }
+        rowWriter.flush();
     }
 }
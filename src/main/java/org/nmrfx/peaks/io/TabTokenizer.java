@@ -0,0 +1,268 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.nmrfx.utilities.NumberParser;
+
+/**
+ * Tokenizer for tab separated peak files (.xpk2, .mpk2). The whole file is
+ * read into a char array and each line is split on tabs by recording the
+ * start and end of each field, so no String is created unless a field is
+ * requested as a String. Numbers are parsed directly from the char array
+ * with NumberParser, which gives exactly the same result as Float.parseFloat,
+ * Double.parseDouble and Integer.parseInt.
+ *
+ * Blank lines and lines whose first non blank character is '#' are skipped,
+ * as in the BufferedReader based readers.
+ *
+ * @author brucejohnson
+ */
+public class TabTokenizer {
+
+    final char[] buffer;
+    final int length;
+    int pos = 0;
+    int lineStart = 0;
+    int lineEnd = 0;
+    int nFields = 0;
+    int[] starts = new int[32];
+    int[] ends = new int[32];
+
+    public TabTokenizer(char[] buffer) {
+        this.buffer = buffer;
+        this.length = buffer.length;
+    }
+
+    /**
+     * Read a whole file into a new tokenizer.
+     *
+     * @param path the file to read
+     * @return the tokenizer
+     * @throws IOException if the file can't be read
+     */
+    public static TabTokenizer read(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        return new TabTokenizer(new String(bytes, StandardCharsets.UTF_8).toCharArray());
+    }
+
+    /**
+     * Advance to the next line that is not blank or a comment and split it
+     * into fields.
+     *
+     * @return false if there are no more lines
+     */
+    public boolean nextLine() {
+        while (pos < length) {
+            lineStart = pos;
+            int end = pos;
+            while ((end < length) && (buffer[end] != '\n') && (buffer[end] != '\r')) {
+                end++;
+            }
+            lineEnd = end;
+            if (end < length) {
+                if ((buffer[end] == '\r') && ((end + 1) < length) && (buffer[end + 1] == '\n')) {
+                    end++;
+                }
+                end++;
+            }
+            pos = end;
+            int first = lineStart;
+            while ((first < lineEnd) && (buffer[first] <= ' ')) {
+                first++;
+            }
+            if ((first == lineEnd) || (buffer[first] == '#')) {
+                continue;
+            }
+            split();
+            return true;
+        }
+        nFields = 0;
+        return false;
+    }
+
+    /**
+     * Advance to the next physical line (including blank and comment lines)
+     * and split it into fields. Used where the reader expects a line to
+     * follow a header without skipping.
+     *
+     * @return false if there are no more lines
+     */
+    public boolean nextRawLine() {
+        if (pos >= length) {
+            nFields = 0;
+            return false;
+        }
+        lineStart = pos;
+        int end = pos;
+        while ((end < length) && (buffer[end] != '\n') && (buffer[end] != '\r')) {
+            end++;
+        }
+        lineEnd = end;
+        if (end < length) {
+            if ((buffer[end] == '\r') && ((end + 1) < length) && (buffer[end + 1] == '\n')) {
+                end++;
+            }
+            end++;
+        }
+        pos = end;
+        split();
+        return true;
+    }
+
+    private void split() {
+        nFields = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if ((i == lineEnd) || (buffer[i] == '\t')) {
+                if (nFields == starts.length) {
+                    int[] newStarts = new int[nFields * 2];
+                    int[] newEnds = new int[nFields * 2];
+                    System.arraycopy(starts, 0, newStarts, 0, nFields);
+                    System.arraycopy(ends, 0, newEnds, 0, nFields);
+                    starts = newStarts;
+                    ends = newEnds;
+                }
+                starts[nFields] = start;
+                ends[nFields] = i;
+                nFields++;
+                start = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the number of fields in the current line
+     */
+    public int size() {
+        return nFields;
+    }
+
+    /**
+     * @return the current line as a String
+     */
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * @return the fields of the current line as Strings
+     */
+    public String[] getFields() {
+        String[] fields = new String[nFields];
+        for (int i = 0; i < nFields; i++) {
+            fields[i] = getString(i);
+        }
+        return fields;
+    }
+
+    private void check(int field) {
+        if ((field < 0) || (field >= nFields)) {
+            throw new IllegalArgumentException("Missing field " + field + " in line: " + getLine());
+        }
+    }
+
+    /**
+     * @param field the field index
+     * @return the field as a String
+     */
+    public String getString(int field) {
+        check(field);
+        return new String(buffer, starts[field], ends[field] - starts[field]);
+    }
+
+    /**
+     * @param field the field index
+     * @return true if the field has zero length
+     */
+    public boolean isEmpty(int field) {
+        check(field);
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * @param field the field index
+     * @param value the value to compare with
+     * @return true if the field has the same characters as the value
+     */
+    public boolean equals(int field, String value) {
+        check(field);
+        int start = starts[field];
+        int len = ends[field] - start;
+        if (len != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a field as an int with the same result as Integer.parseInt.
+     *
+     * @param field the field index
+     * @return the value
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int parseInt(int field) {
+        check(field);
+        return NumberParser.parseInt(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * Parse a field as a long with the same result as Long.parseLong.
+     *
+     * @param field the field index
+     * @return the value
+     * @throws NumberFormatException if the field is not a long
+     */
+    public long parseLong(int field) {
+        check(field);
+        return NumberParser.parseLong(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * Parse a field as a double with the same result as Double.parseDouble.
+     *
+     * @param field the field index
+     * @return the value
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double parseDouble(int field) {
+        check(field);
+        return NumberParser.parseDouble(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * Parse a field as a float with the same result as Float.parseFloat.
+     *
+     * @param field the field index
+     * @return the value
+     * @throws NumberFormatException if the field is not a number
+     */
+    public float parseFloat(int field) {
+        check(field);
+        return NumberParser.parseFloat(buffer, starts[field], ends[field]);
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.peaks.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakDim;
+
+/**
+ * Columnar contents of an .xpk2 file. Reading the file (tokenizing and
+ * parsing all the numbers) doesn't touch any PeakList, so tables for many
+ * files can be read in parallel. The data header is resolved once into a
+ * list of typed columns, each of which holds the parsed values of one field
+ * for every row and knows how to apply them to a Peak. The PeakList itself
+ * is built from the table by PeakReader.
+ *
+ * @author brucejohnson
+ */
+class XPK2Table {
+
+    final String fileTail;
+    String[] listHeader = null;
+    String[] listData = null;
+    String[] dimHeader = null;
+    final List<String[]> dimData = new ArrayList<>();
+    String[] dataHeader = null;
+    final List<Column> columns = new ArrayList<>();
+    int nRows = 0;
+    int capacity = 0;
+    MPK2Table measures = null;
+
+    interface FloatSetter {
+
+        void set(Peak peak, PeakDim peakDim, float value);
+    }
+
+    interface IntSetter {
+
+        void set(Peak peak, int value);
+    }
+
+    interface StringSetter {
+
+        void set(Peak peak, PeakDim peakDim, String value);
+    }
+
+    abstract static class Column {
+
+        final String field;
+        final int index;
+        final String dimLabel;
+        int dim = -1;
+
+        Column(String field, int index, String dimLabel) {
+            this.field = field;
+            this.index = index;
+            this.dimLabel = dimLabel;
+        }
+
+        abstract void grow(int capacity);
+
+        abstract void parse(TabTokenizer tokenizer, int row);
+
+        abstract void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row);
+
+        abstract void read(DataInputStream in, int nRows, String[] strings) throws IOException;
+
+        void parseRow(TabTokenizer tokenizer, int row) {
+            try {
+                parse(tokenizer, row);
+            } catch (NumberFormatException nfE) {
+                throw new IllegalArgumentException("Can't parse number: "
+                        + tokenizer.getString(index) + " for field " + field);
+            }
+        }
+    }
+
+    static class FloatColumn extends Column {
+
+        final FloatSetter setter;
+        float[] values = new float[0];
+
+        FloatColumn(String field, int index, String dimLabel, FloatSetter setter) {
+            super(field, index, dimLabel);
+            this.setter = setter;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void parse(TabTokenizer tokenizer, int row) {
+            values[row] = tokenizer.parseFloat(index);
+        }
+
+        @Override
+        void read(DataInputStream in, int nRows, String[] strings) throws IOException {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = in.readFloat();
+            }
+        }
+
+        @Override
+        void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row) {
+            setter.set(peak, peakDim, values[row]);
+        }
+    }
+
+    static class IntColumn extends Column {
+
+        final IntSetter setter;
+        int[] values = new int[0];
+
+        IntColumn(String field, int index, IntSetter setter) {
+            super(field, index, null);
+            this.setter = setter;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void parse(TabTokenizer tokenizer, int row) {
+            values[row] = tokenizer.parseInt(index);
+        }
+
+        @Override
+        void read(DataInputStream in, int nRows, String[] strings) throws IOException {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = in.readInt();
+            }
+        }
+
+        @Override
+        void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row) {
+            setter.set(peak, values[row]);
+        }
+    }
+
+    static class StringColumn extends Column {
+
+        final StringSetter setter;
+        String[] values = new String[0];
+
+        StringColumn(String field, int index, String dimLabel, StringSetter setter) {
+            super(field, index, dimLabel);
+            this.setter = setter;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void parse(TabTokenizer tokenizer, int row) {
+            values[row] = tokenizer.getString(index);
+        }
+
+        @Override
+        void read(DataInputStream in, int nRows, String[] strings) throws IOException {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = strings[in.readInt()];
+            }
+        }
+
+        @Override
+        void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row) {
+            setter.set(peak, peakDim, values[row]);
+        }
+    }
+
+    static class FrozenColumn extends Column {
+
+        boolean[] values = new boolean[0];
+
+        FrozenColumn(String field, int index, String dimLabel) {
+            super(field, index, dimLabel);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void parse(TabTokenizer tokenizer, int row) {
+            values[row] = !tokenizer.equals(index, "0");
+        }
+
+        @Override
+        void read(DataInputStream in, int nRows, String[] strings) throws IOException {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = in.readBoolean();
+            }
+        }
+
+        @Override
+        void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row) {
+            peakDim.setFrozen(values[row]);
+        }
+    }
+
+    static class ResonanceColumn extends Column {
+
+        long[] values = new long[0];
+
+        ResonanceColumn(String field, int index, String dimLabel) {
+            super(field, index, dimLabel);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void parse(TabTokenizer tokenizer, int row) {
+            values[row] = tokenizer.parseLong(index);
+        }
+
+        @Override
+        void read(DataInputStream in, int nRows, String[] strings) throws IOException {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = in.readLong();
+            }
+        }
+
+        @Override
+        void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row) {
+            if (reader.linkResonances) {
+                reader.addResonance(values[row], peakDim);
+            }
+        }
+    }
+
+    static class IgnoredColumn extends Column {
+
+        IgnoredColumn(String field, int index, String dimLabel) {
+            super(field, index, dimLabel);
+        }
+
+        @Override
+        void grow(int capacity) {
+        }
+
+        @Override
+        void parse(TabTokenizer tokenizer, int row) {
+        }
+
+        @Override
+        void read(DataInputStream in, int nRows, String[] strings) {
+        }
+
+        @Override
+        void apply(PeakReader reader, Peak peak, PeakDim peakDim, int row) {
+        }
+    }
+
+    XPK2Table(String fileTail) {
+        this.fileTail = fileTail;
+    }
+
+    /**
+     * Read and parse an .xpk2 file.
+     *
+     * @param path the file
+     * @return the table
+     * @throws IOException if the file can't be read or has no ndim field
+     */
+    static XPK2Table read(Path path) throws IOException {
+        String fileTail = path.getFileName().toString();
+        fileTail = fileTail.substring(0, fileTail.lastIndexOf('.'));
+        XPK2Table table = new XPK2Table(fileTail);
+        TabTokenizer tokenizer = TabTokenizer.read(path);
+        if (!tokenizer.nextLine()) {
+            return null;
+        }
+        if (!tokenizer.getLine().contains("ndim")) {
+            throw new IOException("Reading .xpk2 file: no ndim field.");
+        }
+        table.listHeader = tokenizer.getFields();
+        tokenizer.nextRawLine();
+        table.listData = tokenizer.getFields();
+        int nDim = table.getNDim();
+        if (tokenizer.nextLine()) {
+            table.dimHeader = tokenizer.getFields();
+            for (int i = 0; i < nDim; i++) {
+                tokenizer.nextRawLine();
+                table.dimData.add(tokenizer.getFields());
+            }
+        }
+        if (tokenizer.nextLine()) {
+            table.dataHeader = tokenizer.getFields();
+        }
+        while (tokenizer.nextLine()) {
+            table.addRow(tokenizer);
+        }
+        return table;
+    }
+
+    int getNDim() {
+        Map<String, Integer> map = PeakReader.headerMap(listHeader);
+        return Integer.valueOf(listData[map.get("ndim")]);
+    }
+
+    void addRow(TabTokenizer tokenizer) {
+        if (nRows == 0) {
+            resolveColumns();
+        }
+        if (nRows == capacity) {
+            capacity = Math.max(64, capacity * 2);
+            for (Column column : columns) {
+                column.grow(capacity);
+            }
+        }
+        for (Column column : columns) {
+            column.parseRow(tokenizer, nRows);
+        }
+        nRows++;
+    }
+
+    /**
+     * Convert each field of the data header into a column. Fields are kept
+     * in header order, and (as with the map used by PeakReader.processLine)
+     * a repeated field name reads the last column with that name.
+     */
+    void resolveColumns() {
+        Map<String, Integer> dataMap = PeakReader.headerMap(dataHeader);
+        for (String field : dataHeader) {
+            int index = dataMap.get(field);
+            int dotIndex = field.indexOf('.');
+            if (dotIndex != -1) {
+                String dimLabel = field.substring(0, dotIndex);
+                columns.add(dimColumn(field.substring(dotIndex + 1), index, dimLabel));
+            } else {
+                columns.add(peakColumn(field, index));
+            }
+        }
+    }
+
+    static Column dimColumn(String field, int index, String dimLabel) {
+        switch (field) {
+            case "L":
+                return new StringColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setLabel(Arrays.asList(value.split(" "))));
+            case "P":
+                return new FloatColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setChemShiftValue(value));
+            case "W":
+                return new FloatColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setLineWidthValue(value));
+            case "WH":
+                return new FloatColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setLineWidthValue(value / (float) peakDim.getSpectralDimObj().getSf()));
+            case "B":
+                return new FloatColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setBoundsValue(value));
+            case "BH":
+                return new FloatColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setBoundsValue(value / (float) peakDim.getSpectralDimObj().getSf()));
+            case "J":
+            case "M":
+            case "m":
+                // fixme
+                return new IgnoredColumn(field, index, dimLabel);
+            case "E":
+                return new StringColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setError(value));
+            case "F":
+                return new FrozenColumn(field, index, dimLabel);
+            case "U":
+                return new StringColumn(field, index, dimLabel,
+                        (peak, peakDim, value) -> peakDim.setUser(value));
+            case "r":
+                return new ResonanceColumn(field, index, dimLabel);
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    static Column peakColumn(String field, int index) {
+        if (field.startsWith("flag") && (field.length() > 4) && Character.isDigit(field.charAt(4))) {
+            int flagNum = Integer.parseInt(field.substring(4));
+            return new StringColumn(field, index, null, (peak, peakDim, value) -> peak.setFlag2(flagNum, value));
+        }
+        switch (field) {
+            case "id":
+                return new IntColumn(field, index, Peak::setIdNum);
+            case "int":
+            case "intensity":
+                return new FloatColumn(field, index, null, (peak, peakDim, value) -> peak.setIntensity(value));
+            case "intensity_err":
+                return new FloatColumn(field, index, null, (peak, peakDim, value) -> peak.setIntensityErr(value));
+            case "vol":
+            case "volume":
+                return new FloatColumn(field, index, null, (peak, peakDim, value) -> peak.setVolume1(value));
+            case "volume_err":
+                return new FloatColumn(field, index, null, (peak, peakDim, value) -> peak.setVolume1Err(value));
+            case "status":
+            case "stat":
+                return new IntColumn(field, index, Peak::setStatus);
+            case "type":
+                return new IntColumn(field, index, Peak::setType);
+            case "comment":
+                return new StringColumn(field, index, null, (peak, peakDim, value) -> peak.setComment(value));
+            case "flags":
+                return new StringColumn(field, index, null, (peak, peakDim, value) -> peak.setFlag2(value));
+            case "color":
+                return new StringColumn(field, index, null, (peak, peakDim, value) -> peak.setColor(value));
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+}
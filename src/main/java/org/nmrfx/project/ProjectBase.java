@@ -7,6 +7,7 @@ package org.nmrfx.project;
 
 import org.nmrfx.peaks.InvalidPeakException;
 import org.nmrfx.peaks.PeakPaths;
+import org.nmrfx.peaks.io.PeakListSnapshot;
 import org.nmrfx.peaks.io.PeakReader;
 import org.nmrfx.peaks.io.PeakWriter;
 import org.nmrfx.datasets.DatasetBase;
@@ -64,6 +65,7 @@ public class ProjectBase {
     protected Map<String, DatasetBase> datasetMap = new HashMap<>();
     protected List<DatasetBase> datasets = new ArrayList<>();
     protected Map<String, PeakList> peakLists = new HashMap<>();
+    protected Map<PeakList, SavedPeakList> savedPeakLists = new IdentityHashMap<>();
     static ProjectBase activeProject = null;
     public static PropertyChangeSupport pcs = null;
 
@@ -317,25 +319,26 @@ public class ProjectBase {
     }
 
     void loadPeaks(Path directory) throws IOException {
-        FileSystem fileSystem = FileSystems.getDefault();
         if (Files.isDirectory(directory)) {
             PeakReader peakReader = new PeakReader(true);
+            List<Path> paths = new ArrayList<>();
             try (DirectoryStream<Path> fileStream = Files.newDirectoryStream(directory, "*.xpk2")) {
                 for (Path f : fileStream) {
-                    String filePath = f.toString();
                     System.out.println("read peaks: " + f.toString());
-                    PeakList peakList = peakReader.readXPK2Peaks(f.toString());
-                    String mpk2File = filePath.substring(0, filePath.length() - 4) + "mpk2";
-                    Path mpk2Path = fileSystem.getPath(mpk2File);
-                    if (Files.exists(mpk2Path)) {
-                        peakReader.readMPK2(peakList, mpk2Path.toString());
+                    paths.add(f);
+                }
+                List<PeakList> newLists = peakReader.readXPK2Peaks(paths);
+                peakReader.linkResonances();
+                // after linking, so the lists match the files they were read from
+                for (PeakList peakList : newLists) {
+                    Path peakFilePath = directory.resolve(peakList.getName() + ".xpk2");
+                    if (paths.contains(peakFilePath)) {
+                        setSaved(peakList, peakFilePath);
                     }
-
                 }
             } catch (DirectoryIteratorException | IOException ex) {
                 throw new IOException(ex.getMessage());
             }
-            peakReader.linkResonances();
         }
     }
 
@@ -349,7 +352,7 @@ public class ProjectBase {
         Path peakDirPath = Paths.get(projectDir.toString(), "peaks");
         Files.list(peakDirPath).forEach(path -> {
             String fileName = path.getFileName().toString();
-            if (fileName.endsWith(".xpk2") || fileName.endsWith(".mpk2")) {
+            if (fileName.endsWith(".xpk2") || fileName.endsWith(".mpk2") || fileName.endsWith(PeakListSnapshot.EXTENSION)) {
                 String listName = fileName.substring(0, fileName.length() - 5);
                 if (PeakList.get(listName) == null) {
                     try {
@@ -362,11 +365,14 @@ public class ProjectBase {
             }
         });
 
+        savedPeakLists.keySet().retainAll(peakLists.values());
         peakLists.values().stream().forEach(peakListObj -> {
             PeakList peakList = (PeakList) peakListObj;
             Path peakFilePath = fileSystem.getPath(projectDir.toString(), "peaks", peakList.getName() + ".xpk2");
             Path measureFilePath = fileSystem.getPath(projectDir.toString(), "peaks", peakList.getName() + ".mpk2");
-            // fixme should only write if file doesn't already exist or peaklist changed since read
+            if (isSaved(peakList, peakFilePath)) {
+                return;
+            }
             try {
                 try (FileWriter writer = new FileWriter(peakFilePath.toFile())) {
                     PeakWriter peakWriter = new PeakWriter();
@@ -380,11 +386,76 @@ public class ProjectBase {
                         writer.close();
                     }
                 }
+                PeakListSnapshot.write(peakList, PeakListSnapshot.getSnapshotPath(peakFilePath));
+                setSaved(peakList, peakFilePath);
             } catch (IOException | InvalidPeakException ioE) {
             }
         });
     }
 
+    /**
+     * The state of a peak list when it was last read from or written to its
+     * files.
+     */
+    static class SavedPeakList {
+
+        final String location;
+        final int modCount;
+        final int labelVersion;
+
+        SavedPeakList(PeakList peakList, Path peakFilePath) {
+            location = getLocation(peakList, peakFilePath);
+            modCount = peakList.getModCount();
+            labelVersion = PeakList.getLabelVersion();
+        }
+
+        static String getLocation(PeakList peakList, Path peakFilePath) {
+            return peakFilePath.toAbsolutePath().normalize() + "\n"
+                    + PeakListSnapshot.getHeaderSignature(peakList);
+        }
+    }
+
+    /**
+     * Record that the files at the specified path hold the current state of
+     * the peak list.
+     *
+     * @param peakList the peak list
+     * @param peakFilePath path of the .xpk2 file
+     */
+    void setSaved(PeakList peakList, Path peakFilePath) {
+        savedPeakLists.put(peakList, new SavedPeakList(peakList, peakFilePath));
+    }
+
+    /**
+     * Check if a peak list has to be written to the specified path. It
+     * doesn't if it was read from or written to that path, neither it nor
+     * any peak label has changed since then, its list and dimension
+     * parameters are the same and all its files are still present. The
+     * list's modification count is used rather than its changed flag, which
+     * can be cleared by other code.
+     *
+     * @param peakList the peak list
+     * @param peakFilePath path of the .xpk2 file
+     * @return true if the files are up to date
+     */
+    boolean isSaved(PeakList peakList, Path peakFilePath) {
+        SavedPeakList saved = savedPeakLists.get(peakList);
+        if ((saved == null) || (saved.modCount != peakList.getModCount())
+                || (saved.labelVersion != PeakList.getLabelVersion())
+                || !saved.location.equals(SavedPeakList.getLocation(peakList, peakFilePath))) {
+            return false;
+        }
+        if (!Files.exists(peakFilePath) || !Files.exists(PeakListSnapshot.getSnapshotPath(peakFilePath))) {
+            return false;
+        }
+        if (peakList.hasMeasures()) {
+            String fileName = peakFilePath.getFileName().toString();
+            Path measureFilePath = peakFilePath.resolveSibling(fileName.substring(0, fileName.length() - 4) + "mpk2");
+            return Files.exists(measureFilePath);
+        }
+        return true;
+    }
+
     public void loadDatasets(Path directory) throws IOException {
         Pattern pattern = Pattern.compile("(.+)\\.(nv|ucsf)");
         Predicate<String> predicate = pattern.asPredicate();
@@ -24,14 +24,17 @@ package org.nmrfx.star;
 import java.util.*;
 
 /**
+ * The values of a STAR loop. Each column is stored in a LoopColumn, so the
+ * values are not kept as separate Strings; use the typed accessors
+ * (getDoubleColumn etc.) to get numeric columns without creating Strings.
  *
  * @author brucejohnson
  */
 public class Loop {
 
     String name = "";
-    ArrayList<String>[] columns = null;
-    final HashMap<String, ArrayList<String>> loopTags = new HashMap<>();
+    LoopColumn[] columns = null;
+    final HashMap<String, LoopColumn> loopTags = new HashMap<>();
     ArrayList<String> tags = new ArrayList();
     private int nTags;
     private int nRows = 0;
@@ -119,39 +122,75 @@ public class Loop {
         return tokens;
     }
 
-    public String processLoop() throws ParseException {
-        STAR3Base star3 = saveFrame.getSTAR3();
-        tags = processLoopTags(star3);
+    private void initColumns() {
         nTags = tags.size();
-        columns = new ArrayList[nTags];
+        columns = new LoopColumn[nTags];
         for (int i = 0; i < nTags; i++) {
-            columns[i] = new ArrayList();
+            columns[i] = new LoopColumn();
             String tag = tags.get(i);
             loopTags.put(tag, columns[i]);
         }
+    }
+
+    private void trimColumns() {
+        for (LoopColumn column : columns) {
+            column.trim();
+        }
+    }
+
+    /**
+     * Read the tags and values of the loop. The values are copied from the
+     * tokenizer directly into the columns (the same checks are done as by
+     * getLoopRow).
+     *
+     * @return the name of the loop
+     * @throws ParseException if the file ends within the loop or a row is
+     * incomplete
+     */
+    public String processLoop() throws ParseException {
+        return processLoop(saveFrame.getSTAR3());
+    }
+
+    String processLoop(STAR3Base star3) throws ParseException {
+        tags = processLoopTags(star3);
+        initColumns();
+        boolean mmCIF = saveFrame.getSTAR3() instanceof MMCIF;
         nRows = 0;
         while (true) {
-            String[] tokenRow = getLoopRow(nTags);
-            if (tokenRow == null) {
+            STARTokenizer tokenizer = star3.nextToken();
+            if (tokenizer == null) {
+                if (mmCIF) {
+                    break;
+                }
+                throw new ParseException("File exhausted before all tokens found in loop of \"" + saveFrame.name + "\"");
+            }
+            if (mmCIF && (tokenizer.tokenStartsWith("_") || tokenizer.tokenEquals("loop_"))) {
+                star3.unGetToken();
                 break;
             }
-            addRow(tokenRow);
+            if (tokenizer.tokenEquals("stop_")) {
+                break;
+            }
+            columns[0].add(tokenizer);
+            for (int i = 1; i < nTags; i++) {
+                tokenizer = star3.nextToken();
+                if (tokenizer == null) {
+                    throw new ParseException("File exhausted before all tokens found in row \"" + nRows + "\" in loop of \"" + saveFrame.name + "\"");
+                }
+                if (tokenizer.tokenEquals("stop_")) {
+                    throw new ParseException("Found stop_ at unexpected position in row \"" + nRows + "\" in loop of \"" + saveFrame.name + "\"");
+                }
+                columns[i].add(tokenizer);
+            }
             nRows++;
         }
-
+        trimColumns();
         return (name);
     }
 
     public void addValues(final List<String> names, final List<String> values) throws ParseException {
-        nTags = names.size();
-        columns = new ArrayList[nTags];
-        tags = new ArrayList();
-        for (int i = 0; i < nTags; i++) {
-            columns[i] = new ArrayList();
-            String tag = names.get(i);
-            loopTags.put(tag, columns[i]);
-            tags.add(tag);
-        }
+        tags = new ArrayList<>(names);
+        initColumns();
         nRows = 0;
         String[] tokenRow = new String[nTags];
         int k = 0;
@@ -162,6 +201,7 @@ public class Loop {
             }
             addRow(tokenRow);
         }
+        trimColumns();
     }
 
     public Map getRowMap(String tag, int loopIndex) throws ParseException {
@@ -170,12 +210,12 @@ public class Loop {
         Iterator iter = loopTags.entrySet().iterator();
         while (iter.hasNext()) {
             Map.Entry eSet = (Map.Entry) iter.next();
-            ArrayList column = (ArrayList) eSet.getValue();
+            LoopColumn column = (LoopColumn) eSet.getValue();
             if ((loopIndex < 0) || (loopIndex >= column.size())) {
                 throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
             }
 
-            String value = (String) column.get(loopIndex);
+            String value = column.get(loopIndex);
             String loopTag = (String) eSet.getKey();
             map.put(loopTag, value);
         }
@@ -184,18 +224,18 @@ public class Loop {
 
     public String getValueIfPresent(String tag, int loopIndex) throws ParseException {
         String result = null;
-        ArrayList<String> column = (ArrayList) loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         if (column != null) {
             if ((loopIndex < 0) || (loopIndex >= column.size())) {
                 throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
             }
-            result = (String) column.get(loopIndex);
+            result = column.get(loopIndex);
         }
         return result;
     }
 
     public String getValue(String tag, int loopIndex) throws ParseException {
-        ArrayList<String> column = (ArrayList) loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
 
         if (column == null) {
             throw new ParseException("Can't find column \"" + tag + "\"");
@@ -203,7 +243,7 @@ public class Loop {
         if ((loopIndex < 0) || (loopIndex >= column.size())) {
             throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
         }
-        String result = (String) column.get(loopIndex);
+        String result = column.get(loopIndex);
         return result;
     }
 
@@ -213,7 +253,7 @@ public class Loop {
             throw new IllegalArgumentException("Invalid loop index \"" + loopIndex + "\"");
         }
         for (int i = 0; i < columns.length; i++) {
-            result[i] = (String) columns[i].get(loopIndex);
+            result[i] = columns[i].get(loopIndex);
         }
         return result;
     }
@@ -229,28 +269,32 @@ public class Loop {
         return list;
     }
 
+    /**
+     * @param tag the column tag
+     * @return a read only list of the values in the column
+     * @throws ParseException if there is no column with the tag
+     */
     public List<String> getColumnAsList(String tag) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         if (column == null) {
             throw new ParseException("Can't find column \"" + tag + "\"");
         }
-        return column;
+        return column.asList();
     }
 
     public List<Double> getColumnAsDoubleList(String tag, Double defaultValue) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         List<Double> values;
         if (column == null) {
             values = Collections.nCopies(nRows, defaultValue);
         } else {
-            values = new ArrayList<>();
-            for (String s : column) {
-                if (s.equals(".")) {
-                    values.add(defaultValue);
-                } else if (s.equals("?")) {
+            int n = column.size();
+            values = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                if (column.isMissing(i)) {
                     values.add(defaultValue);
                 } else {
-                    values.add(Double.parseDouble(s));
+                    values.add(column.parseDouble(i));
                 }
             }
         }
@@ -258,28 +302,97 @@ public class Loop {
     }
 
     public List<Integer> getColumnAsIntegerList(String tag, Integer defaultValue) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         List<Integer> values;
         if (column == null) {
             values = Collections.nCopies(nRows, (Integer) null);
         } else {
-            values = new ArrayList<>();
-            for (String s : column) {
-                if (s.equals(".")) {
-                    values.add(defaultValue);
-                } else if (s.equals("?")) {
+            int n = column.size();
+            values = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                if (column.isMissing(i)) {
                     values.add(defaultValue);
                 } else {
-                    values.add(Integer.parseInt(s));
+                    values.add(column.parseInt(i));
                 }
             }
         }
         return values;
     }
 
+    /**
+     * Get the values of a column as doubles. The values are parsed directly
+     * from the stored characters (with the same result as
+     * Double.parseDouble).
+     *
+     * @param tag the column tag
+     * @param defaultValue the value used for "." and "?" and for all rows if
+     * there is no column with the tag
+     * @return the values
+     * @throws NumberFormatException if a value is not a number
+     */
+    public double[] getDoubleColumn(String tag, double defaultValue) {
+        LoopColumn column = loopTags.get(tag);
+        double[] values = new double[nRows];
+        if (column == null) {
+            Arrays.fill(values, defaultValue);
+        } else {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = column.isMissing(i) ? defaultValue : column.parseDouble(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get the values of a column as floats. The values are parsed directly
+     * from the stored characters (with the same result as Float.parseFloat).
+     *
+     * @param tag the column tag
+     * @param defaultValue the value used for "." and "?" and for all rows if
+     * there is no column with the tag
+     * @return the values
+     * @throws NumberFormatException if a value is not a number
+     */
+    public float[] getFloatColumn(String tag, float defaultValue) {
+        LoopColumn column = loopTags.get(tag);
+        float[] values = new float[nRows];
+        if (column == null) {
+            Arrays.fill(values, defaultValue);
+        } else {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = column.isMissing(i) ? defaultValue : column.parseFloat(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get the values of a column as ints. The values are parsed directly
+     * from the stored characters (with the same result as Integer.parseInt).
+     *
+     * @param tag the column tag
+     * @param defaultValue the value used for "." and "?" and for all rows if
+     * there is no column with the tag
+     * @return the values
+     * @throws NumberFormatException if a value is not an int
+     */
+    public int[] getIntColumn(String tag, int defaultValue) {
+        LoopColumn column = loopTags.get(tag);
+        int[] values = new int[nRows];
+        if (column == null) {
+            Arrays.fill(values, defaultValue);
+        } else {
+            for (int i = 0; i < nRows; i++) {
+                values[i] = column.isMissing(i) ? defaultValue : column.parseInt(i);
+            }
+        }
+        return values;
+    }
+
     public List<String> getColumnAsListIfExists(String tag) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
-        return column;
+        LoopColumn column = loopTags.get(tag);
+        return column == null ? null : column.asList();
     }
 
     public List<String> getTags() throws ParseException {
@@ -291,7 +404,7 @@ public class Loop {
     }
 
     public List<String> getColumn(String tag) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         ArrayList<String> list = new ArrayList<>();
         for (int i = 0; i < nRows; i++) {
             String value = column.get(i);
@@ -0,0 +1,325 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.star;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import org.nmrfx.utilities.NumberParser;
+
+/**
+ * Storage for the values of one column of a Loop. The characters of the
+ * values are kept in a single char array instead of as one String per cell.
+ * Columns with few distinct values (atom names, residue names, chain codes,
+ * ".", "?" etc.) are dictionary encoded: each distinct value is stored once
+ * and each cell is an int code. A column switches to storing every value
+ * once it has more than MAX_CODES distinct values and the values are mostly
+ * distinct (coordinates, ids). Numbers are parsed directly from the char
+ * array.
+ *
+ * @author brucejohnson
+ */
+class LoopColumn {
+
+    static final int MAX_CODES = 256;
+
+    char[] data = new char[64];
+    int dataLength = 0;
+    // value v has the chars from offsets[v] to offsets[v + 1]
+    int[] offsets = new int[17];
+    int nValues = 0;
+    // code of each cell, null once every cell is stored as its own value
+    int[] codes = new int[16];
+    // value index + 1 of each used slot, with the value hash in hashes
+    int[] slots = new int[64];
+    int[] hashes = new int[64];
+    // Strings of the dictionary values, created as they are requested
+    String[] strings = null;
+    BitSet nulls = null;
+    int nCells = 0;
+
+    int size() {
+        return nCells;
+    }
+
+    /**
+     * Add the current token of the tokenizer.
+     *
+     * @param tokenizer the tokenizer
+     */
+    void add(STARTokenizer tokenizer) {
+        if (tokenizer.isText()) {
+            add(tokenizer.tokenString());
+        } else {
+            int start = tokenizer.getTokenStart();
+            int length = tokenizer.getTokenEnd() - start;
+            ensureData(length);
+            System.arraycopy(tokenizer.buffer, start, data, dataLength, length);
+            addTail(length);
+        }
+    }
+
+    void add(String value) {
+        if (value == null) {
+            if (nulls == null) {
+                nulls = new BitSet();
+            }
+            nulls.set(nCells);
+            addTail(0);
+        } else {
+            int length = value.length();
+            ensureData(length);
+            value.getChars(0, length, data, dataLength);
+            addTail(length);
+        }
+    }
+
+    private void ensureData(int length) {
+        if (dataLength + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+        }
+    }
+
+    /**
+     * Add the value whose chars have been copied to the end of data.
+     */
+    private void addTail(int length) {
+        if (codes != null) {
+            if ((nValues >= MAX_CODES) && ((nValues * 2) > nCells)) {
+                toValues(length);
+            } else {
+                int hash = hash(dataLength, length);
+                int mask = slots.length - 1;
+                int slot = hash & mask;
+                while (slots[slot] != 0) {
+                    int v = slots[slot] - 1;
+                    if ((hashes[slot] == hash) && matches(v, dataLength, length)) {
+                        addCode(v);
+                        return;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = nValues + 1;
+                hashes[slot] = hash;
+                addCode(nValues);
+                addValue(length);
+                if ((nValues * 2) > slots.length) {
+                    rehash();
+                }
+                return;
+            }
+        }
+        addValue(length);
+        nCells++;
+    }
+
+    private void addCode(int v) {
+        if (nCells == codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(16, nCells * 2));
+        }
+        codes[nCells++] = v;
+    }
+
+    private void addValue(int length) {
+        if (nValues + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        dataLength += length;
+        nValues++;
+        offsets[nValues] = dataLength;
+    }
+
+    private int hash(int start, int length) {
+        int hash = 0;
+        for (int i = start, end = start + length; i < end; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean matches(int v, int start, int length) {
+        int vStart = offsets[v];
+        if ((offsets[v + 1] - vStart) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[vStart + i] != data[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int n = slots.length * 2;
+        int mask = n - 1;
+        int[] newSlots = new int[n];
+        int[] newHashes = new int[n];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != 0) {
+                int slot = hashes[i] & mask;
+                while (newSlots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newSlots[slot] = slots[i];
+                newHashes[slot] = hashes[i];
+            }
+        }
+        slots = newSlots;
+        hashes = newHashes;
+    }
+
+    /**
+     * Stop dictionary encoding and store the value of each cell. The chars
+     * of the pending value at the end of data are kept at the end.
+     */
+    private void toValues(int pending) {
+        int newLength = 0;
+        for (int i = 0; i < nCells; i++) {
+            newLength += length(i);
+        }
+        char[] newData = new char[Math.max(64, (newLength + pending) * 2)];
+        int[] newOffsets = new int[Math.max(17, nCells * 2)];
+        int pos = 0;
+        for (int i = 0; i < nCells; i++) {
+            int v = codes[i];
+            int length = offsets[v + 1] - offsets[v];
+            System.arraycopy(data, offsets[v], newData, pos, length);
+            pos += length;
+            newOffsets[i + 1] = pos;
+        }
+        System.arraycopy(data, dataLength, newData, pos, pending);
+        data = newData;
+        dataLength = pos;
+        offsets = newOffsets;
+        nValues = nCells;
+        codes = null;
+        slots = null;
+        hashes = null;
+        strings = null;
+    }
+
+    private int value(int i) {
+        return codes == null ? i : codes[i];
+    }
+
+    int start(int i) {
+        return offsets[value(i)];
+    }
+
+    int end(int i) {
+        return offsets[value(i) + 1];
+    }
+
+    int length(int i) {
+        int v = value(i);
+        return offsets[v + 1] - offsets[v];
+    }
+
+    boolean isNull(int i) {
+        return (nulls != null) && nulls.get(i);
+    }
+
+    /**
+     * @param i the row
+     * @return true if the value is the STAR null value "." or "?"
+     */
+    boolean isMissing(int i) {
+        int v = value(i);
+        int start = offsets[v];
+        return ((offsets[v + 1] - start) == 1) && ((data[start] == '.') || (data[start] == '?'));
+    }
+
+    String get(int i) {
+        if (isNull(i)) {
+            return null;
+        }
+        int v = value(i);
+        String[] cache = strings;
+        if ((cache != null) && (v < cache.length)) {
+            String s = cache[v];
+            if (s == null) {
+                s = new String(data, offsets[v], offsets[v + 1] - offsets[v]);
+                cache[v] = s;
+            }
+            return s;
+        }
+        return new String(data, offsets[v], offsets[v + 1] - offsets[v]);
+    }
+
+    double parseDouble(int i) {
+        checkNull(i);
+        int v = value(i);
+        return NumberParser.parseDouble(data, offsets[v], offsets[v + 1]);
+    }
+
+    float parseFloat(int i) {
+        checkNull(i);
+        int v = value(i);
+        return NumberParser.parseFloat(data, offsets[v], offsets[v + 1]);
+    }
+
+    int parseInt(int i) {
+        checkNull(i);
+        int v = value(i);
+        return NumberParser.parseInt(data, offsets[v], offsets[v + 1]);
+    }
+
+    private void checkNull(int i) {
+        if (isNull(i)) {
+            throw new NullPointerException("Null value in row " + i);
+        }
+    }
+
+    /**
+     * Release the unused capacity of the arrays once the column is complete.
+     */
+    void trim() {
+        data = Arrays.copyOf(data, dataLength);
+        offsets = Arrays.copyOf(offsets, nValues + 1);
+        if (codes != null) {
+            codes = Arrays.copyOf(codes, nCells);
+            strings = new String[nValues];
+        }
+    }
+
+    /**
+     * @return a read only view of the column as Strings
+     */
+    List<String> asList() {
+        return new ColumnList();
+    }
+
+    class ColumnList extends AbstractList<String> implements RandomAccess {
+
+        @Override
+        public String get(int i) {
+            if ((i < 0) || (i >= nCells)) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + nCells);
+            }
+            return LoopColumn.this.get(i);
+        }
+
+        @Override
+        public int size() {
+            return nCells;
+        }
+    }
+}
@@ -18,9 +18,15 @@
 package org.nmrfx.star;
 
 import java.io.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 public class STAR3 extends STAR3Base {
 
+    // files smaller than this are read sequentially
+    static final int MIN_PARALLEL_LENGTH = 1 << 20;
+
     public STAR3(String name) {
         super(name);
     }
@@ -33,7 +39,20 @@ public class STAR3 extends STAR3Base {
         super(bfR, name);
     }
 
+    /**
+     * Read all the saveframes. Large files are read in two phases: the
+     * bounds of the saveframes are found by a scan of the lines (see
+     * STARTokenizer.indexSaveframes) and then the saveframes are parsed in
+     * parallel. If that isn't possible, or a saveframe fails to parse, the
+     * file is read sequentially, so the result (and any ParseException) is
+     * the same as reading the whole file sequentially.
+     *
+     * @throws ParseException if the file is not valid
+     */
     public void scanFile() throws ParseException {
+        if (readSaveframesInParallel()) {
+            return;
+        }
         while (true) {
             String token = getNextToken();
             if (token == null) {
@@ -44,6 +63,99 @@ public class STAR3 extends STAR3Base {
         }
     }
 
+    /**
+     * Index the saveframes instead of reading them. The name, category and
+     * position of each saveframe are found by a scan of the lines (see
+     * STARTokenizer.indexSaveframes) and the saveframes are added with their
+     * contents unread. The contents of a saveframe are read when they are
+     * first accessed (or by Saveframe.load), so errors within a saveframe are
+     * only reported then. If the saveframes can't be indexed the file is read
+     * with scanFile.
+     *
+     * @return the index or null if the file was read with scanFile
+     * @throws ParseException if the file is read with scanFile and is not
+     * valid
+     */
+    public STARIndex index() throws ParseException {
+        STARTokenizer starTokenizer = getTokenizer();
+        STARIndex index = null;
+        if ((starTokenizer != null) && !usePrevious && (starTokenizer.pos == 0)) {
+            STARTokenizer scanner = new STARTokenizer(starTokenizer.buffer, 0, starTokenizer.length, 0);
+            index = scanner.indexSaveframes();
+        }
+        if (index == null) {
+            scanFile();
+            return null;
+        }
+        for (STARIndex.Entry entry : index.entries) {
+            if (getSaveFrames().containsKey(entry.name)) {
+                System.err.println("Skipping duplicate save frame \"" + entry.name + "\"");
+            } else {
+                getSaveFrames().put(entry.name, new Saveframe(this, starTokenizer.buffer, entry));
+            }
+        }
+        lastLine = index.nLines;
+        tokenizer = null;
+        lastToken = null;
+        return index;
+    }
+
+    private boolean readSaveframesInParallel() {
+        STARTokenizer starTokenizer = getTokenizer();
+        if ((starTokenizer == null) || usePrevious
+                || (starTokenizer.pos != 0) || (starTokenizer.length < MIN_PARALLEL_LENGTH)
+                || (Runtime.getRuntime().availableProcessors() < 2)) {
+            return false;
+        }
+        STARTokenizer scanner = new STARTokenizer(starTokenizer.buffer, 0, starTokenizer.length, 0);
+        STARIndex index = scanner.indexSaveframes();
+        if ((index == null) || (index.entries.size() < 2)) {
+            return false;
+        }
+        List<STARIndex.Entry> entries = index.entries;
+        int nFrames = entries.size();
+        Saveframe[] frames = new Saveframe[nFrames];
+        AtomicBoolean failed = new AtomicBoolean(false);
+        IntStream.range(0, nFrames).parallel().forEach(i -> {
+            if (!failed.get()) {
+                frames[i] = readSaveframe(starTokenizer.buffer, entries.get(i));
+                if (frames[i] == null) {
+                    failed.set(true);
+                }
+            }
+        });
+        if (failed.get()) {
+            return false;
+        }
+        for (Saveframe saveFrame : frames) {
+            if (getSaveFrames().containsKey(saveFrame.getName())) {
+                System.err.println("Skipping duplicate save frame \"" + saveFrame.getName() + "\"");
+            } else {
+                getSaveFrames().put(saveFrame.getName(), saveFrame);
+            }
+        }
+        lastLine = index.nLines;
+        tokenizer = null;
+        lastToken = null;
+        return true;
+    }
+
+    /**
+     * Read one saveframe from part of the buffer.
+     *
+     * @return the saveframe or null if the text isn't exactly one saveframe
+     */
+    private Saveframe readSaveframe(char[] buffer, STARIndex.Entry entry) {
+        Saveframe saveFrame = new Saveframe(this, entry.name);
+        try {
+            saveFrame.read(buffer, entry);
+            return saveFrame;
+        } catch (ParseException | RuntimeException e) {
+            // reported by the sequential read
+            return null;
+        }
+    }
+
     public void scanFile(String saveName) throws ParseException {
         while (true) {
             String token = getNextToken();
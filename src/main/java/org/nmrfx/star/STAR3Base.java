@@ -9,7 +9,6 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.io.PrintWriter;
 import java.io.StreamTokenizer;
 import java.util.ArrayList;
@@ -24,11 +23,11 @@ import java.util.Map;
  */
 public class STAR3Base {
 
-    LineNumberReader lineReader = null;
     PrintWriter out = null;
     BufferedReader bfR;
-    STAR3.STARTokenizer stTokenizer = null;
-    String string;
+    // created from bfR when the first token is requested
+    STARTokenizer tokenizer = null;
+    int lastLine = 0;
     public boolean usePrevious;
     String lastToken = null;
     final String name;
@@ -48,7 +47,6 @@ public class STAR3Base {
         this.fileName = fileName;
         try {
             bfR = new BufferedReader(new FileReader(fileName));
-            lineReader = new LineNumberReader(bfR);
         } catch (IOException ioe) {
             System.err.println("Cannot open the STAR3 file.");
             System.err.println(ioe.getMessage());
@@ -62,13 +60,38 @@ public class STAR3Base {
     public STAR3Base(BufferedReader bfR, final String name) {
         this.name = name;
         this.fileName = "";
-        lineReader = new LineNumberReader(bfR);
+        this.bfR = bfR;
 
         usePrevious = false;
     }
 
+    /**
+     * Create a STAR3Base that only supplies tokens from a tokenizer, used to
+     * read a saveframe of another STAR3Base.
+     *
+     * @param tokenizer the tokenizer
+     * @param name the name
+     */
+    STAR3Base(STARTokenizer tokenizer, final String name) {
+        this(name);
+        this.tokenizer = tokenizer;
+    }
+
     public int getLastLine() {
-        return lineReader.getLineNumber();
+        return tokenizer == null ? lastLine : tokenizer.getLineNumber();
+    }
+
+    STARTokenizer getTokenizer() {
+        if ((tokenizer == null) && (bfR != null)) {
+            try {
+                tokenizer = STARTokenizer.read(bfR);
+            } catch (IOException ioE) {
+                System.err.println("Error reading the STAR3 file.");
+                System.err.println(ioE.getMessage());
+            }
+            bfR = null;
+        }
+        return tokenizer;
     }
 
     public void writeToken(String token) {
@@ -76,15 +99,23 @@ public class STAR3Base {
     }
 
     static public String[] getTokenPair(String token) throws ParseException {
-        // fixme prepare pattern matcher for efficiency, or use indexOf?
         if (token.charAt(0) != '_') {
             throw new ParseException("Incorrect tag format \"" + token + "\"");
         }
-        String[] tokenPair = token.split("\\.");
-        if (tokenPair.length != 2) {
+        // same result as token.split("\\.") with exactly two parts (split drops trailing empty parts)
+        int end = token.length();
+        while ((end > 0) && (token.charAt(end - 1) == '.')) {
+            end--;
+        }
+        int dot = token.indexOf('.');
+        if ((dot == -1) || (dot >= end)) {
+            throw new ParseException("Incorrect tag format \"" + token + "\"");
+        }
+        int nextDot = token.indexOf('.', dot + 1);
+        if ((nextDot != -1) && (nextDot < end)) {
             throw new ParseException("Incorrect tag format \"" + token + "\"");
         }
-        return tokenPair;
+        return new String[]{token.substring(0, dot), token.substring(dot + 1, end)};
     }
 
     void setupTokenizer(StreamTokenizer tokenizer) {
@@ -117,80 +148,6 @@ public class STAR3Base {
         tokenizer.wordChars('=', '=');
     }
 
-    class STARTokenizer {
-
-        String s;
-        int pos;
-        int length = 0;
-
-        void initialize(final String newStr) {
-            pos = 0;
-            s = newStr;
-            if (newStr == null) {
-                length = 0;
-            } else {
-                length = s.length();
-            }
-        }
-
-        String nextToken() {
-            if (pos >= length) {
-                return null;
-            }
-            int fChar;
-            int lChar;
-            boolean gotWS = false;
-            while (pos < length) {
-                if (Character.isWhitespace(s.charAt(pos))) {
-                    gotWS = true;
-                } else {
-                    if (pos == 0) {
-                        gotWS = true;
-                    }
-                    break;
-                }
-                pos++;
-            }
-            if (pos == length) {
-                return null;
-            }
-            fChar = pos;
-            lChar = pos;
-            if (gotWS && (s.charAt(pos) == '\'' || s.charAt(pos) == '"')) {
-                char qChar = s.charAt(pos);
-                pos++;
-                while (pos < length) {
-                    if ((s.charAt(pos) == qChar) && ((pos == length - 1) || Character.isWhitespace(s.charAt(pos + 1)))) {
-                        lChar = pos;
-                        pos++;
-                        break;
-                    }
-                    pos++;
-                }
-            } else {
-                while (pos < length) {
-                    if (Character.isWhitespace(s.charAt(pos))) {
-                        break;
-                    }
-                    lChar = pos;
-                    pos++;
-                }
-            }
-            String token = s.substring(fChar, lChar + 1);
-            token = token.trim();
-            int length = token.length();
-            if (length > 1) {
-                char firstChar = token.charAt(0);
-                char lastChar = token.charAt(length - 1);
-                if ((lastChar == firstChar) && ((firstChar == '\'') || (firstChar == '"'))) {
-                    token = token.substring(1, length - 1);
-                }
-            }
-
-            return token;
-        }
-    }
-
     public void unGetToken() {
         usePrevious = true;
     }
@@ -201,82 +158,62 @@ public class STAR3Base {
     }
 
     String getNextToken() {
-        StringBuffer text = new StringBuffer();
-        boolean inText = false;
-
         if (usePrevious) {
             usePrevious = false;
+            if ((lastToken == null) && (tokenizer != null)) {
+                lastToken = tokenizer.tokenString();
+            }
             return (lastToken);
         }
 
-        usePrevious = false;
-
-        if (stTokenizer != null) {
-            String nextToken = stTokenizer.nextToken();
-            if (nextToken != null) {
-                return nextToken;
+        STARTokenizer starTokenizer = getTokenizer();
+        if ((starTokenizer == null) || !starTokenizer.next()) {
+            if (starTokenizer != null) {
+                lastLine = starTokenizer.getLineNumber();
             }
+            tokenizer = null;
+            bfR = null;
+            lastToken = null;
+            return lastToken;
         }
+        lastToken = starTokenizer.tokenString();
+        return lastToken;
+    }
 
-        while (true) {
-            string = getLine();
-            if (string == null) {
-                lineReader = null;
-                bfR = null;
-                lastToken = null;
-                return lastToken;
-            }
-            if (inText) {
-                if (string.startsWith(";")) {
-                    inText = false;
-                    if (string.length() > 1) {
-                        stTokenizer = new STARTokenizer();
-                        stTokenizer.initialize(string.substring(1));
-                    }
-
-                    lastToken = text.toString();
-                    return lastToken;
-                }
-
-                text.append(string + '\n');
-            } else {
-                if (string.startsWith("#")) {
-                    continue;
-                }
-
-                if (string.startsWith(";")) {
-                    text.setLength(0);
-                    text.append(string.substring(1).trim());
-                    inText = true;
-                } else {
-                    stTokenizer = new STARTokenizer();
-                    stTokenizer.initialize(string);
-                    String nextToken = stTokenizer.nextToken();
-                    if (nextToken == null) {
-                        continue;
-                    } else {
-                        lastToken = nextToken;
-                        return lastToken;
-                    }
-                }
+    /**
+     * Advance to the next token like getToken, but leave the token in the
+     * tokenizer instead of creating a String for it.
+     *
+     * @return the tokenizer, positioned at the token, or null if the file is
+     * exhausted
+     */
+    STARTokenizer nextToken() {
+        if (usePrevious) {
+            // the previous token is still the current token of the tokenizer
+            usePrevious = false;
+            return tokenizer;
+        }
+        STARTokenizer starTokenizer = getTokenizer();
+        if ((starTokenizer == null) || !starTokenizer.next()) {
+            if (starTokenizer != null) {
+                lastLine = starTokenizer.getLineNumber();
             }
+            tokenizer = null;
+            bfR = null;
+            lastToken = null;
+            return null;
         }
+        // created by getNextToken if the token is pushed back
+        lastToken = null;
+        return starTokenizer;
     }
 
     public String getLine() {
-        string = null;
-
-        if (lineReader == null) {
-            return (null);
+        STARTokenizer starTokenizer = getTokenizer();
+        if (starTokenizer == null) {
+            return null;
         }
-
-        try {
-            string = lineReader.readLine();
-        } catch (IOException e) {
-            return (string);
-        }
-
-        return (string);
+        return starTokenizer.nextLine();
     }
 
     public static String valueOf(Number number) {
@@ -287,6 +224,32 @@ public class STAR3Base {
         return value;
     }
 
+    /**
+     * Append a number to a StringBuilder, or "." if the number is null. The
+     * text is the same as valueOf(number) but no String is created for
+     * Float, Double, Integer or Long values.
+     *
+     * @param sBuilder the StringBuilder
+     * @param number the number (may be null)
+     * @return the StringBuilder
+     */
+    public static StringBuilder appendValue(StringBuilder sBuilder, Number number) {
+        if (number == null) {
+            sBuilder.append('.');
+        } else if (number instanceof Float) {
+            sBuilder.append(number.floatValue());
+        } else if (number instanceof Double) {
+            sBuilder.append(number.doubleValue());
+        } else if (number instanceof Integer) {
+            sBuilder.append(number.intValue());
+        } else if (number instanceof Long) {
+            sBuilder.append(number.longValue());
+        } else {
+            sBuilder.append(number);
+        }
+        return sBuilder;
+    }
+
     public static String getTokenFromMap(Map tokenMap, String tokenName) throws ParseException {
         String tokenValue = (String) tokenMap.get(tokenName);
         if (tokenValue == null) {
@@ -356,7 +319,10 @@ public class STAR3Base {
     }
 
     public void close() {
-        lineReader = null;
+        if (tokenizer != null) {
+            lastLine = tokenizer.getLineNumber();
+        }
+        tokenizer = null;
         bfR = null;
     }
 
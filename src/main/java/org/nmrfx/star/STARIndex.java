@@ -0,0 +1,125 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.star;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the saveframes of a STAR file: the position of each saveframe in
+ * the text, with its category and the tags of its loops, as found by
+ * STARTokenizer.indexSaveframes without parsing the saveframe.
+ *
+ * @author brucejohnson
+ */
+public class STARIndex {
+
+    public static class Entry {
+
+        final String name;
+        final String category;
+        final int start;
+        final int end;
+        final int lineNumber;
+        final Map<String, List<String>> loopTags;
+
+        Entry(String name, String category, int start, int end, int lineNumber, Map<String, List<String>> loopTags) {
+            this.name = name;
+            this.category = category;
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+            this.loopTags = loopTags;
+        }
+
+        /**
+         * @return the name of the saveframe (the save_ token)
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the value of the Sf_category tag, or null if it wasn't
+         * found in the scan
+         */
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * @return offset of the first character of the saveframe
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return offset after the last character of the saveframe
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the line the saveframe starts on
+         */
+        public int getLineNumber() {
+            return lineNumber + 1;
+        }
+
+        /**
+         * @return the tags of each loop, by loop name
+         */
+        public Map<String, List<String>> getLoopTags() {
+            return Collections.unmodifiableMap(loopTags);
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + category + " " + start + " " + end + " " + loopTags.keySet();
+        }
+    }
+
+    final List<Entry> entries = new ArrayList<>();
+    int nLines = 0;
+
+    STARIndex() {
+    }
+
+    void add(String name, String category, int start, int end, int lineNumber, LinkedHashMap<String, List<String>> loopTags) {
+        entries.add(new Entry(name, category, start, end, lineNumber, loopTags));
+    }
+
+    /**
+     * @return the entries, in the order of the saveframes in the file
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the number of lines in the file
+     */
+    public int getLineCount() {
+        return nLines;
+    }
+}
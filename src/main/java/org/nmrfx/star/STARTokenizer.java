@@ -0,0 +1,550 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.star;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Tokenizer for STAR (NMR-STAR, NEF and mmCIF) files. The whole file is held
+ * in a char array that is scanned in place: lines and tokens are recorded as
+ * offsets into the array and a token is only copied when it is requested as
+ * a String. Semicolon delimited text blocks are the only tokens that are
+ * assembled in a separate buffer.
+ *
+ * The tokens are the same as those of the line based tokenizer previously in
+ * STAR3Base: lines starting with '#' are comments, tokens are separated by
+ * white space, quoted values end at a matching quote followed by white space
+ * or the end of the line, and a text block starts and ends with a line
+ * starting with ';' (the rest of the first line, trimmed, starts the value and
+ * the rest of the last line is tokenized).
+ *
+ * @author brucejohnson
+ */
+public class STARTokenizer {
+
+    enum State {
+        LINE_START,
+        IN_LINE,
+        END;
+    }
+
+    final char[] buffer;
+    final int length;
+    State state = State.LINE_START;
+    // start of the next line to read
+    int pos = 0;
+    int lineNumber = 0;
+    // bounds of the part of the current line being tokenized
+    int lineEnd = 0;
+    int linePos = 0;
+    // the current token
+    int tokenStart = 0;
+    int tokenEnd = 0;
+    int tokenLine = 0;
+    // bounds of the current token including any quotes
+    int rawStart = 0;
+    int rawEnd = 0;
+    String text = null;
+    final StringBuilder textBuilder = new StringBuilder();
+    // bounds of the line returned by readLine
+    int readStart = 0;
+    int readEnd = 0;
+
+    public STARTokenizer(char[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * Create a tokenizer for part of a buffer.
+     *
+     * @param buffer the characters
+     * @param start offset of the first character to tokenize
+     * @param end offset after the last character to tokenize
+     * @param lineNumber the number of lines before start
+     */
+    STARTokenizer(char[] buffer, int start, int end, int lineNumber) {
+        this.buffer = buffer;
+        this.length = end;
+        this.pos = start;
+        this.lineNumber = lineNumber;
+    }
+
+    public STARTokenizer(String string) {
+        this(string.toCharArray(), string.length());
+    }
+
+    /**
+     * Read the remaining characters of a Reader into a new tokenizer. The
+     * Reader is not closed.
+     *
+     * @param reader the reader
+     * @return the tokenizer
+     * @throws IOException if the read fails
+     */
+    public static STARTokenizer read(Reader reader) throws IOException {
+        char[] chars = new char[1 << 16];
+        int n = 0;
+        while (true) {
+            if (n == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            int nRead = reader.read(chars, n, chars.length - n);
+            if (nRead < 0) {
+                break;
+            }
+            n += nRead;
+        }
+        return new STARTokenizer(chars, n);
+    }
+
+    /**
+     * Read the next physical line, with the same line terminators as
+     * BufferedReader.readLine. The bounds of the line are in readStart and
+     * readEnd.
+     *
+     * @return false if there are no more lines
+     */
+    boolean readLine() {
+        if (pos >= length) {
+            return false;
+        }
+        int end = pos;
+        while ((end < length) && (buffer[end] != '\n') && (buffer[end] != '\r')) {
+            end++;
+        }
+        readStart = pos;
+        readEnd = end;
+        if (end < length) {
+            if ((buffer[end] == '\r') && ((end + 1) < length) && (buffer[end + 1] == '\n')) {
+                end++;
+            }
+            end++;
+        }
+        pos = end;
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Get the next physical line, independent of the tokens. Any remaining
+     * tokens of the current line are still returned by next().
+     *
+     * @return the line or null if there are no more lines
+     */
+    public String nextLine() {
+        if (!readLine()) {
+            return null;
+        }
+        return new String(buffer, readStart, readEnd - readStart);
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return false if there are no more tokens
+     */
+    public boolean next() {
+        text = null;
+        boolean inText = false;
+        while (true) {
+            switch (state) {
+                case IN_LINE:
+                    if (scanToken()) {
+                        return true;
+                    }
+                    state = State.LINE_START;
+                    break;
+                case LINE_START:
+                    if (!readLine()) {
+                        state = State.END;
+                        break;
+                    }
+                    int start = readStart;
+                    int end = readEnd;
+                    if (inText) {
+                        if ((start < end) && (buffer[start] == ';')) {
+                            text = textBuilder.toString();
+                            tokenStart = start;
+                            tokenEnd = start;
+                            tokenLine = lineNumber;
+                            beginLine(start + 1, end);
+                            return true;
+                        }
+                        textBuilder.append(buffer, start, end - start).append('\n');
+                    } else if ((start < end) && (buffer[start] == '#')) {
+                        continue;
+                    } else if ((start < end) && (buffer[start] == ';')) {
+                        // the rest of the line is trimmed as String.trim does
+                        start++;
+                        while ((start < end) && (buffer[start] <= ' ')) {
+                            start++;
+                        }
+                        while ((end > start) && (buffer[end - 1] <= ' ')) {
+                            end--;
+                        }
+                        textBuilder.setLength(0);
+                        textBuilder.append(buffer, start, end - start);
+                        inText = true;
+                    } else {
+                        beginLine(start, end);
+                    }
+                    break;
+                default:
+                    // end of input, including inside an unterminated text block
+                    text = null;
+                    return false;
+            }
+        }
+    }
+
+    private void beginLine(int start, int end) {
+        linePos = start;
+        lineEnd = end;
+        state = State.IN_LINE;
+    }
+
+    private boolean scanToken() {
+        int end = lineEnd;
+        while ((linePos < end) && Character.isWhitespace(buffer[linePos])) {
+            linePos++;
+        }
+        if (linePos >= end) {
+            return false;
+        }
+        int first = linePos;
+        int last = linePos;
+        char ch = buffer[linePos];
+        if ((ch == '\'') || (ch == '"')) {
+            linePos++;
+            while (linePos < end) {
+                if ((buffer[linePos] == ch) && ((linePos == end - 1) || Character.isWhitespace(buffer[linePos + 1]))) {
+                    last = linePos;
+                    linePos++;
+                    break;
+                }
+                linePos++;
+            }
+        } else {
+            while ((linePos < end) && !Character.isWhitespace(buffer[linePos])) {
+                last = linePos;
+                linePos++;
+            }
+        }
+        int start = first;
+        int stop = last + 1;
+        while ((start < stop) && (buffer[start] <= ' ')) {
+            start++;
+        }
+        while ((stop > start) && (buffer[stop - 1] <= ' ')) {
+            stop--;
+        }
+        if ((stop - start) > 1) {
+            char firstChar = buffer[start];
+            if ((buffer[stop - 1] == firstChar) && ((firstChar == '\'') || (firstChar == '"'))) {
+                start++;
+                stop--;
+            }
+        }
+        tokenStart = start;
+        tokenEnd = stop;
+        tokenLine = lineNumber;
+        rawStart = first;
+        rawEnd = last + 1;
+        return true;
+    }
+
+    /**
+     * Index the saveframes in the remaining text: find the bounds of the
+     * text from each token starting with "save_" to the next "save_" token,
+     * and the category and loop tags of each saveframe. The line structure of
+     * the STAR format makes this possible without tokenizing most lines: text
+     * blocks and comments are found from the first character of each line,
+     * and the other lines are only split into tokens if they contain "save_"
+     * or "loop_", are part of a loop header or come before the Sf_category
+     * tag of a saveframe. The tokenizer is used up by the scan.
+     *
+     * A "save_" token that is a value (rather than the end of a saveframe)
+     * would split a saveframe in two. The rest of the saveframe would then
+     * appear between saveframes, so anything other than comments and data
+     * block headers between saveframes, or a saveframe that doesn't start at
+     * the beginning of a line, makes the scan fail.
+     *
+     * @return the index, or null if a saveframe is not terminated, a text
+     * block value starts with "save_" or there are values between saveframes
+     */
+    STARIndex indexSaveframes() {
+        STARIndex index = new STARIndex();
+        boolean inText = false;
+        boolean checkText = false;
+        boolean inFrame = false;
+        boolean started = false;
+        String frameName = null;
+        int frameStart = 0;
+        int frameLine = 0;
+        String category = null;
+        boolean expectCategory = false;
+        boolean inLoopHeader = false;
+        LinkedHashMap<String, List<String>> loopTags = null;
+        List<String> tags = null;
+        text = null;
+        while (readLine()) {
+            int start = readStart;
+            int end = readEnd;
+            if (inText) {
+                if ((start < end) && (buffer[start] == ';')) {
+                    inText = false;
+                    start++;
+                } else {
+                    if (checkText && regionStartsWith(start, end, "save_")) {
+                        return null;
+                    }
+                    checkText = false;
+                    continue;
+                }
+            } else if ((start < end) && (buffer[start] == '#')) {
+                continue;
+            } else if ((start < end) && (buffer[start] == ';')) {
+                if (started && !inFrame) {
+                    return null;
+                }
+                start++;
+                while ((start < end) && (buffer[start] <= ' ')) {
+                    start++;
+                }
+                if (regionStartsWith(start, end, "save_")) {
+                    return null;
+                }
+                // if the rest of the line is blank the value starts with the next line
+                checkText = start == end;
+                inText = true;
+                inLoopHeader = false;
+                expectCategory = false;
+                continue;
+            }
+            boolean tokenize;
+            if (inFrame) {
+                tokenize = (category == null) || inLoopHeader
+                        || regionContains(start, end, "loop_") || regionContains(start, end, "save_");
+            } else {
+                tokenize = started ? !isBlank(start, end) : regionContains(start, end, "save_");
+            }
+            if (!tokenize) {
+                inLoopHeader = false;
+                continue;
+            }
+            beginLine(start, end);
+            boolean firstToken = true;
+            while (scanToken()) {
+                boolean first = firstToken;
+                firstToken = false;
+                if (!inFrame) {
+                    if (!tokenStartsWith("save_")) {
+                        // data block headers are allowed between saveframes
+                        if (started && !tokenStartsWith("data_")) {
+                            return null;
+                        }
+                        continue;
+                    }
+                    if (tokenEquals("save_") || !first) {
+                        // a saveframe named save_, or one following other tokens
+                        return null;
+                    }
+                    frameName = tokenString();
+                    frameStart = rawStart;
+                    frameLine = lineNumber - 1;
+                    category = null;
+                    expectCategory = false;
+                    inLoopHeader = false;
+                    loopTags = new LinkedHashMap<>();
+                    inFrame = true;
+                    started = true;
+                    continue;
+                } else if (tokenEquals("save_")) {
+                    index.add(frameName, category, frameStart, rawEnd, frameLine, loopTags);
+                    inFrame = false;
+                    continue;
+                }
+                if (expectCategory) {
+                    category = tokenString();
+                    expectCategory = false;
+                } else if (tokenEquals("loop_")) {
+                    inLoopHeader = true;
+                    tags = null;
+                } else if (inLoopHeader) {
+                    if (tokenStartsWith("_")) {
+                        String tag = tokenString();
+                        int dot = tag.indexOf('.');
+                        if (dot > 0) {
+                            if (tags == null) {
+                                tags = new ArrayList<>();
+                                loopTags.put(tag.substring(0, dot), tags);
+                            }
+                            tags.add(tag.substring(dot + 1));
+                        }
+                    } else {
+                        inLoopHeader = false;
+                    }
+                } else if ((category == null) && tokenStartsWith("_")) {
+                    String tag = tokenString();
+                    expectCategory = tag.endsWith(".Sf_category") || tag.endsWith(".sf_category");
+                }
+            }
+            state = State.LINE_START;
+        }
+        if (inFrame) {
+            return null;
+        }
+        index.nLines = lineNumber;
+        return index;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionStartsWith(int start, int end, String prefix) {
+        int n = prefix.length();
+        if ((end - start) < n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (buffer[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionContains(int start, int end, String value) {
+        char first = value.charAt(0);
+        for (int i = start, last = end - value.length(); i <= last; i++) {
+            if ((buffer[i] == first) && regionStartsWith(i, end, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the current token is a text block
+     */
+    public boolean isText() {
+        return text != null;
+    }
+
+    /**
+     * Get the current token without copying it. The returned sequence is a
+     * view of the buffer (unless the token is a text block).
+     *
+     * @return the token
+     */
+    public CharSequence token() {
+        if (text != null) {
+            return text;
+        }
+        return CharBuffer.wrap(buffer, tokenStart, tokenEnd - tokenStart);
+    }
+
+    /**
+     * @return the current token as a String
+     */
+    public String tokenString() {
+        if (text != null) {
+            return text;
+        }
+        return new String(buffer, tokenStart, tokenEnd - tokenStart);
+    }
+
+    public int tokenLength() {
+        return text != null ? text.length() : tokenEnd - tokenStart;
+    }
+
+    public char tokenCharAt(int i) {
+        return text != null ? text.charAt(i) : buffer[tokenStart + i];
+    }
+
+    /**
+     * @return offset of the current token in the buffer. For a text block
+     * this is the offset of the closing ';'.
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return offset in the buffer just past the end of the current token
+     */
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * @return the number of the line (starting at 1) the current token ends
+     * on
+     */
+    public int getTokenLine() {
+        return tokenLine;
+    }
+
+    /**
+     * @return the number of lines read so far
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public boolean tokenEquals(String value) {
+        int n = value.length();
+        if (tokenLength() != n) {
+            return false;
+        }
+        return tokenRegionMatches(value, n);
+    }
+
+    public boolean tokenStartsWith(String prefix) {
+        int n = prefix.length();
+        if (tokenLength() < n) {
+            return false;
+        }
+        return tokenRegionMatches(prefix, n);
+    }
+
+    private boolean tokenRegionMatches(String value, int n) {
+        if (text != null) {
+            return text.regionMatches(0, value, 0, n);
+        }
+        for (int i = 0; i < n; i++) {
+            if (buffer[tokenStart + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.star;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.nmrfx.utilities.Format;
+import org.nmrfx.utilities.RowWriter;
+
+/**
+ * Streaming writer for the loops of STAR and mmCIF files. Each cell is
+ * appended (with the typed cell methods) directly into a reusable buffer that
+ * is passed to the Writer in large blocks, so no String is created for a row.
+ *
+ * Columns can be given a minimum width with setWidths. A cell shorter than
+ * its column is padded on the right (like %-ns in String.format) and a cell
+ * that fills or overflows its column is followed by a single space, so the
+ * alignment is computed as the rows are written and values never run
+ * together. Columns without a width are separated by a single space.
+ *
+ * String values are quoted when STAR syntax requires it: empty values,
+ * values containing white space, values starting with a character that
+ * would start a comment, tag, quoted value or text field, and reserved words.
+ * Values that can't be quoted on one line are written as a text field.
+ *
+ * A STARWriter created with a StringBuilder instead of a Writer has no block
+ * buffer and just appends to the StringBuilder, which is cheap enough for
+ * formatting single rows.
+ *
+ * @author brucejohnson
+ */
+public class STARWriter {
+
+    static final int[] NO_WIDTHS = new int[0];
+
+    final RowWriter rowWriter;
+    final StringBuilder row;
+    String loopIndent = "";
+    String rowIndent = "";
+    int[] widths = NO_WIDTHS;
+    int column = 0;
+    boolean needSpace = false;
+
+    public STARWriter(Writer writer) {
+        rowWriter = new RowWriter(writer);
+        row = rowWriter.row();
+    }
+
+    /**
+     * Create a STARWriter that appends all text to a StringBuilder.
+     *
+     * @param builder the StringBuilder
+     */
+    public STARWriter(StringBuilder builder) {
+        rowWriter = null;
+        row = builder;
+    }
+
+    /**
+     * Set the indentation of the loop_ and stop_ lines and of the tag names
+     * and rows of a loop.
+     *
+     * @param loopIndent the number of spaces before loop_ and stop_
+     * @param rowIndent the number of spaces before each tag and row
+     * @return this STARWriter
+     */
+    public STARWriter setIndent(int loopIndent, int rowIndent) {
+        this.loopIndent = " ".repeat(loopIndent);
+        this.rowIndent = " ".repeat(rowIndent);
+        return this;
+    }
+
+    /**
+     * Set the minimum width of each column of the current loop. A cell in a
+     * column with a positive width is padded after it, like %-ns. A cell in
+     * a column with a negative width is padded before it, like %ns, and
+     * always has at least one space before it unless it starts the row.
+     * Columns past the end of the array have no minimum width.
+     *
+     * @param widths the widths
+     * @return this STARWriter
+     */
+    public STARWriter setWidths(int... widths) {
+        this.widths = widths == null ? NO_WIDTHS : widths;
+        return this;
+    }
+
+    /**
+     * @return the StringBuilder the current row is appended to
+     */
+    public StringBuilder row() {
+        return row;
+    }
+
+    /**
+     * Write text (which may contain several lines) that isn't part of a row.
+     *
+     * @param text the text
+     * @return this STARWriter
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public STARWriter write(String text) throws IOException {
+        if (rowWriter == null) {
+            row.append(text);
+        } else {
+            rowWriter.write(text);
+        }
+        return this;
+    }
+
+    private void write(char ch) throws IOException {
+        if (rowWriter == null) {
+            row.append(ch);
+        } else {
+            rowWriter.write(ch);
+        }
+    }
+
+    /**
+     * Write the loop_ line and the tags of a new loop and clear the column
+     * widths.
+     *
+     * @param category the category prefixed to each tag (with a '.'), or null
+     * if the tags are complete
+     * @param tags the tags
+     * @return this STARWriter
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public STARWriter beginLoop(String category, String... tags) throws IOException {
+        write(loopIndent).write("loop_\n");
+        for (String tag : tags) {
+            write(rowIndent);
+            if (category != null) {
+                write(category).write('.');
+            }
+            write(tag).write('\n');
+        }
+        widths = NO_WIDTHS;
+        return this;
+    }
+
+    /**
+     * Write the stop_ line that ends a loop.
+     *
+     * @return this STARWriter
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public STARWriter endLoop() throws IOException {
+        write(loopIndent).write("stop_\n");
+        return this;
+    }
+
+    private void startCell() {
+        if (column == 0) {
+            row.append(rowIndent);
+        } else if (needSpace) {
+            row.append(' ');
+        }
+    }
+
+    private void endCell(int start) {
+        int width = column < widths.length ? widths[column] : 0;
+        int length = row.length() - start;
+        if (width < 0) {
+            // a space added by startCell counts towards the padding
+            int pad = needSpace ? -width - length - 1 : -width - length;
+            for (int i = 0; i < pad; i++) {
+                row.insert(start, ' ');
+            }
+            needSpace = true;
+        } else {
+            for (int i = length; i < width; i++) {
+                row.append(' ');
+            }
+            needSpace = length >= width;
+        }
+        column++;
+    }
+
+    /**
+     * Append a String cell, quoting it if necessary.
+     *
+     * @param value the value, or null for "."
+     * @return this STARWriter
+     */
+    public STARWriter cell(String value) {
+        startCell();
+        int start = row.length();
+        if (value == null) {
+            row.append('.');
+        } else {
+            appendQuoted(value, needsQuote(value));
+            if (row.charAt(row.length() - 1) == '\n') {
+                endTextField();
+                return this;
+            }
+        }
+        endCell(start);
+        return this;
+    }
+
+    /**
+     * Append a String cell, always quoted (as mmCIF writers conventionally
+     * do for atom names with primes).
+     *
+     * @param value the value, or null for "."
+     * @return this STARWriter
+     */
+    public STARWriter quotedCell(String value) {
+        if (value == null) {
+            return cell(value);
+        }
+        startCell();
+        int start = row.length();
+        appendQuoted(value, true);
+        if (row.charAt(row.length() - 1) == '\n') {
+            endTextField();
+            return this;
+        }
+        endCell(start);
+        return this;
+    }
+
+    /**
+     * Append a single character cell, quoting it if necessary.
+     *
+     * @param value the character
+     * @return this STARWriter
+     */
+    public STARWriter cell(char value) {
+        if ((value <= ' ') || (startsQuote(value))) {
+            return cell(String.valueOf(value));
+        }
+        startCell();
+        int start = row.length();
+        row.append(value);
+        endCell(start);
+        return this;
+    }
+
+    public STARWriter cell(int value) {
+        startCell();
+        int start = row.length();
+        row.append(value);
+        endCell(start);
+        return this;
+    }
+
+    public STARWriter cell(long value) {
+        startCell();
+        int start = row.length();
+        row.append(value);
+        endCell(start);
+        return this;
+    }
+
+    /**
+     * Append a number cell with the same text as STAR3Base.valueOf(number).
+     *
+     * @param value the value, or null for "."
+     * @return this STARWriter
+     */
+    public STARWriter cell(Number value) {
+        startCell();
+        int start = row.length();
+        STAR3Base.appendValue(row, value);
+        endCell(start);
+        return this;
+    }
+
+    /**
+     * Append a double cell with a fixed number of decimal places (the same
+     * text as String.format("%.nf", value)).
+     *
+     * @param value the value
+     * @param precision the number of decimal places
+     * @return this STARWriter
+     */
+    public STARWriter cell(double value, int precision) {
+        startCell();
+        int start = row.length();
+        Format.appendFixed(row, value, precision);
+        endCell(start);
+        return this;
+    }
+
+    /**
+     * Append a Double cell with a fixed number of decimal places.
+     *
+     * @param value the value, or null for "."
+     * @param precision the number of decimal places
+     * @return this STARWriter
+     */
+    public STARWriter cell(Double value, int precision) {
+        if (value == null) {
+            return cell((String) null);
+        }
+        return cell(value.doubleValue(), precision);
+    }
+
+    /**
+     * End the current row, writing the buffer if it is full.
+     *
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public void endRow() throws IOException {
+        column = 0;
+        needSpace = false;
+        if (rowWriter == null) {
+            row.append('\n');
+        } else {
+            rowWriter.endRow();
+        }
+    }
+
+    /**
+     * Pass the buffered text to the Writer. The Writer itself is not flushed.
+     *
+     * @throws IOException if the write fails
+     */
+    public void flush() throws IOException {
+        if (rowWriter != null) {
+            rowWriter.flush();
+        }
+    }
+
+    private void endTextField() {
+        // a text field ends with a ';' at the start of a line, so the next
+        // cell starts a new line
+        row.append(";\n");
+        needSpace = false;
+        column++;
+    }
+
+    static boolean startsQuote(char ch) {
+        switch (ch) {
+            case '_':
+            case '#':
+            case '\'':
+            case '"':
+            case '[':
+            case ']':
+            case ';':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean needsQuote(String value) {
+        int length = value.length();
+        if ((length == 0) || startsQuote(value.charAt(0))) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) <= ' ') {
+                return true;
+            }
+        }
+        return isReserved(value);
+    }
+
+    static boolean isReserved(String value) {
+        return value.regionMatches(true, 0, "data_", 0, 5)
+                || value.regionMatches(true, 0, "save_", 0, 5)
+                || value.equalsIgnoreCase("loop_")
+                || value.equalsIgnoreCase("stop_")
+                || value.equalsIgnoreCase("global_");
+    }
+
+    private void appendQuoted(String value, boolean quote) {
+        if (!quote) {
+            row.append(value);
+        } else if ((value.indexOf('\n') == -1) && (value.indexOf('\r') == -1)) {
+            char quoteChar = '"';
+            if (!canQuote(value, quoteChar)) {
+                quoteChar = '\'';
+            }
+            if (canQuote(value, quoteChar)) {
+                row.append(quoteChar).append(value).append(quoteChar);
+                return;
+            }
+            appendTextField(value);
+        } else {
+            appendTextField(value);
+        }
+    }
+
+    /**
+     * Append a text field. The rest of the opening ';' line is read back
+     * trimmed and without a line break after it, so a value that has several
+     * lines, or white space at either end, starts on the next line (it is
+     * then read back with a final line break, as STAR3Base writes them).
+     */
+    private void appendTextField(String value) {
+        if (row.length() > 0 && row.charAt(row.length() - 1) != '\n') {
+            row.append('\n');
+        }
+        row.append(';');
+        if ((value.indexOf('\n') != -1) || (value.indexOf('\r') != -1) || !value.trim().equals(value)) {
+            row.append('\n');
+        }
+        row.append(value).append('\n');
+    }
+
+    /**
+     * A quoted value ends at a quote character followed by white space, so
+     * a value can only be quoted with a character that isn't followed by
+     * white space within it.
+     */
+    static boolean canQuote(String value, char quoteChar) {
+        int length = value.length();
+        for (int i = 0; i < length - 1; i++) {
+            if ((value.charAt(i) == quoteChar) && (value.charAt(i + 1) <= ' ')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -41,8 +41,12 @@ public class Saveframe {
     final STAR3Base star3;
     final String name;
     String saveframeCategory;
-    final LinkedHashMap loops = new LinkedHashMap();
-    final LinkedHashMap categoryMap = new LinkedHashMap();
+    final LinkedHashMap<String, Loop> loops = new LinkedHashMap<>();
+    final LinkedHashMap<String, Category> categoryMap = new LinkedHashMap<>();
+    // the text of an indexed saveframe that hasn't been read yet
+    private char[] pendingBuffer = null;
+    private STARIndex.Entry pendingEntry = null;
+    private volatile boolean loaded = true;
 
     /**
      * Creates a new instance of Saveframe
@@ -81,7 +85,17 @@ public class Saveframe {
     }
 
     public Category getCategory(String name) {
-        Category category = (Category) categoryMap.get(name);
+        ensureLoaded();
+        return findCategory(name);
+    }
+
+    private Category category(String name) throws ParseException {
+        load();
+        return findCategory(name);
+    }
+
+    private Category findCategory(String name) {
+        Category category = categoryMap.get(name);
         if (category == null) {
             category = new Category(name);
             categoryMap.put(name, category);
@@ -100,6 +114,81 @@ public class Saveframe {
         this.saveframeCategory = saveframeCategory;
     }
 
+    /**
+     * Create a saveframe whose contents are only read from the buffer when
+     * they are first needed.
+     *
+     * @param star3 the STAR3Base the saveframe belongs to
+     * @param buffer the text of the file
+     * @param entry the index entry giving the position of the saveframe
+     */
+    Saveframe(STAR3Base star3, char[] buffer, STARIndex.Entry entry) {
+        this(star3, entry.name, entry.category);
+        pendingBuffer = buffer;
+        pendingEntry = entry;
+        loaded = false;
+    }
+
+    /**
+     * Read the contents of the saveframe if it was created from an index
+     * and they haven't been read yet. They are read automatically by the
+     * accessors, but accessors that don't throw ParseException can only
+     * report an invalid saveframe with an IllegalStateException, so call
+     * this first to get the ParseException. If the saveframe is not valid it
+     * is left empty and still not loaded.
+     *
+     * @throws ParseException if the saveframe is not valid
+     */
+    public void load() throws ParseException {
+        if (!loaded) {
+            loadPending();
+        }
+    }
+
+    private synchronized void loadPending() throws ParseException {
+        if (loaded) {
+            return;
+        }
+        try {
+            read(pendingBuffer, pendingEntry);
+        } catch (ParseException | RuntimeException e) {
+            categoryMap.clear();
+            loops.clear();
+            saveframeCategory = pendingEntry.category;
+            throw e;
+        }
+        pendingEntry = null;
+        pendingBuffer = null;
+        loaded = true;
+    }
+
+    /**
+     * @return true if the contents of the saveframe have been read
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            try {
+                loadPending();
+            } catch (ParseException parseE) {
+                throw new IllegalStateException(parseE.getMessage(), parseE);
+            }
+        }
+    }
+
+    private LinkedHashMap<String, Category> categories() throws ParseException {
+        load();
+        return categoryMap;
+    }
+
+    private LinkedHashMap<String, Loop> loopMap() throws ParseException {
+        load();
+        return loops;
+    }
+
     public STAR3Base getSTAR3() {
         return star3;
     }
@@ -109,6 +198,9 @@ public class Saveframe {
     }
 
     public String getCategoryName() {
+        if (saveframeCategory == null) {
+            ensureLoaded();
+        }
         return saveframeCategory;
     }
 
@@ -130,15 +222,56 @@ public class Saveframe {
         }
     }
 
+    private void addTokens(String tagCategory, Map<String, String> tokenMap) {
+        Category category = findCategory(tagCategory);
+        for (Map.Entry<String, String> entry : tokenMap.entrySet()) {
+            category.addTag(entry.getKey(), entry.getValue());
+        }
+    }
+
     public void read() throws ParseException {
+        read(star3);
+    }
+
+    /**
+     * Read the saveframe from the part of the buffer given by an index
+     * entry, which must contain just this saveframe.
+     *
+     * @param buffer the text of the file
+     * @param entry the index entry
+     * @throws ParseException if the text is not exactly one valid saveframe
+     */
+    void read(char[] buffer, STARIndex.Entry entry) throws ParseException {
+        STAR3Base source = new STAR3Base(new STARTokenizer(buffer, entry.start, entry.end, entry.lineNumber), star3.name);
+        // the save_ token with the name
+        source.getNextToken();
+        try {
+            read(source);
+            if (source.getNextToken() != null) {
+                throw new ParseException("Saveframe \"" + name + "\" ended before the end of its text");
+            }
+        } catch (ParseException parseE) {
+            throw new ParseException(parseE.getMessage() + " " + source.getLastLine());
+        }
+    }
+
+    /**
+     * Read the contents of the saveframe.
+     *
+     * @param source the STAR3Base the tokens are read from. This is the
+     * STAR3Base the saveframe belongs to, unless the saveframes are read in
+     * parallel.
+     * @throws ParseException if the saveframe is not valid
+     */
+    void read(STAR3Base source) throws ParseException {
         //System.out.println("process save frame "+name+" with category "+saveframeCategory);
         if (star3 instanceof MMCIF) {
             saveframeCategory = name;
         }
-        Map tokenMap = new LinkedHashMap();
+        Map<String, String> tokenMap = new LinkedHashMap<>();
         String currentTagCategory = "";
         while (true) {
-            String token = star3.getToken();
+            String token = source.getToken();
 
             if (token == null) {
                 if (star3 instanceof MMCIF) {
@@ -151,7 +284,7 @@ public class Saveframe {
                     throw new ParseException("No category for saveframe \"" + name + "\"");
                 }
                 if (tokenMap.size() != 0) {
-                    processTokenMap(currentTagCategory, tokenMap);
+                    addTokens(currentTagCategory, tokenMap);
                     tokenMap.clear();
                 }
                 break;
@@ -160,20 +293,20 @@ public class Saveframe {
                     throw new ParseException("No category for saveframe \"" + name + "\"");
                 }
                 if (tokenMap.size() != 0) {
-                    star3.usePrevious = true;
-                    processTokenMap(currentTagCategory, tokenMap);
+                    source.usePrevious = true;
+                    addTokens(currentTagCategory, tokenMap);
                     tokenMap.clear();
                 } else {
                     Loop loop = new Loop(this);
-                    String loopName = loop.processLoop();
-                    Category category = getCategory(loopName);
+                    String loopName = loop.processLoop(source);
+                    Category category = findCategory(loopName);
                     category.setLoop(true);
                     loops.put(loopName, loop);
 
                 }
             } else {
                 String[] tokenPair = STAR3.getTokenPair(token);
-                String tagValue = star3.getToken();
+                String tagValue = source.getToken();
                 if (tagValue == null) {
                     throw new ParseException("File exhausted getting tokenin \"" + name + "\"");
                 }
@@ -184,7 +317,7 @@ public class Saveframe {
                 } else if (tokenPair[0].equals(currentTagCategory) || (tokenMap.size() == 0)) {
                     tokenMap.put(tokenPair[1], tagValue);
                 } else {
-                    processTokenMap(currentTagCategory, tokenMap);
+                    addTokens(currentTagCategory, tokenMap);
                     tokenMap.clear();
                     tokenMap.put(tokenPair[1], tagValue);
                 }
@@ -208,7 +341,7 @@ public class Saveframe {
     }
 
     public String getOptionalLabelValue(String tagCategory, String tag) throws ParseException {
-        Category category = getCategory(tagCategory);
+        Category category = category(tagCategory);
         String value = (String) category.get(tag);
         String result = "";
         if (value != null) {
@@ -251,7 +384,7 @@ public class Saveframe {
     }
 
     public String getValue(String tagCategory, String tag) throws ParseException {
-        Category category = getCategory(tagCategory);
+        Category category = category(tagCategory);
         String result = (String) category.get(tag);
         if (result == null) {
             throw new ParseException("Can't find tag \"" + tagCategory + "." + tag + "\"");
@@ -261,7 +394,7 @@ public class Saveframe {
     }
 
     public String getValue(String tagCategory, String tag, String defaultValue) throws ParseException {
-        Category category = getCategory(tagCategory);
+        Category category = category(tagCategory);
         String result = (String) category.get(tag);
         if (result == null) {
             result = defaultValue;
@@ -270,7 +403,7 @@ public class Saveframe {
     }
 
     public String getOptionalValue(String tagCategory, String tag) throws ParseException {
-        Category category = getCategory(tagCategory);
+        Category category = category(tagCategory);
         String value = (String) category.get(tag);
         String result = "";
         if (value != null) {
@@ -298,7 +431,7 @@ public class Saveframe {
     }
 
     public String getValue(String tagCategory, String tag, int loopIndex) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
 
         if (loop == null) {
             throw new ParseException("Can't find loop \"" + tagCategory + "." + tag + "\"");
@@ -308,7 +441,7 @@ public class Saveframe {
     }
 
     public List<String> getLoopRow(String tagCategory, int loopIndex) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
 
         if (loop == null) {
             throw new ParseException("Can't find loop \"" + tagCategory + "\"");
@@ -318,7 +451,7 @@ public class Saveframe {
 
     public String getValueIfPresent(String tagCategory, String tag, int loopIndex) throws ParseException {
         String result = null;
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
 
         if (loop != null) {
             result = loop.getValueIfPresent(tag, loopIndex);
@@ -330,6 +463,7 @@ public class Saveframe {
     }
 
     public List<String> getCategories() {
+        ensureLoaded();
         List<String> list = new ArrayList<String>();
         Iterator iter = categoryMap.keySet().iterator();
         while (iter.hasNext()) {
@@ -341,10 +475,10 @@ public class Saveframe {
 
     public List<List<String>> getCategories2() throws ParseException {
         List<List<String>> list = new ArrayList<>();
-        Iterator iter = categoryMap.keySet().iterator();
+        Iterator iter = categories().keySet().iterator();
         while (iter.hasNext()) {
             String key = (String) iter.next();
-            Category category = getCategory(key);
+            Category category = category(key);
             ArrayList<String> list2 = new ArrayList<>();
             list2.add(key);
             if (category.isLoop) {
@@ -359,7 +493,7 @@ public class Saveframe {
 
     public List<String> getTags(String tagCategory) throws ParseException {
         List<String> list = new ArrayList<String>();
-        Category category = (Category) categoryMap.get(tagCategory);
+        Category category = categories().get(tagCategory);
         if (category == null) {
             throw new ParseException("No category \"" + tagCategory + "\"");
         }
@@ -372,8 +506,9 @@ public class Saveframe {
     }
 
     public ArrayList<String> getTagsIgnoreMissing(String tagCategory) {
+        ensureLoaded();
         ArrayList<String> list = new ArrayList<String>();
-        Category category = (Category) categoryMap.get(tagCategory);
+        Category category = categoryMap.get(tagCategory);
         if (category != null) {
             category.tagMap.keySet().stream().forEach((key) -> {
                 list.add(key);
@@ -383,20 +518,20 @@ public class Saveframe {
     }
 
     public void addLoop(String loopName, final List<String> names, final List<String> values) throws ParseException {
-        Category category = getCategory(loopName);
+        Category category = category(loopName);
         category.setLoop(true);
         Loop loop = new Loop(this);
-        loops.put(loopName, loop);
+        loopMap().put(loopName, loop);
         loop.addValues(names, values);
     }
 
     public Loop getLoop(String tagCategory) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
         return loop;
     }
 
     public Map getLoopRowMap(String tagCategory, int iRow) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
         if (loop == null) {
             throw new ParseException("Can't find loop \"" + tagCategory + "\"");
         }
@@ -404,7 +539,7 @@ public class Saveframe {
     }
 
     public int loopCount(String tagCategory) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
         if (loop == null) {
             throw new ParseException("Can't find loop \"" + tagCategory + "\"");
         }
@@ -412,7 +547,7 @@ public class Saveframe {
     }
 
     public List<String> getLoopTags(String tagCategory) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
 
         if (loop == null) {
             throw new ParseException("Can't find loop \"" + tagCategory + "\"");
@@ -421,7 +556,7 @@ public class Saveframe {
     }
 
     public List<String> getColumn(String tagCategory, String tag) throws ParseException {
-        Loop loop = (Loop) loops.get(tagCategory);
+        Loop loop = loopMap().get(tagCategory);
 
         if (loop == null) {
             throw new ParseException("Can't find loop \"" + tagCategory + "." + tag + "\"");
@@ -83,4 +83,83 @@ public class Format {
         }
         return format;
     }
+
+    private static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L,
+        1000000L, 10000000L, 100000000L, 1000000000L};
+    // values that scale above this are formatted with String.format
+    private static final double MAX_SCALED = 1.0e12;
+    // scaled values this close to a rounding boundary are formatted with String.format
+    private static final double HALF_GUARD = 1.0e-3;
+
+    /**
+     * Append a value with a fixed number of decimal places. The result is the
+     * same as String.format("%.nf", value) in an English locale, but the
+     * common cases are formatted directly into the StringBuilder without
+     * creating any intermediate objects.
+     *
+     * @param sBuilder the StringBuilder to append to
+     * @param value the value
+     * @param precision the number of decimal places (0 to 9)
+     * @return the StringBuilder
+     */
+    public static StringBuilder appendFixed(StringBuilder sBuilder, double value, int precision) {
+        return appendFixed(sBuilder, value, 0, precision);
+    }
+
+    /**
+     * Append a value with a fixed number of decimal places, padded on the
+     * left with spaces to a minimum width. The result is the same as
+     * String.format("%w.nf", value) in an English locale.
+     *
+     * @param sBuilder the StringBuilder to append to
+     * @param value the value
+     * @param width the minimum width of the field
+     * @param precision the number of decimal places (0 to 9)
+     * @return the StringBuilder
+     */
+    public static StringBuilder appendFixed(StringBuilder sBuilder, double value, int width, int precision) {
+        if ((precision < 0) || (precision >= POW10.length) || Double.isNaN(value) || Double.isInfinite(value)) {
+            return appendFormat(sBuilder, value, width, precision);
+        }
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+        double scaled = Math.abs(value) * POW10[precision];
+        if (scaled >= MAX_SCALED) {
+            return appendFormat(sBuilder, value, width, precision);
+        }
+        double floor = Math.floor(scaled);
+        double frac = scaled - floor;
+        // String.format rounds the shortest decimal representation half up,
+        // which can differ from rounding the binary value near a half
+        if (Math.abs(frac - 0.5) < HALF_GUARD) {
+            return appendFormat(sBuilder, value, width, precision);
+        }
+        long rounded = (long) floor + (frac > 0.5 ? 1 : 0);
+        long intPart = rounded / POW10[precision];
+        long fracPart = rounded % POW10[precision];
+        int nIntDigits = 1;
+        for (long v = intPart; v >= 10; v /= 10) {
+            nIntDigits++;
+        }
+        int length = (negative ? 1 : 0) + nIntDigits + (precision > 0 ? precision + 1 : 0);
+        for (int i = length; i < width; i++) {
+            sBuilder.append(' ');
+        }
+        if (negative) {
+            sBuilder.append('-');
+        }
+        sBuilder.append(intPart);
+        if (precision > 0) {
+            sBuilder.append('.');
+            for (long p = POW10[precision - 1]; p > fracPart && p > 1; p /= 10) {
+                sBuilder.append('0');
+            }
+            sBuilder.append(fracPart);
+        }
+        return sBuilder;
+    }
+
+    private static StringBuilder appendFormat(StringBuilder sBuilder, double value, int width, int precision) {
+        String format = width > 0 ? "%" + width + "." + precision + "f" : "%." + precision + "f";
+        return sBuilder.append(String.format(stdLocale, format, value));
+    }
 }
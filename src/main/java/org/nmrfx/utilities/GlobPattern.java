@@ -0,0 +1,237 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data 
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.utilities;
+
+/**
+ * A pattern for Util.stringMatch that is parsed once so it can be matched
+ * against many strings. The pattern is compiled into a table with one token
+ * per pattern position (literal, '?', '*' or a character class with its
+ * ranges) and matched without recursion or creating substrings. The results
+ * are the same as Util.stringMatch(string, pattern) for all patterns,
+ * including malformed classes.
+ *
+ * @author brucejohnson
+ */
+public class GlobPattern {
+
+    static final byte LITERAL = 0;
+    static final byte ANY = 1;
+    static final byte STAR = 2;
+    static final byte CLASS = 3;
+    static final byte FAIL = 4;
+
+    final String pattern;
+    final int length;
+    final byte[] kinds;
+    final char[] literals;
+    final int[] nexts;
+    final char[][] classLows;
+    final char[][] classHighs;
+    // true if a character class continues at different positions
+    // depending on which of its items matched (a ']' as the end of a range)
+    boolean branching = false;
+
+    private GlobPattern(String pattern) {
+        this.pattern = pattern;
+        length = pattern.length();
+        kinds = new byte[length];
+        literals = new char[length];
+        nexts = new int[length];
+        classLows = new char[length][];
+        classHighs = new char[length][];
+        for (int p = 0; p < length; p++) {
+            char ch = pattern.charAt(p);
+            switch (ch) {
+                case '*':
+                    kinds[p] = STAR;
+                    nexts[p] = p + 1;
+                    break;
+                case '?':
+                    kinds[p] = ANY;
+                    nexts[p] = p + 1;
+                    break;
+                case '[':
+                    compileClass(p);
+                    break;
+                case '\\':
+                    if (p + 1 == length) {
+                        kinds[p] = FAIL;
+                    } else {
+                        kinds[p] = LITERAL;
+                        literals[p] = pattern.charAt(p + 1);
+                        nexts[p] = p + 2;
+                    }
+                    break;
+                default:
+                    kinds[p] = LITERAL;
+                    literals[p] = ch;
+                    nexts[p] = p + 1;
+            }
+        }
+    }
+
+    private void compileClass(int start) {
+        StringBuilder lows = new StringBuilder();
+        StringBuilder highs = new StringBuilder();
+        int next = -1;
+        int i = start + 1;
+        while ((i < length) && (pattern.charAt(i) != ']')) {
+            char ch1 = pattern.charAt(i);
+            int last;
+            if (((i + 1) < length) && (pattern.charAt(i + 1) == '-')) {
+                if ((i + 2) == length) {
+                    // a range without an end fails the match
+                    break;
+                }
+                lows.append(ch1);
+                highs.append(pattern.charAt(i + 2));
+                last = i + 2;
+            } else {
+                lows.append(ch1);
+                highs.append(ch1);
+                last = i;
+            }
+            // matching continues after the first ']' beyond the matched item
+            int close = pattern.indexOf(']', last + 1);
+            int itemNext = close == -1 ? length : close + 1;
+            if ((next != -1) && (itemNext != next)) {
+                branching = true;
+            }
+            next = itemNext;
+            i = last + 1;
+        }
+        kinds[start] = CLASS;
+        nexts[start] = next;
+        classLows[start] = lows.toString().toCharArray();
+        classHighs[start] = highs.toString().toCharArray();
+    }
+
+    /**
+     * Compile a pattern.
+     *
+     * @param pattern the pattern, with the special characters *?\[] as in
+     * Util.stringMatch
+     * @return the compiled pattern
+     */
+    public static GlobPattern compile(String pattern) {
+        return new GlobPattern(pattern);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the characters that every matching string must start with
+     */
+    public String getLiteralPrefix() {
+        int end = 0;
+        while ((end < length) && (kinds[end] == LITERAL) && (pattern.charAt(end) != '\\')) {
+            end++;
+        }
+        return pattern.substring(0, end);
+    }
+
+    /**
+     * @return the characters that every matching string must end with, or
+     * an empty string if the end of the pattern isn't a plain literal that
+     * follows a '*'
+     */
+    public String getLiteralSuffix() {
+        int lastStar = pattern.lastIndexOf('*');
+        if ((lastStar == -1) || (pattern.indexOf('[') != -1) || (pattern.indexOf('\\') != -1)
+                || (pattern.indexOf('?', lastStar) != -1)) {
+            return "";
+        }
+        return pattern.substring(lastStar + 1);
+    }
+
+    /**
+     * @return true if the pattern contains no special characters
+     */
+    public boolean isLiteral() {
+        return getLiteralPrefix().length() == length;
+    }
+
+    /**
+     * Test whether a string matches the pattern.
+     *
+     * @param string the string
+     * @return true if it matches
+     */
+    public boolean matches(String string) {
+        if (branching) {
+            return Util.stringMatch(string, pattern);
+        }
+        int n = string.length();
+        int p = 0;
+        int s = 0;
+        int starP = -1;
+        int starS = 0;
+        while (true) {
+            if (p == length) {
+                if (s == n) {
+                    return true;
+                }
+            } else if (kinds[p] == STAR) {
+                p++;
+                if (p == length) {
+                    return true;
+                }
+                starP = p;
+                starS = s;
+                continue;
+            } else if (s < n) {
+                int next = step(p, string.charAt(s));
+                if (next >= 0) {
+                    p = next;
+                    s++;
+                    continue;
+                }
+            }
+            if ((starP < 0) || (starS >= n)) {
+                return false;
+            }
+            starS++;
+            s = starS;
+            p = starP;
+        }
+    }
+
+    private int step(int p, char ch) {
+        switch (kinds[p]) {
+            case LITERAL:
+                return literals[p] == ch ? nexts[p] : -1;
+            case ANY:
+                return nexts[p];
+            case CLASS:
+                char[] lows = classLows[p];
+                char[] highs = classHighs[p];
+                for (int i = 0; i < lows.length; i++) {
+                    char ch1 = lows[i];
+                    char ch2 = highs[i];
+                    if (((ch1 <= ch) && (ch2 >= ch)) || ((ch1 >= ch) && (ch2 <= ch))) {
+                        return nexts[p];
+                    }
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+}
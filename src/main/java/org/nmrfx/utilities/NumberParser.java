@@ -0,0 +1,198 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.utilities;
+
+/**
+ * Parse numbers directly from a region of a char array. The parsers give
+ * exactly the same result as Float.parseFloat, Double.parseDouble,
+ * Integer.parseInt and Long.parseLong (falling back to those methods for any
+ * value that is not a plain decimal number), but don't need a String for the
+ * common cases.
+ *
+ * @author brucejohnson
+ */
+public class NumberParser {
+
+    static final double[] POW10 = {
+        1.0e0, 1.0e1, 1.0e2, 1.0e3, 1.0e4, 1.0e5, 1.0e6, 1.0e7, 1.0e8, 1.0e9,
+        1.0e10, 1.0e11, 1.0e12, 1.0e13, 1.0e14, 1.0e15, 1.0e16, 1.0e17, 1.0e18,
+        1.0e19, 1.0e20, 1.0e21, 1.0e22};
+    // largest number of significant digits that is always exactly representable in a double
+    static final int MAX_DIGITS = 15;
+    static final long FLOAT_ROUND_MASK = (1L << 29) - 1;
+    static final long FLOAT_HALF = 1L << 28;
+
+    private NumberParser() {
+    }
+
+    /**
+     * Parse chars as an int with the same result as Integer.parseInt.
+     *
+     * @param buffer the chars
+     * @param start offset of the first char
+     * @param end offset after the last char
+     * @return the value
+     * @throws NumberFormatException if the chars are not an int
+     */
+    public static int parseInt(char[] buffer, int start, int end) {
+        boolean negative = false;
+        int i = start;
+        if ((i < end) && ((buffer[i] == '-') || (buffer[i] == '+'))) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        if ((i == end) || ((end - i) > 9)) {
+            return Integer.parseInt(new String(buffer, start, end - start));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if ((digit < 0) || (digit > 9)) {
+                return Integer.parseInt(new String(buffer, start, end - start));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse chars as a long with the same result as Long.parseLong.
+     *
+     * @param buffer the chars
+     * @param start offset of the first char
+     * @param end offset after the last char
+     * @return the value
+     * @throws NumberFormatException if the chars are not a long
+     */
+    public static long parseLong(char[] buffer, int start, int end) {
+        boolean negative = false;
+        int i = start;
+        if ((i < end) && ((buffer[i] == '-') || (buffer[i] == '+'))) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        if ((i == end) || ((end - i) > 18)) {
+            return Long.parseLong(new String(buffer, start, end - start));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if ((digit < 0) || (digit > 9)) {
+                return Long.parseLong(new String(buffer, start, end - start));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse chars as a double with the same result as Double.parseDouble.
+     *
+     * @param buffer the chars
+     * @param start offset of the first char
+     * @param end offset after the last char
+     * @return the value
+     * @throws NumberFormatException if the chars are not a number
+     */
+    public static double parseDouble(char[] buffer, int start, int end) {
+        double value = fastDouble(buffer, start, end);
+        if (Double.isNaN(value)) {
+            value = Double.parseDouble(new String(buffer, start, end - start));
+        }
+        return value;
+    }
+
+    /**
+     * Parse chars as a float with the same result as Float.parseFloat.
+     *
+     * @param buffer the chars
+     * @param start offset of the first char
+     * @param end offset after the last char
+     * @return the value
+     * @throws NumberFormatException if the chars are not a number
+     */
+    public static float parseFloat(char[] buffer, int start, int end) {
+        double value = fastDouble(buffer, start, end);
+        if (!Double.isNaN(value)) {
+            double absValue = Math.abs(value);
+            if (absValue == 0.0) {
+                return (float) value;
+            }
+            if ((absValue >= Float.MIN_NORMAL) && (absValue <= Float.MAX_VALUE)) {
+                // rounding the correctly rounded double to float gives the
+                // correctly rounded float unless the double lies exactly
+                // half way between two floats
+                long bits = Double.doubleToRawLongBits(value);
+                if ((bits & FLOAT_ROUND_MASK) != FLOAT_HALF) {
+                    return (float) value;
+                }
+            }
+        }
+        return Float.parseFloat(new String(buffer, start, end - start));
+    }
+
+    /**
+     * Parse a plain decimal number ([+-]digits[.digits]) with at most
+     * MAX_DIGITS significant digits. The mantissa and the power of ten are
+     * both exact doubles, so a single division gives the correctly rounded
+     * result.
+     *
+     * @return the value or NaN if the characters are not in the simple form
+     */
+    private static double fastDouble(char[] buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if ((i < end) && ((buffer[i] == '-') || (buffer[i] == '+'))) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int nSignificant = 0;
+        int nFraction = 0;
+        int nDigits = 0;
+        boolean inFraction = false;
+        for (; i < end; i++) {
+            char ch = buffer[i];
+            if ((ch >= '0') && (ch <= '9')) {
+                nDigits++;
+                if (inFraction) {
+                    nFraction++;
+                }
+                if ((mantissa != 0) || (ch != '0')) {
+                    nSignificant++;
+                    if (nSignificant > MAX_DIGITS) {
+                        return Double.NaN;
+                    }
+                }
+                mantissa = mantissa * 10 + (ch - '0');
+            } else if ((ch == '.') && !inFraction) {
+                inFraction = true;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if ((nDigits == 0) || (nFraction >= POW10.length)) {
+            return Double.NaN;
+        }
+        double value = mantissa;
+        if (nFraction > 0) {
+            value /= POW10[nFraction];
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.utilities;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Buffers rows of text for a Writer. Rows are appended directly into a
+ * single reusable StringBuilder (usually with the append... methods of the
+ * objects being written) and the accumulated text is passed to the Writer in
+ * large blocks, so writing a row doesn't create a String. Call flush() when
+ * done, or before writing to the underlying Writer directly.
+ *
+ * @author brucejohnson
+ */
+public class RowWriter {
+
+    static final int BLOCK_SIZE = 1 << 16;
+
+    final Writer writer;
+    final StringBuilder buffer = new StringBuilder(BLOCK_SIZE + 1024);
+    char[] chars = new char[BLOCK_SIZE + 1024];
+
+    public RowWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @return the StringBuilder to append the current row to
+     */
+    public StringBuilder row() {
+        return buffer;
+    }
+
+    /**
+     * Append text (which may contain several lines) to the buffer
+     *
+     * @param text the text
+     * @return this RowWriter
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public RowWriter write(String text) throws IOException {
+        buffer.append(text);
+        checkFlush();
+        return this;
+    }
+
+    /**
+     * Append a character to the buffer
+     *
+     * @param ch the character
+     * @return this RowWriter
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public RowWriter write(char ch) throws IOException {
+        buffer.append(ch);
+        checkFlush();
+        return this;
+    }
+
+    /**
+     * End the current row with a newline, writing the buffer if it is full
+     *
+     * @throws IOException if the buffer is written and the write fails
+     */
+    public void endRow() throws IOException {
+        buffer.append('\n');
+        checkFlush();
+    }
+
+    private void checkFlush() throws IOException {
+        if (buffer.length() >= BLOCK_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Pass the buffered text to the Writer. The Writer itself is not flushed.
+     *
+     * @throws IOException if the write fails
+     */
+    public void flush() throws IOException {
+        int length = buffer.length();
+        if (length > 0) {
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            buffer.getChars(0, length, chars, 0);
+            writer.write(chars, 0, length);
+            buffer.setLength(0);
+        }
+    }
+}
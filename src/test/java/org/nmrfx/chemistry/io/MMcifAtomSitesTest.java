@@ -0,0 +1,105 @@
+package org.nmrfx.chemistry.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.AtomEnergyProp;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.MoleculeFactory;
+import org.nmrfx.chemistry.Point3;
+import org.nmrfx.chemistry.SpatialSet;
+import org.nmrfx.star.ParseException;
+
+public class MMcifAtomSitesTest {
+
+    static final String CIF_FILE = "src/test/data/ciffiles/2kpu.cif";
+
+    @BeforeClass
+    public static void loadParameters() throws IOException {
+        // the bundled resource isn't found by the system class loader when
+        // the tests run on the module path
+        AtomEnergyProp.readPropFile("src/main/resources/reslib_iu/params.txt");
+    }
+
+    static List<String> read(File file) throws ParseException {
+        MoleculeFactory.clearAllMolecules();
+        MoleculeFactory.setActive(null);
+        MMcifReader.read(file);
+        MoleculeBase molecule = MoleculeFactory.getActive();
+        List<String> result = new ArrayList<>();
+        for (Atom atom : molecule.getAtomArray()) {
+            SpatialSet spSet = atom.getSpatialSet();
+            StringBuilder sBuilder = new StringBuilder(atom.getFullName());
+            for (int i = 0; i < spSet.getPointCount(); i++) {
+                Point3 pt = spSet.getPoint(i);
+                sBuilder.append(' ').append(pt.getX()).append(',').append(pt.getY()).append(',').append(pt.getZ())
+                        .append(',').append(spSet.getOccupancy(i)).append(',').append(spSet.getBFactor(i));
+            }
+            result.add(sBuilder.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Reverse the order of the atom rows of one model, so its rows no longer
+     * match those of the first model and are loaded one at a time.
+     */
+    static File reverseModel(String modelNum) throws IOException {
+        List<String> lines = Files.readAllLines(Path.of(CIF_FILE));
+        List<Integer> modelLines = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith("ATOM") || line.startsWith("HETATM")) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[fields.length - 1].equals(modelNum)) {
+                    modelLines.add(i);
+                }
+            }
+        }
+        Assert.assertFalse(modelLines.isEmpty());
+        List<String> rows = new ArrayList<>();
+        for (int i : modelLines) {
+            rows.add(lines.get(i));
+        }
+        Collections.reverse(rows);
+        for (int k = 0; k < rows.size(); k++) {
+            lines.set(modelLines.get(k), rows.get(k));
+        }
+        Path path = Files.createTempFile("atomsites", ".cif");
+        path.toFile().deleteOnExit();
+        Files.write(path, lines);
+        return path.toFile();
+    }
+
+    @Test
+    public void testEnsemble() throws ParseException {
+        List<String> atoms = read(new File(CIF_FILE));
+        MoleculeBase molecule = MoleculeFactory.getActive();
+        Assert.assertEquals(20, molecule.getActiveStructures().length);
+        SpatialSet spSet = MoleculeBase.getAtomByName("A:1.N").getSpatialSet();
+        Assert.assertEquals(20, spSet.getPointCount());
+        Point3 pt = spSet.getPoint(0);
+        Assert.assertEquals(-20.682, pt.getX(), 1.0e-5);
+        Assert.assertEquals(-1.243, pt.getY(), 1.0e-5);
+        Assert.assertEquals(-23.705, pt.getZ(), 1.0e-5);
+        Assert.assertFalse(atoms.isEmpty());
+    }
+
+    @Test
+    public void testRowFallback() throws IOException, ParseException {
+        List<String> expected = read(new File(CIF_FILE));
+        // model 3 is loaded row by row between models that reuse the atoms
+        // of the first model
+        Assert.assertEquals(expected, read(reverseModel("3")));
+        // the last model is loaded row by row after all the others
+        Assert.assertEquals(expected, read(reverseModel("20")));
+    }
+}
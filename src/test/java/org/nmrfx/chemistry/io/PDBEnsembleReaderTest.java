@@ -0,0 +1,173 @@
+package org.nmrfx.chemistry.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.AtomEnergyProp;
+import org.nmrfx.chemistry.InvalidMoleculeException;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.MoleculeFactory;
+import org.nmrfx.chemistry.Point3;
+import org.nmrfx.chemistry.SpatialSet;
+import org.nmrfx.star.ParseException;
+
+public class PDBEnsembleReaderTest {
+
+    static final String CIF_FILE = "src/test/data/ciffiles/2kpu.cif";
+    static Path tmpDir;
+    static List<File> files = new ArrayList<>();
+
+    @BeforeClass
+    public static void writeEnsemble() throws IOException, ParseException, InvalidMoleculeException {
+        // the bundled resource isn't found by the system class loader when
+        // the tests run on the module path
+        AtomEnergyProp.readPropFile("src/main/resources/reslib_iu/params.txt");
+        MoleculeBase molecule = readMolecule();
+        tmpDir = Files.createTempDirectory("ensemble");
+        for (int iStruct : molecule.getActiveStructures()) {
+            File file = tmpDir.resolve("model_" + (iStruct + 1) + ".pdb").toFile();
+            try (Writer writer = Files.newBufferedWriter(file.toPath())) {
+                molecule.writeXYZToPDB(writer, iStruct);
+            }
+            files.add(file);
+        }
+    }
+
+    @AfterClass
+    public static void removeEnsemble() throws IOException {
+        for (File file : tmpDir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(tmpDir);
+    }
+
+    static MoleculeBase readMolecule() throws ParseException {
+        MoleculeFactory.clearAllMolecules();
+        MoleculeFactory.setActive(null);
+        MMcifReader.read(CIF_FILE);
+        return MoleculeFactory.getActive();
+    }
+
+    static List<String> dump(MoleculeBase molecule) {
+        List<String> result = new ArrayList<>();
+        result.add(molecule.structures + " " + Arrays.toString(molecule.getActiveStructures()));
+        for (Atom atom : molecule.getAtomArray()) {
+            SpatialSet spSet = atom.getSpatialSet();
+            StringBuilder sBuilder = new StringBuilder(atom.getFullName());
+            for (int i = 0; i < spSet.getPointCount(); i++) {
+                Point3 pt = spSet.getPoint(i);
+                sBuilder.append(' ');
+                if (pt == null) {
+                    sBuilder.append("null");
+                } else {
+                    sBuilder.append(pt.getX()).append(',').append(pt.getY()).append(',').append(pt.getZ());
+                }
+                sBuilder.append(',').append(spSet.getOccupancy(i)).append(',').append(spSet.getBFactor(i));
+            }
+            result.add(sBuilder.toString());
+        }
+        return result;
+    }
+
+    static List<String> readEnsemble(List<File> ensembleFiles) throws ParseException, MoleculeIOException, IOException {
+        MoleculeBase molecule = readMolecule();
+        new PDBFile().readMultipleCoordinateFiles(ensembleFiles, false);
+        return dump(molecule);
+    }
+
+    // what readMultipleCoordinateFiles did before the ensemble reader
+    static List<String> readEachFile(List<File> ensembleFiles) throws ParseException, MoleculeIOException {
+        MoleculeBase molecule = readMolecule();
+        molecule.structures.clear();
+        int iStruct = 0;
+        for (File file : ensembleFiles) {
+            new PDBFile().readCoordinates(file.toString(), iStruct++, false, true);
+        }
+        return dump(molecule);
+    }
+
+    /**
+     * Copy a PDB file with the order of its atom records reversed, so they no
+     * longer match those of the first file.
+     */
+    static File reverseAtoms(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        List<Integer> atomLines = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).startsWith("ATOM") || lines.get(i).startsWith("HETATM")) {
+                atomLines.add(i);
+            }
+        }
+        List<String> records = new ArrayList<>();
+        for (int i : atomLines) {
+            records.add(lines.get(i));
+        }
+        Collections.reverse(records);
+        for (int k = 0; k < records.size(); k++) {
+            lines.set(atomLines.get(k), records.get(k));
+        }
+        File reversed = tmpDir.resolve("reversed_" + file.getName()).toFile();
+        Files.write(reversed.toPath(), lines);
+        return reversed;
+    }
+
+    /**
+     * Copy a PDB file with a MODEL record after its first atom record, which
+     * makes the ensemble reader fall back to readCoordinates for the file.
+     */
+    static File addModelRecord(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).startsWith("ATOM")) {
+                lines.add(i + 1, "MODEL        1");
+                break;
+            }
+        }
+        File modelFile = tmpDir.resolve("model_record_" + file.getName()).toFile();
+        Files.write(modelFile.toPath(), lines);
+        return modelFile;
+    }
+
+    @Test
+    public void testEnsemble() throws ParseException, MoleculeIOException, IOException {
+        List<String> expected = readEachFile(files);
+        Assert.assertEquals(expected, readEnsemble(files));
+        Assert.assertTrue(expected.get(0).startsWith("[0, 1, 2"));
+    }
+
+    @Test
+    public void testRecordFallback() throws ParseException, MoleculeIOException, IOException {
+        List<File> oddFiles = new ArrayList<>(files);
+        oddFiles.set(2, reverseAtoms(files.get(2)));
+        oddFiles.set(5, addModelRecord(files.get(5)));
+        oddFiles.set(files.size() - 1, reverseAtoms(files.get(files.size() - 1)));
+        Assert.assertEquals(readEachFile(oddFiles), readEnsemble(oddFiles));
+    }
+
+    @Test
+    public void testEmpty() throws ParseException, MoleculeIOException, IOException {
+        MoleculeBase molecule = readMolecule();
+        List<String> before = dump(molecule);
+        new PDBFile().readMultipleCoordinateFiles(List.of(), false);
+        Assert.assertTrue(molecule.structures.isEmpty());
+        // the coordinates themselves are unchanged
+        List<String> after = dump(molecule);
+        Assert.assertEquals(before.subList(1, before.size()), after.subList(1, after.size()));
+
+        MoleculeFactory.clearAllMolecules();
+        MoleculeFactory.setActive(null);
+        new PDBFile().readMultipleCoordinateFiles(List.of(), false);
+        Assert.assertNull(MoleculeFactory.getActive());
+    }
+}
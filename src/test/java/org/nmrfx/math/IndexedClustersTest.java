@@ -0,0 +1,135 @@
+package org.nmrfx.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexedClustersTest {
+
+    /**
+     * Make items on a coarse lattice (in units of a quarter tolerance), so
+     * many pairs have exactly the same merge cost and some have the same
+     * position. Most items are in group 0, which can't be merged with each
+     * other.
+     */
+    static List<Clusters.ClusterItem> makeItems(Random random, int nItems, double[] tol) {
+        int nDim = tol.length;
+        List<Clusters.ClusterItem> items = new ArrayList<>();
+        double[] center = new double[nDim];
+        for (int i = 0; i < nItems; i++) {
+            if (random.nextInt(4) == 0) {
+                for (int k = 0; k < nDim; k++) {
+                    center[k] = random.nextInt(40) * tol[k];
+                }
+            }
+            double[] v = new double[nDim];
+            for (int k = 0; k < nDim; k++) {
+                v[k] = center[k] + (random.nextInt(9) - 4) * 0.25 * tol[k];
+            }
+            int group = random.nextInt(3) == 0 ? 1 + random.nextInt(2) : 0;
+            items.add(new Clusters.ClusterItem(i, v, group));
+        }
+        return items;
+    }
+
+    static Clusters makeClusters(List<Clusters.ClusterItem> items) {
+        Clusters clusters = new Clusters();
+        for (Clusters.ClusterItem item : items) {
+            clusters.addDatum(new Clusters.ClusterItem(item.getObjects(), item.v, item.group));
+        }
+        return clusters;
+    }
+
+    static void compare(double[] tol, List<Clusters.ClusterItem> items) {
+        int nDim = tol.length;
+        Clusters expected = makeClusters(items);
+        expected.doCluster(nDim, tol);
+        Clusters indexed = makeClusters(items);
+        int nClusters = indexed.doIndexedCluster(nDim, tol);
+
+        int nActive = 0;
+        for (int i = 0; i < items.size(); i++) {
+            Clusters.ClusterItem expectedItem = expected.data.get(i);
+            Clusters.ClusterItem indexedItem = indexed.data.get(i);
+            Assert.assertEquals(expectedItem.isActive(), indexedItem.isActive());
+            Assert.assertEquals(expectedItem.getObjects(), indexedItem.getObjects());
+            Assert.assertArrayEquals(expectedItem.v, indexedItem.v, 0.0);
+            if (expectedItem.isActive()) {
+                nActive++;
+            }
+        }
+        Assert.assertEquals(nActive, nClusters);
+    }
+
+    @Test
+    public void testMatchesDoCluster() {
+        Random random = new Random(26);
+        double[][] tols = {{0.04, 0.4}, {0.02, 0.3, 0.5}};
+        int nMerged = 0;
+        int nRejected = 0;
+        for (int trial = 0; trial < 40; trial++) {
+            double[] tol = tols[trial % tols.length];
+            List<Clusters.ClusterItem> items = makeItems(random, 20 + random.nextInt(130), tol);
+            compare(tol, items);
+
+            Clusters clusters = makeClusters(items);
+            clusters.doIndexedCluster(tol.length, tol);
+            IndexedClusters indexedClusters = new IndexedClusters(tol.length, tol);
+            List<Clusters.ClusterItem> active = new ArrayList<>();
+            for (Clusters.ClusterItem item : clusters.data) {
+                if (item.isActive()) {
+                    active.add(item);
+                } else {
+                    nMerged++;
+                }
+            }
+            // group 0 items left unmerged although they are within tolerance
+            for (int i = 0; i < active.size(); i++) {
+                for (int j = i + 1; j < active.size(); j++) {
+                    if ((active.get(i).group == 0) && (active.get(j).group == 0)
+                            && (indexedClusters.mergeCost(active.get(i), active.get(j)) < tol.length)) {
+                        nRejected++;
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(nMerged > 100);
+        Assert.assertTrue(nRejected > 100);
+    }
+
+    @Test
+    public void testScanLimit() {
+        // once the ten items at 1.6 have merged they stop the doCluster scan
+        // from the item at 0.0 before it reaches the item at 1.7
+        double[] tol = {1.0, 1.0};
+        List<Clusters.ClusterItem> items = new ArrayList<>();
+        items.add(new Clusters.ClusterItem(0, new double[]{0.0, 0.0}, 1));
+        for (int i = 1; i <= 10; i++) {
+            items.add(new Clusters.ClusterItem(i, new double[]{1.6, 10.0}, 1));
+        }
+        items.add(new Clusters.ClusterItem(11, new double[]{1.7, 0.0}, 1));
+        compare(tol, items);
+
+        Clusters clusters = makeClusters(items);
+        Assert.assertEquals(3, clusters.doIndexedCluster(2, tol));
+        Assert.assertEquals(List.of(0), clusters.data.get(0).getObjects());
+        Assert.assertEquals(List.of(11), clusters.data.get(11).getObjects());
+    }
+
+    @Test
+    public void testDuplicates() {
+        // every item at one of a few positions, so nearly all costs tie
+        Random random = new Random(7);
+        double[] tol = {0.05, 0.5};
+        for (int trial = 0; trial < 20; trial++) {
+            List<Clusters.ClusterItem> items = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                double[] v = {random.nextInt(3) * 0.05, random.nextInt(2) * 0.5};
+                items.add(new Clusters.ClusterItem(i, v, random.nextInt(2)));
+            }
+            compare(tol, items);
+        }
+    }
+}
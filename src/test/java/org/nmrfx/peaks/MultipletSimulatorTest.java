@@ -0,0 +1,138 @@
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultipletSimulatorTest {
+
+    /**
+     * Make the lines of multiplets (doublets of doublets and so on) spread
+     * over and beyond the 0 to 10 ppm range, a few of them narrower than the
+     * width limit.
+     */
+    static List<AbsMultipletComponent> makeComps(Random random, int nMultiplets) {
+        List<AbsMultipletComponent> comps = new ArrayList<>();
+        for (int iMult = 0; iMult < nMultiplets; iMult++) {
+            List<Double> offsets = new ArrayList<>();
+            offsets.add(-0.5 + 11.0 * random.nextDouble());
+            for (int iCoup = random.nextInt(3); iCoup > 0; iCoup--) {
+                double coupling = 0.002 + 0.02 * random.nextDouble();
+                List<Double> split = new ArrayList<>();
+                for (double offset : offsets) {
+                    split.add(offset - coupling / 2);
+                    split.add(offset + coupling / 2);
+                }
+                offsets = split;
+            }
+            double width = random.nextInt(10) == 0 ? 0.00001 : 0.0005 + 0.005 * random.nextDouble();
+            double intensity = 0.1 + random.nextDouble();
+            for (double offset : offsets) {
+                comps.add(new AbsMultipletComponent(null, offset, intensity, 0.0, width));
+            }
+        }
+        return comps;
+    }
+
+    /**
+     * Add up the lines point by point, as Multiplet.simulate did, leaving out
+     * a line at a point more than limit ppm plus limitWidths linewidths from
+     * its center.
+     */
+    static double[] directSum(List<AbsMultipletComponent> comps, int m, double min, double max,
+            double limitWidths, double limit) {
+        double widthLimit = 0.0001;
+        double delta = (max - min) / (m - 1);
+        double f = min;
+        double[] bpCoords = new double[m];
+        for (int i = 0; i < m; i++) {
+            for (AbsMultipletComponent comp : comps) {
+                double c = comp.getOffset();
+                double w = comp.getLineWidth();
+                if (w < widthLimit) {
+                    w = widthLimit;
+                }
+                if (Math.abs(f - c) > (limitWidths * w + limit)) {
+                    continue;
+                }
+                double a = comp.getIntensity();
+                double v = ((a * ((w * w) / 4)) / (((w * w) / 4)
+                        + ((f - c) * (f - c))));
+                bpCoords[i] += v;
+            }
+            f += delta;
+        }
+        return bpCoords;
+    }
+
+    @Test
+    public void testInfiniteCutoff() {
+        Random random = new Random(40);
+        List<AbsMultipletComponent> comps = makeComps(random, 60);
+        MultipletSimulator simulator = new MultipletSimulator(comps);
+        Assert.assertEquals(comps.size(), simulator.size());
+        // more than one chunk of points
+        int m = 2 * MultipletSimulator.CHUNK_SIZE + 123;
+        double[] expected = directSum(comps, m, 0.0, 10.0, Double.POSITIVE_INFINITY, 0.0);
+        Assert.assertArrayEquals(expected, simulator.simulate(m, 0.0, 10.0, Double.POSITIVE_INFINITY), 0.0);
+        expected = directSum(comps, m, 10.0, 0.0, Double.POSITIVE_INFINITY, 0.0);
+        Assert.assertArrayEquals(expected, simulator.simulate(m, 10.0, 0.0, Double.POSITIVE_INFINITY), 0.0);
+    }
+
+    @Test
+    public void testWindowEdges() {
+        Random random = new Random(41);
+        List<AbsMultipletComponent> comps = makeComps(random, 200);
+        MultipletSimulator simulator = new MultipletSimulator(comps);
+        int m = 3 * MultipletSimulator.CHUNK_SIZE + 7;
+        int nEdges = 0;
+        for (double cutoff : new double[]{3.0, 20.0, MultipletSimulator.DEFAULT_CUTOFF}) {
+            for (double[] range : new double[][]{{0.0, 10.0}, {10.0, 0.0}, {2.0, 2.5}}) {
+                double min = range[0];
+                double max = range[1];
+                double delta = Math.abs((max - min) / (m - 1));
+                double[] values = simulator.simulate(m, min, max, cutoff);
+                // every point within the cutoff is included, and points up to
+                // two points beyond it may be
+                double[] lower = directSum(comps, m, min, max, cutoff, 0.0);
+                double[] upper = directSum(comps, m, min, max, cutoff, 2.0 * delta);
+                for (int i = 0; i < m; i++) {
+                    Assert.assertTrue(values[i] >= lower[i] * (1.0 - 1.0e-12));
+                    Assert.assertTrue(values[i] <= upper[i] * (1.0 + 1.0e-12));
+                    if (upper[i] > lower[i] * (1.0 + 1.0e-9)) {
+                        nEdges++;
+                    }
+                }
+                // and the lines beyond the cutoff are small
+                double[] full = directSum(comps, m, min, max, Double.POSITIVE_INFINITY, 0.0);
+                double sumAmp = comps.stream().mapToDouble(AbsMultipletComponent::getIntensity).sum();
+                for (int i = 0; i < m; i++) {
+                    Assert.assertEquals(full[i], values[i], sumAmp / (4.0 * cutoff * cutoff));
+                }
+            }
+        }
+        Assert.assertTrue(nEdges > 100);
+    }
+
+    @Test
+    public void testAddTo() {
+        Random random = new Random(42);
+        List<AbsMultipletComponent> comps = makeComps(random, 30);
+        MultipletSimulator simulator = new MultipletSimulator(comps);
+        int m = 1000;
+        double[] values = new double[m];
+        for (int i = 0; i < m; i++) {
+            values[i] = random.nextDouble();
+        }
+        double[] expected = values.clone();
+        double[] simulated = simulator.simulate(m, 1.0, 9.0, 10.0);
+        for (int i = 0; i < m; i++) {
+            expected[i] += simulated[i];
+        }
+        simulator.addTo(values, 1.0, 9.0, 10.0);
+        Assert.assertArrayEquals(expected, values, 1.0e-9);
+        Assert.assertArrayEquals(new double[10], new MultipletSimulator(new ArrayList<>()).simulate(10, 0.0, 1.0), 0.0);
+    }
+}
@@ -0,0 +1,72 @@
+package org.nmrfx.peaks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeakIDMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        PeakList peakList = PeakListColumnsTest.makeList("idmap1", 8);
+        PeakIDMap idMap = new PeakIDMap();
+        Map<Integer, Peak> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            // small key range so puts, replacements and removals collide
+            int key = random.nextInt(500) - 100;
+            if (random.nextInt(3) == 0) {
+                Assert.assertSame(expected.remove(key), idMap.remove(key));
+            } else {
+                Peak peak = peakList.getPeak(random.nextInt(8));
+                Assert.assertSame(expected.put(key, peak), idMap.put(key, peak));
+            }
+            Assert.assertEquals(expected.size(), idMap.size());
+        }
+        for (int key = -100; key < 400; key++) {
+            Assert.assertSame(expected.get(key), idMap.get(key));
+        }
+        idMap.clear();
+        Assert.assertEquals(0, idMap.size());
+        Assert.assertNull(idMap.get(expected.keySet().iterator().next()));
+    }
+
+    @Test
+    public void testPeakListIndex() {
+        PeakList peakList = PeakListColumnsTest.makeList("idmap2", 10);
+        for (Peak peak : peakList.peaks()) {
+            Assert.assertSame(peak, peakList.getPeakByID(peak.getIdNum()));
+        }
+        Peak newPeak = peakList.getNewPeak();
+        Assert.assertSame(newPeak, peakList.getPeakByID(newPeak.getIdNum()));
+
+        Peak peak = peakList.getPeak(3);
+        int oldIdNum = peak.getIdNum();
+        peak.setIdNum(1000);
+        Assert.assertSame(peak, peakList.getPeakByID(1000));
+        Assert.assertNull(peakList.getPeakByID(oldIdNum));
+
+        Peak deleted = peakList.getPeak(5);
+        deleted.setStatus(-1);
+        peakList.compress();
+        Assert.assertNull(peakList.getPeakByID(deleted.getIdNum()));
+        Assert.assertSame(peak, peakList.getPeakByID(1000));
+        for (Peak remaining : peakList.peaks()) {
+            Assert.assertSame(remaining, peakList.getPeakByID(remaining.getIdNum()));
+        }
+    }
+
+    @Test
+    public void testGetAPeak() {
+        PeakList peakList = PeakListColumnsTest.makeList("idmap3", 4);
+        Assert.assertSame(peakList.getPeak(2), PeakList.getAPeak("idmap3." + peakList.getPeak(2).getIdNum()));
+        Assert.assertSame(peakList.getPeak(1), PeakList.getAPeak("idmap3." + peakList.getPeak(1).getIdNum() + ".2"));
+        Assert.assertNull(PeakList.getAPeak("idmap3.99"));
+        Assert.assertNull(PeakList.getAPeak("idmap3"));
+        Assert.assertNull(PeakList.getAPeak("nolist.1"));
+        Assert.assertNull(PeakList.getAPeak("nolist.x"));
+        Assert.assertThrows(NumberFormatException.class, () -> PeakList.getAPeak("idmap3.x"));
+    }
+}
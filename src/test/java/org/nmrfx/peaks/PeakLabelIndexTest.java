@@ -0,0 +1,64 @@
+package org.nmrfx.peaks;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeakLabelIndexTest {
+
+    static PeakList makeLabeledList(String name, int nPeaks) {
+        PeakList peakList = PeakListColumnsTest.makeList(name, nPeaks);
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getPeak(i);
+            peak.getPeakDim(0).setLabel((i + 10) + ".HN");
+            peak.getPeakDim(1).setLabel((i + 10) + ".N");
+        }
+        return peakList;
+    }
+
+    @Test
+    public void testMatch() {
+        PeakList peakList = makeLabeledList("labels1", 20);
+        List<Peak> peaks = peakList.matchPeaks(new String[]{"12.*"}, false, false);
+        Assert.assertEquals(List.of(peakList.getPeak(2)), peaks);
+        peaks = peakList.matchPeaks(new String[]{"*.hn"}, false, true);
+        Assert.assertEquals(20, peaks.size());
+        peaks = peakList.matchPeaks(new String[]{"*.HN", "2*.N"}, false, true);
+        Assert.assertEquals(10, peaks.size());
+        Assert.assertEquals(peakList.getPeak(10), peaks.get(0));
+        peaks = peakList.matchPeaks(new String[]{"1[45]\\.N"}, true, false);
+        Assert.assertEquals(List.of(peakList.getPeak(4), peakList.getPeak(5)), peaks);
+    }
+
+    @Test
+    public void testIndexCached() {
+        PeakList peakList = makeLabeledList("labels2", 10);
+        PeakLabelIndex index = peakList.getLabelIndex();
+        Assert.assertSame(index, peakList.getLabelIndex());
+        // a change that doesn't alter the labels keeps the index
+        peakList.getPeak(0).getPeakDim(0).setChemShiftValue(9.0f);
+        Assert.assertSame(index, peakList.getLabelIndex());
+
+        peakList.getPeak(3).getPeakDim(0).setLabel("99.HN");
+        Assert.assertNotSame(index, peakList.getLabelIndex());
+        Assert.assertEquals(List.of(peakList.getPeak(3)),
+                peakList.matchPeaks(new String[]{"99.*"}, false, false));
+        Assert.assertTrue(peakList.matchPeaks(new String[]{"13.HN"}, false, true).isEmpty());
+    }
+
+    @Test
+    public void testLinkedLabelChange() {
+        PeakList peakListA = makeLabeledList("labels3", 5);
+        PeakList peakListB = makeLabeledList("labels4", 5);
+        PeakList.linkPeakDims(peakListA.getPeak(1).getPeakDim(0), peakListB.getPeak(1).getPeakDim(0));
+        Assert.assertEquals(1, peakListA.matchPeaks(new String[]{"11.HN"}, false, true).size());
+        int modCount = peakListA.modCount;
+
+        // relabelling the peak in list B renames the shared resonance
+        peakListB.getPeak(1).getPeakDim(0).setLabel("77.HN");
+        Assert.assertEquals(modCount, peakListA.modCount);
+        Assert.assertEquals(List.of(peakListA.getPeak(1)),
+                peakListA.matchPeaks(new String[]{"77.HN"}, false, true));
+        Assert.assertTrue(peakListA.matchPeaks(new String[]{"11.HN"}, false, true).isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeakListAlignerTest {
+
+    static final String[] DIM_NAMES = {"H", "N"};
+    static final double[] TOLS = {0.02, 0.2};
+    static final double[] MAX_SHIFTS = {0.3, 3.0};
+
+    static PeakList makeReference(Random random, int nPeaks) {
+        PeakList peakList = new PeakList("alignRef", 2);
+        for (int iDim = 0; iDim < 2; iDim++) {
+            peakList.getSpectralDim(iDim).setSf(600.0);
+            peakList.getSpectralDim(iDim).setDimName(DIM_NAMES[iDim]);
+        }
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getNewPeak();
+            peak.getPeakDim(0).setChemShiftValue((float) (6.5 + 3.5 * random.nextDouble()));
+            peak.getPeakDim(1).setChemShiftValue((float) (105.0 + 25.0 * random.nextDouble()));
+        }
+        return peakList;
+    }
+
+    /**
+     * Copy the reference with the dimensions in the specified order, each
+     * shift jittered by a tenth of the tolerance and moved by the offset of
+     * its dimension. A fifth of the peaks are left out and some extra peaks
+     * are added.
+     */
+    static PeakList makeCopy(Random random, PeakList reference, String name, int[] dimOrder, double[] offsets) {
+        PeakList peakList = new PeakList(name, 2);
+        for (int j = 0; j < 2; j++) {
+            peakList.getSpectralDim(j).setSf(600.0);
+            peakList.getSpectralDim(j).setDimName(DIM_NAMES[dimOrder[j]]);
+        }
+        for (Peak refPeak : reference.peaks()) {
+            if (random.nextInt(5) == 0) {
+                continue;
+            }
+            Peak peak = peakList.getNewPeak();
+            for (int j = 0; j < 2; j++) {
+                int iDim = dimOrder[j];
+                double jitter = (random.nextDouble() - 0.5) * 0.2 * TOLS[iDim];
+                peak.getPeakDim(j).setChemShiftValue((float) (refPeak.getPeakDim(iDim).getChemShiftValue() + offsets[iDim] + jitter));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            Peak peak = peakList.getNewPeak();
+            for (int j = 0; j < 2; j++) {
+                double shift = dimOrder[j] == 0 ? 6.5 + 3.5 * random.nextDouble() : 105.0 + 25.0 * random.nextDouble();
+                peak.getPeakDim(j).setChemShiftValue((float) shift);
+            }
+        }
+        return peakList;
+    }
+
+    @Test
+    public void testKnownOffsets() {
+        Random random = new Random(42);
+        PeakList reference = makeReference(random, 150);
+        double[][] applied = {{0.05, -0.4}, {-0.23, 2.5}, {0.0, 0.0}, {0.137, -1.07}};
+        int[][] dimOrders = {{0, 1}, {1, 0}, {0, 1}, {1, 0}};
+        List<PeakList> peakLists = new ArrayList<>();
+        for (int k = 0; k < applied.length; k++) {
+            peakLists.add(makeCopy(random, reference, "align" + k, dimOrders[k], applied[k]));
+        }
+        List<float[][]> before = new ArrayList<>();
+        for (PeakList peakList : peakLists) {
+            float[][] shifts = new float[peakList.size()][2];
+            for (int row = 0; row < peakList.size(); row++) {
+                for (int j = 0; j < 2; j++) {
+                    shifts[row][j] = peakList.getPeak(row).getPeakDim(j).getChemShiftValue();
+                }
+            }
+            before.add(shifts);
+        }
+
+        PeakListAligner aligner = new PeakListAligner(reference, new int[]{0, 1}, TOLS, MAX_SHIFTS);
+        Map<PeakList, double[]> found = aligner.findOffsets(peakLists);
+        Map<PeakList, double[]> aligned = aligner.align(peakLists);
+        Assert.assertEquals(peakLists, new ArrayList<>(aligned.keySet()));
+        for (int k = 0; k < applied.length; k++) {
+            PeakList peakList = peakLists.get(k);
+            double[] offsets = aligned.get(peakList);
+            Assert.assertArrayEquals(found.get(peakList), offsets, 0.0);
+            for (int iDim = 0; iDim < 2; iDim++) {
+                Assert.assertEquals(-applied[k][iDim], offsets[iDim], 0.1 * TOLS[iDim]);
+            }
+            // every peak moved by the offset of its dimension
+            float[][] shifts = before.get(k);
+            for (int row = 0; row < peakList.size(); row++) {
+                for (int j = 0; j < 2; j++) {
+                    float expected = shifts[row][j];
+                    expected += offsets[dimOrders[k][j]];
+                    Assert.assertEquals(expected, peakList.getPeak(row).getPeakDim(j).getChemShiftValue(), 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMissingDim() {
+        Random random = new Random(7);
+        PeakList reference = makeReference(random, 20);
+        PeakList peakList = makeCopy(random, reference, "alignMissing", new int[]{0, 1}, new double[2]);
+        peakList.getSpectralDim(1).setDimName("C");
+        PeakListAligner aligner = new PeakListAligner(reference, new int[]{0, 1}, TOLS, MAX_SHIFTS);
+        Assert.assertThrows(IllegalArgumentException.class, () -> aligner.findOffsets(peakList));
+    }
+}
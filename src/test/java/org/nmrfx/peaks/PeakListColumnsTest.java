@@ -0,0 +1,115 @@
+package org.nmrfx.peaks;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.stream.IntStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeakListColumnsTest {
+
+    static PeakList makeList(String name, int nPeaks) {
+        PeakList peakList = new PeakList(name, 2);
+        for (int iDim = 0; iDim < 2; iDim++) {
+            peakList.getSpectralDim(iDim).setSf(600.0);
+        }
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getNewPeak();
+            peak.getPeakDim(0).setChemShiftValue(8.0f + 0.01f * i);
+            peak.getPeakDim(1).setChemShiftValue(120.0f - 0.1f * i);
+            peak.getPeakDim(0).setLineWidthValue(0.02f);
+            peak.getPeakDim(1).setLineWidthValue(0.04f);
+        }
+        return peakList;
+    }
+
+    @Test
+    public void testColumnsMatchPeaks() {
+        PeakList peakList = makeList("columns1", 10);
+        PeakListColumns columns = peakList.getColumns();
+        Assert.assertEquals(10, columns.size());
+        Assert.assertSame(columns, peakList.getColumns());
+        for (int i = 0; i < 10; i++) {
+            Peak peak = peakList.getPeak(i);
+            Assert.assertEquals(peak.getPeakDim(0).getChemShiftValue(), columns.getShifts(0)[i], 0.0f);
+            Assert.assertEquals(peak.getPeakDim(1).getLineWidthHz(), columns.getWidthsHz(1)[i], 0.0f);
+        }
+    }
+
+    @Test
+    public void testColumnsRebuiltAfterPeakChange() {
+        PeakList peakList = makeList("columns2", 5);
+        PeakListColumns columns = peakList.getColumns();
+        peakList.getPeak(2).getPeakDim(0).setChemShiftValue(9.5f);
+        PeakListColumns newColumns = peakList.getColumns();
+        Assert.assertNotSame(columns, newColumns);
+        Assert.assertEquals(9.5f, newColumns.getShifts(0)[2], 0.0f);
+    }
+
+    @Test
+    public void testWidthsHzAfterSetSf() {
+        PeakList peakList = makeList("columns3", 5);
+        Assert.assertEquals(0.02f * 600.0f, peakList.getColumns().getWidthsHz(0)[0], 1.0e-4f);
+        double widthHz = peakList.widthStats(0).getAverage();
+        peakList.getSpectralDim(0).setSf(800.0);
+        Assert.assertEquals(0.02f * 800.0f, peakList.getColumns().getWidthsHz(0)[0], 1.0e-4f);
+        Assert.assertEquals(widthHz * 800.0 / 600.0, peakList.widthStats(0).getAverage(), 1.0e-3);
+        Assert.assertEquals(0.02f * 800.0f,
+                peakList.getStats().get(PeakListStats.Attribute.WIDTH_HZ, 0).toSummaryStatistics().getAverage(), 1.0e-3);
+    }
+
+    @Test
+    public void testSetMeasuresMarksChanged() {
+        PeakList peakList = makeList("columns4", 5);
+        peakList.clearChanged();
+        PeakListColumns columns = peakList.getColumns();
+        peakList.setMeasures(new Measures(new double[]{1.0, 2.0}));
+        Assert.assertTrue(peakList.isChanged());
+        Assert.assertNotSame(columns, peakList.getColumns());
+
+        peakList.clearChanged();
+        columns = peakList.getColumns();
+        peakList.getPeak(1).setMeasures(new double[][]{{1.0, 2.0}, {0.1, 0.1}});
+        Assert.assertTrue(peakList.isChanged());
+        Assert.assertNotSame(columns, peakList.getColumns());
+    }
+
+    static void assertSummary(DoubleSummaryStatistics expected, PeakListStats.ColumnStats stats) {
+        DoubleSummaryStatistics summary = stats.toSummaryStatistics();
+        Assert.assertEquals(expected.getCount(), summary.getCount());
+        Assert.assertEquals(expected.getMin(), summary.getMin(), 0.0);
+        Assert.assertEquals(expected.getMax(), summary.getMax(), 0.0);
+        Assert.assertEquals(expected.getSum(), summary.getSum(), 0.0);
+        Assert.assertEquals(expected.getSum(), stats.getSum(), 0.0);
+        Assert.assertEquals(expected.getAverage(), stats.getMean(), 0.0);
+    }
+
+    @Test
+    public void testNonFiniteStats() {
+        PeakList peakList = makeList("columns5", 6);
+        float[] intensities = {1.0f, Float.POSITIVE_INFINITY, 2.0f, Float.NEGATIVE_INFINITY, 3.0f, 4.0f};
+        float[] volumes = {1.0f, 2.0f, Float.NaN, 3.0f, 4.0f, 5.0f};
+        float[] bounds = {0.1f, 0.2f, Float.POSITIVE_INFINITY, 0.3f, 0.4f, 0.5f};
+        for (int i = 0; i < 6; i++) {
+            Peak peak = peakList.getPeak(i);
+            peak.setIntensity(intensities[i]);
+            peak.setVolume1(volumes[i]);
+            peak.getPeakDim(0).setBoundsValue(bounds[i]);
+            peak.getPeakDim(1).setBoundsValue(bounds[5 - i]);
+        }
+        // a deleted peak isn't included
+        peakList.getPeak(4).setStatus(-1);
+        PeakListStats stats = peakList.getStats();
+        Assert.assertEquals(5, stats.getN());
+        int[] rows = {0, 1, 2, 3, 5};
+        assertSummary(IntStream.of(rows).mapToDouble(i -> intensities[i]).summaryStatistics(),
+                stats.get(PeakListStats.Attribute.INTENSITY, 0));
+        assertSummary(IntStream.of(rows).mapToDouble(i -> volumes[i]).summaryStatistics(),
+                stats.get(PeakListStats.Attribute.VOLUME, 0));
+        assertSummary(IntStream.of(rows).mapToDouble(i -> bounds[i]).summaryStatistics(),
+                stats.get(PeakListStats.Attribute.BOUNDS, 0));
+        assertSummary(IntStream.of(rows).mapToDouble(i -> bounds[5 - i]).summaryStatistics(),
+                stats.get(PeakListStats.Attribute.BOUNDS, 1));
+        Assert.assertTrue(Double.isNaN(stats.get(PeakListStats.Attribute.INTENSITY, 0).getSum()));
+        Assert.assertEquals(Double.POSITIVE_INFINITY, stats.get(PeakListStats.Attribute.BOUNDS, 0).getMean(), 0.0);
+    }
+}
@@ -0,0 +1,92 @@
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeakOverlapGraphTest {
+
+    static PeakList makeList(String name, int nPeaks) {
+        Random random = new Random(17);
+        PeakList peakList = new PeakList(name, 2);
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getNewPeak();
+            peak.getPeakDim(0).setChemShiftValue(8.0f + random.nextFloat());
+            peak.getPeakDim(1).setChemShiftValue(110.0f + 10.0f * random.nextFloat());
+            peak.getPeakDim(0).setLineWidthValue(0.01f + 0.03f * random.nextFloat());
+            peak.getPeakDim(1).setLineWidthValue(0.1f + 0.3f * random.nextFloat());
+        }
+        return peakList;
+    }
+
+    // the component found by repeatedly following Peak.getOverlappingPeaks
+    static Set<Peak> walkComponent(Peak peak, double scale) {
+        Set<Peak> result = new HashSet<>();
+        result.add(peak);
+        List<Peak> stack = new ArrayList<>(result);
+        while (!stack.isEmpty()) {
+            Peak next = stack.remove(stack.size() - 1);
+            for (Peak overlap : next.getOverlappingPeaks(scale)) {
+                if (result.add(overlap)) {
+                    stack.add(overlap);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testGraphMatchesPairwise() {
+        PeakList peakList = makeList("overlap1", 200);
+        PeakOverlapGraph graph = peakList.getOverlapGraph(1.0);
+        for (Peak peak : peakList.peaks()) {
+            Assert.assertEquals(peak.getOverlappingPeaks(1.0), graph.getOverlappingPeaks(peak));
+            Assert.assertEquals(walkComponent(peak, 1.0), peak.getAllOverlappingPeaks());
+        }
+    }
+
+    @Test
+    public void testOverlapLayers() {
+        PeakList peakList = makeList("overlap2", 200);
+        for (Peak peak : peakList.peaks()) {
+            List<Set<Peak>> layers = peak.getOverlapLayers(2.0);
+            Set<Peak> firstLayer = peak.getOverlappingPeaks(2.0);
+            Set<Peak> secondLayer = new HashSet<>();
+            for (Peak peak1 : firstLayer) {
+                for (Peak peak2 : peak1.getOverlappingPeaks(2.0)) {
+                    if ((peak2 != peak) && !firstLayer.contains(peak2)) {
+                        secondLayer.add(peak2);
+                    }
+                }
+            }
+            Assert.assertEquals(Set.of(peak), layers.get(0));
+            Assert.assertEquals(firstLayer, layers.get(1));
+            Assert.assertEquals(secondLayer, layers.get(2));
+        }
+    }
+
+    @Test
+    public void testGraphCached() {
+        PeakList peakList = makeList("overlap3", 20);
+        PeakOverlapGraph graph = peakList.getOverlapGraph(1.0);
+        Assert.assertSame(graph, peakList.getOverlapGraph(1.0));
+        Assert.assertNotSame(graph, peakList.getOverlapGraph(2.0));
+
+        graph = peakList.getOverlapGraph(1.0);
+        Peak peakA = peakList.getPeak(0);
+        Peak peakB = peakList.getPeak(1);
+        peakB.getPeakDim(0).setChemShiftValue(peakA.getPeakDim(0).getChemShiftValue());
+        peakB.getPeakDim(1).setChemShiftValue(peakA.getPeakDim(1).getChemShiftValue());
+        PeakOverlapGraph newGraph = peakList.getOverlapGraph(1.0);
+        Assert.assertNotSame(graph, newGraph);
+        Assert.assertTrue(newGraph.getOverlappingPeaks(peakA).contains(peakB));
+        Assert.assertTrue(peakA.getAllOverlappingPeaks().contains(peakB));
+
+        peakList.getNewPeak();
+        Assert.assertNotSame(newGraph, peakList.getOverlapGraph(1.0));
+    }
+}
@@ -0,0 +1,214 @@
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeakPathsTest {
+
+    static final double[] WEIGHTS = {1.0, 5.0};
+
+    /**
+     * Make a first list and two more lists whose peaks are offset from the
+     * first list's by whole grid steps, so many peaks have the same shifts
+     * and many distances are equal. A few peaks of each list are deleted.
+     */
+    static PeakPaths makePaths(String name, Random random) {
+        int nPeaks = 150;
+        float[][] positions = new float[60][2];
+        for (float[] position : positions) {
+            position[0] = 7.0f + 0.01f * random.nextInt(100);
+            position[1] = 110.0f + 0.05f * random.nextInt(100);
+        }
+        List<PeakList> peakLists = new ArrayList<>();
+        for (int iList = 0; iList < 3; iList++) {
+            PeakList peakList = new PeakList(name + iList, 2);
+            for (int iDim = 0; iDim < 2; iDim++) {
+                peakList.getSpectralDim(iDim).setSf(600.0);
+            }
+            for (int i = 0; i < nPeaks; i++) {
+                float[] position = positions[random.nextInt(positions.length)];
+                Peak peak = peakList.getNewPeak();
+                int step = iList == 0 ? 0 : random.nextInt(3) - 1;
+                peak.getPeakDim(0).setChemShiftValue(position[0] + 0.01f * step);
+                peak.getPeakDim(1).setChemShiftValue(position[1] + 0.05f * (random.nextInt(3) - 1) * iList);
+                peak.getPeakDim(0).setBoundsValue(0.03f);
+                peak.getPeakDim(1).setBoundsValue(0.15f);
+                if (random.nextInt(20) == 0) {
+                    peak.setStatus(-1);
+                }
+            }
+            peakLists.add(peakList);
+        }
+        double[] concs = {0.0, 1.0, 2.0};
+        return new PeakPaths(name, peakLists, concs, concs, WEIGHTS, new double[]{0.1, 0.1},
+                PeakPaths.PATHMODE.TITRATION);
+    }
+
+    // the linear scan getNearPeaks did before the index
+    static ArrayList<ArrayList<PeakDistance>> linearNearPeaks(PeakPaths peakPaths, Peak startPeak, double radius) {
+        int iList = -1;
+        ArrayList<ArrayList<PeakDistance>> filteredLists = new ArrayList<>();
+        for (PeakList peakList : peakPaths.peakLists) {
+            ArrayList<PeakDistance> peakArray = new ArrayList<>();
+            filteredLists.add(peakArray);
+            iList++;
+            if (iList == 0) {
+                double[] deltas = new double[WEIGHTS.length];
+                peakArray.add(new PeakDistance(startPeak, 0.0, deltas));
+                continue;
+            }
+            int nPeaks = peakList.size();
+            for (int j = 0; j < nPeaks; j++) {
+                Peak peak = peakList.getPeak(j);
+                if (peak.getStatus() != 0) {
+                    continue;
+                }
+                double distance = peakPaths.calcDistance(startPeak, peak);
+                double[] deltas = peakPaths.calcDeltas(startPeak, peak);
+                if (distance < radius) {
+                    peakArray.add(new PeakDistance(peak, distance, deltas));
+                }
+            }
+            peakArray.sort(null);
+        }
+        return filteredLists;
+    }
+
+    static Peak linearNearest(PeakPaths peakPaths, Peak peak1, PeakList peakList) {
+        double minDis = Double.MAX_VALUE;
+        Peak minPeak = null;
+        for (int j = 0; j < peakList.size(); j++) {
+            Peak peak2 = peakList.getPeak(j);
+            if (peak2.getStatus() != 0) {
+                continue;
+            }
+            double distance = peakPaths.calcDistance(peak1, peak2);
+            if (distance < minDis) {
+                minDis = distance;
+                minPeak = peak2;
+            }
+        }
+        return minPeak;
+    }
+
+    // the linear scan filterLists did before the index, returning the number
+    // of start peaks whose nearest free peak was claimed by an earlier one
+    static int linearFilterLists(PeakPaths peakPaths) {
+        for (PeakList peakList : peakPaths.peakLists) {
+            for (int j = 0; j < peakList.size(); j++) {
+                Peak peak = peakList.getPeak(j);
+                if (peak.getStatus() >= 0) {
+                    peak.setStatus(0);
+                }
+            }
+        }
+        List<PeakList> otherLists = peakPaths.peakLists.subList(1, peakPaths.peakLists.size());
+        List<List<Peak>> initialNearest = new ArrayList<>();
+        for (Peak peak1 : peakPaths.firstList.peaks()) {
+            List<Peak> nearest = new ArrayList<>();
+            for (PeakList peakList : otherLists) {
+                nearest.add(linearNearest(peakPaths, peak1, peakList));
+            }
+            initialNearest.add(nearest);
+        }
+        int nResearched = 0;
+        for (int i = 0; i < peakPaths.firstList.size(); i++) {
+            Peak peak1 = peakPaths.firstList.getPeak(i);
+            if (peak1.getStatus() < 0) {
+                continue;
+            }
+            double sum = 0.0;
+            for (int iDim : peakPaths.peakDims) {
+                double boundary = peak1.getPeakDim(iDim).getBoundsValue();
+                sum += boundary * boundary / (WEIGHTS[iDim] * WEIGHTS[iDim]);
+            }
+            double tol = Math.sqrt(sum / peakPaths.peakDims.length);
+            boolean ok = true;
+            List<Peak> minPeaks = new ArrayList<>();
+            for (int iList = 0; iList < otherLists.size(); iList++) {
+                Peak minPeak = linearNearest(peakPaths, peak1, otherLists.get(iList));
+                if (minPeak != initialNearest.get(i).get(iList)) {
+                    nResearched++;
+                }
+                double minDis = minPeak == null ? Double.MAX_VALUE : peakPaths.calcDistance(peak1, minPeak);
+                if (minDis < tol) {
+                    minPeaks.add(minPeak);
+                } else {
+                    ok = false;
+                    break;
+                }
+            }
+            if (ok) {
+                peak1.setStatus(1);
+                for (Peak minPeak : minPeaks) {
+                    minPeak.setStatus(1);
+                }
+            }
+        }
+        return nResearched;
+    }
+
+    static List<Integer> getStatus(PeakPaths peakPaths) {
+        List<Integer> status = new ArrayList<>();
+        for (PeakList peakList : peakPaths.peakLists) {
+            for (Peak peak : peakList.peaks()) {
+                status.add(peak.getStatus());
+            }
+        }
+        return status;
+    }
+
+    static void assertSame(List<? extends List<PeakDistance>> expected, List<? extends List<PeakDistance>> result) {
+        Assert.assertEquals(expected.size(), result.size());
+        for (int iList = 0; iList < expected.size(); iList++) {
+            List<PeakDistance> expectedDists = expected.get(iList);
+            List<PeakDistance> resultDists = result.get(iList);
+            Assert.assertEquals(expectedDists.size(), resultDists.size());
+            for (int i = 0; i < expectedDists.size(); i++) {
+                Assert.assertSame(expectedDists.get(i).getPeak(), resultDists.get(i).getPeak());
+                Assert.assertEquals(expectedDists.get(i).getDistance(), resultDists.get(i).getDistance(), 0.0);
+                Assert.assertArrayEquals(expectedDists.get(i).getDeltas(), resultDists.get(i).getDeltas(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testFilterLists() {
+        Random random = new Random(29);
+        int nResearched = 0;
+        int nClaimed = 0;
+        for (int trial = 0; trial < 5; trial++) {
+            PeakPaths peakPaths = makePaths("filter" + trial, random);
+            nResearched += linearFilterLists(peakPaths);
+            List<Integer> expected = getStatus(peakPaths);
+            PeakPaths.filterLists(peakPaths);
+            Assert.assertEquals(expected, getStatus(peakPaths));
+            nClaimed += (int) expected.stream().filter(status -> status == 1).count();
+        }
+        // start peaks whose nearest peak was claimed by an earlier start peak
+        Assert.assertTrue(nResearched > 10);
+        Assert.assertTrue(nClaimed > 100);
+    }
+
+    @Test
+    public void testNearPeaks() {
+        Random random = new Random(31);
+        PeakPaths peakPaths = makePaths("near", random);
+        // claimed peaks are skipped
+        PeakPaths.filterLists(peakPaths);
+        List<Peak> startPeaks = new ArrayList<>(peakPaths.firstList.peaks());
+        for (double radius : new double[]{0.0, 0.01, 0.05, 0.2}) {
+            Map<Peak, ArrayList<ArrayList<PeakDistance>>> nearMap = peakPaths.getNearPeaks(startPeaks, radius);
+            Assert.assertEquals(startPeaks, new ArrayList<>(nearMap.keySet()));
+            for (Peak startPeak : startPeaks) {
+                ArrayList<ArrayList<PeakDistance>> expected = linearNearPeaks(peakPaths, startPeak, radius);
+                assertSame(expected, peakPaths.getNearPeaks(startPeak, radius));
+                assertSame(expected, nearMap.get(startPeak));
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.nmrfx.peaks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SortedPeakViewTest {
+
+    static void checkOrder(PeakList peakList, SortedPeakView view, int iDim, boolean ascending) {
+        List<Peak> expected = new ArrayList<>(peakList.peaks());
+        Comparator<Peak> comparator = Comparator.comparing(peak -> peak.getPeakDim(iDim).getChemShiftValue());
+        expected.sort(ascending ? comparator : comparator.reversed());
+        Assert.assertEquals(expected, new ArrayList<>(view));
+        for (int i = 0; i < view.size(); i++) {
+            Assert.assertEquals(i, view.getPosition(view.get(i)));
+        }
+    }
+
+    @Test
+    public void testSingleShiftChanges() {
+        PeakList peakList = PeakListColumnsTest.makeList("sorted1", 50);
+        SortedPeakView view = peakList.getSortedPeaks(0, true);
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            peakList.getPeak(random.nextInt(50)).getPeakDim(0).setChemShiftValue(7.0f + 2.0f * random.nextFloat());
+            Assert.assertSame(view, peakList.getSortedPeaks(0, true));
+            checkOrder(peakList, view, 0, true);
+        }
+    }
+
+    @Test
+    public void testBatchShiftChanges() {
+        PeakList peakList = PeakListColumnsTest.makeList("sorted2", 200);
+        SortedPeakView ascending = peakList.getSortedPeaks(0, true);
+        SortedPeakView descending = peakList.getSortedPeaks(1, false);
+        Random random = new Random(5);
+        peakList.batchUpdate(() -> {
+            for (Peak peak : peakList.peaks()) {
+                peak.getPeakDim(0).setChemShiftValue(7.0f + 2.0f * random.nextFloat());
+                peak.getPeakDim(1).setChemShiftValue(110.0f + 20.0f * random.nextFloat());
+            }
+            Assert.assertTrue(ascending.resortPending);
+        });
+        Assert.assertFalse(ascending.resortPending);
+        Assert.assertFalse(descending.resortPending);
+        Assert.assertSame(ascending, peakList.getSortedPeaks(0, true));
+        Assert.assertSame(descending, peakList.getSortedPeaks(1, false));
+        checkOrder(peakList, ascending, 0, true);
+        checkOrder(peakList, descending, 1, false);
+    }
+
+    @Test
+    public void testViewRequestedDuringBatch() {
+        PeakList peakList = PeakListColumnsTest.makeList("sorted3", 20);
+        SortedPeakView view = peakList.getSortedPeaks(0, true);
+        peakList.beginUpdate();
+        try {
+            peakList.getPeak(0).getPeakDim(0).setChemShiftValue(9.9f);
+            peakList.getPeak(19).getPeakDim(0).setChemShiftValue(7.1f);
+            Assert.assertSame(view, peakList.getSortedPeaks(0, true));
+            checkOrder(peakList, view, 0, true);
+            peakList.getPeak(5).getPeakDim(0).setChemShiftValue(7.0f);
+        } finally {
+            peakList.endUpdate();
+        }
+        checkOrder(peakList, peakList.getSortedPeaks(0, true), 0, true);
+    }
+}
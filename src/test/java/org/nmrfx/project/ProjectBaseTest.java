@@ -0,0 +1,101 @@
+package org.nmrfx.project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+import org.nmrfx.peaks.io.PeakListSnapshot;
+
+public class ProjectBaseTest {
+
+    static final FileTime OLD_TIME = FileTime.fromMillis(0);
+    ProjectBase previous;
+    ProjectBase project;
+    Path projectDir;
+
+    @Before
+    public void createProject() throws IOException {
+        previous = ProjectBase.getActive();
+        project = new ProjectBase("saveTest");
+        project.setActive();
+        projectDir = Files.createTempDirectory("project");
+        Files.createDirectory(projectDir.resolve("peaks"));
+        project.setProjectDir(projectDir);
+    }
+
+    @After
+    public void removeProject() throws IOException {
+        previous.setActive();
+        try (var paths = Files.walk(projectDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    static PeakList makeList(String name, int nPeaks) {
+        PeakList peakList = new PeakList(name, 2);
+        for (int iDim = 0; iDim < 2; iDim++) {
+            peakList.getSpectralDim(iDim).setSf(600.0);
+        }
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getNewPeak();
+            peak.getPeakDim(0).setChemShiftValue(8.0f + 0.01f * i);
+            peak.getPeakDim(1).setChemShiftValue(120.0f - 0.1f * i);
+            peak.getPeakDim(0).setLabel((i + 10) + ".HN");
+            peak.getPeakDim(1).setLabel((i + 10) + ".N");
+        }
+        return peakList;
+    }
+
+    Path peakFile(PeakList peakList) {
+        return projectDir.resolve("peaks").resolve(peakList.getName() + ".xpk2");
+    }
+
+    void markOld(PeakList peakList) throws IOException {
+        Files.setLastModifiedTime(peakFile(peakList), OLD_TIME);
+        Files.setLastModifiedTime(PeakListSnapshot.getSnapshotPath(peakFile(peakList)), OLD_TIME);
+    }
+
+    void assertRewritten(PeakList peakList, boolean rewritten) throws IOException {
+        Assert.assertEquals(rewritten, !OLD_TIME.equals(Files.getLastModifiedTime(peakFile(peakList))));
+        Assert.assertEquals(rewritten, !OLD_TIME.equals(
+                Files.getLastModifiedTime(PeakListSnapshot.getSnapshotPath(peakFile(peakList)))));
+    }
+
+    @Test
+    public void testClearedListSaved() throws IOException {
+        PeakList peakList = makeList("saveA", 5);
+        project.saveProject();
+        Assert.assertTrue(peakList.isChanged());
+        markOld(peakList);
+        project.saveProject();
+        assertRewritten(peakList, false);
+
+        peakList.getPeak(2).getPeakDim(0).setChemShiftValue(9.5f);
+        peakList.clearChanged();
+        project.saveProject();
+        assertRewritten(peakList, true);
+        Assert.assertTrue(Files.readString(peakFile(peakList)).contains("9.5"));
+    }
+
+    @Test
+    public void testLinkedLabelSaved() throws IOException {
+        PeakList peakListA = makeList("saveB", 3);
+        PeakList peakListB = makeList("saveC", 3);
+        PeakList.linkPeakDims(peakListA.getPeak(1).getPeakDim(0), peakListB.getPeak(1).getPeakDim(0));
+        project.saveProject();
+        markOld(peakListA);
+        markOld(peakListB);
+
+        // renames the resonance shared with list A without changing list A
+        peakListB.getPeak(1).getPeakDim(0).setLabel("77.HN");
+        project.saveProject();
+        assertRewritten(peakListA, true);
+        Assert.assertTrue(Files.readString(peakFile(peakListA)).contains("77.HN"));
+    }
+}
@@ -0,0 +1,125 @@
+package org.nmrfx.star;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoopColumnTest {
+
+    static final String[] NUMBERS = {"0", "-0", "+7", "42", "-123456789", "2147483647", "-2147483648",
+        "1.5", "-0.0", ".5", "5.", "0.1", "1e5", "1.25E-3", "-6.02e+23", "3.4028235e38", "1.4e-45",
+        "123456789012345678", "0.30000000000000004", "9007199254740993", "NaN", "-Infinity"};
+
+    static LoopColumn column(List<String> values) {
+        LoopColumn column = new LoopColumn();
+        for (String value : values) {
+            column.add(value);
+        }
+        column.trim();
+        return column;
+    }
+
+    @Test
+    public void testDictionaryColumn() {
+        List<String> values = new ArrayList<>();
+        String[] names = {"CA", "CB", "N", "H", ".", "?", "O5'"};
+        for (int i = 0; i < 1000; i++) {
+            values.add(names[i % names.length]);
+        }
+        values.add(null);
+        LoopColumn column = column(values);
+        Assert.assertNotNull(column.codes);
+        Assert.assertEquals(values.size(), column.size());
+        Assert.assertEquals(values, column.asList());
+        // repeated values share one String
+        Assert.assertSame(column.get(0), column.get(names.length));
+        Assert.assertTrue(column.isMissing(4));
+        Assert.assertTrue(column.isMissing(5));
+        Assert.assertFalse(column.isMissing(0));
+        Assert.assertTrue(column.isNull(values.size() - 1));
+        Assert.assertThrows(NullPointerException.class, () -> column.parseDouble(values.size() - 1));
+    }
+
+    @Test
+    public void testValueColumn() {
+        Random random = new Random(7);
+        List<String> values = new ArrayList<>();
+        // starts dictionary encoded and switches to values part way through
+        for (int i = 0; i < 5000; i++) {
+            values.add(i % 10 == 0 ? "." : String.valueOf(random.nextInt(100000) / 1000.0));
+        }
+        LoopColumn column = column(values);
+        Assert.assertNull(column.codes);
+        Assert.assertEquals(values, column.asList());
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals(values.get(i).equals("."), column.isMissing(i));
+            if (!column.isMissing(i)) {
+                Assert.assertEquals(Double.parseDouble(values.get(i)), column.parseDouble(i), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testParse() {
+        LoopColumn column = column(List.of(NUMBERS));
+        for (int i = 0; i < NUMBERS.length; i++) {
+            String number = NUMBERS[i];
+            Assert.assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+                    Double.doubleToLongBits(column.parseDouble(i)));
+            Assert.assertEquals(number, Float.floatToIntBits(Float.parseFloat(number)),
+                    Float.floatToIntBits(column.parseFloat(i)));
+            Integer expected;
+            try {
+                expected = Integer.parseInt(number);
+            } catch (NumberFormatException nfE) {
+                expected = null;
+            }
+            if (expected == null) {
+                final int row = i;
+                Assert.assertThrows(number, NumberFormatException.class, () -> column.parseInt(row));
+            } else {
+                Assert.assertEquals(number, expected.intValue(), column.parseInt(i));
+            }
+        }
+    }
+
+    @Test
+    public void testAddFromTokenizer() {
+        STARTokenizer tokenizer = new STARTokenizer("a 'b c' \"d\"\n;\ntext\n;\n");
+        LoopColumn column = new LoopColumn();
+        while (tokenizer.next()) {
+            column.add(tokenizer);
+        }
+        Assert.assertEquals(List.of("a", "b c", "d", "text\n"), column.asList());
+    }
+
+    @Test
+    public void testLoopColumns() throws ParseException {
+        String text = String.join("\n",
+                "data_test",
+                "save_frame",
+                "   _Test.Sf_category   test",
+                "   loop_",
+                "      _Value.ID",
+                "      _Value.Val",
+                "      1   1.5",
+                "      2   .",
+                "      3   -2e-1",
+                "   stop_",
+                "save_",
+                "");
+        STAR3 star = new STAR3(new BufferedReader(new StringReader(text)), "star3");
+        Assert.assertNotNull(star.index());
+        Loop loop = star.getSaveFrames().get("save_frame").getLoop("_Value");
+        Assert.assertArrayEquals(new int[]{1, 2, 3}, loop.getIntColumn("ID", -1));
+        Assert.assertArrayEquals(new double[]{1.5, 9.0, -0.2}, loop.getDoubleColumn("Val", 9.0), 0.0);
+        Assert.assertArrayEquals(new float[]{1.5f, 9.0f, -0.2f}, loop.getFloatColumn("Val", 9.0f), 0.0f);
+        Assert.assertArrayEquals(new double[]{4.0, 4.0, 4.0}, loop.getDoubleColumn("Missing", 4.0), 0.0);
+        Assert.assertEquals(List.of(1.5, 9.0, -0.2), loop.getColumnAsDoubleList("Val", 9.0));
+        Assert.assertEquals(List.of(1, 2, 3), loop.getColumnAsIntegerList("ID", null));
+    }
+}
@@ -0,0 +1,188 @@
+package org.nmrfx.star;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class STARTokenizerTest {
+
+    /**
+     * The line based tokenizer STAR3Base used before STARTokenizer, kept here
+     * as the reference for the tokens.
+     */
+    static class LineTokenizer {
+
+        final BufferedReader reader;
+        String line = null;
+        int pos = 0;
+
+        LineTokenizer(String text) {
+            reader = new BufferedReader(new StringReader(text));
+        }
+
+        String nextLineToken() {
+            int length = line == null ? 0 : line.length();
+            boolean gotWS = false;
+            while (pos < length) {
+                if (Character.isWhitespace(line.charAt(pos))) {
+                    gotWS = true;
+                } else {
+                    if (pos == 0) {
+                        gotWS = true;
+                    }
+                    break;
+                }
+                pos++;
+            }
+            if (pos >= length) {
+                return null;
+            }
+            int fChar = pos;
+            int lChar = pos;
+            if (gotWS && (line.charAt(pos) == '\'' || line.charAt(pos) == '"')) {
+                char qChar = line.charAt(pos);
+                pos++;
+                while (pos < length) {
+                    if ((line.charAt(pos) == qChar) && ((pos == length - 1) || Character.isWhitespace(line.charAt(pos + 1)))) {
+                        lChar = pos;
+                        pos++;
+                        break;
+                    }
+                    pos++;
+                }
+            } else {
+                while (pos < length) {
+                    if (Character.isWhitespace(line.charAt(pos))) {
+                        break;
+                    }
+                    lChar = pos;
+                    pos++;
+                }
+            }
+            String token = line.substring(fChar, lChar + 1).trim();
+            int n = token.length();
+            if (n > 1) {
+                char firstChar = token.charAt(0);
+                char lastChar = token.charAt(n - 1);
+                if ((lastChar == firstChar) && ((firstChar == '\'') || (firstChar == '"'))) {
+                    token = token.substring(1, n - 1);
+                }
+            }
+            return token;
+        }
+
+        String next() throws IOException {
+            String token = nextLineToken();
+            if (token != null) {
+                return token;
+            }
+            StringBuilder text = new StringBuilder();
+            boolean inText = false;
+            while (true) {
+                String string = reader.readLine();
+                if (string == null) {
+                    return null;
+                }
+                if (inText) {
+                    if (string.startsWith(";")) {
+                        line = string.substring(1);
+                        pos = 0;
+                        return text.toString();
+                    }
+                    text.append(string).append('\n');
+                } else if (string.startsWith("#")) {
+                    continue;
+                } else if (string.startsWith(";")) {
+                    text.setLength(0);
+                    text.append(string.substring(1).trim());
+                    inText = true;
+                } else {
+                    line = string;
+                    pos = 0;
+                    token = nextLineToken();
+                    if (token != null) {
+                        return token;
+                    }
+                }
+            }
+        }
+    }
+
+    static List<String> referenceTokens(String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        LineTokenizer tokenizer = new LineTokenizer(text);
+        String token;
+        while ((token = tokenizer.next()) != null) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        STARTokenizer tokenizer = new STARTokenizer(text);
+        while (tokenizer.next()) {
+            String token = tokenizer.tokenString();
+            Assert.assertEquals(token, tokenizer.token().toString());
+            Assert.assertEquals(token.length(), tokenizer.tokenLength());
+            Assert.assertTrue(tokenizer.tokenEquals(token));
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    static void checkTokens(String text) throws IOException {
+        Assert.assertEquals(referenceTokens(text), tokens(text));
+    }
+
+    @Test
+    public void testTokens() {
+        String text = "data_test\n"
+                + "# a comment\n"
+                + "  _Entry.ID   'a b'  \"it's\"  x'y  'don't stop'\n"
+                + "loop_\n"
+                + "  _A.x _A.y\n"
+                + "  1 .\n"
+                + ";\n"
+                + "line one\n"
+                + "line two\n"
+                + ";  rest\n"
+                + "stop_\n";
+        Assert.assertEquals(List.of("data_test", "_Entry.ID", "a b", "it's", "x'y", "don't stop",
+                "loop_", "_A.x", "_A.y", "1", ".", "line one\nline two\n", "rest", "stop_"), tokens(text));
+    }
+
+    @Test
+    public void testEdgeCases() throws IOException {
+        checkTokens("");
+        checkTokens("\n\n   \n");
+        checkTokens("a\r\nb\rc\n");
+        checkTokens("'unterminated value\n'");
+        checkTokens("\"\" '' 'a' \"b\"c\"\n");
+        checkTokens(";  first line  \nsecond\n;\n");
+        checkTokens(";\nno end of text\n");
+        checkTokens(";text\n;'quoted after' tail\n#x\n y #z\n");
+        checkTokens("\ttab\tseparated\t\n");
+    }
+
+    @Test
+    public void testFiles() throws IOException {
+        for (String dir : new String[]{"src/test/data/ciffiles", "src/test/data/neffiles"}) {
+            File[] files = new File(dir).listFiles();
+            Assert.assertNotNull(files);
+            for (File file : files) {
+                if (!file.isFile()) {
+                    continue;
+                }
+                String text = Files.readString(file.toPath());
+                Assert.assertEquals(file.getName(), referenceTokens(text), tokens(text));
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.nmrfx.star;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class STARWriterTest {
+
+    static final String[] VALUES = {"plain", "", "a b", "tab\tvalue", "_tag", "#comment", "'quoted'",
+        "\"double\"", "[bracket", "]bracket", ";semi", "data_block", "SAVE_frame", "loop_", "Stop_",
+        "global_", "O5'", "it's", "x' y", "a\" b", "x' \" y", "two\nlines", ".", "?", "end'"};
+
+    static String row(String value) {
+        StringBuilder builder = new StringBuilder();
+        new STARWriter(builder).cell(value);
+        return builder.toString();
+    }
+
+    @Test
+    public void testQuoting() {
+        Assert.assertEquals("plain", row("plain"));
+        Assert.assertEquals("\"\"", row(""));
+        Assert.assertEquals("\"a b\"", row("a b"));
+        Assert.assertEquals("\"_tag\"", row("_tag"));
+        Assert.assertEquals("\"#comment\"", row("#comment"));
+        Assert.assertEquals("\"'quoted'\"", row("'quoted'"));
+        Assert.assertEquals("\"\"double\"\"", row("\"double\""));
+        Assert.assertEquals("\"data_block\"", row("data_block"));
+        Assert.assertEquals("\"Stop_\"", row("Stop_"));
+        Assert.assertEquals("O5'", row("O5'"));
+        Assert.assertEquals("'a\" b'", row("a\" b"));
+        Assert.assertEquals(".", row(null));
+        Assert.assertEquals("\n;x' \" y\n;\n", "\n" + row("x' \" y"));
+        Assert.assertEquals(";\ntwo\nlines\n;\n", row("two\nlines"));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        STARWriter writer = new STARWriter(stringWriter);
+        writer.beginLoop("_Test", "ID", "Value");
+        for (int i = 0; i < VALUES.length; i++) {
+            writer.cell(i).cell(VALUES[i]);
+            writer.endRow();
+        }
+        writer.endLoop();
+        writer.flush();
+
+        STARTokenizer tokenizer = new STARTokenizer(stringWriter.toString());
+        List<String> tokens = new ArrayList<>();
+        while (tokenizer.next()) {
+            tokens.add(tokenizer.tokenString());
+        }
+        Assert.assertEquals("loop_", tokens.get(0));
+        Assert.assertEquals("_Test.ID", tokens.get(1));
+        Assert.assertEquals("_Test.Value", tokens.get(2));
+        for (int i = 0; i < VALUES.length; i++) {
+            Assert.assertEquals(String.valueOf(i), tokens.get(3 + 2 * i));
+            // a multi-line text field is read back with a final line break
+            String expected = VALUES[i].contains("\n") ? VALUES[i] + "\n" : VALUES[i];
+            Assert.assertEquals(VALUES[i], expected, tokens.get(4 + 2 * i));
+        }
+        Assert.assertEquals("stop_", tokens.get(tokens.size() - 1));
+    }
+
+    @Test
+    public void testWidths() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        STARWriter writer = new STARWriter(builder).setIndent(1, 3).setWidths(4, 6);
+        writer.cell("A").cell(1.5, 2).cell(7).endRow();
+        writer.cell("ABCD").cell("longer value").cell('x').endRow();
+        writer.cell((Double) null, 3).quotedCell("N").cell(2.0f).endRow();
+        // short cells are padded to the column width, full ones get one space
+        Assert.assertEquals("   A   1.50  7\n"
+                + "   ABCD \"longer value\" x\n"
+                + "   .   \"N\"   2.0\n", builder.toString());
+        writer.beginLoop(null, "_A.b");
+        Assert.assertTrue(builder.toString().endsWith(" loop_\n   _A.b\n"));
+        // beginLoop clears the widths
+        writer.cell("a").cell("b").endRow();
+        Assert.assertTrue(builder.toString().endsWith("   a b\n"));
+    }
+
+    @Test
+    public void testRightAlignedWidths() {
+        Random random = new Random(17);
+        for (int i = 0; i < 1000; i++) {
+            int id = random.nextInt(100000);
+            String name = "N".repeat(1 + random.nextInt(7));
+            String link = "L".repeat(1 + random.nextInt(8));
+            double value = (random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(6));
+            StringBuilder builder = new StringBuilder();
+            new STARWriter(builder).setWidths(-6, -8, 8, -9, 6).cell(id).cell(name).cell(link).cell(value, 3).cell(name);
+            String valueText = String.format("%.3f", value);
+            // the same as printf while the cells fit their columns
+            if ((link.length() < 8) && (valueText.length() <= 9)) {
+                Assert.assertEquals(String.format("%6d %7s %-8s%9.3f %-6s", id, name, link, value, name),
+                        builder.toString());
+            }
+            // and always at least one space between cells
+            Assert.assertEquals(List.of(String.valueOf(id), name, link, valueText, name),
+                    List.of(builder.toString().trim().split(" +")));
+        }
+    }
+
+    @Test
+    public void testBuilderMatchesWriter() throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        StringBuilder builder = new StringBuilder();
+        for (STARWriter writer : new STARWriter[]{new STARWriter(stringWriter), new STARWriter(builder)}) {
+            writer.setIndent(2, 4);
+            writer.beginLoop("_Atom", "name", "x");
+            writer.setWidths(6);
+            for (String value : VALUES) {
+                writer.cell(value).cell(-1.25, 3).endRow();
+            }
+            writer.endLoop();
+            writer.write("\n");
+            writer.flush();
+        }
+        Assert.assertEquals(stringWriter.toString(), builder.toString());
+    }
+}
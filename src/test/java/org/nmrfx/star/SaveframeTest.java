@@ -0,0 +1,86 @@
+package org.nmrfx.star;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SaveframeTest {
+
+    static final String STAR_TEXT = String.join("\n",
+            "data_test",
+            "",
+            "save_good",
+            "   _Test.Sf_category   test",
+            "   _Test.Name   good",
+            "",
+            "   loop_",
+            "      _Value.ID",
+            "      _Value.Val",
+            "",
+            "      1   1.5",
+            "      2   2.5",
+            "",
+            "   stop_",
+            "",
+            "save_",
+            "",
+            "save_bad",
+            "   _Test.Sf_category   test",
+            "   _Test.Name   bad",
+            "",
+            "   loop_",
+            "      _Value.ID",
+            "      _Value.Val",
+            "",
+            "      1   1.5",
+            "      2",
+            "",
+            "   stop_",
+            "",
+            "save_",
+            "");
+
+    static STAR3 index() throws ParseException {
+        STAR3 star = new STAR3(new BufferedReader(new StringReader(STAR_TEXT)), "star3");
+        Assert.assertNotNull(star.index());
+        return star;
+    }
+
+    @Test
+    public void testLazyLoad() throws ParseException {
+        STAR3 star = index();
+        Saveframe saveframe = star.getSaveFrames().get("save_good");
+        Assert.assertFalse(saveframe.isLoaded());
+        Assert.assertEquals("test", saveframe.getCategoryName());
+        Assert.assertEquals("good", saveframe.getValue("_Test", "Name"));
+        Assert.assertTrue(saveframe.isLoaded());
+        Loop loop = saveframe.getLoop("_Value");
+        Assert.assertEquals(2, loop.getNRows());
+        Assert.assertEquals(List.of("1.5", "2.5"), loop.getColumnAsList("Val"));
+    }
+
+    @Test
+    public void testLoadFailure() throws ParseException {
+        STAR3 star = index();
+        Saveframe saveframe = star.getSaveFrames().get("save_bad");
+        try {
+            saveframe.load();
+            Assert.fail("invalid saveframe loaded");
+        } catch (ParseException parseE) {
+            Assert.assertTrue(parseE.getMessage().contains("save_bad"));
+        }
+        Assert.assertFalse(saveframe.isLoaded());
+        // accessors that can't throw ParseException report it unchecked
+        Assert.assertThrows(IllegalStateException.class, () -> saveframe.getCategories());
+        // an accessor that can throw ParseException reports the failure again
+        // rather than returning partial content
+        try {
+            saveframe.getLoop("_Value");
+            Assert.fail("partial saveframe returned");
+        } catch (ParseException parseE) {
+            Assert.assertFalse(saveframe.isLoaded());
+        }
+    }
+}